@@ -0,0 +1,41 @@
+package info.nightscout.androidaps.db
+
+import com.j256.ormlite.field.DatabaseField
+import com.j256.ormlite.table.DatabaseTable
+
+/**
+ * Precalculated TDD and TIR of one finished day
+ *
+ * Row is deleted when any data of the day (or older day) is changed
+ * and calculated again on next stats request
+ */
+@DatabaseTable(tableName = DatabaseHelper.DATABASE_DAILY_STATS)
+class DailyStats @JvmOverloads constructor(
+    @DatabaseField(id = true)
+    var date: Long = 0, // midnight
+
+    @DatabaseField
+    var tddCalculated: Boolean = false,
+    @DatabaseField
+    var tddPresent: Boolean = false, // false if there was no treatment and no profile
+    @DatabaseField
+    var fakingTemps: Boolean = false, // pump setting used for calculation
+    @DatabaseField
+    var bolus: Double = 0.0,
+    @DatabaseField
+    var basal: Double = 0.0,
+    @DatabaseField
+    var carbs: Double = 0.0,
+
+    // count of BG readings in STATS_* ranges
+    @DatabaseField
+    var tirCalculated: Boolean = false,
+    @DatabaseField
+    var bgBelow: Int = 0, // < STATS_RANGE_LOW
+    @DatabaseField
+    var bgInTarget: Int = 0, // STATS_RANGE_LOW .. STATS_TARGET_HIGH
+    @DatabaseField
+    var bgInRange: Int = 0, // STATS_TARGET_HIGH excl. .. STATS_RANGE_HIGH
+    @DatabaseField
+    var bgAbove: Int = 0 // > STATS_RANGE_HIGH
+)
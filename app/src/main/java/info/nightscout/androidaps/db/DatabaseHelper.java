@@ -13,6 +13,7 @@ import com.j256.ormlite.stmt.DeleteBuilder;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.stmt.Where;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.TableUtils;
 
@@ -22,9 +23,13 @@ import org.json.JSONObject;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -62,7 +67,9 @@ import info.nightscout.androidaps.plugins.pump.insight.database.InsightBolusID;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightHistoryOffset;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightPumpID;
 import info.nightscout.androidaps.plugins.pump.virtual.VirtualPumpPlugin;
+import info.nightscout.androidaps.utils.DateUtil;
 import info.nightscout.androidaps.utils.JsonHelper;
+import info.nightscout.androidaps.utils.MidnightTime;
 import info.nightscout.androidaps.utils.PercentageSplitter;
 import info.nightscout.androidaps.utils.T;
 
@@ -93,6 +100,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public static final String DATABASE_INSIGHT_BOLUS_IDS = "InsightBolusIDs";
     public static final String DATABASE_INSIGHT_PUMP_IDS = "InsightPumpIDs";
     public static final String DATABASE_OPEN_HUMANS_QUEUE = "OpenHumansQueue";
+    public static final String DATABASE_DAILY_STATS = "DailyStats";
 
     private static final int DATABASE_VERSION = 13;
 
@@ -120,6 +128,14 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     private static final ScheduledExecutorService profileSwitchEventWorker = Executors.newSingleThreadScheduledExecutor();
     private static ScheduledFuture<?> scheduledProfileSwitchEventPost = null;
 
+    private final PendingChanges<TemporaryBasal> tempBasalChanges = new PendingChanges<>();
+    private final PendingChanges<ExtendedBolus> extendedBolusChanges = new PendingChanges<>();
+    private final PendingChanges<ProfileSwitch> profileSwitchChanges = new PendingChanges<>();
+
+    private final Object dailyStatsLock = new Object();
+    // incremented on every invalidation, guarded by dailyStatsLock
+    private long dailyStatsGeneration = 0;
+
     private int oldVersion = 0;
     private int newVersion = 0;
 
@@ -148,6 +164,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.createTableIfNotExists(connectionSource, InsightPumpID.class);
             TableUtils.createTableIfNotExists(connectionSource, OmnipodHistoryRecord.class);
             TableUtils.createTableIfNotExists(connectionSource, OHQueueItem.class);
+            TableUtils.createTableIfNotExists(connectionSource, DailyStats.class);
             database.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT \"" + DATABASE_INSIGHT_BOLUS_IDS + "\", " + System.currentTimeMillis() + " " +
                     "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = \"" + DATABASE_INSIGHT_BOLUS_IDS + "\")");
             database.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT \"" + DATABASE_INSIGHT_PUMP_IDS + "\", " + System.currentTimeMillis() + " " +
@@ -174,7 +191,11 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 TableUtils.dropTable(connectionSource, ExtendedBolus.class, true);
                 TableUtils.dropTable(connectionSource, CareportalEvent.class, true);
                 TableUtils.dropTable(connectionSource, ProfileSwitch.class, true);
+                TableUtils.dropTable(connectionSource, DailyStats.class, true);
                 onCreate(database, connectionSource);
+                tempBasalChanges.reloadAll();
+                extendedBolusChanges.reloadAll();
+                profileSwitchChanges.reloadAll();
             } else if (oldVersion < 10) {
                 TableUtils.createTableIfNotExists(connectionSource, InsightHistoryOffset.class);
                 TableUtils.createTableIfNotExists(connectionSource, InsightBolusID.class);
@@ -188,6 +209,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 database.execSQL("UPDATE sqlite_sequence SET seq = " + System.currentTimeMillis() + " WHERE name = \"" + DATABASE_INSIGHT_PUMP_IDS + "\"");
             }
             TableUtils.createTableIfNotExists(connectionSource, OHQueueItem.class);
+            TableUtils.createTableIfNotExists(connectionSource, DailyStats.class);
         } catch (SQLException e) {
             aapsLogger.error("Can't drop databases", e);
             throw new RuntimeException(e);
@@ -226,6 +248,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.dropTable(connectionSource, ProfileSwitch.class, true);
             TableUtils.dropTable(connectionSource, TDD.class, true);
             TableUtils.dropTable(connectionSource, OmnipodHistoryRecord.class, true);
+            TableUtils.dropTable(connectionSource, DailyStats.class, true);
             TableUtils.createTableIfNotExists(connectionSource, TempTarget.class);
             TableUtils.createTableIfNotExists(connectionSource, BgReading.class);
             TableUtils.createTableIfNotExists(connectionSource, DanaRHistoryRecord.class);
@@ -236,11 +259,16 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             TableUtils.createTableIfNotExists(connectionSource, ProfileSwitch.class);
             TableUtils.createTableIfNotExists(connectionSource, TDD.class);
             TableUtils.createTableIfNotExists(connectionSource, OmnipodHistoryRecord.class);
+            TableUtils.createTableIfNotExists(connectionSource, DailyStats.class);
             updateEarliestDataChange(0);
+            newestBgReadingDate = -1;
         } catch (SQLException e) {
             aapsLogger.error("Unhandled exception", e);
         }
         virtualPumpPlugin.setFakingStatus(true);
+        tempBasalChanges.reloadAll();
+        extendedBolusChanges.reloadAll();
+        profileSwitchChanges.reloadAll();
         scheduleBgChange(null); // trigger refresh
         scheduleTemporaryBasalChange();
         scheduleExtendedBolusChange();
@@ -277,6 +305,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             aapsLogger.error("Unhandled exception", e);
         }
         virtualPumpPlugin.setFakingStatus(false);
+        tempBasalChanges.reloadAll();
         scheduleTemporaryBasalChange();
     }
 
@@ -288,6 +317,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         } catch (SQLException e) {
             aapsLogger.error("Unhandled exception", e);
         }
+        extendedBolusChanges.reloadAll();
         scheduleExtendedBolusChange();
     }
 
@@ -308,6 +338,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         } catch (SQLException e) {
             aapsLogger.error("Unhandled exception", e);
         }
+        profileSwitchChanges.reloadAll();
         scheduleProfileSwitchChange();
     }
 
@@ -378,6 +409,10 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return getDao(OHQueueItem.class);
     }
 
+    private Dao<DailyStats, Long> getDaoDailyStats() throws SQLException {
+        return getDao(DailyStats.class);
+    }
+
     public long roundDateToSec(long date) {
         long rounded = date - date % 1000;
         if (rounded != date)
@@ -394,6 +429,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 getDaoBgReadings().create(bgReading);
                 openHumansUploader.enqueueBGReading(bgReading);
                 aapsLogger.debug(LTag.DATABASE, "BG: New record from: " + from + " " + bgReading.toString());
+                invalidateDailyStats(bgReading.date);
+                if (isBackfilledBgReading(bgReading.date, bgReading.date))
+                    scheduleBgHistoryChange(bgReading.date); // older than already loaded data, trigger cache invalidation
                 scheduleBgChange(bgReading);
                 return true;
             }
@@ -403,6 +441,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 getDaoBgReadings().update(old);
                 openHumansUploader.enqueueBGReading(old);
                 aapsLogger.debug(LTag.DATABASE, "BG: Updating record from: " + from + " New data: " + old.toString());
+                invalidateDailyStats(old.date);
                 scheduleBgHistoryChange(old.date); // trigger cache invalidation
                 return false;
             }
@@ -412,12 +451,88 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return false;
     }
 
+    /**
+     * Batch of createIfNotExists(BgReading, String) for sources delivering hours of readings at once.
+     * Existing readings are found by one range query, changes are stored in one transaction
+     * and change events are sent once for the whole batch.
+     *
+     * @return created readings sorted by date
+     */
+    public List<BgReading> createIfNotExists(List<BgReading> bgReadings, String from) {
+        List<BgReading> created = new ArrayList<>();
+        List<BgReading> updated = new ArrayList<>();
+        if (bgReadings.isEmpty()) return created;
+        try {
+            // the last of readings with the same date wins as with one by one inserts
+            TreeMap<Long, BgReading> batch = new TreeMap<>();
+            for (BgReading bgReading : bgReadings) {
+                bgReading.date = roundDateToSec(bgReading.date);
+                batch.put(bgReading.date, bgReading);
+            }
+            Map<Long, BgReading> existing = new HashMap<>();
+            for (BgReading old : getDaoBgReadings().queryBuilder().where().between("date", batch.firstKey(), batch.lastKey()).query())
+                existing.put(old.date, old);
+            for (BgReading bgReading : batch.values()) {
+                BgReading old = existing.get(bgReading.date);
+                if (old == null) {
+                    created.add(bgReading);
+                } else if (!old.isEqual(bgReading)) {
+                    old.copyFrom(bgReading);
+                    updated.add(old);
+                }
+            }
+            if (created.isEmpty() && updated.isEmpty()) return created;
+
+            boolean backfilled = !created.isEmpty() && isBackfilledBgReading(created.get(0).date, created.get(created.size() - 1).date);
+            TransactionManager.callInTransaction(connectionSource, () -> {
+                Dao<BgReading, Long> dao = getDaoBgReadings();
+                for (BgReading bgReading : created) dao.create(bgReading);
+                for (BgReading bgReading : updated) dao.update(bgReading);
+                return null;
+            });
+            aapsLogger.debug(LTag.DATABASE, "BG: " + created.size() + " new and " + updated.size() + " updated records from: " + from);
+
+            List<BgReading> changed = new ArrayList<>(created);
+            changed.addAll(updated);
+            openHumansUploader.enqueueBGReadings(changed);
+            long oldestChange = Long.MAX_VALUE;
+            if (!created.isEmpty()) oldestChange = created.get(0).date;
+            if (!updated.isEmpty()) oldestChange = Math.min(oldestChange, updated.get(0).date);
+            invalidateDailyStats(oldestChange);
+            if (backfilled) scheduleBgHistoryChange(created.get(0).date);
+            if (!updated.isEmpty()) scheduleBgHistoryChange(updated.get(0).date);
+            if (!created.isEmpty()) scheduleBgChange(created.get(created.size() - 1));
+        } catch (SQLException e) {
+            aapsLogger.error("Unhandled exception", e);
+            created.clear();
+        }
+        return created;
+    }
+
+    // newest known BG timestamp, new readings older than this are backfilled data
+    private long newestBgReadingDate = -1;
+
+    /**
+     * @param oldest oldest of new readings
+     * @param newest newest of new readings
+     */
+    private boolean isBackfilledBgReading(long oldest, long newest) throws SQLException {
+        if (newestBgReadingDate == -1) {
+            BgReading known = getDaoBgReadings().queryBuilder().orderBy("date", false).where().ne("date", oldest).queryForFirst();
+            newestBgReadingDate = known != null ? known.date : 0;
+        }
+        boolean backfilled = oldest < newestBgReadingDate;
+        newestBgReadingDate = Math.max(newestBgReadingDate, newest);
+        return backfilled;
+    }
+
     public void update(BgReading bgReading) {
         bgReading.date = roundDateToSec(bgReading.date);
         try {
             getDaoBgReadings().update(bgReading);
             openHumansUploader.enqueueBGReading(bgReading);
             aapsLogger.debug(LTag.DATABASE, "BG: Updating record from: "+ bgReading.toString());
+            invalidateDailyStats(bgReading.date);
             scheduleBgHistoryChange(bgReading.date); // trigger cache invalidation
         } catch (SQLException e) {
             aapsLogger.error("Unhandled exception", e);
@@ -577,12 +692,83 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         return tddList;
     }
 
+    // ------------- Daily stats handling -------------------
+
+    public long getDailyStatsGeneration() {
+        synchronized (dailyStatsLock) {
+            return dailyStatsGeneration;
+        }
+    }
+
+    /**
+     * @return stored stats of days from .. to (excluding), oldest first
+     */
+    public List<DailyStats> getDailyStats(long from, long to) {
+        try {
+            QueryBuilder<DailyStats, Long> queryBuilder = getDaoDailyStats().queryBuilder();
+            queryBuilder.orderBy("date", true);
+            queryBuilder.where().ge("date", from).and().lt("date", to);
+            return queryBuilder.query();
+        } catch (SQLException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Store calculated stats unless data was changed since the calculation started
+     *
+     * @param generation value of getDailyStatsGeneration() read before calculation
+     */
+    public void storeDailyStats(List<DailyStats> stats, long generation) {
+        synchronized (dailyStatsLock) {
+            if (generation != dailyStatsGeneration) {
+                aapsLogger.debug(LTag.DATABASE, "Data changed during stats calculation. Not storing.");
+                return;
+            }
+            try {
+                Dao<DailyStats, Long> dao = getDaoDailyStats();
+                for (DailyStats dailyStats : stats) dao.createOrUpdate(dailyStats);
+            } catch (SQLException e) {
+                aapsLogger.error("Unhandled exception", e);
+            }
+        }
+    }
+
+    /**
+     * Drop stats of the day of from and all newer days. Today's stats are never stored
+     * so changes of current data are cheap.
+     */
+    public void invalidateDailyStats(long from) {
+        if (from >= MidnightTime.calc()) return;
+        synchronized (dailyStatsLock) {
+            dailyStatsGeneration++;
+            try {
+                DeleteBuilder<DailyStats, Long> deleteBuilder = getDaoDailyStats().deleteBuilder();
+                deleteBuilder.where().ge("date", MidnightTime.calc(from));
+                int deleted = deleteBuilder.delete();
+                if (deleted > 0)
+                    aapsLogger.debug(LTag.DATABASE, "Daily stats invalidated from " + DateUtil.toISOString(from) + ". Deleted: " + deleted);
+            } catch (SQLException e) {
+                aapsLogger.error("Unhandled exception", e);
+            }
+        }
+    }
+
     // ------------- DbRequests handling -------------------
 
     public void create(DbRequest dbr) throws SQLException {
         getDaoDbRequest().create(dbr);
     }
 
+    public void create(List<DbRequest> dbrs) throws SQLException {
+        TransactionManager.callInTransaction(connectionSource, () -> {
+            Dao<DbRequest, String> dao = getDaoDbRequest();
+            for (DbRequest dbr : dbrs) dao.create(dbr);
+            return null;
+        });
+    }
+
     public int delete(DbRequest dbr) {
         try {
             return getDaoDbRequest().delete(dbr);
@@ -617,6 +803,50 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         }
     }
 
+    /**
+     * Removes acked requests in one transaction
+     *
+     * @param nsClientIds acked dbAdd requests
+     * @param mongoIds    acked requests of other actions, action -> _id's
+     * @return number of removed requests
+     */
+    public int deleteDbRequests(Collection<String> nsClientIds, Map<String, ? extends Collection<String>> mongoIds) {
+        try {
+            return TransactionManager.callInTransaction(connectionSource, () -> {
+                Dao<DbRequest, String> dao = getDaoDbRequest();
+                int deleted = 0;
+                for (List<String> chunk : chunked(nsClientIds))
+                    deleted += dao.deleteIds(chunk);
+                for (Map.Entry<String, ? extends Collection<String>> entry : mongoIds.entrySet()) {
+                    for (List<String> chunk : chunked(entry.getValue())) {
+                        DeleteBuilder<DbRequest, String> deleteBuilder = dao.deleteBuilder();
+                        deleteBuilder.where().in("_id", chunk).and().eq("action", entry.getKey());
+                        deleted += deleteBuilder.delete();
+                    }
+                }
+                return deleted;
+            });
+        } catch (SQLException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+        return 0;
+    }
+
+    // sqlite limits number of arguments of one statement
+    private static List<List<String>> chunked(Collection<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        for (String id : ids) {
+            chunk.add(id);
+            if (chunk.size() == 500) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) chunks.add(chunk);
+        return chunks;
+    }
+
     public void deleteAllDbRequests() {
         try {
             TableUtils.clearTable(connectionSource, DbRequest.class);
@@ -906,6 +1136,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     aapsLogger.debug(LTag.DATABASE, "TEMPBASAL: Updated record with Pump Data : " + Source.getString(tempBasal.source) + " " + tempBasal.toString());
 
                     getDaoTemporaryBasal().update(old);
+                    tempBasalChanges.stored(old, old.date);
                     openHumansUploader.enqueueTemporaryBasal(old);
 
                     updateEarliestDataChange(tempBasal.date);
@@ -915,6 +1146,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 }
 
                 getDaoTemporaryBasal().create(tempBasal);
+                tempBasalChanges.stored(tempBasal, tempBasal.date);
                 openHumansUploader.enqueueTemporaryBasal(tempBasal);
                 aapsLogger.debug(LTag.DATABASE, "TEMPBASAL: New record from: " + Source.getString(tempBasal.source) + " " + tempBasal.toString());
                 updateEarliestDataChange(tempBasal.date);
@@ -931,8 +1163,10 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     if (!old.isEqual(tempBasal)) {
                         long oldDate = old.date;
                         getDaoTemporaryBasal().delete(old); // need to delete/create because date may change too
+                        tempBasalChanges.removed(oldDate);
                         old.copyFrom(tempBasal);
                         getDaoTemporaryBasal().create(old);
+                        tempBasalChanges.stored(old, old.date);
                         openHumansUploader.enqueueTemporaryBasal(old);
                         aapsLogger.debug(LTag.DATABASE, "TEMPBASAL: Updating record by date from: " + Source.getString(tempBasal.source) + " " + old.toString());
                         updateEarliestDataChange(oldDate);
@@ -954,8 +1188,10 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         if (!old.isEqual(tempBasal)) {
                             long oldDate = old.date;
                             getDaoTemporaryBasal().delete(old); // need to delete/create because date may change too
+                            tempBasalChanges.removed(oldDate);
                             old.copyFrom(tempBasal);
                             getDaoTemporaryBasal().create(old);
+                            tempBasalChanges.stored(old, old.date);
                             openHumansUploader.enqueueTemporaryBasal(old);
                             aapsLogger.debug(LTag.DATABASE, "TEMPBASAL: Updating record by _id from: " + Source.getString(tempBasal.source) + " " + old.toString());
                             updateEarliestDataChange(oldDate);
@@ -966,6 +1202,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     }
                 }
                 getDaoTemporaryBasal().create(tempBasal);
+                tempBasalChanges.stored(tempBasal, tempBasal.date);
                 openHumansUploader.enqueueTemporaryBasal(tempBasal);
                 aapsLogger.debug(LTag.DATABASE, "TEMPBASAL: New record from: " + Source.getString(tempBasal.source) + " " + tempBasal.toString());
                 updateEarliestDataChange(tempBasal.date);
@@ -974,6 +1211,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             }
             if (tempBasal.source == Source.USER) {
                 getDaoTemporaryBasal().create(tempBasal);
+                tempBasalChanges.stored(tempBasal, tempBasal.date);
                 openHumansUploader.enqueueTemporaryBasal(tempBasal);
                 aapsLogger.debug(LTag.DATABASE, "TEMPBASAL: New record from: " + Source.getString(tempBasal.source) + " " + tempBasal.toString());
                 updateEarliestDataChange(tempBasal.date);
@@ -989,6 +1227,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(TemporaryBasal tempBasal) {
         try {
             getDaoTemporaryBasal().delete(tempBasal);
+            tempBasalChanges.removed(tempBasal.date);
             openHumansUploader.enqueueTemporaryBasal(tempBasal, true);
             updateEarliestDataChange(tempBasal.date);
         } catch (SQLException e) {
@@ -1042,7 +1281,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         class PostRunnable implements Runnable {
             public void run() {
                 aapsLogger.debug(LTag.DATABASE, "Firing EventTempBasalChange");
-                rxBus.send(new EventReloadTempBasalData());
+                List<PendingChanges.Change<TemporaryBasal>> changes = tempBasalChanges.drain();
+                invalidateDailyStats(PendingChanges.oldestDate(changes));
+                rxBus.send(new EventReloadTempBasalData(changes));
                 rxBus.send(new EventTempBasalChange());
                 if (earliestDataChange != null)
                     rxBus.send(new EventNewHistoryData(earliestDataChange));
@@ -1201,6 +1442,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 // and then is record updated with pumpId
                 if (extendedBolus.pumpId == 0) {
                     getDaoExtendedBolus().createOrUpdate(extendedBolus);
+                    extendedBolusChanges.stored(extendedBolus, extendedBolus.date);
                     openHumansUploader.enqueueExtendedBolus(extendedBolus);
                 } else {
                     QueryBuilder<ExtendedBolus, Long> queryBuilder = getDaoExtendedBolus().queryBuilder();
@@ -1213,6 +1455,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         return false;
                     }
                     getDaoExtendedBolus().createOrUpdate(extendedBolus);
+                    extendedBolusChanges.stored(extendedBolus, extendedBolus.date);
                     openHumansUploader.enqueueExtendedBolus(extendedBolus);
                 }
                 aapsLogger.debug(LTag.DATABASE, "EXTENDEDBOLUS: New record from: " + Source.getString(extendedBolus.source) + " " + extendedBolus.log());
@@ -1226,8 +1469,10 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     if (!old.isEqual(extendedBolus)) {
                         long oldDate = old.date;
                         getDaoExtendedBolus().delete(old); // need to delete/create because date may change too
+                        extendedBolusChanges.removed(oldDate);
                         old.copyFrom(extendedBolus);
                         getDaoExtendedBolus().create(old);
+                        extendedBolusChanges.stored(old, old.date);
                         aapsLogger.debug(LTag.DATABASE, "EXTENDEDBOLUS: Updating record by date from: " + Source.getString(extendedBolus.source) + " " + old.log());
                         openHumansUploader.enqueueExtendedBolus(old);
                         updateEarliestDataChange(oldDate);
@@ -1249,8 +1494,10 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         if (!old.isEqual(extendedBolus)) {
                             long oldDate = old.date;
                             getDaoExtendedBolus().delete(old); // need to delete/create because date may change too
+                            extendedBolusChanges.removed(oldDate);
                             old.copyFrom(extendedBolus);
                             getDaoExtendedBolus().create(old);
+                            extendedBolusChanges.stored(old, old.date);
                             aapsLogger.debug(LTag.DATABASE, "EXTENDEDBOLUS: Updating record by _id from: " + Source.getString(extendedBolus.source) + " " + old.log());
                             openHumansUploader.enqueueExtendedBolus(old);
                             updateEarliestDataChange(oldDate);
@@ -1261,6 +1508,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                     }
                 }
                 getDaoExtendedBolus().create(extendedBolus);
+                extendedBolusChanges.stored(extendedBolus, extendedBolus.date);
                 aapsLogger.debug(LTag.DATABASE, "EXTENDEDBOLUS: New record from: " + Source.getString(extendedBolus.source) + " " + extendedBolus.log());
                 openHumansUploader.enqueueExtendedBolus(extendedBolus);
                 updateEarliestDataChange(extendedBolus.date);
@@ -1269,6 +1517,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             }
             if (extendedBolus.source == Source.USER) {
                 getDaoExtendedBolus().create(extendedBolus);
+                extendedBolusChanges.stored(extendedBolus, extendedBolus.date);
                 aapsLogger.debug(LTag.DATABASE, "EXTENDEDBOLUS: New record from: " + Source.getString(extendedBolus.source) + " " + extendedBolus.log());
                 openHumansUploader.enqueueExtendedBolus(extendedBolus);
                 updateEarliestDataChange(extendedBolus.date);
@@ -1304,6 +1553,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(ExtendedBolus extendedBolus) {
         try {
             getDaoExtendedBolus().delete(extendedBolus);
+            extendedBolusChanges.removed(extendedBolus.date);
             openHumansUploader.enqueueExtendedBolus(extendedBolus, true);
             updateEarliestDataChange(extendedBolus.date);
         } catch (SQLException e) {
@@ -1401,7 +1651,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         class PostRunnable implements Runnable {
             public void run() {
                 aapsLogger.debug(LTag.DATABASE, "Firing EventExtendedBolusChange");
-                rxBus.send(new EventReloadTreatmentData(new EventExtendedBolusChange()));
+                List<PendingChanges.Change<ExtendedBolus>> changes = extendedBolusChanges.drain();
+                invalidateDailyStats(PendingChanges.oldestDate(changes));
+                rxBus.send(new EventReloadTreatmentData(new EventExtendedBolusChange(), Collections.emptyList(), changes));
                 if (earliestDataChange != null)
                     rxBus.send(new EventNewHistoryData(earliestDataChange));
                 earliestDataChange = null;
@@ -1742,7 +1994,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         profileSwitch.source = old.source;
                         profileSwitch.profileName = old.profileName; // preserver profileName to prevent multiple CPP extension
                         getDaoProfileSwitch().delete(old); // need to delete/create because date may change too
+                        profileSwitchChanges.removed(old.date);
                         getDaoProfileSwitch().create(profileSwitch);
+                        profileSwitchChanges.stored(profileSwitch, profileSwitch.date);
                         aapsLogger.debug(LTag.DATABASE, "PROFILESWITCH: Updating record by date from: " + Source.getString(profileSwitch.source) + " " + old.toString());
                         openHumansUploader.enqueueProfileSwitch(profileSwitch);
                         scheduleProfileSwitchChange();
@@ -1761,8 +2015,10 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                         old = trList.get(0);
                         if (!old.isEqual(profileSwitch)) {
                             getDaoProfileSwitch().delete(old); // need to delete/create because date may change too
+                            profileSwitchChanges.removed(old.date);
                             old.copyFrom(profileSwitch);
                             getDaoProfileSwitch().create(old);
+                            profileSwitchChanges.stored(old, old.date);
                             aapsLogger.debug(LTag.DATABASE, "PROFILESWITCH: Updating record by _id from: " + Source.getString(profileSwitch.source) + " " + old.toString());
                             openHumansUploader.enqueueProfileSwitch(old);
                             scheduleProfileSwitchChange();
@@ -1773,6 +2029,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
                 // look for already added percentage from NS
                 profileSwitch.profileName = PercentageSplitter.pureName(profileSwitch.profileName);
                 getDaoProfileSwitch().create(profileSwitch);
+                profileSwitchChanges.stored(profileSwitch, profileSwitch.date);
                 aapsLogger.debug(LTag.DATABASE, "PROFILESWITCH: New record from: " + Source.getString(profileSwitch.source) + " " + profileSwitch.toString());
                 openHumansUploader.enqueueProfileSwitch(profileSwitch);
                 scheduleProfileSwitchChange();
@@ -1780,6 +2037,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
             }
             if (profileSwitch.source == Source.USER) {
                 getDaoProfileSwitch().create(profileSwitch);
+                profileSwitchChanges.stored(profileSwitch, profileSwitch.date);
                 aapsLogger.debug(LTag.DATABASE, "PROFILESWITCH: New record from: " + Source.getString(profileSwitch.source) + " " + profileSwitch.toString());
                 openHumansUploader.enqueueProfileSwitch(profileSwitch);
                 scheduleProfileSwitchChange();
@@ -1794,6 +2052,7 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void delete(ProfileSwitch profileSwitch) {
         try {
             getDaoProfileSwitch().delete(profileSwitch);
+            profileSwitchChanges.removed(profileSwitch.date);
             openHumansUploader.enqueueProfileSwitch(profileSwitch, true);
             scheduleProfileSwitchChange();
         } catch (SQLException e) {
@@ -1805,7 +2064,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         class PostRunnable implements Runnable {
             public void run() {
                 aapsLogger.debug(LTag.DATABASE, "Firing EventProfileNeedsUpdate");
-                rxBus.send(new EventReloadProfileSwitchData());
+                List<PendingChanges.Change<ProfileSwitch>> changes = profileSwitchChanges.drain();
+                invalidateDailyStats(PendingChanges.oldestDate(changes));
+                rxBus.send(new EventReloadProfileSwitchData(changes));
                 rxBus.send(new EventProfileNeedsUpdate());
                 scheduledProfileSwitchEventPost = null;
             }
@@ -2075,6 +2336,18 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         }
     }
 
+    public void createOrUpdate(List<OHQueueItem> items) {
+        try {
+            TransactionManager.callInTransaction(connectionSource, () -> {
+                Dao<OHQueueItem, Long> dao = getDaoOpenHumansQueue();
+                for (OHQueueItem item : items) dao.createOrUpdate(item);
+                return null;
+            });
+        } catch (SQLException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+    }
+
     public void removeAllOHQueueItemsWithIdSmallerThan(long id) {
         try {
             DeleteBuilder<OHQueueItem, Long> deleteBuilder = getDaoOpenHumansQueue().deleteBuilder();
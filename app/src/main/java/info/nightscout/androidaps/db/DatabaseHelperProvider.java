@@ -6,7 +6,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -56,6 +60,14 @@ public class DatabaseHelperProvider implements DatabaseHelperInterface {
         }
     }
 
+    @Override public void create(@NotNull List<? extends DbRequest> records) {
+        try {
+            MainApp.getDbHelper().create(new ArrayList<>(records));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override public void deleteAllDbRequests() {
         MainApp.getDbHelper().deleteAllDbRequests();
     }
@@ -68,6 +80,10 @@ public class DatabaseHelperProvider implements DatabaseHelperInterface {
         MainApp.getDbHelper().deleteDbRequestbyMongoId(action, _id);
     }
 
+    @Override public int deleteDbRequests(@NotNull Collection<String> nsClientIds, @NotNull Map<String, ? extends Set<String>> mongoIds) {
+        return MainApp.getDbHelper().deleteDbRequests(nsClientIds, mongoIds);
+    }
+
     @NotNull @Override public CloseableIterator<DbRequest> getDbRequestInterator() {
         return MainApp.getDbHelper().getDbRequestInterator();
     }
@@ -112,4 +128,8 @@ public class DatabaseHelperProvider implements DatabaseHelperInterface {
         return MainApp.getDbHelper().getProfileSwitchData(from, ascending);
     }
 
+    @Override public void invalidateDailyStats(long from) {
+        MainApp.getDbHelper().invalidateDailyStats(from);
+    }
+
 }
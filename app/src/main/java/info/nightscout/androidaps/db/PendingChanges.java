@@ -0,0 +1,75 @@
+package info.nightscout.androidaps.db;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records written to one table since the last change event was fired.
+ * <p>
+ * Change events are debounced, so everything stored in between is collected here and handed
+ * over to the event when it fires. Consumers patch their in-memory copies with it instead of
+ * querying whole range again. Table resets and upgrades request a full reload instead.
+ */
+public class PendingChanges<T> {
+
+    // above this a reload from db is cheaper than patching one by one
+    private static final int MAX_CHANGES = 200;
+
+    private List<Change<T>> changes = new ArrayList<>();
+    private boolean reloadAll = false;
+
+    public synchronized void stored(T record, long date) {
+        changes.add(new Change<>(date, record));
+    }
+
+    /**
+     * @param date date of the record as it was stored in db, ie. before it's changed in place
+     */
+    public synchronized void removed(long date) {
+        changes.add(new Change<>(date, null));
+    }
+
+    public synchronized void reloadAll() {
+        reloadAll = true;
+        changes.clear();
+    }
+
+    /**
+     * @return changes in order they were done, null if consumers must reload all data
+     */
+    @Nullable
+    public synchronized List<Change<T>> drain() {
+        List<Change<T>> result = reloadAll || changes.size() > MAX_CHANGES ? null : changes;
+        changes = new ArrayList<>();
+        reloadAll = false;
+        return result;
+    }
+
+    /**
+     * @param changes result of drain()
+     * @return date of the oldest change, 0 if all data must be considered changed
+     */
+    public static long oldestDate(@Nullable List<? extends Change<?>> changes) {
+        if (changes == null) return 0;
+        long oldest = Long.MAX_VALUE;
+        for (Change<?> change : changes) oldest = Math.min(oldest, change.date);
+        return oldest;
+    }
+
+    public static class Change<T> {
+        public final long date;
+        // null if record was removed
+        @Nullable public final T record;
+
+        Change(long date, @Nullable T record) {
+            this.date = date;
+            this.record = record;
+        }
+
+        public boolean isRemoval() {
+            return record == null;
+        }
+    }
+}
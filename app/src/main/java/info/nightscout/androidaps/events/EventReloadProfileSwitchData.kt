@@ -1,3 +1,9 @@
 package info.nightscout.androidaps.events
 
-class EventReloadProfileSwitchData : Event()
+import info.nightscout.androidaps.db.PendingChanges
+import info.nightscout.androidaps.db.ProfileSwitch
+
+// null changes mean data must be reloaded from db
+class EventReloadProfileSwitchData @JvmOverloads constructor(
+    val changes: List<PendingChanges.Change<ProfileSwitch>>? = null
+) : Event()
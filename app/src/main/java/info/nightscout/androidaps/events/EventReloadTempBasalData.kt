@@ -1,3 +1,9 @@
 package info.nightscout.androidaps.events
 
-class EventReloadTempBasalData : Event()
+import info.nightscout.androidaps.db.PendingChanges
+import info.nightscout.androidaps.db.TemporaryBasal
+
+// null changes mean data must be reloaded from db
+class EventReloadTempBasalData @JvmOverloads constructor(
+    val changes: List<PendingChanges.Change<TemporaryBasal>>? = null
+) : Event()
@@ -1,3 +1,12 @@
 package info.nightscout.androidaps.events
 
-class EventReloadTreatmentData(var next: Event) : Event()
+import info.nightscout.androidaps.db.ExtendedBolus
+import info.nightscout.androidaps.db.PendingChanges
+import info.nightscout.androidaps.db.Treatment
+
+// null changes mean data must be reloaded from db
+class EventReloadTreatmentData @JvmOverloads constructor(
+    var next: Event,
+    val treatmentChanges: List<PendingChanges.Change<Treatment>>? = null,
+    val extendedBolusChanges: List<PendingChanges.Change<ExtendedBolus>>? = null
+) : Event()
@@ -49,6 +49,11 @@ public class LoggerCallback extends ScriptableObject {
     }
 
 
+    public static void clearBuffers() {
+        errorBuffer = new StringBuffer();
+        logBuffer = new StringBuffer();
+    }
+
     public static String getScriptDebug() {
         String ret = "";
         if (errorBuffer.length() > 0) {
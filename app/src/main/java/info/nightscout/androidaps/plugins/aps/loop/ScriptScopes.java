@@ -0,0 +1,108 @@
+package info.nightscout.androidaps.plugins.aps.loop;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import info.nightscout.androidaps.logging.AAPSLogger;
+import info.nightscout.androidaps.logging.LTag;
+import info.nightscout.androidaps.plugins.aps.logger.LoggerCallback;
+
+/**
+ * Holds OpenAPS determine-basal scripts compiled once into sealed shared scopes.
+ * <p>
+ * Every invocation gets only a lightweight instance scope with the shared scope as prototype.
+ * Dynamic scope is enabled so variables the scripts assign without declaration end up
+ * in the instance scope instead of the shared one.
+ */
+@Singleton
+public class ScriptScopes {
+
+    private static final ContextFactory contextFactory = new ContextFactory() {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex) {
+            if (featureIndex == Context.FEATURE_DYNAMIC_SCOPE) return true;
+            return super.hasFeature(cx, featureIndex);
+        }
+    };
+
+    private final AAPSLogger aapsLogger;
+    private final Map<String, ScriptableObject> sharedScopes = new HashMap<>();
+
+    @Inject
+    public ScriptScopes(AAPSLogger aapsLogger) {
+        this.aapsLogger = aapsLogger;
+    }
+
+    /**
+     * Enter Rhino context for use with shared scopes. Must be paired with Context.exit()
+     */
+    public Context enterContext() {
+        Context rhino = contextFactory.enterContext();
+        // Turn off optimization to make Rhino Android compatible
+        rhino.setOptimizationLevel(-1);
+        return rhino;
+    }
+
+    /**
+     * @param folder assets folder containing determine-basal.js and basal-set-temp.js
+     * @return new instance scope with determine_basal and tempBasalFunctions available
+     */
+    public Scriptable newScope(Context rhino, ScriptReader scriptReader, String folder) throws IOException, IllegalAccessException, InstantiationException, InvocationTargetException {
+        ScriptableObject shared;
+        synchronized (sharedScopes) {
+            shared = sharedScopes.get(folder);
+            if (shared == null) {
+                shared = compile(rhino, scriptReader, folder);
+                sharedScopes.put(folder, shared);
+            }
+        }
+        Scriptable scope = rhino.newObject(shared);
+        scope.setPrototype(shared);
+        scope.setParentScope(null);
+        LoggerCallback.clearBuffers();
+        return scope;
+    }
+
+    private ScriptableObject compile(Context rhino, ScriptReader scriptReader, String folder) throws IOException, IllegalAccessException, InstantiationException, InvocationTargetException {
+        long start = System.currentTimeMillis();
+        ScriptableObject scope = rhino.initStandardObjects(null, true);
+
+        //register logger callback for console.log and console.error
+        ScriptableObject.defineClass(scope, LoggerCallback.class);
+        Scriptable myLogger = rhino.newObject(scope, "LoggerCallback", null);
+        scope.put("console2", scope, myLogger);
+        rhino.evaluateString(scope, readFile(scriptReader, "OpenAPSAMA/loggerhelper.js"), "JavaScript", 0, null);
+
+        //set module parent
+        rhino.evaluateString(scope, "var module = {\"parent\":Boolean(1)};", "JavaScript", 0, null);
+        rhino.evaluateString(scope, "var round_basal = function round_basal(basal, profile) { return basal; };", "JavaScript", 0, null);
+        rhino.evaluateString(scope, "require = function() {return round_basal;};", "JavaScript", 0, null);
+
+        //generate functions "determine_basal" and "setTempBasal"
+        rhino.evaluateString(scope, readFile(scriptReader, folder + "/determine-basal.js"), "JavaScript", 0, null);
+        rhino.evaluateString(scope, readFile(scriptReader, folder + "/basal-set-temp.js"), "setTempBasal.js", 0, null);
+        scope.sealObject();
+        aapsLogger.debug(LTag.APS, "Compiled " + folder + " scripts in " + (System.currentTimeMillis() - start) + " ms");
+        return scope;
+    }
+
+    private String readFile(ScriptReader scriptReader, String filename) throws IOException {
+        byte[] bytes = scriptReader.readFile(filename);
+        String string = new String(bytes, StandardCharsets.UTF_8);
+        if (string.startsWith("#!/usr/bin/env node")) {
+            string = string.substring(20);
+        }
+        return string;
+    }
+}
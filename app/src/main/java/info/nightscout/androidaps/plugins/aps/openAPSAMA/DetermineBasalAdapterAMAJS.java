@@ -14,7 +14,6 @@ import org.mozilla.javascript.Undefined;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.StandardCharsets;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -30,6 +29,7 @@ import info.nightscout.androidaps.db.TemporaryBasal;
 import info.nightscout.androidaps.logging.AAPSLogger;
 import info.nightscout.androidaps.logging.LTag;
 import info.nightscout.androidaps.plugins.aps.loop.ScriptReader;
+import info.nightscout.androidaps.plugins.aps.loop.ScriptScopes;
 import info.nightscout.androidaps.plugins.aps.logger.LoggerCallback;
 import info.nightscout.androidaps.plugins.aps.openAPSSMB.SMBDefaults;
 import info.nightscout.androidaps.plugins.configBuilder.ConstraintChecker;
@@ -37,6 +37,7 @@ import info.nightscout.androidaps.interfaces.ProfileFunction;
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus;
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin;
 import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
+import info.nightscout.androidaps.utils.Profiler;
 import info.nightscout.androidaps.utils.sharedPreferences.SP;
 
 public class DetermineBasalAdapterAMAJS {
@@ -47,6 +48,8 @@ public class DetermineBasalAdapterAMAJS {
     @Inject ProfileFunction profileFunction;
     @Inject TreatmentsPlugin treatmentsPlugin;
     @Inject OpenHumansUploader openHumansUploader;
+    @Inject ScriptScopes scriptScopes;
+    @Inject Profiler profiler;
 
     private final ScriptReader mScriptReader;
 
@@ -89,29 +92,15 @@ public class DetermineBasalAdapterAMAJS {
 
         DetermineBasalResultAMA determineBasalResultAMA = null;
 
-        Context rhino = Context.enter();
-        Scriptable scope = rhino.initStandardObjects();
-        // Turn off optimization to make Rhino Android compatible
-        rhino.setOptimizationLevel(-1);
+        long start = System.currentTimeMillis();
+        Context rhino = scriptScopes.enterContext();
 
         try {
 
-            //register logger callback for console.log and console.error
-            ScriptableObject.defineClass(scope, LoggerCallback.class);
-            Scriptable myLogger = rhino.newObject(scope, "LoggerCallback", null);
-            scope.put("console2", scope, myLogger);
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/loggerhelper.js"), "JavaScript", 0, null);
-
-            //set module parent
-            rhino.evaluateString(scope, "var module = {\"parent\":Boolean(1)};", "JavaScript", 0, null);
-            rhino.evaluateString(scope, "var round_basal = function round_basal(basal, profile) { return basal; };", "JavaScript", 0, null);
-            rhino.evaluateString(scope, "require = function() {return round_basal;};", "JavaScript", 0, null);
-
-            //generate functions "determine_basal" and "setTempBasal"
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/determine-basal.js"), "JavaScript", 0, null);
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/basal-set-temp.js"), "setTempBasal.js", 0, null);
-            Object determineBasalObj = scope.get("determine_basal", scope);
-            Object setTempBasalFunctionsObj = scope.get("tempBasalFunctions", scope);
+            // scripts are compiled only on first run, determine_basal and tempBasalFunctions come from shared scope
+            Scriptable scope = scriptScopes.newScope(rhino, mScriptReader, "OpenAPSAMA");
+            Object determineBasalObj = ScriptableObject.getProperty(scope, "determine_basal");
+            Object setTempBasalFunctionsObj = ScriptableObject.getProperty(scope, "tempBasalFunctions");
 
             //call determine-basal
             if (determineBasalObj instanceof Function && setTempBasalFunctionsObj instanceof NativeObject) {
@@ -151,6 +140,7 @@ public class DetermineBasalAdapterAMAJS {
             aapsLogger.error(LTag.APS, e.toString());
         } finally {
             Context.exit();
+            profiler.log(LTag.APS, "determine_basal", start);
         }
 
         storedGlucoseStatus = mGlucoseStatus.toString();
@@ -287,13 +277,4 @@ public class DetermineBasalAdapterAMAJS {
         return param;
     }
 
-    private String readFile(String filename) throws IOException {
-        byte[] bytes = mScriptReader.readFile(filename);
-        String string = new String(bytes, StandardCharsets.UTF_8);
-        if (string.startsWith("#!/usr/bin/env node")) {
-            string = string.substring(20);
-        }
-        return string;
-    }
-
 }
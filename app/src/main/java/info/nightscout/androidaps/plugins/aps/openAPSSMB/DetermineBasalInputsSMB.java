@@ -0,0 +1,309 @@
+package info.nightscout.androidaps.plugins.aps.openAPSSMB;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import javax.annotation.Nullable;
+
+import info.nightscout.androidaps.data.IobTotal;
+
+/**
+ * Inputs of one determine_basal run collected by DetermineBasalAdapterSMBJS.setData.
+ * <p>
+ * Values are kept as primitives. Script parameters are populated directly from them,
+ * JSON is built only on first request (native engine, logging, upload, fragment) and cached.
+ */
+public class DetermineBasalInputsSMB {
+
+    // profile
+    public double maxIob;
+    public double maxDailyBasal;
+    public double maxBasal;
+    public double minBg;
+    public double maxBg;
+    public double targetBg;
+    public double carbRatio;
+    public double sens;
+    public int maxDailySafetyMultiplier = 3;
+    public double currentBasalSafetyMultiplier = 4d;
+    public boolean sensitivityRaisesTarget = SMBDefaults.sensitivity_raises_target;
+    public boolean resistanceLowersTarget = SMBDefaults.resistance_lowers_target;
+    public boolean advTargetAdjustments = SMBDefaults.adv_target_adjustments;
+    public boolean exerciseMode = SMBDefaults.exercise_mode;
+    public int halfBasalExerciseTarget = SMBDefaults.half_basal_exercise_target;
+    public int maxCOB = SMBDefaults.maxCOB;
+    public boolean skipNeutralTemps;
+    public int remainingCarbsCap = SMBDefaults.remainingCarbsCap;
+    public boolean enableUAM;
+    public boolean a52RiskEnable = SMBDefaults.A52_risk_enable;
+    public int smbInterval = SMBDefaults.SMBInterval;
+    public boolean enableSMBWithCOB;
+    public boolean enableSMBWithTempTarget;
+    public boolean allowSMBWithHighTempTarget;
+    public boolean enableSMBAlways;
+    public boolean enableSMBAfterCarbs;
+    public int maxSMBBasalMinutes = SMBDefaults.maxSMBBasalMinutes;
+    public int maxUAMSMBBasalMinutes = SMBDefaults.maxUAMSMBBasalMinutes;
+    public double bolusIncrement = SMBDefaults.bolus_increment;
+    public int carbsReqThreshold = SMBDefaults.carbsReqThreshold;
+    public double currentBasal;
+    public boolean tempTargetSet;
+    public double autosensMax = 1.2;
+    @Nullable public String outUnits; // "mmol/L" or not present
+
+    // current temp
+    public int tempDuration;
+    public double tempRate;
+    @Nullable public Integer tempMinutesRunning;
+
+    public IobTotal[] iobArray = new IobTotal[0];
+
+    // glucose status
+    public double glucose;
+    public double noise;
+    public double delta;
+    public double shortAvgDelta;
+    public double longAvgDelta;
+    public long glucoseDate;
+
+    // meal data
+    public double carbs;
+    public double boluses;
+    public double mealCOB;
+    public double slopeFromMaxDeviation;
+    public double slopeFromMinDeviation;
+    public long lastBolusTime;
+    public long lastCarbTime;
+
+    public double autosensRatio = 1.0;
+
+    public boolean microBolusAllowed;
+    public boolean smbAlwaysAllowed;
+    public long currentTime;
+    public boolean isSaveCgmSource;
+
+    private JSONObject profileJson;
+    private JSONObject currentTempJson;
+    private JSONArray iobDataJson;
+    private JSONObject glucoseStatusJson;
+    private JSONObject mealDataJson;
+    private JSONObject autosensDataJson;
+
+    public JSONObject profileJson() throws JSONException {
+        if (profileJson == null) {
+            JSONObject json = new JSONObject();
+            json.put("max_iob", maxIob);
+            json.put("type", "current");
+            json.put("max_daily_basal", maxDailyBasal);
+            json.put("max_basal", maxBasal);
+            json.put("min_bg", minBg);
+            json.put("max_bg", maxBg);
+            json.put("target_bg", targetBg);
+            json.put("carb_ratio", carbRatio);
+            json.put("sens", sens);
+            json.put("max_daily_safety_multiplier", maxDailySafetyMultiplier);
+            json.put("current_basal_safety_multiplier", currentBasalSafetyMultiplier);
+            json.put("high_temptarget_raises_sensitivity", false);
+            json.put("low_temptarget_lowers_sensitivity", false);
+            json.put("sensitivity_raises_target", sensitivityRaisesTarget);
+            json.put("resistance_lowers_target", resistanceLowersTarget);
+            json.put("adv_target_adjustments", advTargetAdjustments);
+            json.put("exercise_mode", exerciseMode);
+            json.put("half_basal_exercise_target", halfBasalExerciseTarget);
+            json.put("maxCOB", maxCOB);
+            json.put("skip_neutral_temps", skipNeutralTemps);
+            json.put("remainingCarbsCap", remainingCarbsCap);
+            json.put("enableUAM", enableUAM);
+            json.put("A52_risk_enable", a52RiskEnable);
+            json.put("SMBInterval", smbInterval);
+            json.put("enableSMB_with_COB", enableSMBWithCOB);
+            json.put("enableSMB_with_temptarget", enableSMBWithTempTarget);
+            json.put("allowSMB_with_high_temptarget", allowSMBWithHighTempTarget);
+            json.put("enableSMB_always", enableSMBAlways);
+            json.put("enableSMB_after_carbs", enableSMBAfterCarbs);
+            json.put("maxSMBBasalMinutes", maxSMBBasalMinutes);
+            json.put("maxUAMSMBBasalMinutes", maxUAMSMBBasalMinutes);
+            json.put("bolus_increment", bolusIncrement);
+            json.put("carbsReqThreshold", carbsReqThreshold);
+            json.put("current_basal", currentBasal);
+            json.put("temptargetSet", tempTargetSet);
+            json.put("autosens_max", autosensMax);
+            if (outUnits != null) json.put("out_units", outUnits);
+            profileJson = json;
+        }
+        return profileJson;
+    }
+
+    public JSONObject currentTempJson() throws JSONException {
+        if (currentTempJson == null) {
+            JSONObject json = new JSONObject();
+            json.put("temp", "absolute");
+            json.put("duration", tempDuration);
+            json.put("rate", tempRate);
+            if (tempMinutesRunning != null) json.put("minutesrunning", tempMinutesRunning);
+            currentTempJson = json;
+        }
+        return currentTempJson;
+    }
+
+    public JSONArray iobDataJson() {
+        if (iobDataJson == null) {
+            JSONArray json = new JSONArray();
+            for (IobTotal iob : iobArray) json.put(iob.determineBasalJson());
+            iobDataJson = json;
+        }
+        return iobDataJson;
+    }
+
+    public JSONObject glucoseStatusJson() throws JSONException {
+        if (glucoseStatusJson == null) {
+            JSONObject json = new JSONObject();
+            json.put("glucose", glucose);
+            json.put("noise", noise);
+            json.put("delta", delta);
+            json.put("short_avgdelta", shortAvgDelta);
+            json.put("long_avgdelta", longAvgDelta);
+            json.put("date", glucoseDate);
+            glucoseStatusJson = json;
+        }
+        return glucoseStatusJson;
+    }
+
+    public JSONObject mealDataJson() throws JSONException {
+        if (mealDataJson == null) {
+            JSONObject json = new JSONObject();
+            json.put("carbs", carbs);
+            json.put("boluses", boluses);
+            json.put("mealCOB", mealCOB);
+            json.put("slopeFromMaxDeviation", slopeFromMaxDeviation);
+            json.put("slopeFromMinDeviation", slopeFromMinDeviation);
+            json.put("lastBolusTime", lastBolusTime);
+            json.put("lastCarbTime", lastCarbTime);
+            mealDataJson = json;
+        }
+        return mealDataJson;
+    }
+
+    public JSONObject autosensDataJson() throws JSONException {
+        if (autosensDataJson == null) {
+            JSONObject json = new JSONObject();
+            json.put("ratio", autosensRatio);
+            autosensDataJson = json;
+        }
+        return autosensDataJson;
+    }
+
+    // Script parameters. Must produce the same objects as NativeJSON.parse of the JSON above
+
+    Scriptable profileParam(Context rhino, Scriptable scope) {
+        Scriptable o = rhino.newObject(scope);
+        put(o, "max_iob", maxIob);
+        put(o, "type", "current");
+        put(o, "max_daily_basal", maxDailyBasal);
+        put(o, "max_basal", maxBasal);
+        put(o, "min_bg", minBg);
+        put(o, "max_bg", maxBg);
+        put(o, "target_bg", targetBg);
+        put(o, "carb_ratio", carbRatio);
+        put(o, "sens", sens);
+        put(o, "max_daily_safety_multiplier", maxDailySafetyMultiplier);
+        put(o, "current_basal_safety_multiplier", currentBasalSafetyMultiplier);
+        put(o, "high_temptarget_raises_sensitivity", false);
+        put(o, "low_temptarget_lowers_sensitivity", false);
+        put(o, "sensitivity_raises_target", sensitivityRaisesTarget);
+        put(o, "resistance_lowers_target", resistanceLowersTarget);
+        put(o, "adv_target_adjustments", advTargetAdjustments);
+        put(o, "exercise_mode", exerciseMode);
+        put(o, "half_basal_exercise_target", halfBasalExerciseTarget);
+        put(o, "maxCOB", maxCOB);
+        put(o, "skip_neutral_temps", skipNeutralTemps);
+        put(o, "remainingCarbsCap", remainingCarbsCap);
+        put(o, "enableUAM", enableUAM);
+        put(o, "A52_risk_enable", a52RiskEnable);
+        put(o, "SMBInterval", smbInterval);
+        put(o, "enableSMB_with_COB", enableSMBWithCOB);
+        put(o, "enableSMB_with_temptarget", enableSMBWithTempTarget);
+        put(o, "allowSMB_with_high_temptarget", allowSMBWithHighTempTarget);
+        put(o, "enableSMB_always", enableSMBAlways);
+        put(o, "enableSMB_after_carbs", enableSMBAfterCarbs);
+        put(o, "maxSMBBasalMinutes", maxSMBBasalMinutes);
+        put(o, "maxUAMSMBBasalMinutes", maxUAMSMBBasalMinutes);
+        put(o, "bolus_increment", bolusIncrement);
+        put(o, "carbsReqThreshold", carbsReqThreshold);
+        put(o, "current_basal", currentBasal);
+        put(o, "temptargetSet", tempTargetSet);
+        put(o, "autosens_max", autosensMax);
+        if (outUnits != null) put(o, "out_units", outUnits);
+        return o;
+    }
+
+    Scriptable currentTempParam(Context rhino, Scriptable scope) {
+        Scriptable o = rhino.newObject(scope);
+        put(o, "temp", "absolute");
+        put(o, "duration", tempDuration);
+        put(o, "rate", tempRate);
+        if (tempMinutesRunning != null) put(o, "minutesrunning", tempMinutesRunning);
+        return o;
+    }
+
+    // "time" of iob ticks is not used by the script and is left out to save date formatting
+    Scriptable iobDataParam(Context rhino, Scriptable scope) {
+        Object[] ticks = new Object[iobArray.length];
+        for (int i = 0; i < iobArray.length; i++) ticks[i] = iobTickParam(iobArray[i], rhino, scope);
+        return rhino.newArray(scope, ticks);
+    }
+
+    private static Scriptable iobTickParam(IobTotal iob, Context rhino, Scriptable scope) {
+        Scriptable o = rhino.newObject(scope);
+        put(o, "iob", iob.iob);
+        put(o, "basaliob", iob.basaliob);
+        put(o, "bolussnooze", iob.bolussnooze);
+        put(o, "activity", iob.activity);
+        put(o, "lastBolusTime", iob.lastBolusTime);
+        if (iob.iobWithZeroTemp != null)
+            put(o, "iobWithZeroTemp", iobTickParam(iob.iobWithZeroTemp, rhino, scope));
+        return o;
+    }
+
+    Scriptable glucoseStatusParam(Context rhino, Scriptable scope) {
+        Scriptable o = rhino.newObject(scope);
+        put(o, "glucose", glucose);
+        put(o, "noise", noise);
+        put(o, "delta", delta);
+        put(o, "short_avgdelta", shortAvgDelta);
+        put(o, "long_avgdelta", longAvgDelta);
+        put(o, "date", glucoseDate);
+        return o;
+    }
+
+    Scriptable mealDataParam(Context rhino, Scriptable scope) {
+        Scriptable o = rhino.newObject(scope);
+        put(o, "carbs", carbs);
+        put(o, "boluses", boluses);
+        put(o, "mealCOB", mealCOB);
+        put(o, "slopeFromMaxDeviation", slopeFromMaxDeviation);
+        put(o, "slopeFromMinDeviation", slopeFromMinDeviation);
+        put(o, "lastBolusTime", lastBolusTime);
+        put(o, "lastCarbTime", lastCarbTime);
+        return o;
+    }
+
+    Scriptable autosensDataParam(Context rhino, Scriptable scope) {
+        Scriptable o = rhino.newObject(scope);
+        put(o, "ratio", autosensRatio);
+        return o;
+    }
+
+    private static void put(Scriptable o, String name, Object value) {
+        ScriptableObject.putProperty(o, name, value);
+    }
+
+    // JS numbers are doubles, ints and timestamps are converted the same way as NativeJSON.parse does
+    private static void put(Scriptable o, String name, long value) {
+        ScriptableObject.putProperty(o, name, (double) value);
+    }
+}
@@ -0,0 +1,1024 @@
+package info.nightscout.androidaps.plugins.aps.openAPSSMB;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import info.nightscout.androidaps.data.IobTotal;
+import info.nightscout.androidaps.utils.DateUtil;
+
+/**
+ * Native port of OpenAPSSMB/determine-basal.js and basal-set-temp.js
+ * <p>
+ * Reads the inputs collected by DetermineBasalAdapterSMBJS.setData directly and produces the same
+ * result JSON as the script, including JavaScript number formatting in reason. Values the script
+ * reads from its parameters but AAPS never passes are treated as undefined.
+ * Keep in sync with the script, DetermineBasalSMBTest compares both engines.
+ * Console output of the script is not reproduced.
+ */
+public class DetermineBasalSMB {
+
+    private static final int MAX_PREDICTIONS = 48;
+
+    public JSONObject determineBasal(DetermineBasalInputsSMB inputs) throws JSONException {
+        JSONObject rT = new JSONObject(); //short for requestedTemp
+
+        boolean microBolusAllowed = inputs.microBolusAllowed;
+        long deliverAt = inputs.currentTime != 0 ? inputs.currentTime : System.currentTimeMillis();
+        long systemTime = deliverAt;
+
+        double profileCurrentBasal = inputs.currentBasal;
+        double basal = profileCurrentBasal;
+
+        double bgTime = inputs.glucoseDate;
+        double minAgo = round((systemTime - bgTime) / 60 / 1000, 1);
+
+        double bg = inputs.glucose;
+        double noise = inputs.noise;
+        double delta = inputs.delta;
+        double shortAvgDelta = inputs.shortAvgDelta;
+        double longAvgDelta = inputs.longAvgDelta;
+        boolean unchanged = bg > 60 && delta == 0 && shortAvgDelta > -1 && shortAvgDelta < 1 && longAvgDelta > -1 && longAvgDelta < 1;
+        // 38 is an xDrip error state that usually indicates sensor failure
+        // all other BG values between 11 and 37 mg/dL reflect non-error-code BG values, so we should zero temp for those
+        if (bg <= 10 || bg == 38 || noise >= 3) {
+            rT.put("reason", "CGM is calibrating, in ??? state, or noise is high");
+        }
+        if (minAgo > 12 || minAgo < -5) { // Dexcom data is too old, or way in the future
+            rT.put("reason", "If current system time " + str(systemTime) + " is correct, then BG data is too old. The last BG data was read " + str(minAgo) + "m ago at " + dateToString((long) bgTime));
+        } else if (unchanged && !inputs.isSaveCgmSource) {
+            // glucose_status.last_cal is not passed, "CGM was just calibrated" is never reported
+            rT.put("reason", "Error: CGM data is unchanged for the past ~45m");
+        }
+        double currentTempRate = inputs.tempRate;
+        double currentTempDuration = inputs.tempDuration;
+        if (bg <= 10 || bg == 38 || noise >= 3 || minAgo > 12 || minAgo < -5 || unchanged && !inputs.isSaveCgmSource) {
+            if (currentTempRate > basal) { // high temp is running
+                appendReason(rT, ". Replacing high temp basal of " + str(currentTempRate) + " with neutral temp of " + str(basal));
+                rT.put("deliverAt", isoDate(deliverAt));
+                rT.put("temp", "absolute");
+                rT.put("duration", 30);
+                put(rT, "rate", basal);
+                return rT;
+            } else if (currentTempRate == 0 && currentTempDuration > 30) { //shorten long zero temps to 30m
+                appendReason(rT, ". Shortening " + str(currentTempDuration) + "m long zero temp to 30m. ");
+                rT.put("deliverAt", isoDate(deliverAt));
+                rT.put("temp", "absolute");
+                rT.put("duration", 30);
+                rT.put("rate", 0);
+                return rT;
+            } else { //do nothing.
+                appendReason(rT, ". Temp " + str(currentTempRate) + " <= current basal " + str(basal) + "U/hr; doing nothing. ");
+                return rT;
+            }
+        }
+
+        double maxIob = inputs.maxIob; // maximum amount of non-bolus IOB OpenAPS will ever deliver
+
+        // if min and max are set, then set target to their average
+        double minBg = inputs.minBg;
+        double maxBg = inputs.maxBg;
+        double targetBg = (minBg + maxBg) / 2;
+
+        boolean tempTargetSet = inputs.tempTargetSet;
+        double sensitivityRatio;
+        // high_temptarget_raises_sensitivity and low_temptarget_lowers_sensitivity are passed as false
+        boolean highTempTargetRaisesSensitivity = inputs.exerciseMode;
+        double normalTarget = 100; // evaluate high/low temptarget against 100, not scheduled target (which might change)
+        double halfBasalTarget = 160; // when temptarget is 160 mg/dL, run 50% basal (120 = 75%; 140 = 60%)
+        if (inputs.halfBasalExerciseTarget != 0)
+            halfBasalTarget = inputs.halfBasalExerciseTarget;
+        if (highTempTargetRaisesSensitivity && tempTargetSet && targetBg > normalTarget) {
+            // w/ target 100, temp target 110 = .89, 120 = 0.8, 140 = 0.67, 160 = .57, and 200 = .44
+            double c = halfBasalTarget - normalTarget;
+            double ratio = c / (c + targetBg - normalTarget);
+            // limit sensitivityRatio to profile.autosens_max (1.2x by default)
+            ratio = Math.min(ratio, inputs.autosensMax);
+            sensitivityRatio = round(ratio, 2);
+        } else {
+            sensitivityRatio = inputs.autosensRatio;
+        }
+        if (truthy(sensitivityRatio)) {
+            basal = profileCurrentBasal * sensitivityRatio;
+        }
+
+        // adjust min, max, and target BG for sensitivity, such that 50% increase in ISF raises target from 100 to 120
+        if (!tempTargetSet) {
+            double autosensRatio = inputs.autosensRatio;
+            if (inputs.sensitivityRaisesTarget && autosensRatio < 1 || inputs.resistanceLowersTarget && autosensRatio > 1) {
+                // with a target of 100, default 0.7-1.2 autosens min/max range would allow a 93-117 target range
+                minBg = round((minBg - 60) / autosensRatio) + 60;
+                maxBg = round((maxBg - 60) / autosensRatio) + 60;
+                double newTargetBg = round((targetBg - 60) / autosensRatio) + 60;
+                // don't allow target_bg below 80
+                targetBg = Math.max(80, newTargetBg);
+            }
+        }
+
+        IobTotal[] iobArray = inputs.iobArray;
+        // a single element array is not unwrapped by the script
+        IobTotal iobData = iobArray.length > 1 ? iobArray[0] : null;
+        if (iobData == null) {
+            rT.put("error", "Error: iob_data missing some property. ");
+            return rT;
+        }
+        double iob = iobData.iob;
+
+        Object tick;
+        double tickValue = round(delta, 0);
+        if (delta > -0.5) {
+            tick = "+" + str(tickValue);
+        } else {
+            tick = tickValue;
+        }
+        double minDelta = Math.min(delta, shortAvgDelta);
+        double minAvgDelta = Math.min(shortAvgDelta, longAvgDelta);
+        double maxDelta = Math.max(delta, Math.max(shortAvgDelta, longAvgDelta));
+
+        double profileSens = inputs.sens;
+        double sens = round(profileSens / sensitivityRatio, 1);
+        double carbRatio = inputs.carbRatio;
+
+        // iob_data.lastTemp is not passed (see IobTotal.determineBasalJson), currenttemp is not compared with it
+        rT.put("temp", "absolute");
+        rT.put("deliverAt", isoDate(deliverAt));
+
+        //calculate BG impact: the amount BG "should" be rising or falling based on insulin activity alone
+        double bgi = round((-iobData.activity * sens * 5), 2);
+        // project deviations for 30 minutes
+        double deviation = round(30 / 5 * (minDelta - bgi));
+        // don't overreact to a big negative delta: use minAvgDelta if deviation is negative
+        if (deviation < 0) {
+            deviation = round((30 / 5) * (minAvgDelta - bgi));
+            // and if deviation is still negative, use long_avgdelta
+            if (deviation < 0) {
+                deviation = round((30 / 5) * (longAvgDelta - bgi));
+            }
+        }
+
+        // calculate the naive (bolus calculator math) eventual BG based on net IOB and sensitivity
+        double naiveEventualBG;
+        if (iob > 0) {
+            naiveEventualBG = round(bg - (iob * sens));
+        } else { // if IOB is negative, be more conservative and use the lower of sens, profile.sens
+            naiveEventualBG = round(bg - (iob * Math.min(sens, profileSens)));
+        }
+        // and adjust it for the deviation above
+        double eventualBG = naiveEventualBG + deviation;
+
+        // raise target for noisy / raw CGM data
+        if (noise >= 2) {
+            // increase target at least 10% (default 30%) for raw / noisy data
+            // profile.noisyCGMTargetMultiplier is not passed, Math.max(1.1, undefined) is NaN
+            double noisyCGMTargetMultiplier = Double.NaN;
+            minBg = round(Math.min(200, minBg * noisyCGMTargetMultiplier));
+            targetBg = round(Math.min(200, targetBg * noisyCGMTargetMultiplier));
+            maxBg = round(Math.min(200, maxBg * noisyCGMTargetMultiplier));
+            // adjust target BG range if configured to bring down high BG faster
+        } else if (bg > maxBg && inputs.advTargetAdjustments && !tempTargetSet) {
+            // with target=100, as BG rises from 100 to 160, adjustedTarget drops from 100 to 80
+            double adjustedMinBG = round(Math.max(80, minBg - (bg - minBg) / 3), 0);
+            double adjustedTargetBG = round(Math.max(80, targetBg - (bg - targetBg) / 3), 0);
+            double adjustedMaxBG = round(Math.max(80, maxBg - (bg - maxBg) / 3), 0);
+            // if eventualBG, naive_eventualBG, and target_bg aren't all above adjustedMinBG, don't use it
+            if (eventualBG > adjustedMinBG && naiveEventualBG > adjustedMinBG && minBg > adjustedMinBG) {
+                minBg = adjustedMinBG;
+            }
+            if (eventualBG > adjustedTargetBG && naiveEventualBG > adjustedTargetBG && targetBg > adjustedTargetBG) {
+                targetBg = adjustedTargetBG;
+            }
+            if (eventualBG > adjustedMaxBG && naiveEventualBG > adjustedMaxBG && maxBg > adjustedMaxBG) {
+                maxBg = adjustedMaxBG;
+            }
+        }
+
+        double expectedDelta = calculateExpectedDelta(targetBg, eventualBG, bgi);
+        if (Double.isNaN(eventualBG)) {
+            rT.put("error", "Error: could not calculate eventualBG. ");
+            return rT;
+        }
+
+        // min_bg of 90 -> threshold of 65, 100 -> 70 110 -> 75, and 130 -> 85
+        double threshold = minBg - 0.5 * (minBg - 40);
+
+        rT = new JSONObject();
+        rT.put("temp", "absolute");
+        put(rT, "bg", bg);
+        rT.put("tick", tick instanceof Double ? jsonNumber((Double) tick) : tick);
+        put(rT, "eventualBG", eventualBG);
+        put(rT, "targetBG", targetBg);
+        rT.put("insulinReq", 0);
+        rT.put("deliverAt", isoDate(deliverAt)); // The time at which the microbolus should be delivered
+        put(rT, "sensitivityRatio", sensitivityRatio); // autosens ratio (fraction of normal basal)
+
+        // generate predicted future BGs based on IOB, COB, and current absorption rate
+        double[] COBpredBGs = new double[MAX_PREDICTIONS];
+        double[] IOBpredBGs = new double[MAX_PREDICTIONS];
+        double[] UAMpredBGs = new double[MAX_PREDICTIONS];
+        double[] ZTpredBGs = new double[MAX_PREDICTIONS];
+        COBpredBGs[0] = bg;
+        IOBpredBGs[0] = bg;
+        ZTpredBGs[0] = bg;
+        UAMpredBGs[0] = bg;
+        int cobCount = 1, iobCount = 1, uamCount = 1, ztCount = 1;
+
+        double mealCOB = inputs.mealCOB;
+        double carbs = inputs.carbs;
+        boolean enableSMB = enableSmb(inputs, targetBg);
+
+        // enable UAM (if enabled in preferences)
+        boolean enableUAM = inputs.enableUAM;
+
+        // calculate current carb absorption rate, and how long to absorb all carbs
+        // CI = current carb impact on BG in mg/dL/5m
+        double ci = round((minDelta - bgi), 1);
+        double uci = round((minDelta - bgi), 1);
+        // ISF (mg/dL/U) / CR (g/U) = CSF (mg/dL/g)
+        double csf = sens / carbRatio;
+
+        double maxCarbAbsorptionRate = 30; // g/h; maximum rate to assume carbs will absorb if no CI observed
+        // limit Carb Impact to maxCarbAbsorptionRate * csf in mg/dL per 5m
+        double maxCI = round(maxCarbAbsorptionRate * csf * 5 / 60, 1);
+        if (ci > maxCI) {
+            ci = maxCI;
+        }
+        double remainingCATimeMin = 3; // h; duration of expected not-yet-observed carb absorption
+        // adjust remainingCATime (instead of CR) for autosens if sensitivityRatio defined
+        if (truthy(sensitivityRatio)) {
+            remainingCATimeMin = remainingCATimeMin / sensitivityRatio;
+        }
+        // 20 g/h means that anything <= 60g will get a remainingCATimeMin, 80g will get 4h, and 120g 6h
+        // when actual absorption ramps up it will take over from remainingCATime
+        double assumedCarbAbsorptionRate = 20; // g/h; maximum rate to assume carbs will absorb if no CI observed
+        double remainingCATime = remainingCATimeMin;
+        if (truthy(carbs)) {
+            // if carbs * assumedCarbAbsorptionRate > remainingCATimeMin, raise it
+            // so <= 90g is assumed to take 3h, and 120g=4h
+            remainingCATimeMin = Math.max(remainingCATimeMin, mealCOB / assumedCarbAbsorptionRate);
+            double lastCarbAge = round((systemTime - inputs.lastCarbTime) / 60000d);
+            remainingCATime = remainingCATimeMin + 1.5 * lastCarbAge / 60;
+            remainingCATime = round(remainingCATime, 1);
+        }
+
+        // calculate the number of carbs absorbed over remainingCATime hours at current CI
+        // CI (mg/dL/5m) * (5m)/5 (m) * 60 (min/hr) * 4 (h) / 2 (linear decay factor) = total carb impact (mg/dL)
+        double totalCI = Math.max(0, ci / 5 * 60 * remainingCATime / 2);
+        // totalCI (mg/dL) / CSF (mg/dL/g) = total carbs absorbed (g)
+        double totalCA = totalCI / csf;
+        double remainingCarbsCap = 90; // default to 90
+        double remainingCarbsFraction = 1; // profile.remainingCarbsFraction is not passed
+        if (inputs.remainingCarbsCap != 0)
+            remainingCarbsCap = Math.min(90, inputs.remainingCarbsCap);
+        double remainingCarbsIgnore = 1 - remainingCarbsFraction;
+        double remainingCarbs = Math.max(0, mealCOB - totalCA - carbs * remainingCarbsIgnore);
+        remainingCarbs = Math.min(remainingCarbsCap, remainingCarbs);
+        // assume remainingCarbs will absorb in a /\ shaped bilinear curve
+        // peaking at remainingCATime / 2 and ending at remainingCATime hours
+        // area of the /\ triangle is the same as a remainingCIpeak-height rectangle out to remainingCATime/2
+        // remainingCIpeak (mg/dL/5m) = remainingCarbs (g) * CSF (mg/dL/g) * 5 (m/5m) * 1h/60m / (remainingCATime/2) (h)
+        double remainingCIpeak = remainingCarbs * csf * 5 / 60 / (remainingCATime / 2);
+
+        // calculate peak deviation in last hour, and slope from that to current deviation
+        double slopeFromMaxDeviation = round(inputs.slopeFromMaxDeviation, 2);
+        // calculate lowest deviation in last hour, and slope from that to current deviation
+        double slopeFromMinDeviation = round(inputs.slopeFromMinDeviation, 2);
+        // assume deviations will drop back down at least at 1/3 the rate they ramped up
+        double slopeFromDeviations = Math.min(slopeFromMaxDeviation, -slopeFromMinDeviation / 3);
+
+        //5m data points = g * (1U/10g) * (40mg/dL/1U) / (mg/dL/5m)
+        // duration (in 5m data points) = COB (g) * CSF (mg/dL/g) / ci (mg/dL/5m)
+        // limit cid to remainingCATime hours: the reset goes to remainingCI
+        double cid;
+        if (ci == 0) {
+            // avoid divide by zero
+            cid = 0;
+        } else {
+            cid = Math.min(remainingCATime * 60 / 5 / 2, Math.max(0, mealCOB * csf / ci));
+        }
+        boolean carbsExpected = truthy(cid) || remainingCIpeak > 0;
+        double minIOBPredBG = 999;
+        double minCOBPredBG = 999;
+        double minUAMPredBG = 999;
+        double minGuardBG;
+        double minCOBGuardBG = 999;
+        double minUAMGuardBG = 999;
+        double minIOBGuardBG = 999;
+        double minZTGuardBG = 999;
+        double minPredBG;
+        double avgPredBG;
+        double IOBpredBG = eventualBG;
+        double COBpredBG = Double.NaN;
+        double UAMpredBG = Double.NaN;
+        double maxIOBPredBG = bg;
+        double maxCOBPredBG = bg;
+        double lastIOBpredBG;
+        double lastCOBpredBG = Double.NaN;
+        double lastUAMpredBG = Double.NaN;
+        // look ahead 60m (regardless of insulin type) so as to be less aggressive on slower insulins
+        // add 30m to allow for insulin delivery (SMBs or temps)
+        double insulinPeak5m = (90 / 60d) * 12;
+        for (IobTotal iobTick : iobArray) {
+            IobTotal iobWithZeroTemp = iobTick.iobWithZeroTemp;
+            // the script stops predicting at the first tick without iobWithZeroTemp
+            if (iobWithZeroTemp == null) break;
+            double predBGI = round((-iobTick.activity * sens * 5), 2);
+            double predZTBGI = round((-iobWithZeroTemp.activity * sens * 5), 2);
+            // for IOBpredBGs, predicted deviation impact drops linearly from current deviation down to zero
+            // over 60 minutes (data points every 5m)
+            double predDev = ci * (1 - Math.min(1, iobCount / (60 / 5d)));
+            IOBpredBG = IOBpredBGs[iobCount - 1] + predBGI + predDev;
+            // calculate predBGs with long zero temp without deviations
+            double ZTpredBG = ZTpredBGs[ztCount - 1] + predZTBGI;
+            // for COBpredBGs, predicted carb impact drops linearly from current carb impact down to zero
+            // eventually accounting for all carbs (if they can be absorbed over DIA)
+            double predCI = Math.max(0, Math.max(0, ci) * (1 - cobCount / Math.max(cid * 2, 1)));
+            // if any carbs aren't absorbed after remainingCATime hours, assume they'll absorb in a /\ shaped
+            // bilinear curve peaking at remainingCIpeak at remainingCATime/2 hours (remainingCATime/2*12 * 5m)
+            // and ending at remainingCATime h (remainingCATime*12 * 5m intervals)
+            double intervals = Math.min(cobCount, (remainingCATime * 12) - cobCount);
+            double remainingCI = Math.max(0, intervals / (remainingCATime / 2 * 12) * remainingCIpeak);
+            COBpredBG = COBpredBGs[cobCount - 1] + predBGI + Math.min(0, predDev) + predCI + remainingCI;
+            // for UAMpredBGs, predicted carb impact drops at slopeFromDeviations
+            // calculate predicted CI from UAM based on slopeFromDeviations
+            double predUCIslope = Math.max(0, uci + (uamCount * slopeFromDeviations));
+            // if slopeFromDeviations is too flat, predicted deviation impact drops linearly from
+            // current deviation down to zero over 3h (data points every 5m)
+            double predUCImax = Math.max(0, uci * (1 - uamCount / Math.max(3 * 60 / 5d, 1)));
+            // predicted CI from UAM is the lesser of CI based on deviationSlope or DIA
+            double predUCI = Math.min(predUCIslope, predUCImax);
+            UAMpredBG = UAMpredBGs[uamCount - 1] + predBGI + Math.min(0, predDev) + predUCI;
+            // truncate all BG predictions at 4 hours
+            if (iobCount < MAX_PREDICTIONS) IOBpredBGs[iobCount++] = IOBpredBG;
+            if (cobCount < MAX_PREDICTIONS) COBpredBGs[cobCount++] = COBpredBG;
+            if (uamCount < MAX_PREDICTIONS) UAMpredBGs[uamCount++] = UAMpredBG;
+            if (ztCount < MAX_PREDICTIONS) ZTpredBGs[ztCount++] = ZTpredBG;
+            // calculate minGuardBGs without a wait from COB, UAM, IOB predBGs
+            if (COBpredBG < minCOBGuardBG) minCOBGuardBG = round(COBpredBG);
+            if (UAMpredBG < minUAMGuardBG) minUAMGuardBG = round(UAMpredBG);
+            if (IOBpredBG < minIOBGuardBG) minIOBGuardBG = round(IOBpredBG);
+            if (ZTpredBG < minZTGuardBG) minZTGuardBG = round(ZTpredBG);
+
+            // wait 90m before setting minIOBPredBG
+            if (iobCount > insulinPeak5m && (IOBpredBG < minIOBPredBG)) minIOBPredBG = round(IOBpredBG);
+            if (IOBpredBG > maxIOBPredBG) maxIOBPredBG = IOBpredBG;
+            // wait 85-105m before setting COB and 60m for UAM minPredBGs
+            if (carbsExpected && cobCount > insulinPeak5m && (COBpredBG < minCOBPredBG)) minCOBPredBG = round(COBpredBG);
+            if (carbsExpected && COBpredBG > maxIOBPredBG) maxCOBPredBG = COBpredBG;
+            if (enableUAM && uamCount > 12 && (UAMpredBG < minUAMPredBG)) minUAMPredBG = round(UAMpredBG);
+        }
+
+        JSONObject predBGs = new JSONObject();
+        rT.put("predBGs", predBGs);
+        clampPredictions(IOBpredBGs, iobCount);
+        iobCount = trimFlatTail(IOBpredBGs, iobCount);
+        predBGs.put("IOB", toJSONArray(IOBpredBGs, iobCount));
+        lastIOBpredBG = round(IOBpredBGs[iobCount - 1]);
+        clampPredictions(ZTpredBGs, ztCount);
+        for (int i = ztCount - 1; i > 6; i--) {
+            // stop displaying ZTpredBGs once they're rising and above target
+            if (ZTpredBGs[i - 1] >= ZTpredBGs[i] || ZTpredBGs[i] <= targetBg) break;
+            ztCount--;
+        }
+        predBGs.put("ZT", toJSONArray(ZTpredBGs, ztCount));
+        boolean useCOBPredictions = mealCOB > 0 && (ci > 0 || remainingCIpeak > 0);
+        if (useCOBPredictions) {
+            clampPredictions(COBpredBGs, cobCount);
+            cobCount = trimFlatTail(COBpredBGs, cobCount);
+            predBGs.put("COB", toJSONArray(COBpredBGs, cobCount));
+            lastCOBpredBG = round(COBpredBGs[cobCount - 1]);
+            eventualBG = Math.max(eventualBG, round(COBpredBGs[cobCount - 1]));
+        }
+        if (ci > 0 || remainingCIpeak > 0) {
+            if (enableUAM) {
+                clampPredictions(UAMpredBGs, uamCount);
+                uamCount = trimFlatTail(UAMpredBGs, uamCount);
+                predBGs.put("UAM", toJSONArray(UAMpredBGs, uamCount));
+                lastUAMpredBG = round(UAMpredBGs[uamCount - 1]);
+                if (truthy(UAMpredBGs[uamCount - 1])) {
+                    eventualBG = Math.max(eventualBG, round(UAMpredBGs[uamCount - 1]));
+                }
+            }
+
+            // set eventualBG based on COB or UAM predBGs
+            put(rT, "eventualBG", eventualBG);
+        }
+
+        minIOBPredBG = Math.max(39, minIOBPredBG);
+        minCOBPredBG = Math.max(39, minCOBPredBG);
+        minUAMPredBG = Math.max(39, minUAMPredBG);
+        minPredBG = round(minIOBPredBG);
+
+        double fractionCarbsLeft = mealCOB / carbs;
+        // if we have COB and UAM is enabled, average both
+        if (minUAMPredBG < 999 && minCOBPredBG < 999) {
+            // weight COBpredBG vs. UAMpredBG based on how many carbs remain as COB
+            avgPredBG = round((1 - fractionCarbsLeft) * UAMpredBG + fractionCarbsLeft * COBpredBG);
+            // if UAM is disabled, average IOB and COB
+        } else if (minCOBPredBG < 999) {
+            avgPredBG = round((IOBpredBG + COBpredBG) / 2);
+            // if we have UAM but no COB, average IOB and UAM
+        } else if (minUAMPredBG < 999) {
+            avgPredBG = round((IOBpredBG + UAMpredBG) / 2);
+        } else {
+            avgPredBG = round(IOBpredBG);
+        }
+        // if avgPredBG is below minZTGuardBG, bring it up to that level
+        if (minZTGuardBG > avgPredBG) {
+            avgPredBG = minZTGuardBG;
+        }
+
+        // if we have both minCOBGuardBG and minUAMGuardBG, blend according to fractionCarbsLeft
+        if (carbsExpected) {
+            if (enableUAM) {
+                minGuardBG = fractionCarbsLeft * minCOBGuardBG + (1 - fractionCarbsLeft) * minUAMGuardBG;
+            } else {
+                minGuardBG = minCOBGuardBG;
+            }
+        } else if (enableUAM) {
+            minGuardBG = minUAMGuardBG;
+        } else {
+            minGuardBG = minIOBGuardBG;
+        }
+        minGuardBG = round(minGuardBG);
+
+        double minZTUAMPredBG = minUAMPredBG;
+        // if minZTGuardBG is below threshold, bring down any super-high minUAMPredBG by averaging
+        // this helps prevent UAM from giving too much insulin in case absorption falls off suddenly
+        if (minZTGuardBG < threshold) {
+            minZTUAMPredBG = (minUAMPredBG + minZTGuardBG) / 2;
+            // if minZTGuardBG is between threshold and target, blend in the averaging
+        } else if (minZTGuardBG < targetBg) {
+            // target 100, threshold 70, minZTGuardBG 85 gives 50%: (85-70) / (100-70)
+            double blendPct = (minZTGuardBG - threshold) / (targetBg - threshold);
+            double blendedMinZTGuardBG = minUAMPredBG * blendPct + minZTGuardBG * (1 - blendPct);
+            minZTUAMPredBG = (minUAMPredBG + blendedMinZTGuardBG) / 2;
+            // if minUAMPredBG is below minZTGuardBG, bring minUAMPredBG up by averaging
+            // this allows more insulin if lastUAMPredBG is below target, but minZTGuardBG is still high
+        } else if (minZTGuardBG > minUAMPredBG) {
+            minZTUAMPredBG = (minUAMPredBG + minZTGuardBG) / 2;
+        }
+        minZTUAMPredBG = round(minZTUAMPredBG);
+        // if any carbs have been entered recently
+        if (truthy(carbs)) {
+            // if UAM is disabled, use max of minIOBPredBG, minCOBPredBG
+            if (!enableUAM && minCOBPredBG < 999) {
+                minPredBG = round(Math.max(minIOBPredBG, minCOBPredBG));
+                // if we have COB, use minCOBPredBG, or blendedMinPredBG if it's higher
+            } else if (minCOBPredBG < 999) {
+                // calculate blendedMinPredBG based on how many carbs remain as COB
+                double blendedMinPredBG = fractionCarbsLeft * minCOBPredBG + (1 - fractionCarbsLeft) * minZTUAMPredBG;
+                // if blendedMinPredBG > minCOBPredBG, use that instead
+                minPredBG = round(Math.max(minIOBPredBG, Math.max(minCOBPredBG, blendedMinPredBG)));
+                // if carbs have been entered, but have expired, use minUAMPredBG
+            } else if (enableUAM) {
+                minPredBG = minZTUAMPredBG;
+            } else {
+                minPredBG = minGuardBG;
+            }
+            // in pure UAM mode, use the higher of minIOBPredBG,minUAMPredBG
+        } else if (enableUAM) {
+            minPredBG = round(Math.max(minIOBPredBG, minZTUAMPredBG));
+        }
+
+        // make sure minPredBG isn't higher than avgPredBG
+        minPredBG = Math.min(minPredBG, avgPredBG);
+
+        // But if the COB line falls off a cliff, don't trust UAM too much:
+        // use maxCOBPredBG if it's been set and lower than minPredBG
+        if (maxCOBPredBG > bg) {
+            minPredBG = Math.min(minPredBG, maxCOBPredBG);
+        }
+
+        put(rT, "COB", mealCOB);
+        put(rT, "IOB", iob);
+        StringBuilder reason = new StringBuilder();
+        reason.append("COB: ").append(str(round(mealCOB, 1)))
+                .append(", Dev: ").append(convertBg(deviation, inputs))
+                .append(", BGI: ").append(convertBg(bgi, inputs))
+                .append(", ISF: ").append(convertBg(sens, inputs))
+                .append(", CR: ").append(str(round(carbRatio, 2)))
+                .append(", Target: ").append(convertBg(targetBg, inputs))
+                .append(", minPredBG ").append(convertBg(minPredBG, inputs))
+                .append(", minGuardBG ").append(convertBg(minGuardBG, inputs))
+                .append(", IOBpredBG ").append(convertBg(lastIOBpredBG, inputs));
+        if (lastCOBpredBG > 0) {
+            reason.append(", COBpredBG ").append(convertBg(lastCOBpredBG, inputs));
+        }
+        if (lastUAMpredBG > 0) {
+            reason.append(", UAMpredBG ").append(convertBg(lastUAMpredBG, inputs));
+        }
+        reason.append("; ");
+        // use naive_eventualBG if above 40, but switch to minGuardBG if both eventualBGs hit floor of 39
+        double carbsReqBG = naiveEventualBG;
+        if (carbsReqBG < 40) {
+            carbsReqBG = Math.min(minGuardBG, carbsReqBG);
+        }
+        double bgUndershoot = threshold - carbsReqBG;
+        // calculate how long until COB (or IOB) predBGs drop below min_bg
+        double[] predictions = useCOBPredictions ? COBpredBGs : IOBpredBGs;
+        int predictionsCount = useCOBPredictions ? cobCount : iobCount;
+        double minutesAboveMinBG = 240;
+        double minutesAboveThreshold = 240;
+        for (int i = 0; i < predictionsCount; i++) {
+            if (predictions[i] < minBg) {
+                minutesAboveMinBG = 5 * i;
+                break;
+            }
+        }
+        for (int i = 0; i < predictionsCount; i++) {
+            if (predictions[i] < threshold) {
+                minutesAboveThreshold = 5 * i;
+                break;
+            }
+        }
+
+        if (enableSMB && minGuardBG < threshold) {
+            enableSMB = false;
+        }
+        if (maxDelta > 0.20 * bg) {
+            reason.append("maxDelta ").append(convertBg(maxDelta, inputs)).append(" > 20% of BG ").append(convertBg(bg, inputs)).append(": SMB disabled; ");
+            enableSMB = false;
+        }
+
+        // include at least minutesAboveThreshold worth of zero temps in calculating carbsReq
+        // always include at least 30m worth of zero temp (carbs to 80, low temp up to target)
+        double zeroTempDuration = minutesAboveThreshold;
+        // BG undershoot, minus effect of zero temps until hitting min_bg, converted to grams, minus COB
+        double zeroTempEffect = profileCurrentBasal * sens * zeroTempDuration / 60;
+        // don't count the last 25% of COB against carbsReq
+        double COBforCarbsReq = Math.max(0, mealCOB - 0.25 * carbs);
+        double carbsReq = (bgUndershoot - zeroTempEffect) / csf - COBforCarbsReq;
+        carbsReq = round(carbsReq);
+        if (carbsReq >= inputs.carbsReqThreshold && minutesAboveThreshold <= 45) {
+            put(rT, "carbsReq", carbsReq);
+            put(rT, "carbsReqWithin", minutesAboveThreshold);
+            reason.append(str(carbsReq)).append(" add'l carbs req w/in ").append(str(minutesAboveThreshold)).append("m; ");
+        }
+
+        // don't low glucose suspend if IOB is already super negative and BG is rising faster than predicted
+        if (bg < threshold && iob < -profileCurrentBasal * 20 / 60 && minDelta > 0 && minDelta > expectedDelta) {
+            reason.append("IOB ").append(str(iob)).append(" < ").append(str(round(-profileCurrentBasal * 20 / 60, 2)));
+            reason.append(" and minDelta ").append(convertBg(minDelta, inputs)).append(" > ").append("expectedDelta ").append(convertBg(expectedDelta, inputs)).append("; ");
+            // predictive low glucose suspend mode: BG is / is projected to be < threshold
+        } else if (bg < threshold || minGuardBG < threshold) {
+            reason.append("minGuardBG ").append(convertBg(minGuardBG, inputs)).append("<").append(convertBg(threshold, inputs));
+            bgUndershoot = targetBg - minGuardBG;
+            double worstCaseInsulinReq = bgUndershoot / sens;
+            double durationReq = round(60 * worstCaseInsulinReq / profileCurrentBasal);
+            durationReq = round(durationReq / 30) * 30;
+            // always set a 30-120m zero temp (oref0-pump-loop will let any longer SMB zero temp run)
+            durationReq = Math.min(120, Math.max(30, durationReq));
+            rT.put("reason", reason.toString());
+            return setTempBasal(0, durationReq, rT, inputs);
+        }
+
+        // if not in LGS mode, cancel temps before the top of the hour to reduce beeping/vibration
+        int deliverAtMinutes = minutes(deliverAt);
+        if (inputs.skipNeutralTemps && deliverAtMinutes >= 55) {
+            reason.append("; Canceling temp at ").append(deliverAtMinutes).append("m past the hour. ");
+            rT.put("reason", reason.toString());
+            return setTempBasal(0, 0, rT, inputs);
+        }
+
+        double insulinReq;
+        double rate;
+        double insulinScheduled;
+        if (eventualBG < minBg) { // if eventual BG is below target:
+            reason.append("Eventual BG ").append(convertBg(eventualBG, inputs)).append(" < ").append(convertBg(minBg, inputs));
+            // if 5m or 30m avg BG is rising faster than expected delta
+            if (minDelta > expectedDelta && minDelta > 0 && !truthy(carbsReq)) {
+                // if naive_eventualBG < 40, set a 30m zero temp (oref0-pump-loop will let any longer SMB zero temp run)
+                if (naiveEventualBG < 40) {
+                    reason.append(", naive_eventualBG < 40. ");
+                    rT.put("reason", reason.toString());
+                    return setTempBasal(0, 30, rT, inputs);
+                }
+                if (delta > minDelta) {
+                    reason.append(", but Delta ").append(convertBg(tickValue, inputs)).append(" > expectedDelta ").append(convertBg(expectedDelta, inputs));
+                } else {
+                    reason.append(", but Min. Delta ").append(toFixed(minDelta, 2)).append(" > Exp. Delta ").append(convertBg(expectedDelta, inputs));
+                }
+                return setCurrentBasal(basal, reason, rT, inputs);
+            }
+
+            // calculate 30m low-temp required to get projected BG up to target
+            // multiply by 2 to low-temp faster for increased hypo safety
+            insulinReq = 2 * Math.min(0, (eventualBG - targetBg) / sens);
+            insulinReq = round(insulinReq, 2);
+            // calculate naiveInsulinReq based on naive_eventualBG
+            double naiveInsulinReq = Math.min(0, (naiveEventualBG - targetBg) / sens);
+            naiveInsulinReq = round(naiveInsulinReq, 2);
+            if (minDelta < 0 && minDelta > expectedDelta) {
+                // if we're barely falling, newinsulinReq should be barely negative
+                insulinReq = round((insulinReq * (minDelta / expectedDelta)), 2);
+            }
+            // rate required to deliver insulinReq less insulin over 30m:
+            rate = basal + (2 * insulinReq);
+
+            // if required temp < existing temp basal
+            insulinScheduled = currentTempDuration * (currentTempRate - basal) / 60;
+            // if current temp would deliver a lot (30% of basal) less than the required insulin,
+            // by both normal and naive calculations, then raise the rate
+            double minInsulinReq = Math.min(insulinReq, naiveInsulinReq);
+            if (insulinScheduled < minInsulinReq - basal * 0.3) {
+                reason.append(", ").append(str(currentTempDuration)).append("m@").append(toFixed(currentTempRate, 2)).append(" is a lot less than needed. ");
+                rT.put("reason", reason.toString());
+                return setTempBasal(rate, 30, rT, inputs);
+            }
+            if (currentTempDuration > 5 && rate >= currentTempRate * 0.8) {
+                reason.append(", temp ").append(str(currentTempRate)).append(" ~< req ").append(str(rate)).append("U/hr. ");
+                rT.put("reason", reason.toString());
+                return rT;
+            } else {
+                // calculate a long enough zero temp to eventually correct back up to target
+                if (rate <= 0) {
+                    bgUndershoot = targetBg - naiveEventualBG;
+                    double worstCaseInsulinReq = bgUndershoot / sens;
+                    double durationReq = round(60 * worstCaseInsulinReq / profileCurrentBasal);
+                    if (durationReq < 0) {
+                        durationReq = 0;
+                        // don't set a temp longer than 120 minutes
+                    } else {
+                        durationReq = round(durationReq / 30) * 30;
+                        durationReq = Math.min(120, Math.max(0, durationReq));
+                    }
+                    if (durationReq > 0) {
+                        reason.append(", setting ").append(str(durationReq)).append("m zero temp. ");
+                        rT.put("reason", reason.toString());
+                        return setTempBasal(rate, durationReq, rT, inputs);
+                    }
+                } else {
+                    reason.append(", setting ").append(str(rate)).append("U/hr. ");
+                }
+                rT.put("reason", reason.toString());
+                return setTempBasal(rate, 30, rT, inputs);
+            }
+        }
+
+        // if eventual BG is above min but BG is falling faster than expected Delta
+        if (minDelta < expectedDelta) {
+            // if in SMB mode, don't cancel SMB zero temp
+            if (!(microBolusAllowed && enableSMB)) {
+                if (delta < minDelta) {
+                    reason.append("Eventual BG ").append(convertBg(eventualBG, inputs)).append(" > ").append(convertBg(minBg, inputs)).append(" but Delta ").append(convertBg(tickValue, inputs)).append(" < Exp. Delta ").append(convertBg(expectedDelta, inputs));
+                } else {
+                    reason.append("Eventual BG ").append(convertBg(eventualBG, inputs)).append(" > ").append(convertBg(minBg, inputs)).append(" but Min. Delta ").append(toFixed(minDelta, 2)).append(" < Exp. Delta ").append(convertBg(expectedDelta, inputs));
+                }
+                return setCurrentBasal(basal, reason, rT, inputs);
+            }
+        }
+        // eventualBG or minPredBG is below max_bg
+        if (Math.min(eventualBG, minPredBG) < maxBg) {
+            // if in SMB mode, don't cancel SMB zero temp
+            if (!(microBolusAllowed && enableSMB)) {
+                reason.append(convertBg(eventualBG, inputs)).append("-").append(convertBg(minPredBG, inputs)).append(" in range: no temp required");
+                return setCurrentBasal(basal, reason, rT, inputs);
+            }
+        }
+
+        // eventual BG is at/above target
+        // if iob is over max, just cancel any temps
+        if (eventualBG >= maxBg) {
+            reason.append("Eventual BG ").append(convertBg(eventualBG, inputs)).append(" >= ").append(convertBg(maxBg, inputs)).append(", ");
+        }
+        if (iob > maxIob) {
+            reason.append("IOB ").append(str(round(iob, 2))).append(" > max_iob ").append(str(maxIob));
+            return setCurrentBasal(basal, reason, rT, inputs);
+        } else { // otherwise, calculate 30m high-temp required to get projected BG down to target
+
+            // insulinReq is the additional insulin required to get minPredBG down to target_bg
+            insulinReq = round((Math.min(minPredBG, eventualBG) - targetBg) / sens, 2);
+            // if that would put us over max_iob, then reduce accordingly
+            if (insulinReq > maxIob - iob) {
+                reason.append("max_iob ").append(str(maxIob)).append(", ");
+                insulinReq = maxIob - iob;
+            }
+
+            // rate required to deliver insulinReq more insulin over 30m:
+            rate = basal + (2 * insulinReq);
+            insulinReq = round(insulinReq, 3);
+            put(rT, "insulinReq", insulinReq);
+            // minutes since last bolus
+            double lastBolusAge = round((systemTime - iobData.lastBolusTime) / 60000d, 1);
+            // only allow microboluses with COB or low temp targets, or within DIA hours of a bolus
+            if (microBolusAllowed && enableSMB && bg > threshold) {
+                // never bolus more than maxSMBBasalMinutes worth of basal
+                double mealInsulinReq = round(mealCOB / carbRatio, 3);
+                double maxBolus;
+                // if IOB covers more than COB, limit maxBolus to 30m of basal
+                if (iob > mealInsulinReq && iob > 0) {
+                    if (inputs.maxUAMSMBBasalMinutes != 0) {
+                        maxBolus = round(profileCurrentBasal * inputs.maxUAMSMBBasalMinutes / 60, 1);
+                    } else {
+                        maxBolus = round(profileCurrentBasal * 30 / 60, 1);
+                    }
+                } else {
+                    maxBolus = round(profileCurrentBasal * inputs.maxSMBBasalMinutes / 60, 1);
+                }
+                // bolus 1/2 the insulinReq, up to maxBolus, rounding down to nearest bolus increment
+                double bolusIncrement = inputs.bolusIncrement;
+                double roundSMBTo = 1 / bolusIncrement;
+                double microBolus = Math.floor(Math.min(insulinReq / 2, maxBolus) * roundSMBTo) / roundSMBTo;
+                // calculate a long enough zero temp to eventually correct back up to target
+                double worstCaseInsulinReq = (targetBg - (naiveEventualBG + minIOBPredBG) / 2) / sens;
+                double durationReq = round(60 * worstCaseInsulinReq / profileCurrentBasal);
+
+                // if insulinReq > 0 but not enough for a microBolus, don't set an SMB zero temp
+                if (insulinReq > 0 && microBolus < bolusIncrement) {
+                    durationReq = 0;
+                }
+
+                double smbLowTempReq = 0;
+                if (durationReq <= 0) {
+                    durationReq = 0;
+                    // don't set an SMB zero temp longer than 60 minutes
+                } else if (durationReq >= 30) {
+                    durationReq = round(durationReq / 30) * 30;
+                    durationReq = Math.min(60, Math.max(0, durationReq));
+                } else {
+                    // if SMB durationReq is less than 30m, set a nonzero low temp
+                    smbLowTempReq = round(basal * durationReq / 30, 2);
+                    durationReq = 30;
+                }
+                reason.append(" insulinReq ").append(str(insulinReq));
+                if (microBolus >= maxBolus) {
+                    reason.append("; maxBolus ").append(str(maxBolus));
+                }
+                if (durationReq > 0) {
+                    reason.append("; setting ").append(str(durationReq)).append("m low temp of ").append(str(smbLowTempReq)).append("U/h");
+                }
+                reason.append(". ");
+
+                //allow SMBs every 3 minutes by default
+                double SMBInterval = 3;
+                if (inputs.smbInterval != 0) {
+                    // allow SMBIntervals between 1 and 10 minutes
+                    SMBInterval = Math.min(10, Math.max(1, inputs.smbInterval));
+                }
+                double nextBolusMins = round(SMBInterval - lastBolusAge, 0);
+                double nextBolusSeconds = round((SMBInterval - lastBolusAge) * 60, 0) % 60;
+                if (lastBolusAge > SMBInterval) {
+                    if (microBolus > 0) {
+                        put(rT, "units", microBolus);
+                        reason.append("Microbolusing ").append(str(microBolus)).append("U. ");
+                    }
+                } else {
+                    reason.append("Waiting ").append(str(nextBolusMins)).append("m ").append(str(nextBolusSeconds)).append("s to microbolus again. ");
+                }
+
+                // if no zero temp is required, don't return yet; allow later code to set a high temp
+                if (durationReq > 0) {
+                    put(rT, "rate", smbLowTempReq);
+                    put(rT, "duration", durationReq);
+                    rT.put("reason", reason.toString());
+                    return rT;
+                }
+            }
+
+            double maxSafeBasal = getMaxSafeBasal(inputs);
+
+            if (rate > maxSafeBasal) {
+                reason.append("adj. req. rate: ").append(str(round(rate, 2))).append(" to maxSafeBasal: ").append(str(maxSafeBasal)).append(", ");
+                rate = maxSafeBasal;
+            }
+
+            insulinScheduled = currentTempDuration * (currentTempRate - basal) / 60;
+            if (insulinScheduled >= insulinReq * 2) { // if current temp would deliver >2x more than the required insulin, lower the rate
+                reason.append(str(currentTempDuration)).append("m@").append(toFixed(currentTempRate, 2)).append(" > 2 * insulinReq. Setting temp basal of ").append(str(rate)).append("U/hr. ");
+                rT.put("reason", reason.toString());
+                return setTempBasal(rate, 30, rT, inputs);
+            }
+
+            if (currentTempDuration == 0) { // no temp is set
+                reason.append("no temp, setting ").append(str(rate)).append("U/hr. ");
+                rT.put("reason", reason.toString());
+                return setTempBasal(rate, 30, rT, inputs);
+            }
+
+            if (currentTempDuration > 5 && (rate <= currentTempRate)) { // if required temp <~ existing temp basal
+                reason.append("temp ").append(str(currentTempRate)).append(" >~ req ").append(str(rate)).append("U/hr. ");
+                rT.put("reason", reason.toString());
+                return rT;
+            }
+
+            // required temp > existing temp basal
+            reason.append("temp ").append(str(currentTempRate)).append("<").append(str(rate)).append("U/hr. ");
+            rT.put("reason", reason.toString());
+            return setTempBasal(rate, 30, rT, inputs);
+        }
+    }
+
+    // keep running temp if it matches the current basal, set current basal as temp otherwise
+    private JSONObject setCurrentBasal(double basal, StringBuilder reason, JSONObject rT, DetermineBasalInputsSMB inputs) throws JSONException {
+        double currentTempRate = inputs.tempRate;
+        if (inputs.tempDuration > 15 && basal == currentTempRate) {
+            reason.append(", temp ").append(str(currentTempRate)).append(" ~ req ").append(str(basal)).append("U/hr. ");
+            rT.put("reason", reason.toString());
+            return rT;
+        } else {
+            reason.append("; setting current basal of ").append(str(basal)).append(" as temp. ");
+            rT.put("reason", reason.toString());
+            return setTempBasal(basal, 30, rT, inputs);
+        }
+    }
+
+    private static boolean enableSmb(DetermineBasalInputsSMB inputs, double targetBg) {
+        // disable SMB when a high temptarget is set
+        // meal_data.bwFound is not passed, A52_risk_enable doesn't apply
+        if (!inputs.microBolusAllowed) {
+            return false;
+        } else if (!inputs.allowSMBWithHighTempTarget && inputs.tempTargetSet && targetBg > 100) {
+            return false;
+        }
+
+        // enable SMB/UAM if always-on (unless previously disabled for high temptarget)
+        if (inputs.enableSMBAlways)
+            return true;
+        // enable SMB/UAM (if enabled in preferences) while we have COB
+        if (inputs.enableSMBWithCOB && truthy(inputs.mealCOB))
+            return true;
+        // enable SMB/UAM (if enabled in preferences) for a full 6 hours after any carb entry
+        if (inputs.enableSMBAfterCarbs && truthy(inputs.carbs))
+            return true;
+        // enable SMB/UAM (if enabled in preferences) if a low temptarget is set
+        return inputs.enableSMBWithTempTarget && (inputs.tempTargetSet && targetBg < 100);
+    }
+
+    // we expect BG to rise or fall at the rate of BGI,
+    // adjusted by the rate at which BG would need to rise /
+    // fall to get eventualBG to target over 2 hours
+    private static double calculateExpectedDelta(double targetBg, double eventualBg, double bgi) {
+        // (hours * mins_per_hour) / 5 = how many 5 minute periods in 2h = 24
+        double fiveMinBlocks = (2 * 60) / 5d;
+        double targetDelta = targetBg - eventualBg;
+        return round(bgi + (targetDelta / fiveMinBlocks), 1);
+    }
+
+    // basal-set-temp.js
+
+    static double getMaxSafeBasal(DetermineBasalInputsSMB inputs) {
+        return Math.min(inputs.maxBasal, Math.min(inputs.maxDailySafetyMultiplier * inputs.maxDailyBasal, inputs.currentBasalSafetyMultiplier * inputs.currentBasal));
+    }
+
+    static JSONObject setTempBasal(double rate, double duration, JSONObject rT, DetermineBasalInputsSMB inputs) throws JSONException {
+        double maxSafeBasal = getMaxSafeBasal(inputs);
+
+        if (rate < 0) {
+            rate = 0;
+        } else if (rate > maxSafeBasal) {
+            rate = maxSafeBasal;
+        }
+
+        double currentTempDuration = inputs.tempDuration;
+        double currentTempRate = inputs.tempRate;
+        if (currentTempDuration > (duration - 10) && currentTempDuration <= 120 && rate <= currentTempRate * 1.2 && rate >= currentTempRate * 0.8 && duration > 0) {
+            appendReason(rT, " " + str(currentTempDuration) + "m left and " + str(currentTempRate) + " ~ req " + str(rate) + "U/hr: no temp required");
+            return rT;
+        }
+
+        if (rate == inputs.currentBasal) {
+            if (inputs.skipNeutralTemps) {
+                if (currentTempDuration > 0) {
+                    reason(rT, "Suggested rate is same as profile rate, a temp basal is active, canceling current temp");
+                    rT.put("duration", 0);
+                    rT.put("rate", 0);
+                } else {
+                    reason(rT, "Suggested rate is same as profile rate, no temp basal is active, doing nothing");
+                }
+                return rT;
+            } else {
+                reason(rT, "Setting neutral temp basal of " + str(inputs.currentBasal) + "U/hr");
+                put(rT, "duration", duration);
+                put(rT, "rate", rate);
+                return rT;
+            }
+        } else {
+            put(rT, "duration", duration);
+            put(rT, "rate", rate);
+            return rT;
+        }
+    }
+
+    private static void reason(JSONObject rT, String msg) throws JSONException {
+        String reason = rT.optString("reason");
+        rT.put("reason", (reason.isEmpty() ? "" : reason + ". ") + msg);
+    }
+
+    // JavaScript semantics helpers
+
+    // rT.reason += text
+    private static void appendReason(JSONObject rT, String text) throws JSONException {
+        rT.put("reason", (rT.has("reason") ? rT.getString("reason") : "undefined") + text);
+    }
+
+    private static boolean truthy(double value) {
+        return value != 0 && !Double.isNaN(value);
+    }
+
+    // Rounds value to 'digits' decimal places
+    static double round(double value, int digits) {
+        double scale = Math.pow(10, digits);
+        return mathRound(value * scale) / scale;
+    }
+
+    static double round(double value) {
+        return mathRound(value);
+    }
+
+    // Math.round rounds .5 up and keeps NaN
+    private static double mathRound(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return value;
+        return (double) Math.round(value);
+    }
+
+    static String convertBg(double value, DetermineBasalInputsSMB inputs) {
+        if ("mmol/L".equals(inputs.outUnits)) {
+            return toFixed(round(value / 18, 1), 1);
+        } else {
+            return str(mathRound(value));
+        }
+    }
+
+    // Number.prototype.toFixed()
+    static String toFixed(double value, int digits) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Math.abs(value) >= 1e21) return str(value);
+        String sign = value < 0 ? "-" : "";
+        return sign + new BigDecimal(Math.abs(value)).setScale(digits, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    // String(number)
+    static String str(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "Infinity" : "-Infinity";
+        if (value == 0) return "0";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        BigDecimal decimal = new BigDecimal(Double.toString(value)).stripTrailingZeros();
+        double abs = Math.abs(value);
+        if (abs >= 1e-6 && abs < 1e21) return decimal.toPlainString();
+        String digits = decimal.unscaledValue().abs().toString();
+        int exponent = digits.length() - 1 - decimal.scale();
+        return (value < 0 ? "-" : "") + digits.charAt(0) + (digits.length() > 1 ? "." + digits.substring(1) : "") + "e" + (exponent >= 0 ? "+" : "-") + Math.abs(exponent);
+    }
+
+    // Date.prototype.toString()
+    static String dateToString(long time) {
+        TimeZone timeZone = TimeZone.getDefault();
+        int offset = timeZone.getOffset(time) / 60000;
+        SimpleDateFormat format = new SimpleDateFormat("EEE MMM dd yyyy HH:mm:ss", Locale.US);
+        SimpleDateFormat zone = new SimpleDateFormat("zzz", Locale.US);
+        format.setTimeZone(timeZone);
+        zone.setTimeZone(timeZone);
+        return format.format(new Date(time)) + " GMT" + (offset > 0 ? "+" : "-") + String.format(Locale.US, "%02d%02d", Math.abs(offset) / 60, Math.abs(offset) % 60) + " (" + zone.format(new Date(time)) + ")";
+    }
+
+    // Date serialized by JSON.stringify()
+    private static String isoDate(long time) {
+        return DateUtil.toISOString(new Date(time), "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", TimeZone.getTimeZone("UTC"));
+    }
+
+    private static int minutes(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.MINUTE);
+    }
+
+    private static void clampPredictions(double[] predictions, int count) {
+        for (int i = 0; i < count; i++)
+            predictions[i] = round(Math.min(401, Math.max(39, predictions[i])));
+    }
+
+    // drop repeated values from the end, keep at least 13 predictions
+    private static int trimFlatTail(double[] predictions, int count) {
+        for (int i = count - 1; i > 12; i--) {
+            if (predictions[i - 1] != predictions[i]) break;
+            count--;
+        }
+        return count;
+    }
+
+    private static JSONArray toJSONArray(double[] values, int count) {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < count; i++)
+            array.put(jsonNumber(values[i]));
+        return array;
+    }
+
+    // JSON.stringify() writes NaN and Infinity as null
+    private static Object jsonNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) return JSONObject.NULL;
+        return value;
+    }
+
+    private static void put(JSONObject json, String key, double value) throws JSONException {
+        json.put(key, jsonNumber(value));
+    }
+}
@@ -29,6 +29,9 @@ class AutomationEvent(private val injector: HasAndroidInjector) {
 
     var lastRun: Long = 0
 
+    // inputs changed since last evaluation
+    private val changedInputs: EnumSet<Trigger.Input> = Trigger.Input.all()
+
     init {
         injector.androidInjector().inject(this)
     }
@@ -43,6 +46,23 @@ class AutomationEvent(private val injector: HasAndroidInjector) {
 
     fun addAction(action: Action) = actions.add(action)
 
+    fun inputs(): Set<Trigger.Input> = trigger.inputs() + getPreconditions().inputs()
+
+    fun inputsChanged(inputs: Set<Trigger.Input>) {
+        changedInputs.addAll(inputs)
+    }
+
+    /**
+     * @return false if result of last evaluation is still valid
+     */
+    fun needsEvaluation(): Boolean {
+        val inputs = inputs()
+        // without triggers result doesn't depend on anything but is evaluated in every run as before
+        return inputs.isEmpty() || inputs.any { changedInputs.contains(it) }
+    }
+
+    fun evaluated() = changedInputs.clear()
+
     fun toJSON(): String {
         val array = JSONArray()
         for (a in actions) array.put(a.toJSON())
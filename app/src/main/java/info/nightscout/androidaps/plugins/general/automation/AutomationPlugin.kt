@@ -3,12 +3,10 @@ package info.nightscout.androidaps.plugins.general.automation
 import android.content.Context
 import android.os.Handler
 import android.os.HandlerThread
-import android.os.SystemClock
 import dagger.android.HasAndroidInjector
 import info.nightscout.androidaps.Config
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.events.EventBTChange
-import info.nightscout.androidaps.events.EventChargingState
 import info.nightscout.androidaps.events.EventLocationChange
 import info.nightscout.androidaps.events.EventNetworkChange
 import info.nightscout.androidaps.events.EventPreferenceChange
@@ -56,7 +54,8 @@ class AutomationPlugin @Inject constructor(
     aapsLogger: AAPSLogger,
     private val config: Config,
     private val locationServiceHelper: LocationServiceHelper,
-    private val dateUtil: DateUtil
+    private val dateUtil: DateUtil,
+    private val triggerData: TriggerData
 ) : PluginBase(PluginDescription()
     .mainType(PluginType.GENERAL)
     .fragmentClass(AutomationFragment::class.qualifiedName)
@@ -84,12 +83,18 @@ class AutomationPlugin @Inject constructor(
 
     companion object {
 
+        // inputs which may change without an event, BG becomes stale when no new reading arrives
+        internal val timerInputs: EnumSet<Trigger.Input> = EnumSet.of(Trigger.Input.TIME, Trigger.Input.BG, Trigger.Input.IOB, Trigger.Input.LAST_BOLUS, Trigger.Input.PUMP, Trigger.Input.PROFILE, Trigger.Input.TEMP_TARGET)
+
+        // autosens is recalculated on new BG and on treatment and profile changes
+        private val autosensInputs = EnumSet.of(Trigger.Input.BG, Trigger.Input.IOB, Trigger.Input.COB, Trigger.Input.AUTOSENS, Trigger.Input.LAST_BOLUS, Trigger.Input.PROFILE, Trigger.Input.TEMP_TARGET)
+
         const val event = "{\"title\":\"Low\",\"enabled\":true,\"trigger\":\"{\\\"type\\\":\\\"info.nightscout.androidaps.plugins.general.automation.triggers.TriggerConnector\\\",\\\"data\\\":{\\\"connectorType\\\":\\\"AND\\\",\\\"triggerList\\\":[\\\"{\\\\\\\"type\\\\\\\":\\\\\\\"info.nightscout.androidaps.plugins.general.automation.triggers.TriggerBg\\\\\\\",\\\\\\\"data\\\\\\\":{\\\\\\\"bg\\\\\\\":4,\\\\\\\"comparator\\\\\\\":\\\\\\\"IS_LESSER\\\\\\\",\\\\\\\"units\\\\\\\":\\\\\\\"mmol\\\\\\\"}}\\\",\\\"{\\\\\\\"type\\\\\\\":\\\\\\\"info.nightscout.androidaps.plugins.general.automation.triggers.TriggerDelta\\\\\\\",\\\\\\\"data\\\\\\\":{\\\\\\\"value\\\\\\\":-0.1,\\\\\\\"units\\\\\\\":\\\\\\\"mmol\\\\\\\",\\\\\\\"deltaType\\\\\\\":\\\\\\\"DELTA\\\\\\\",\\\\\\\"comparator\\\\\\\":\\\\\\\"IS_LESSER\\\\\\\"}}\\\"]}}\",\"actions\":[\"{\\\"type\\\":\\\"info.nightscout.androidaps.plugins.general.automation.actions.ActionStartTempTarget\\\",\\\"data\\\":{\\\"value\\\":8,\\\"units\\\":\\\"mmol\\\",\\\"durationInMinutes\\\":60}}\"]}"
     }
 
     init {
         refreshLoop = Runnable {
-            processActions()
+            processActions(timerInputs)
             loopHandler.postDelayed(refreshLoop, T.mins(1).msecs())
         }
     }
@@ -120,28 +125,24 @@ class AutomationPlugin @Inject constructor(
             .subscribe({ e ->
                 e?.let {
                     aapsLogger.debug(LTag.AUTOMATION, "Grabbed location: $it.location.latitude $it.location.longitude Provider: $it.location.provider")
-                    processActions()
+                    processActions(EnumSet.of(Trigger.Input.LOCATION))
                 }
             }, fabricPrivacy::logException)
-        disposable += rxBus
-            .toObservable(EventChargingState::class.java)
-            .observeOn(Schedulers.io())
-            .subscribe({ processActions() }, fabricPrivacy::logException)
         disposable += rxBus
             .toObservable(EventNetworkChange::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ processActions() }, fabricPrivacy::logException)
+            .subscribe({ processActions(EnumSet.of(Trigger.Input.NETWORK)) }, fabricPrivacy::logException)
         disposable += rxBus
             .toObservable(EventAutosensCalculationFinished::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ processActions() }, fabricPrivacy::logException)
+            .subscribe({ processActions(autosensInputs) }, fabricPrivacy::logException)
         disposable += rxBus
             .toObservable(EventBTChange::class.java)
             .observeOn(Schedulers.io())
             .subscribe({
                 aapsLogger.debug(LTag.AUTOMATION, "Grabbed new BT event: $it")
                 btConnects.add(it)
-                processActions()
+                processActions(EnumSet.of(Trigger.Input.BT))
             }, fabricPrivacy::logException)
     }
 
@@ -183,8 +184,13 @@ class AutomationPlugin @Inject constructor(
             automationEvents.add(AutomationEvent(injector).fromJSON(event))
     }
 
+    /**
+     * Evaluates events depending on changed inputs. Events which were not evaluated
+     * or were ready but not allowed to run keep their changes for the next run.
+     */
     @Synchronized
-    private fun processActions() {
+    private fun processActions(changed: Set<Trigger.Input>) {
+        for (event in automationEvents) event.inputsChanged(changed)
         var userEventsEnabled = config.APS
         if (config.APS) {
             if (loopPlugin.isSuspended || !loopPlugin.isEnabled()) {
@@ -199,12 +205,21 @@ class AutomationPlugin @Inject constructor(
             }
         }
 
-        aapsLogger.debug(LTag.AUTOMATION, "processActions")
-        val iterator = automationEvents.iterator()
-        while (iterator.hasNext()) {
-            val event = iterator.next()
-            if (event.isEnabled && event.shouldRun() && event.trigger.shouldRun() && event.getPreconditions().shouldRun()) {
+        aapsLogger.debug(LTag.AUTOMATION, "processActions $changed")
+        var removed = false
+        var interrupted = false
+        triggerData.startCycle()
+        try {
+            val iterator = automationEvents.iterator()
+            while (iterator.hasNext()) {
+                val event = iterator.next()
+                if (!event.isEnabled || !event.shouldRun() || !event.needsEvaluation()) continue
+                if (!event.trigger.shouldRun() || !event.getPreconditions().shouldRun()) {
+                    event.evaluated()
+                    continue
+                }
                 if (event.systemAction || userEventsEnabled) {
+                    event.evaluated()
                     val actions = event.actions
                     for (action in actions) {
                         action.doAction(object : Callback() {
@@ -225,19 +240,27 @@ class AutomationPlugin @Inject constructor(
                             }
                         })
                     }
-                    SystemClock.sleep(1100)
                     event.lastRun = DateUtil.now()
-                    if (event.autoRemove) automationEvents.remove(event)
+                    if (event.autoRemove) {
+                        iterator.remove()
+                        removed = true
+                    }
+                    // actions may change any input, continue with remaining events when they are applied
+                    interrupted = true
+                    loopHandler.postDelayed({ processActions(Trigger.Input.all()) }, 1100)
+                    break
                 }
             }
+        } finally {
+            triggerData.endCycle()
         }
         // we cannot detect connected BT devices
         // so let's collect all connection/disconnections between 2 runs of processActions()
         // TriggerBTDevice can pick up and process these events
         // after processing clear events to prevent repeated actions
-        btConnects.clear()
+        if (!interrupted) btConnects.clear()
 
-        storeToSP() // save last run time
+        if (removed) storeToSP()
     }
 
     fun add(event: AutomationEvent) {
@@ -25,6 +25,7 @@ import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
 import org.json.JSONException
 import org.json.JSONObject
+import java.util.*
 import javax.inject.Inject
 import kotlin.reflect.full.primaryConstructor
 
@@ -38,11 +39,23 @@ abstract class Trigger(val injector: HasAndroidInjector) {
     @Inject lateinit var treatmentsPlugin: TreatmentsPlugin
     @Inject lateinit var activePlugin: ActivePluginProvider
     @Inject lateinit var iobCobCalculatorPlugin: IobCobCalculatorPlugin
+    @Inject lateinit var triggerData: TriggerData
 
     init {
         injector.androidInjector().inject(this)
     }
 
+    // data a trigger result depends on, trigger is evaluated again only when one of them has changed
+    enum class Input {
+        TIME, BG, IOB, COB, AUTOSENS, PROFILE, TEMP_TARGET, LAST_BOLUS, PUMP, NETWORK, LOCATION, BT;
+
+        companion object {
+            fun all(): EnumSet<Input> = EnumSet.allOf(Input::class.java)
+        }
+    }
+
+    open fun inputs(): Set<Input> = Input.all()
+
     abstract fun shouldRun(): Boolean
     abstract fun toJSON(): String
     abstract fun fromJSON(data: String): Trigger
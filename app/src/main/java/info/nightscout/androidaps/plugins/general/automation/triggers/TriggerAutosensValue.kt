@@ -29,8 +29,10 @@ class TriggerAutosensValue(injector: HasAndroidInjector) : Trigger(injector) {
         comparator = Comparator(injector, triggerAutosensValue.comparator.value)
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.AUTOSENS)
+
     override fun shouldRun(): Boolean {
-        val autosensData = iobCobCalculatorPlugin.getLastAutosensData("Automation trigger")
+        val autosensData = triggerData.autosensData
             ?: return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
                 true
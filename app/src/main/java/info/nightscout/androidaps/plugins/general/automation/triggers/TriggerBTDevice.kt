@@ -30,6 +30,8 @@ class TriggerBTDevice(injector: HasAndroidInjector) : Trigger(injector) {
         btDevice.value = triggerBTDevice.btDevice.value
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.BT)
+
     @Synchronized
     override fun shouldRun(): Boolean {
         if (eventExists()) {
@@ -12,7 +12,6 @@ import info.nightscout.androidaps.plugins.general.automation.elements.InputBg
 import info.nightscout.androidaps.plugins.general.automation.elements.LabelWithElement
 import info.nightscout.androidaps.plugins.general.automation.elements.LayoutBuilder
 import info.nightscout.androidaps.plugins.general.automation.elements.StaticLabel
-import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus
 import info.nightscout.androidaps.utils.JsonHelper
 import org.json.JSONObject
 
@@ -45,8 +44,10 @@ class TriggerBg(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.BG)
+
     override fun shouldRun(): Boolean {
-        val glucoseStatus = GlucoseStatus(injector).glucoseStatusData
+        val glucoseStatus = triggerData.glucoseStatus
         if (glucoseStatus == null && comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
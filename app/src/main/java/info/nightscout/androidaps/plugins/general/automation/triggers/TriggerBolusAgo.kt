@@ -34,8 +34,10 @@ class TriggerBolusAgo(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.LAST_BOLUS)
+
     override fun shouldRun(): Boolean {
-        val lastBolusTime = treatmentsPlugin.getLastBolusTime(true)
+        val lastBolusTime = triggerData.lastBolusTime
         if (lastBolusTime == 0L)
             return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
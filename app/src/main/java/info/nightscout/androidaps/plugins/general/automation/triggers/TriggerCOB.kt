@@ -36,8 +36,10 @@ class TriggerCOB(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.COB)
+
     override fun shouldRun(): Boolean {
-        val cobInfo = iobCobCalculatorPlugin.getCobInfo(false, "AutomationTriggerCOB")
+        val cobInfo = triggerData.cobInfo
         if (cobInfo.displayCob == null) {
             return if (comparator.value === Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
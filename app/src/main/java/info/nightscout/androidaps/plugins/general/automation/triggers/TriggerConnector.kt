@@ -67,6 +67,8 @@ class TriggerConnector(injector: HasAndroidInjector) : Trigger(injector) {
         return -1
     }
 
+    @Synchronized override fun inputs(): Set<Input> = list.flatMapTo(EnumSet.noneOf(Input::class.java)) { it.inputs() }
+
     @Synchronized override fun shouldRun(): Boolean {
         var result = true
         // check first trigger
@@ -0,0 +1,62 @@
+package info.nightscout.androidaps.plugins.general.automation.triggers
+
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.data.IobTotal
+import info.nightscout.androidaps.data.Profile
+import info.nightscout.androidaps.db.TempTarget
+import info.nightscout.androidaps.interfaces.ProfileFunction
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.CobInfo
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.data.AutosensData
+import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin
+import info.nightscout.androidaps.utils.DateUtil
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Data shared by all triggers of one evaluation cycle
+ *
+ * Between startCycle() and endCycle() every value is calculated once, on first use.
+ * Outside of a cycle (dialogs, tests) values are calculated on every call.
+ */
+@Singleton
+class TriggerData @Inject constructor(
+    private val injector: HasAndroidInjector,
+    private val iobCobCalculatorPlugin: IobCobCalculatorPlugin,
+    private val profileFunction: ProfileFunction,
+    private val treatmentsPlugin: TreatmentsPlugin
+) {
+
+    private inner class Values {
+
+        val glucoseStatus: GlucoseStatus? by lazy { GlucoseStatus(injector).glucoseStatusData }
+        val profile: Profile? by lazy { profileFunction.getProfile() }
+        val iob: IobTotal? by lazy { profile?.let { iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(DateUtil.now(), it) } }
+        val cobInfo: CobInfo by lazy { iobCobCalculatorPlugin.getCobInfo(false, "AutomationTriggerCOB") }
+        val autosensData: AutosensData? by lazy { iobCobCalculatorPlugin.getLastAutosensData("Automation trigger") }
+        val tempTarget: TempTarget? by lazy { treatmentsPlugin.tempTargetFromHistory }
+        val lastBolusTime: Long by lazy { treatmentsPlugin.getLastBolusTime(true) }
+    }
+
+    @Volatile private var cycle: Values? = null
+
+    private val values: Values
+        get() = cycle ?: Values()
+
+    fun startCycle() {
+        cycle = Values()
+    }
+
+    fun endCycle() {
+        cycle = null
+    }
+
+    val glucoseStatus: GlucoseStatus? get() = values.glucoseStatus
+    val profile: Profile? get() = values.profile
+    val iob: IobTotal? get() = values.iob
+    val cobInfo: CobInfo get() = values.cobInfo
+    val autosensData: AutosensData? get() = values.autosensData
+    val tempTarget: TempTarget? get() = values.tempTarget
+    val lastBolusTime: Long get() = values.lastBolusTime
+}
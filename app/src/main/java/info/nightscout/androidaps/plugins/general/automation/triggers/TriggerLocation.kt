@@ -37,6 +37,8 @@ class TriggerLocation(injector: HasAndroidInjector) : Trigger(injector) {
         name = triggerLocation.name
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.LOCATION)
+
     @Synchronized override fun shouldRun(): Boolean {
         val location: Location = locationDataContainer.lastLocation ?: return false
         val a = Location("Trigger")
@@ -37,8 +37,10 @@ class TriggerProfilePercent(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.PROFILE)
+
     override fun shouldRun(): Boolean {
-        val profile = profileFunction.getProfile()
+        val profile = triggerData.profile
         if (profile == null && comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
@@ -39,6 +39,8 @@ class TriggerPumpLastConnection(injector: HasAndroidInjector) : Trigger(injector
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.PUMP)
+
     override fun shouldRun(): Boolean {
         val lastConnection = activePlugin.activePump.lastDataTime()
         if (lastConnection == 0L && comparator.value === Comparator.Compare.IS_NOT_AVAILABLE) {
@@ -34,6 +34,8 @@ class TriggerRecurringTime(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.TIME)
+
     override fun shouldRun() : Boolean {
         val currentMinSinceMidnight = getMinSinceMidnight(dateUtil._now())
         val scheduledDayOfWeek = Calendar.getInstance()[Calendar.DAY_OF_WEEK]
@@ -27,8 +27,10 @@ class TriggerTempTarget(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.TEMP_TARGET)
+
     override fun shouldRun(): Boolean {
-        val tt = treatmentsPlugin.tempTargetFromHistory
+        val tt = triggerData.tempTarget
         if (tt == null && comparator.value == ComparatorExists.Compare.NOT_EXISTS) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
@@ -32,6 +32,8 @@ class TriggerTime(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.TIME)
+
     override fun shouldRun(): Boolean {
         val now = DateUtil.now()
         if (now >= time.value && now - time.value < T.mins(5).msecs()) {
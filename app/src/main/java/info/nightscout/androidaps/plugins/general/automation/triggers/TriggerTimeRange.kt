@@ -39,6 +39,8 @@ class TriggerTimeRange(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.TIME)
+
     override fun shouldRun(): Boolean {
         val currentMinSinceMidnight = getMinSinceMidnight(DateUtil.now())
         var doRun = false
@@ -41,6 +41,8 @@ class TriggerWifiSsid(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
+    override fun inputs(): Set<Input> = setOf(Input.NETWORK)
+
     override fun shouldRun(): Boolean {
         val eventNetworkChange = receiverStatusStore.lastNetworkEvent ?: return false
         if (!eventNetworkChange.wifiConnected && comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
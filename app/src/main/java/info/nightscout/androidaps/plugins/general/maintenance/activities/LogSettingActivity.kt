@@ -34,22 +34,23 @@ class LogSettingActivity : NoSplashAppCompatActivity() {
     private fun createViewsForSettings() {
         binding.placeholder.removeAllViews()
         for (element in l.getLogElements()) {
-            val logViewHolder = LogViewHolder(element)
+            val logViewHolder = LogViewHolder(element.name, element.enabled) { element.enable(it) }
             binding.placeholder.addView(logViewHolder.baseView)
         }
-
+        val callerMarkerViewHolder = LogViewHolder(getString(R.string.log_caller_marker), l.callerMarker) { l.callerMarker = it }
+        binding.placeholder.addView(callerMarkerViewHolder.baseView)
     }
 
-    internal inner class LogViewHolder(element: L.LogElement) {
+    internal inner class LogViewHolder(name: String, checked: Boolean, onChange: (Boolean) -> Unit) {
 
         @Suppress("InflateParams")
         var baseView = layoutInflater.inflate(R.layout.logsettings_item, null) as LinearLayout
 
         init {
-            (baseView.findViewById<View>(R.id.logsettings_description) as TextView).text = element.name
+            (baseView.findViewById<View>(R.id.logsettings_description) as TextView).text = name
             val enabled = baseView.findViewById<CheckBox>(R.id.logsettings_visibility)
-            enabled.isChecked = element.enabled
-            enabled.setOnClickListener { element.enable(enabled.isChecked) }
+            enabled.isChecked = checked
+            enabled.setOnClickListener { onChange(enabled.isChecked) }
         }
 
     }
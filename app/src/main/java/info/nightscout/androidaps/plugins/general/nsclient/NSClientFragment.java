@@ -21,6 +21,7 @@ import info.nightscout.androidaps.plugins.bus.RxBusWrapper;
 import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientNewLog;
 import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientRestart;
 import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientUpdateGUI;
+import info.nightscout.androidaps.utils.DateUtil;
 import info.nightscout.androidaps.utils.FabricPrivacy;
 import info.nightscout.androidaps.utils.HtmlHelper;
 import info.nightscout.androidaps.utils.alertDialogs.OKDialog;
@@ -156,7 +157,9 @@ public class NSClientFragment extends DaggerFragment implements View.OnClickList
             logScrollview.fullScroll(ScrollView.FOCUS_DOWN);
         }
         urlTextView.setText(nsClientPlugin.url());
-        Spanned queuetext = HtmlHelper.INSTANCE.fromHtml(resourceHelper.gs(R.string.queue) + " <b>" + uploadQueue.size() + "</b>");
+        UploadWindow uploadWindow = uploadQueue.getUploadWindow();
+        Spanned queuetext = HtmlHelper.INSTANCE.fromHtml(resourceHelper.gs(R.string.queue) + " <b>" + uploadQueue.size() + "</b> "
+                + resourceHelper.gs(R.string.nsclientinternal_upload_rate, uploadWindow.inFlight(), uploadWindow.ackedPerMinute(DateUtil.now())));
         queueTextView.setText(queuetext);
         statusTextView.setText(nsClientPlugin.status);
     }
@@ -10,8 +10,15 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import info.nightscout.androidaps.R;
 import info.nightscout.androidaps.db.DatabaseHelper;
@@ -23,11 +30,13 @@ import info.nightscout.androidaps.logging.LTag;
 import info.nightscout.androidaps.plugins.bus.RxBusWrapper;
 import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientResend;
 import info.nightscout.androidaps.plugins.general.nsclient.services.NSClientService;
+import info.nightscout.androidaps.utils.DateUtil;
 import info.nightscout.androidaps.utils.sharedPreferences.SP;
 
 /**
  * Created by mike on 21.02.2016.
  */
+@Singleton
 public class UploadQueue implements UploadQueueInterface {
     private final AAPSLogger aapsLogger;
     private final DatabaseHelperInterface databaseHelper;
@@ -35,6 +44,11 @@ public class UploadQueue implements UploadQueueInterface {
     private final SP sp;
     private final RxBusWrapper rxBus;
 
+    private final UploadWindow uploadWindow = new UploadWindow();
+    private Set<String> ackedNsClientIds = new HashSet<>();
+    private Map<String, Set<String>> ackedMongoIds = new HashMap<>();
+    private boolean removalScheduled = false;
+
     @Inject
     public UploadQueue(
             AAPSLogger aapsLogger,
@@ -76,48 +90,102 @@ public class UploadQueue implements UploadQueueInterface {
         rxBus.send(new EventNSClientResend("newdata"));
     }
 
-    void clearQueue() {
+    /**
+     * Requests are stored in one transaction and sending is triggered once
+     */
+    public void addAll(final List<DbRequest> dbrs) {
+        if (dbrs.isEmpty() || sp.getBoolean(R.string.key_ns_noupload, false)) return;
+        aapsLogger.debug(LTag.NSCLIENT, "Adding to queue: " + dbrs.size() + " records");
+        try {
+            databaseHelper.create(dbrs);
+        } catch (Exception e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+        rxBus.send(new EventNSClientResend("newdata"));
+    }
+
+    /**
+     * Queue is sent and acked requests are removed on NSClientService's thread
+     */
+    void runOnServiceThread(Runnable runnable) {
         startService();
         if (NSClientService.handler != null) {
-            NSClientService.handler.post(() -> {
-                aapsLogger.debug(LTag.NSCLIENT, "ClearQueue");
-                databaseHelper.deleteAllDbRequests();
-                aapsLogger.debug(LTag.NSCLIENT, status());
-            });
+            NSClientService.handler.post(runnable);
         }
     }
 
+    void clearQueue() {
+        runOnServiceThread(() -> {
+            aapsLogger.debug(LTag.NSCLIENT, "ClearQueue");
+            databaseHelper.deleteAllDbRequests();
+            uploadWindow.reset();
+            aapsLogger.debug(LTag.NSCLIENT, status());
+        });
+    }
+
     public void removeID(final JSONObject record) {
-        startService();
-        if (NSClientService.handler != null) {
-            NSClientService.handler.post(() -> {
-                try {
-                    String id;
-                    if (record.has("NSCLIENT_ID")) {
-                        id = record.getString("NSCLIENT_ID");
-                    } else {
-                        return;
-                    }
-                    if (databaseHelper.deleteDbRequest(id) == 1) {
-                        aapsLogger.debug(LTag.NSCLIENT, "Removed item from UploadQueue. " + status());
-                    }
-                } catch (JSONException e) {
-                    aapsLogger.error("Unhandled exception", e);
+        try {
+            if (record.has("NSCLIENT_ID")) {
+                String id = record.getString("NSCLIENT_ID");
+                synchronized (this) {
+                    ackedNsClientIds.add(id);
                 }
-            });
+                scheduleRemoval();
+            }
+        } catch (JSONException e) {
+            aapsLogger.error("Unhandled exception", e);
         }
     }
 
     public void removeID(final String action, final String _id) {
         if (_id == null || _id.equals(""))
             return;
-        startService();
-        if (NSClientService.handler != null) {
-            NSClientService.handler.post(() -> {
-                databaseHelper.deleteDbRequestbyMongoId(action, _id);
-                aapsLogger.debug(LTag.NSCLIENT, "Removing " + _id + " from UploadQueue. " + status());
-            });
+        synchronized (this) {
+            Set<String> ids = ackedMongoIds.get(action);
+            if (ids == null) {
+                ids = new HashSet<>();
+                ackedMongoIds.put(action, ids);
+            }
+            ids.add(_id);
+        }
+        scheduleRemoval();
+    }
+
+    /**
+     * Acks arriving while removal is pending are deleted in the same transaction
+     */
+    private void scheduleRemoval() {
+        synchronized (this) {
+            if (removalScheduled) return;
+            removalScheduled = true;
         }
+        runOnServiceThread(this::removeAcked);
+    }
+
+    private void removeAcked() {
+        Set<String> nsClientIds;
+        Map<String, Set<String>> mongoIds;
+        synchronized (this) {
+            nsClientIds = ackedNsClientIds;
+            mongoIds = ackedMongoIds;
+            ackedNsClientIds = new HashSet<>();
+            ackedMongoIds = new HashMap<>();
+            removalScheduled = false;
+        }
+        int removed = databaseHelper.deleteDbRequests(nsClientIds, mongoIds);
+        List<String> keys = new ArrayList<>();
+        for (String id : nsClientIds)
+            keys.add(UploadWindow.addKey(id));
+        for (Map.Entry<String, Set<String>> entry : mongoIds.entrySet())
+            for (String _id : entry.getValue())
+                keys.add(UploadWindow.updateKey(entry.getKey(), _id));
+        // release slots only now, otherwise requests could be sent again before removal
+        uploadWindow.acked(keys, DateUtil.now());
+        aapsLogger.debug(LTag.NSCLIENT, "Removed " + removed + " items from UploadQueue. " + status());
+    }
+
+    public UploadWindow getUploadWindow() {
+        return uploadWindow;
     }
 
     String textList() {
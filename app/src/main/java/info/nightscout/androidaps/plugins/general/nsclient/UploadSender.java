@@ -0,0 +1,160 @@
+package info.nightscout.androidaps.plugins.general.nsclient;
+
+import com.j256.ormlite.dao.CloseableIterator;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.sql.SQLException;
+
+import info.nightscout.androidaps.db.DbRequest;
+import info.nightscout.androidaps.interfaces.DatabaseHelperInterface;
+import info.nightscout.androidaps.logging.AAPSLogger;
+import info.nightscout.androidaps.plugins.bus.RxBusWrapper;
+import info.nightscout.androidaps.plugins.general.nsclient.acks.NSAddAck;
+import info.nightscout.androidaps.plugins.general.nsclient.acks.NSUpdateAck;
+import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientNewLog;
+import info.nightscout.androidaps.utils.DateUtil;
+import io.socket.client.Ack;
+
+/**
+ * Sends queued requests to NS through the upload window and refills free slots when acked
+ * requests are removed from queue, so the queue is drained without waiting for next resend.
+ * Runs on NSClientService's thread.
+ */
+public class UploadSender {
+
+    public interface Connection {
+        /**
+         * @return true if socket is connected with write permission
+         */
+        boolean canWrite();
+
+        void emit(String event, JSONObject message, Ack ack);
+    }
+
+    private final AAPSLogger aapsLogger;
+    private final RxBusWrapper rxBus;
+    private final DatabaseHelperInterface databaseHelper;
+    private final UploadQueue uploadQueue;
+    private final Connection connection;
+
+    public UploadSender(AAPSLogger aapsLogger, RxBusWrapper rxBus, DatabaseHelperInterface databaseHelper, UploadQueue uploadQueue, Connection connection) {
+        this.aapsLogger = aapsLogger;
+        this.rxBus = rxBus;
+        this.databaseHelper = databaseHelper;
+        this.uploadQueue = uploadQueue;
+        this.connection = connection;
+    }
+
+    /**
+     * Fills free slots of upload window
+     */
+    public void sendQueued() {
+        if (!connection.canWrite()) return;
+        UploadWindow window = uploadQueue.getUploadWindow();
+        long now = DateUtil.now();
+        if (window.free(now) <= 0) return;
+
+        CloseableIterator<DbRequest> iterator;
+        try {
+            iterator = databaseHelper.getDbRequestInterator();
+            try {
+                while (iterator.hasNext() && connection.canWrite()) {
+                    DbRequest dbr = iterator.next();
+                    String key = UploadWindow.key(dbr);
+                    if (window.isInFlight(key)) continue;
+                    if (!window.trySend(key, now)) break;
+                    if (dbr.action.equals("dbAdd")) {
+                        NSAddAck addAck = new NSAddAck(aapsLogger, rxBus);
+                        dbAdd(dbr, addAck);
+                    } else if (dbr.action.equals("dbRemove")) {
+                        NSUpdateAck removeAck = new NSUpdateAck(dbr.action, dbr._id, aapsLogger, rxBus);
+                        dbRemove(dbr, removeAck);
+                    } else if (dbr.action.equals("dbUpdate")) {
+                        NSUpdateAck updateAck = new NSUpdateAck(dbr.action, dbr._id, aapsLogger, rxBus);
+                        dbUpdate(dbr, updateAck);
+                    } else if (dbr.action.equals("dbUpdateUnset")) {
+                        NSUpdateAck updateUnsetAck = new NSUpdateAck(dbr.action, dbr._id, aapsLogger, rxBus);
+                        dbUpdateUnset(dbr, updateUnsetAck);
+                    }
+                }
+            } finally {
+                iterator.close();
+            }
+        } catch (SQLException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+    }
+
+    public void processAddAck(NSAddAck ack) {
+        if (ack.nsClientID != null) {
+            uploadQueue.removeID(ack.json);
+            // after removal, which is posted first
+            uploadQueue.runOnServiceThread(this::sendQueued);
+            rxBus.send(new EventNSClientNewLog("DBADD", "Acked " + ack.nsClientID));
+        } else {
+            rxBus.send(new EventNSClientNewLog("ERROR", "DBADD Unknown response"));
+        }
+    }
+
+    public void processUpdateAck(NSUpdateAck ack) {
+        if (ack.result) {
+            uploadQueue.removeID(ack.action, ack._id);
+            uploadQueue.runOnServiceThread(this::sendQueued);
+            rxBus.send(new EventNSClientNewLog("DBUPDATE/DBREMOVE", "Acked " + ack._id));
+        } else {
+            rxBus.send(new EventNSClientNewLog("ERROR", "DBUPDATE/DBREMOVE Unknown response"));
+        }
+    }
+
+    private void dbUpdate(DbRequest dbr, NSUpdateAck ack) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("collection", dbr.collection);
+            message.put("_id", dbr._id);
+            message.put("data", new JSONObject(dbr.data));
+            connection.emit("dbUpdate", message, ack);
+            rxBus.send(new EventNSClientNewLog("DBUPDATE " + dbr.collection, "Sent " + dbr._id));
+        } catch (JSONException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+    }
+
+    private void dbUpdateUnset(DbRequest dbr, NSUpdateAck ack) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("collection", dbr.collection);
+            message.put("_id", dbr._id);
+            message.put("data", new JSONObject(dbr.data));
+            connection.emit("dbUpdateUnset", message, ack);
+            rxBus.send(new EventNSClientNewLog("DBUPDATEUNSET " + dbr.collection, "Sent " + dbr._id));
+        } catch (JSONException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+    }
+
+    private void dbRemove(DbRequest dbr, NSUpdateAck ack) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("collection", dbr.collection);
+            message.put("_id", dbr._id);
+            connection.emit("dbRemove", message, ack);
+            rxBus.send(new EventNSClientNewLog("DBREMOVE " + dbr.collection, "Sent " + dbr._id));
+        } catch (JSONException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+    }
+
+    private void dbAdd(DbRequest dbr, NSAddAck ack) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("collection", dbr.collection);
+            message.put("data", new JSONObject(dbr.data));
+            connection.emit("dbAdd", message, ack);
+            rxBus.send(new EventNSClientNewLog("DBADD " + dbr.collection, "Sent " + dbr.nsClientID));
+        } catch (JSONException e) {
+            aapsLogger.error("Unhandled exception", e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package info.nightscout.androidaps.plugins.general.nsclient;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import info.nightscout.androidaps.db.DbRequest;
+
+/**
+ * Requests sent to NS and not acked yet.
+ * <p>
+ * Queue is drained in a pipeline: up to maxInFlight requests are sent without waiting
+ * and free slots are refilled when acks are committed to db. Requests without ack
+ * are sent again after ackTimeout.
+ */
+public class UploadWindow {
+
+    static final int MAX_IN_FLIGHT = 50;
+    static final long ACK_TIMEOUT = 60 * 1000L;
+    private static final long THROUGHPUT_PERIOD = 60 * 1000L;
+
+    private final int maxInFlight;
+    private final long ackTimeout;
+
+    // key -> time of sending
+    private final Map<String, Long> inFlight = new HashMap<>();
+    // times of acks in last THROUGHPUT_PERIOD
+    private final ArrayDeque<Long> ackTimes = new ArrayDeque<>();
+    private long totalSent = 0;
+    private long totalAcked = 0;
+
+    public UploadWindow() {
+        this(MAX_IN_FLIGHT, ACK_TIMEOUT);
+    }
+
+    UploadWindow(int maxInFlight, long ackTimeout) {
+        this.maxInFlight = maxInFlight;
+        this.ackTimeout = ackTimeout;
+    }
+
+    /**
+     * Ack of dbAdd carries NSCLIENT_ID, acks of other actions carry action and _id
+     */
+    public static String key(DbRequest dbr) {
+        return dbr.action.equals("dbAdd") ? addKey(dbr.nsClientID) : updateKey(dbr.action, dbr._id);
+    }
+
+    public static String addKey(String nsClientID) {
+        return "dbAdd " + nsClientID;
+    }
+
+    public static String updateKey(String action, String _id) {
+        return action + " " + _id;
+    }
+
+    /**
+     * @return free slots after expired requests are released
+     */
+    public synchronized int free(long now) {
+        Iterator<Long> iterator = inFlight.values().iterator();
+        while (iterator.hasNext())
+            if (iterator.next() < now - ackTimeout) iterator.remove();
+        return maxInFlight - inFlight.size();
+    }
+
+    public synchronized boolean isInFlight(String key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * @return false if request is already in flight or window is full
+     */
+    public synchronized boolean trySend(String key, long now) {
+        if (inFlight.containsKey(key) || inFlight.size() >= maxInFlight) return false;
+        inFlight.put(key, now);
+        totalSent++;
+        return true;
+    }
+
+    /**
+     * Called when acked requests are removed from db
+     */
+    public synchronized void acked(Collection<String> keys, long now) {
+        for (String key : keys) {
+            // locally removed requests were not sent by us
+            if (inFlight.remove(key) == null) continue;
+            ackTimes.add(now);
+            totalAcked++;
+        }
+        prune(now);
+    }
+
+    /**
+     * Acks of previous connection never come
+     */
+    public synchronized void reset() {
+        inFlight.clear();
+    }
+
+    public synchronized int inFlight() {
+        return inFlight.size();
+    }
+
+    public synchronized long totalSent() {
+        return totalSent;
+    }
+
+    public synchronized long totalAcked() {
+        return totalAcked;
+    }
+
+    public synchronized int ackedPerMinute(long now) {
+        prune(now);
+        return ackTimes.size();
+    }
+
+    private void prune(long now) {
+        while (!ackTimes.isEmpty() && ackTimes.peekFirst() <= now - THROUGHPUT_PERIOD)
+            ackTimes.pollFirst();
+    }
+}
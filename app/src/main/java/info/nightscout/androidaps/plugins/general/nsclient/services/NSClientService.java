@@ -14,14 +14,12 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.google.common.base.Charsets;
 import com.google.common.hash.Hashing;
-import com.j256.ormlite.dao.CloseableIterator;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.net.URISyntaxException;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,7 +29,6 @@ import dagger.android.DaggerService;
 import dagger.android.HasAndroidInjector;
 import info.nightscout.androidaps.Config;
 import info.nightscout.androidaps.R;
-import info.nightscout.androidaps.db.DbRequest;
 import info.nightscout.androidaps.events.EventAppExit;
 import info.nightscout.androidaps.events.EventConfigBuilderChange;
 import info.nightscout.androidaps.events.EventNsFood;
@@ -44,6 +41,7 @@ import info.nightscout.androidaps.logging.LTag;
 import info.nightscout.androidaps.plugins.bus.RxBusWrapper;
 import info.nightscout.androidaps.plugins.general.nsclient.NSClientPlugin;
 import info.nightscout.androidaps.plugins.general.nsclient.UploadQueue;
+import info.nightscout.androidaps.plugins.general.nsclient.UploadSender;
 import info.nightscout.androidaps.plugins.general.nsclient.acks.NSAddAck;
 import info.nightscout.androidaps.plugins.general.nsclient.acks.NSAuthAck;
 import info.nightscout.androidaps.plugins.general.nsclient.acks.NSUpdateAck;
@@ -71,6 +69,7 @@ import info.nightscout.androidaps.utils.resources.ResourceHelper;
 import info.nightscout.androidaps.utils.sharedPreferences.SP;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.schedulers.Schedulers;
+import io.socket.client.Ack;
 import io.socket.client.IO;
 import io.socket.client.Socket;
 import io.socket.emitter.Emitter;
@@ -103,6 +102,7 @@ public class NSClientService extends DaggerService {
     public static Socket mSocket;
     public static boolean isConnected = false;
     public static boolean hasWriteAuth = false;
+    private UploadSender uploadSender;
     private static Integer dataCounter = 0;
     private static Integer connectCounter = 0;
 
@@ -139,6 +139,17 @@ public class NSClientService extends DaggerService {
     @Override
     public void onCreate() {
         super.onCreate();
+        uploadSender = new UploadSender(aapsLogger, rxBus, databaseHelper, uploadQueue, new UploadSender.Connection() {
+            @Override
+            public boolean canWrite() {
+                return mSocket != null && mSocket.connected() && isConnected && hasWriteAuth;
+            }
+
+            @Override
+            public void emit(String event, JSONObject message, Ack ack) {
+                mSocket.emit(event, message, ack);
+            }
+        });
         PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
         mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "AndroidAPS:NSClientService");
         mWakeLock.acquire();
@@ -195,12 +206,12 @@ public class NSClientService extends DaggerService {
         disposable.add(rxBus
                 .toObservable(NSUpdateAck.class)
                 .observeOn(Schedulers.io())
-                .subscribe(this::processUpdateAck, fabricPrivacy::logException)
+                .subscribe(ack -> uploadSender.processUpdateAck(ack), fabricPrivacy::logException)
         );
         disposable.add(rxBus
                 .toObservable(NSAddAck.class)
                 .observeOn(Schedulers.io())
-                .subscribe(this::processAddAck, fabricPrivacy::logException)
+                .subscribe(ack -> uploadSender.processAddAck(ack), fabricPrivacy::logException)
         );
     }
 
@@ -211,24 +222,6 @@ public class NSClientService extends DaggerService {
         if (mWakeLock.isHeld()) mWakeLock.release();
     }
 
-    public void processAddAck(NSAddAck ack) {
-        if (ack.nsClientID != null) {
-            uploadQueue.removeID(ack.json);
-            rxBus.send(new EventNSClientNewLog("DBADD", "Acked " + ack.nsClientID));
-        } else {
-            rxBus.send(new EventNSClientNewLog("ERROR", "DBADD Unknown response"));
-        }
-    }
-
-    public void processUpdateAck(NSUpdateAck ack) {
-        if (ack.result) {
-            uploadQueue.removeID(ack.action, ack._id);
-            rxBus.send(new EventNSClientNewLog("DBUPDATE/DBREMOVE", "Acked " + ack._id));
-        } else {
-            rxBus.send(new EventNSClientNewLog("ERROR", "DBUPDATE/DBREMOVE Unknown response"));
-        }
-    }
-
     public void processAuthAck(NSAuthAck ack) {
         String connectionStatus = "Authenticated (";
         if (ack.read) connectionStatus += "R";
@@ -382,6 +375,7 @@ public class NSClientService extends DaggerService {
             rxBus.send(new EventNSClientNewLog("NSCLIENT", "destroy"));
             isConnected = false;
             hasWriteAuth = false;
+            uploadQueue.getUploadWindow().reset();
             mSocket.disconnect();
             mSocket = null;
         }
@@ -726,60 +720,6 @@ public class NSClientService extends DaggerService {
         }
     };
 
-    public void dbUpdate(DbRequest dbr, NSUpdateAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("_id", dbr._id);
-            message.put("data", new JSONObject(dbr.data));
-            mSocket.emit("dbUpdate", message, ack);
-            rxBus.send(new EventNSClientNewLog("DBUPDATE " + dbr.collection, "Sent " + dbr._id));
-        } catch (JSONException e) {
-            aapsLogger.error("Unhandled exception", e);
-        }
-    }
-
-    public void dbUpdateUnset(DbRequest dbr, NSUpdateAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("_id", dbr._id);
-            message.put("data", new JSONObject(dbr.data));
-            mSocket.emit("dbUpdateUnset", message, ack);
-            rxBus.send(new EventNSClientNewLog("DBUPDATEUNSET " + dbr.collection, "Sent " + dbr._id));
-        } catch (JSONException e) {
-            aapsLogger.error("Unhandled exception", e);
-        }
-    }
-
-    public void dbRemove(DbRequest dbr, NSUpdateAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("_id", dbr._id);
-            mSocket.emit("dbRemove", message, ack);
-            rxBus.send(new EventNSClientNewLog("DBREMOVE " + dbr.collection, "Sent " + dbr._id));
-        } catch (JSONException e) {
-            aapsLogger.error("Unhandled exception", e);
-        }
-    }
-
-    public void dbAdd(DbRequest dbr, NSAddAck ack) {
-        try {
-            if (!isConnected || !hasWriteAuth) return;
-            JSONObject message = new JSONObject();
-            message.put("collection", dbr.collection);
-            message.put("data", new JSONObject(dbr.data));
-            mSocket.emit("dbAdd", message, ack);
-            rxBus.send(new EventNSClientNewLog("DBADD " + dbr.collection, "Sent " + dbr.nsClientID));
-        } catch (JSONException e) {
-            aapsLogger.error("Unhandled exception", e);
-        }
-    }
-
     public void sendAlarmAck(AlarmAck alarmAck) {
         if (!isConnected || !hasWriteAuth) return;
         mSocket.emit("ack", alarmAck.level, alarmAck.group, alarmAck.silenceTime);
@@ -802,36 +742,7 @@ public class NSClientService extends DaggerService {
             lastResendTime = System.currentTimeMillis();
 
             rxBus.send(new EventNSClientNewLog("QUEUE", "Resend started: " + reason));
-
-            CloseableIterator<DbRequest> iterator;
-            int maxcount = 30;
-            try {
-                iterator = databaseHelper.getDbRequestInterator();
-                try {
-                    while (iterator.hasNext() && maxcount > 0) {
-                        DbRequest dbr = iterator.next();
-                        if (dbr.action.equals("dbAdd")) {
-                            NSAddAck addAck = new NSAddAck(aapsLogger, rxBus);
-                            dbAdd(dbr, addAck);
-                        } else if (dbr.action.equals("dbRemove")) {
-                            NSUpdateAck removeAck = new NSUpdateAck(dbr.action, dbr._id, aapsLogger, rxBus);
-                            dbRemove(dbr, removeAck);
-                        } else if (dbr.action.equals("dbUpdate")) {
-                            NSUpdateAck updateAck = new NSUpdateAck(dbr.action, dbr._id, aapsLogger, rxBus);
-                            dbUpdate(dbr, updateAck);
-                        } else if (dbr.action.equals("dbUpdateUnset")) {
-                            NSUpdateAck updateUnsetAck = new NSUpdateAck(dbr.action, dbr._id, aapsLogger, rxBus);
-                            dbUpdateUnset(dbr, updateUnsetAck);
-                        }
-                        maxcount--;
-                    }
-                } finally {
-                    iterator.close();
-                }
-            } catch (SQLException e) {
-                aapsLogger.error("Unhandled exception", e);
-            }
-
+            uploadSender.sendQueued();
             rxBus.send(new EventNSClientNewLog("QUEUE", "Resend ended: " + reason));
         });
     }
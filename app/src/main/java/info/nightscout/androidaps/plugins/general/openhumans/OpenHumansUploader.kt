@@ -160,15 +160,19 @@ class OpenHumansUploader @Inject constructor(
     }
 
     fun enqueueBGReading(bgReading: BgReading?) = bgReading?.let {
-        insertQueueItem("BgReadings") {
-            put("date", bgReading.date)
-            put("isValid", bgReading.isValid)
-            put("value", bgReading.value)
-            put("direction", bgReading.direction)
-            put("raw", bgReading.raw)
-            put("source", bgReading.source)
-            put("nsId", bgReading._id)
-        }
+        insertQueueItem("BgReadings") { putBGReading(bgReading) }
+    }
+
+    fun enqueueBGReadings(bgReadings: List<BgReading>) = insertQueueItems("BgReadings", bgReadings) { putBGReading(it) }
+
+    private fun JSONObject.putBGReading(bgReading: BgReading) {
+        put("date", bgReading.date)
+        put("isValid", bgReading.isValid)
+        put("value", bgReading.value)
+        put("direction", bgReading.direction)
+        put("raw", bgReading.raw)
+        put("source", bgReading.source)
+        put("nsId", bgReading._id)
     }
 
     @JvmOverloads
@@ -301,18 +305,27 @@ class OpenHumansUploader @Inject constructor(
         put("result", result)
     }
 
+    /**
+     * Callers can check this before preparing data that would be thrown away
+     */
+    val isCollecting: Boolean
+        get() = oAuthTokens != null && this.isEnabled(PluginType.GENERAL)
+
     private fun insertQueueItem(file: String, structureVersion: Int = 1, generator: JSONObject.() -> Unit) {
-        if (oAuthTokens != null && this.isEnabled(PluginType.GENERAL)) {
+        if (isCollecting) {
             try {
-                val jsonObject = JSONObject()
-                jsonObject.put("structureVersion", structureVersion)
-                jsonObject.put("queuedOn", System.currentTimeMillis())
-                generator(jsonObject)
-                val queueItem = OHQueueItem(
-                    file = file,
-                    content = jsonObject.toString()
-                )
-                MainApp.getDbHelper().createOrUpdate(queueItem)
+                MainApp.getDbHelper().createOrUpdate(queueItem(file, structureVersion, generator))
+                rxBus.send(OpenHumansFragment.UpdateQueueEvent)
+            } catch (e: JSONException) {
+                e.printStackTrace()
+            }
+        }
+    }
+
+    private fun <T> insertQueueItems(file: String, items: List<T>, structureVersion: Int = 1, generator: JSONObject.(T) -> Unit) {
+        if (isCollecting && items.isNotEmpty()) {
+            try {
+                MainApp.getDbHelper().createOrUpdate(items.map { item -> queueItem(file, structureVersion) { generator(item) } })
                 rxBus.send(OpenHumansFragment.UpdateQueueEvent)
             } catch (e: JSONException) {
                 e.printStackTrace()
@@ -320,6 +333,17 @@ class OpenHumansUploader @Inject constructor(
         }
     }
 
+    private fun queueItem(file: String, structureVersion: Int, generator: JSONObject.() -> Unit): OHQueueItem {
+        val jsonObject = JSONObject()
+        jsonObject.put("structureVersion", structureVersion)
+        jsonObject.put("queuedOn", System.currentTimeMillis())
+        generator(jsonObject)
+        return OHQueueItem(
+            file = file,
+            content = jsonObject.toString()
+        )
+    }
+
     fun login(authCode: String): Completable =
         openHumansAPI.exchangeAuthToken(authCode)
             .doOnSuccess {
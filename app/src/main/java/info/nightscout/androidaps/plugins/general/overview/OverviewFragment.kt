@@ -40,6 +40,7 @@ import info.nightscout.androidaps.plugins.configBuilder.ConstraintChecker
 import info.nightscout.androidaps.plugins.general.nsclient.data.NSDeviceStatus
 import info.nightscout.androidaps.plugins.general.overview.activities.QuickWizardListActivity
 import info.nightscout.androidaps.plugins.general.overview.graphData.GraphData
+import info.nightscout.androidaps.plugins.general.overview.graphData.GraphDataCache
 import info.nightscout.androidaps.plugins.general.overview.notifications.NotificationStore
 import info.nightscout.androidaps.plugins.general.wear.ActionStringHandler
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus
@@ -72,6 +73,8 @@ import kotlinx.android.synthetic.main.overview_info_layout.*
 import kotlinx.android.synthetic.main.overview_loop_pumpstatus_layout.*
 import kotlinx.android.synthetic.main.overview_statuslights_layout.*
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import java.util.*
@@ -130,6 +133,9 @@ class OverviewFragment : DaggerFragment(), View.OnClickListener, OnLongClickList
     private var carbAnimation: AnimationDrawable? = null
 
     private val graphLock = Object()
+    private val graphDataCache = GraphDataCache()
+    private var graphJob: Job? = null
+    private var pendingGraphUpdate: (() -> Unit)? = null
 
     override fun onCreateView(inflater: LayoutInflater, container: ViewGroup?,
                               savedInstanceState: Bundle?): View? {
@@ -216,19 +222,31 @@ class OverviewFragment : DaggerFragment(), View.OnClickListener, OnLongClickList
         disposable.add(rxBus
             .toObservable(EventExtendedBolusChange::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ scheduleUpdateGUI("EventExtendedBolusChange") }) { fabricPrivacy.logException(it) })
+            .subscribe({
+                graphDataCache.invalidateTreatments()
+                scheduleUpdateGUI("EventExtendedBolusChange")
+            }) { fabricPrivacy.logException(it) })
         disposable.add(rxBus
             .toObservable(EventTempBasalChange::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ scheduleUpdateGUI("EventTempBasalChange") }) { fabricPrivacy.logException(it) })
+            .subscribe({
+                graphDataCache.invalidateTreatments()
+                scheduleUpdateGUI("EventTempBasalChange")
+            }) { fabricPrivacy.logException(it) })
         disposable.add(rxBus
             .toObservable(EventTreatmentChange::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ scheduleUpdateGUI("EventTreatmentChange") }) { fabricPrivacy.logException(it) })
+            .subscribe({
+                graphDataCache.invalidateTreatments()
+                scheduleUpdateGUI("EventTreatmentChange")
+            }) { fabricPrivacy.logException(it) })
         disposable.add(rxBus
             .toObservable(EventTempTargetChange::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ scheduleUpdateGUI("EventTempTargetChange") }) { fabricPrivacy.logException(it) })
+            .subscribe({
+                graphDataCache.invalidateTempTargets()
+                scheduleUpdateGUI("EventTempTargetChange")
+            }) { fabricPrivacy.logException(it) })
         disposable.add(rxBus
             .toObservable(EventAcceptOpenLoopChange::class.java)
             .observeOn(Schedulers.io())
@@ -248,11 +266,17 @@ class OverviewFragment : DaggerFragment(), View.OnClickListener, OnLongClickList
         disposable.add(rxBus
             .toObservable(EventProfileNeedsUpdate::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ scheduleUpdateGUI("EventProfileNeedsUpdate") }) { fabricPrivacy.logException(it) })
+            .subscribe({
+                graphDataCache.invalidateTreatments()
+                scheduleUpdateGUI("EventProfileNeedsUpdate")
+            }) { fabricPrivacy.logException(it) })
         disposable.add(rxBus
             .toObservable(EventPreferenceChange::class.java)
             .observeOn(Schedulers.io())
-            .subscribe({ scheduleUpdateGUI("EventPreferenceChange") }) { fabricPrivacy.logException(it) })
+            .subscribe({
+                graphDataCache.invalidateAll()
+                scheduleUpdateGUI("EventPreferenceChange")
+            }) { fabricPrivacy.logException(it) })
         disposable.add(rxBus
             .toObservable(EventNewOpenLoopNotification::class.java)
             .observeOn(Schedulers.io())
@@ -262,7 +286,7 @@ class OverviewFragment : DaggerFragment(), View.OnClickListener, OnLongClickList
             .observeOn(AndroidSchedulers.mainThread())
             .subscribe({ updatePumpStatus(it) }) { fabricPrivacy.logException(it) })
         disposable.add(rxBus
-            .toObservable(EventIobCalculationProgress::class.java)
+            .toObservable(EventIobCalculationProgress::class.java, 250)
             .observeOn(AndroidSchedulers.mainThread())
             .subscribe({ overview_iobcalculationprogess?.text = it.progress }) { fabricPrivacy.logException(it) })
 
@@ -272,6 +296,8 @@ class OverviewFragment : DaggerFragment(), View.OnClickListener, OnLongClickList
         }
         loopHandler.postDelayed(refreshLoop, 60 * 1000L)
 
+        // changes while paused were not seen
+        graphDataCache.invalidateAll()
         updateGUI("onResume")
     }
 
@@ -799,124 +825,141 @@ class OverviewFragment : DaggerFragment(), View.OnClickListener, OnLongClickList
     }
 
     private fun updateGraph(lastRun: LoopInterface.LastRun?, predictionsAvailable: Boolean, lowLine: Double, highLine: Double, pump: PumpInterface, profile: Profile) {
-        viewLifecycleOwner.lifecycleScope.launch(Dispatchers.Main) {
-            overview_bggraph ?: return@launch
-            val menuChartSettings = overviewMenus.setting
-            prepareGraphsIfNeeded(menuChartSettings.size)
-            val graphData = GraphData(injector, overview_bggraph, iobCobCalculatorPlugin, treatmentsPlugin)
-            val secondaryGraphsData: ArrayList<GraphData> = ArrayList()
-
-            // do preparation in different thread
-            withContext(Dispatchers.Default) {
-                // align to hours
-                val calendar = Calendar.getInstance()
-                calendar.timeInMillis = System.currentTimeMillis()
-                calendar[Calendar.MILLISECOND] = 0
-                calendar[Calendar.SECOND] = 0
-                calendar[Calendar.MINUTE] = 0
-                calendar.add(Calendar.HOUR, 1)
-                val hoursToFetch: Int
-                val toTime: Long
-                val fromTime: Long
-                val endTime: Long
-                val apsResult = if (config.APS) lastRun?.constraintsProcessed else NSDeviceStatus.getAPSResult(injector)
-                if (predictionsAvailable && apsResult != null && menuChartSettings[0][OverviewMenus.CharType.PRE.ordinal]) {
-                    var predictionHours = (ceil(apsResult.latestPredictionsTime - System.currentTimeMillis().toDouble()) / (60 * 60 * 1000)).toInt()
-                    predictionHours = min(2, predictionHours)
-                    predictionHours = max(0, predictionHours)
-                    hoursToFetch = rangeToDisplay - predictionHours
-                    toTime = calendar.timeInMillis + 100000 // little bit more to avoid wrong rounding - GraphView specific
-                    fromTime = toTime - T.hours(hoursToFetch.toLong()).msecs()
-                    endTime = toTime + T.hours(predictionHours.toLong()).msecs()
-                } else {
-                    hoursToFetch = rangeToDisplay
-                    toTime = calendar.timeInMillis + 100000 // little bit more to avoid wrong rounding - GraphView specific
-                    fromTime = toTime - T.hours(hoursToFetch.toLong()).msecs()
-                    endTime = toTime
-                }
-                val now = System.currentTimeMillis()
-
-                //  ------------------ 1st graph
-
-                // **** In range Area ****
-                graphData.addInRangeArea(fromTime, endTime, lowLine, highLine)
-
-                // **** BG ****
-                if (predictionsAvailable && menuChartSettings[0][OverviewMenus.CharType.PRE.ordinal])
-                    graphData.addBgReadings(fromTime, toTime, lowLine, highLine, apsResult?.predictions)
-                else graphData.addBgReadings(fromTime, toTime, lowLine, highLine, null)
-
-                // set manual x bounds to have nice steps
-                graphData.formatAxis(fromTime, endTime)
-
-                // Treatments
-                graphData.addTreatments(fromTime, endTime)
-                if (menuChartSettings[0][OverviewMenus.CharType.ACT.ordinal])
-                    graphData.addActivity(fromTime, endTime, false, 0.8)
-
-                // add basal data
-                if (pump.pumpDescription.isTempBasalCapable && menuChartSettings[0][OverviewMenus.CharType.BAS.ordinal])
-                    graphData.addBasals(fromTime, now, lowLine / graphData.maxY / 1.2)
-
-                // add target line
-                graphData.addTargetLine(fromTime, toTime, profile, loopPlugin.lastRun)
-
-                // **** NOW line ****
-                graphData.addNowLine(now)
-
-                // ------------------ 2nd graph
-                synchronized(graphLock) {
-                    for (g in 0 until min(secondaryGraphs.size, menuChartSettings.size + 1)) {
-                        val secondGraphData = GraphData(injector, secondaryGraphs[g], iobCobCalculatorPlugin, treatmentsPlugin)
-                        var useABSForScale = false
-                        var useIobForScale = false
-                        var useCobForScale = false
-                        var useDevForScale = false
-                        var useRatioForScale = false
-                        var useDSForScale = false
-                        var useIAForScale = false
-                        when {
-                            menuChartSettings[g + 1][OverviewMenus.CharType.ABS.ordinal]      -> useABSForScale = true
-                            menuChartSettings[g + 1][OverviewMenus.CharType.IOB.ordinal]      -> useIobForScale = true
-                            menuChartSettings[g + 1][OverviewMenus.CharType.COB.ordinal]      -> useCobForScale = true
-                            menuChartSettings[g + 1][OverviewMenus.CharType.DEV.ordinal]      -> useDevForScale = true
-                            menuChartSettings[g + 1][OverviewMenus.CharType.SEN.ordinal]      -> useRatioForScale = true
-                            menuChartSettings[g + 1][OverviewMenus.CharType.ACT.ordinal]      -> useIAForScale = true
-                            menuChartSettings[g + 1][OverviewMenus.CharType.DEVSLOPE.ordinal] -> useDSForScale = true
-                        }
+        // only latest request waits for running one
+        if (graphJob?.isActive == true) {
+            pendingGraphUpdate = { updateGraph(lastRun, predictionsAvailable, lowLine, highLine, pump, profile) }
+            return
+        }
+        graphJob = viewLifecycleOwner.lifecycleScope.launch(Dispatchers.Main) {
+            try {
+                buildGraphs(lastRun, predictionsAvailable, lowLine, highLine, pump, profile)
+            } finally {
+                graphJob = null
+                val pending = pendingGraphUpdate
+                pendingGraphUpdate = null
+                if (isActive) pending?.invoke()
+            }
+        }
+    }
 
-                        if (menuChartSettings[g + 1][OverviewMenus.CharType.ABS.ordinal]) secondGraphData.addAbsIob(fromTime, now, useABSForScale, 1.0)
-                        if (menuChartSettings[g + 1][OverviewMenus.CharType.IOB.ordinal]) secondGraphData.addIob(fromTime, now, useIobForScale, 1.0, menuChartSettings[g + 1][OverviewMenus.CharType.PRE.ordinal])
-                        if (menuChartSettings[g + 1][OverviewMenus.CharType.COB.ordinal]) secondGraphData.addCob(fromTime, now, useCobForScale, if (useCobForScale) 1.0 else 0.5)
-                        if (menuChartSettings[g + 1][OverviewMenus.CharType.DEV.ordinal]) secondGraphData.addDeviations(fromTime, now, useDevForScale, 1.0)
-                        if (menuChartSettings[g + 1][OverviewMenus.CharType.SEN.ordinal]) secondGraphData.addRatio(fromTime, now, useRatioForScale, 1.0)
-                        if (menuChartSettings[g + 1][OverviewMenus.CharType.ACT.ordinal]) secondGraphData.addActivity(fromTime, endTime, useIAForScale, 0.8)
-                        if (menuChartSettings[g + 1][OverviewMenus.CharType.DEVSLOPE.ordinal] && buildHelper.isDev()) secondGraphData.addDeviationSlope(fromTime, now, useDSForScale, 1.0)
-
-                        // set manual x bounds to have nice steps
-                        secondGraphData.formatAxis(fromTime, endTime)
-                        secondGraphData.addNowLine(now)
-                        secondaryGraphsData.add(secondGraphData)
-                    }
-                }
+    private suspend fun buildGraphs(lastRun: LoopInterface.LastRun?, predictionsAvailable: Boolean, lowLine: Double, highLine: Double, pump: PumpInterface, profile: Profile) {
+        overview_bggraph ?: return
+        val menuChartSettings = overviewMenus.setting
+        prepareGraphsIfNeeded(menuChartSettings.size)
+        val graphData = GraphData(injector, overview_bggraph, iobCobCalculatorPlugin, treatmentsPlugin, graphDataCache)
+        val secondaryGraphsData: ArrayList<GraphData> = ArrayList()
+
+        // do preparation in different thread
+        withContext(Dispatchers.Default) {
+            graphDataCache.prepare(iobCobCalculatorPlugin.autosensDataVersion)
+            // align to hours
+            val calendar = Calendar.getInstance()
+            calendar.timeInMillis = System.currentTimeMillis()
+            calendar[Calendar.MILLISECOND] = 0
+            calendar[Calendar.SECOND] = 0
+            calendar[Calendar.MINUTE] = 0
+            calendar.add(Calendar.HOUR, 1)
+            val hoursToFetch: Int
+            val toTime: Long
+            val fromTime: Long
+            val endTime: Long
+            val apsResult = if (config.APS) lastRun?.constraintsProcessed else NSDeviceStatus.getAPSResult(injector)
+            if (predictionsAvailable && apsResult != null && menuChartSettings[0][OverviewMenus.CharType.PRE.ordinal]) {
+                var predictionHours = (ceil(apsResult.latestPredictionsTime - System.currentTimeMillis().toDouble()) / (60 * 60 * 1000)).toInt()
+                predictionHours = min(2, predictionHours)
+                predictionHours = max(0, predictionHours)
+                hoursToFetch = rangeToDisplay - predictionHours
+                toTime = calendar.timeInMillis + 100000 // little bit more to avoid wrong rounding - GraphView specific
+                fromTime = toTime - T.hours(hoursToFetch.toLong()).msecs()
+                endTime = toTime + T.hours(predictionHours.toLong()).msecs()
+            } else {
+                hoursToFetch = rangeToDisplay
+                toTime = calendar.timeInMillis + 100000 // little bit more to avoid wrong rounding - GraphView specific
+                fromTime = toTime - T.hours(hoursToFetch.toLong()).msecs()
+                endTime = toTime
             }
-            // finally enforce drawing of graphs in UI thread
-            graphData.performUpdate()
+            val now = System.currentTimeMillis()
+
+            //  ------------------ 1st graph
+
+            // **** In range Area ****
+            graphData.addInRangeArea(fromTime, endTime, lowLine, highLine)
+
+            // **** BG ****
+            if (predictionsAvailable && menuChartSettings[0][OverviewMenus.CharType.PRE.ordinal])
+                graphData.addBgReadings(fromTime, toTime, lowLine, highLine, apsResult?.predictions)
+            else graphData.addBgReadings(fromTime, toTime, lowLine, highLine, null)
+
+            // set manual x bounds to have nice steps
+            graphData.formatAxis(fromTime, endTime)
+
+            // Treatments
+            graphData.addTreatments(fromTime, endTime)
+            if (menuChartSettings[0][OverviewMenus.CharType.ACT.ordinal])
+                graphData.addActivity(fromTime, endTime, false, 0.8)
+
+            // add basal data
+            if (pump.pumpDescription.isTempBasalCapable && menuChartSettings[0][OverviewMenus.CharType.BAS.ordinal])
+                graphData.addBasals(fromTime, now, lowLine / graphData.maxY / 1.2)
+
+            // add target line
+            graphData.addTargetLine(fromTime, toTime, profile, loopPlugin.lastRun)
+
+            // **** NOW line ****
+            graphData.addNowLine(now)
+
+            // ------------------ 2nd graph
             synchronized(graphLock) {
                 for (g in 0 until min(secondaryGraphs.size, menuChartSettings.size + 1)) {
-                    secondaryGraphsLabel[g].text = overviewMenus.enabledTypes(g + 1)
-                    secondaryGraphs[g].visibility = (
-                        menuChartSettings[g + 1][OverviewMenus.CharType.ABS.ordinal] ||
-                            menuChartSettings[g + 1][OverviewMenus.CharType.IOB.ordinal] ||
-                            menuChartSettings[g + 1][OverviewMenus.CharType.COB.ordinal] ||
-                            menuChartSettings[g + 1][OverviewMenus.CharType.DEV.ordinal] ||
-                            menuChartSettings[g + 1][OverviewMenus.CharType.SEN.ordinal] ||
-                            menuChartSettings[g + 1][OverviewMenus.CharType.ACT.ordinal] ||
-                            menuChartSettings[g + 1][OverviewMenus.CharType.DEVSLOPE.ordinal]
-                        ).toVisibility()
-                    secondaryGraphsData[g].performUpdate()
+                    val secondGraphData = GraphData(injector, secondaryGraphs[g], iobCobCalculatorPlugin, treatmentsPlugin, graphDataCache)
+                    var useABSForScale = false
+                    var useIobForScale = false
+                    var useCobForScale = false
+                    var useDevForScale = false
+                    var useRatioForScale = false
+                    var useDSForScale = false
+                    var useIAForScale = false
+                    when {
+                        menuChartSettings[g + 1][OverviewMenus.CharType.ABS.ordinal]      -> useABSForScale = true
+                        menuChartSettings[g + 1][OverviewMenus.CharType.IOB.ordinal]      -> useIobForScale = true
+                        menuChartSettings[g + 1][OverviewMenus.CharType.COB.ordinal]      -> useCobForScale = true
+                        menuChartSettings[g + 1][OverviewMenus.CharType.DEV.ordinal]      -> useDevForScale = true
+                        menuChartSettings[g + 1][OverviewMenus.CharType.SEN.ordinal]      -> useRatioForScale = true
+                        menuChartSettings[g + 1][OverviewMenus.CharType.ACT.ordinal]      -> useIAForScale = true
+                        menuChartSettings[g + 1][OverviewMenus.CharType.DEVSLOPE.ordinal] -> useDSForScale = true
+                    }
+
+                    if (menuChartSettings[g + 1][OverviewMenus.CharType.ABS.ordinal]) secondGraphData.addAbsIob(fromTime, now, useABSForScale, 1.0)
+                    if (menuChartSettings[g + 1][OverviewMenus.CharType.IOB.ordinal]) secondGraphData.addIob(fromTime, now, useIobForScale, 1.0, menuChartSettings[g + 1][OverviewMenus.CharType.PRE.ordinal])
+                    if (menuChartSettings[g + 1][OverviewMenus.CharType.COB.ordinal]) secondGraphData.addCob(fromTime, now, useCobForScale, if (useCobForScale) 1.0 else 0.5)
+                    if (menuChartSettings[g + 1][OverviewMenus.CharType.DEV.ordinal]) secondGraphData.addDeviations(fromTime, now, useDevForScale, 1.0)
+                    if (menuChartSettings[g + 1][OverviewMenus.CharType.SEN.ordinal]) secondGraphData.addRatio(fromTime, now, useRatioForScale, 1.0)
+                    if (menuChartSettings[g + 1][OverviewMenus.CharType.ACT.ordinal]) secondGraphData.addActivity(fromTime, endTime, useIAForScale, 0.8)
+                    if (menuChartSettings[g + 1][OverviewMenus.CharType.DEVSLOPE.ordinal] && buildHelper.isDev()) secondGraphData.addDeviationSlope(fromTime, now, useDSForScale, 1.0)
+
+                    // set manual x bounds to have nice steps
+                    secondGraphData.formatAxis(fromTime, endTime)
+                    secondGraphData.addNowLine(now)
+                    secondaryGraphsData.add(secondGraphData)
                 }
             }
         }
+        // finally enforce drawing of graphs in UI thread
+        graphData.performUpdate()
+        synchronized(graphLock) {
+            for (g in 0 until min(secondaryGraphs.size, menuChartSettings.size + 1)) {
+                secondaryGraphsLabel[g].text = overviewMenus.enabledTypes(g + 1)
+                secondaryGraphs[g].visibility = (
+                    menuChartSettings[g + 1][OverviewMenus.CharType.ABS.ordinal] ||
+                        menuChartSettings[g + 1][OverviewMenus.CharType.IOB.ordinal] ||
+                        menuChartSettings[g + 1][OverviewMenus.CharType.COB.ordinal] ||
+                        menuChartSettings[g + 1][OverviewMenus.CharType.DEV.ordinal] ||
+                        menuChartSettings[g + 1][OverviewMenus.CharType.SEN.ordinal] ||
+                        menuChartSettings[g + 1][OverviewMenus.CharType.ACT.ordinal] ||
+                        menuChartSettings[g + 1][OverviewMenus.CharType.DEVSLOPE.ordinal]
+                    ).toVisibility()
+                secondaryGraphsData[g].performUpdate()
+            }
+        }
     }
 }
@@ -15,6 +15,7 @@ import info.nightscout.androidaps.R
 import info.nightscout.androidaps.data.IobTotal
 import info.nightscout.androidaps.data.Profile
 import info.nightscout.androidaps.db.BgReading
+import info.nightscout.androidaps.db.TempTarget
 import info.nightscout.androidaps.interfaces.ActivePluginProvider
 import info.nightscout.androidaps.interfaces.LoopInterface
 import info.nightscout.androidaps.interfaces.TreatmentsInterface
@@ -23,7 +24,10 @@ import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.aps.openAPSSMB.SMBDefaults
 import info.nightscout.androidaps.interfaces.ProfileFunction
 import info.nightscout.androidaps.plugins.general.overview.graphExtensions.*
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.data.AutosensData
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.BasalData
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseSeries
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
 import info.nightscout.androidaps.utils.DecimalFormatter
 import info.nightscout.androidaps.utils.Round
@@ -38,7 +42,8 @@ class GraphData(
     injector: HasAndroidInjector,
     private val graph: GraphView,
     private val iobCobCalculatorPlugin: IobCobCalculatorPlugin,
-    private val treatmentsPlugin: TreatmentsInterface
+    private val treatmentsPlugin: TreatmentsInterface,
+    private val cache: GraphDataCache? = null
 
 ) {
 
@@ -50,7 +55,7 @@ class GraphData(
 
     var maxY = Double.MIN_VALUE
     private var minY = Double.MAX_VALUE
-    private var bgReadingsArray: List<BgReading>? = null
+    private var bgSeries: GlucoseSeries? = null
     private val units: String
     private val series: MutableList<Series<*>> = ArrayList()
 
@@ -62,18 +67,19 @@ class GraphData(
     @Suppress("UNUSED_PARAMETER")
     fun addBgReadings(fromTime: Long, toTime: Long, lowLine: Double, highLine: Double, predictions: MutableList<BgReading>?) {
         var maxBgValue = Double.MIN_VALUE
-        bgReadingsArray = iobCobCalculatorPlugin.bgReadings
-        if (bgReadingsArray?.isEmpty() != false) {
+        val bgSeries = iobCobCalculatorPlugin.bgSeries
+        this.bgSeries = bgSeries
+        if (bgSeries == null || bgSeries.size() == 0) {
             aapsLogger.debug("No BG data.")
             maxY = 10.0
             minY = 0.0
             return
         }
         val bgListArray: MutableList<DataPointWithLabelInterface> = ArrayList()
-        for (bg in bgReadingsArray!!) {
-            if (bg.date < fromTime || bg.date > toTime) continue
-            if (bg.value > maxBgValue) maxBgValue = bg.value
-            bgListArray.add(bg)
+        for (i in bgSeries.indexAtOrBefore(toTime) until bgSeries.size()) {
+            if (bgSeries.timestamp(i) < fromTime) break
+            if (bgSeries.value(i) > maxBgValue) maxBgValue = bgSeries.value(i)
+            bgListArray.add(bgSeries.reading(i))
         }
         if (predictions != null) {
             predictions.sortWith(Comparator { o1: BgReading, o2: BgReading -> o1.x.compareTo(o2.x) })
@@ -115,14 +121,11 @@ class GraphData(
         var lastAbsoluteLineBasal = -1.0
         var lastBaseBasal = 0.0
         var lastTempBasal = 0.0
-        var time = fromTime
-        while (time < toTime) {
-            val profile = profileFunction.getProfile(time)
-            if (profile == null) {
-                time += 60 * 1000L
-                continue
-            }
-            val basalData = iobCobCalculatorPlugin.getBasalData(profile, time)
+        val basalSamples = samples<BasalData?>(GraphDataCache.Kind.BASAL, fromTime)
+        val basals = basalSamples.sample(toTime - 1) { time -> profileFunction.getProfile(time)?.let { iobCobCalculatorPlugin.getBasalData(it, time) } }
+        for (i in basals.indices) {
+            val basalData = basals[i] ?: continue
+            val time = basalSamples.time(i)
             val baseBasalValue = basalData.basal
             var absoluteLineValue = baseBasalValue
             var tempBasalValue = 0.0
@@ -162,7 +165,6 @@ class GraphData(
             lastLineBasal = baseBasalValue
             lastTempBasal = tempBasalValue
             maxBasalValueFound = max(maxBasalValueFound, max(tempBasalValue, baseBasalValue))
-            time += 60 * 1000L
         }
 
         // final points
@@ -205,9 +207,11 @@ class GraphData(
         val targetsSeriesArray: MutableList<DataPoint> = ArrayList()
         var lastTarget = -1.0
         lastRun?.constraintsProcessed?.let { toTime = max(it.latestPredictionsTime, toTime) }
-        var time = fromTime
-        while (time < toTime) {
-            val tt = treatmentsPlugin.getTempTargetFromHistory(time)
+        val tempTargetSamples = samples<TempTarget?>(GraphDataCache.Kind.TEMP_TARGET, fromTime)
+        val tempTargets = tempTargetSamples.sample(toTime - 1) { treatmentsPlugin.getTempTargetFromHistory(it) }
+        for (i in tempTargets.indices) {
+            val time = tempTargetSamples.time(i)
+            val tt = tempTargets[i]
             var value: Double
             value = if (tt == null) {
                 Profile.fromMgdlToUnits((profile.getTargetLowMgdl(time) + profile.getTargetHighMgdl(time)) / 2, units)
@@ -219,7 +223,6 @@ class GraphData(
                 targetsSeriesArray.add(DataPoint(time.toDouble(), value))
             }
             lastTarget = value
-            time += 5 * 60 * 1000L
         }
         // final point
         targetsSeriesArray.add(DataPoint(toTime.toDouble(), lastTarget))
@@ -274,13 +277,10 @@ class GraphData(
     }
 
     private fun getNearestBg(date: Long): Double {
-        bgReadingsArray?.let { bgReadingsArray ->
-            for (r in bgReadingsArray.indices) {
-                val reading = bgReadingsArray[r]
-                if (reading.date > date) continue
-                return Profile.fromMgdlToUnits(reading.value, units)
-            }
-            return if (bgReadingsArray.isNotEmpty()) Profile.fromMgdlToUnits(bgReadingsArray[0].value, units) else Profile.fromMgdlToUnits(100.0, units)
+        bgSeries?.let { bgSeries ->
+            val index = bgSeries.indexAtOrBefore(date)
+            if (index < bgSeries.size()) return Profile.fromMgdlToUnits(bgSeries.value(index), units)
+            return if (bgSeries.size() > 0) Profile.fromMgdlToUnits(bgSeries.value(0), units) else Profile.fromMgdlToUnits(100.0, units)
         } ?: return Profile.fromMgdlToUnits(100.0, units)
     }
 
@@ -289,20 +289,15 @@ class GraphData(
         val actArrayPred: MutableList<ScaledDataPoint> = ArrayList()
         val now = System.currentTimeMillis().toDouble()
         val actScale = Scale()
-        var total: IobTotal
         var maxIAValue = 0.0
-        var time = fromTime
-        while (time <= toTime) {
-            val profile = profileFunction.getProfile(time)
-            if (profile == null) {
-                time += 5 * 60 * 1000L
-                continue
-            }
-            total = iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, profile)
+        val iobSamples = samples<IobTotal?>(GraphDataCache.Kind.IOB, fromTime)
+        val iobs = iobSamples.sample(toTime) { time -> profileFunction.getProfile(time)?.let { iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, it) } }
+        for (i in iobs.indices) {
+            val total = iobs[i] ?: continue
+            val time = iobSamples.time(i)
             val act: Double = total.activity
             if (time <= now) actArrayHist.add(ScaledDataPoint(time, act, actScale)) else actArrayPred.add(ScaledDataPoint(time, act, actScale))
             maxIAValue = max(maxIAValue, abs(act))
-            time += 5 * 60 * 1000L
         }
         addSeries(FixedLineGraphSeries(Array(actArrayHist.size) { i -> actArrayHist[i] }).also {
             it.isDrawBackground = false
@@ -331,18 +326,17 @@ class GraphData(
         var maxIobValueFound = Double.MIN_VALUE
         var lastIob = 0.0
         val iobScale = Scale()
-        var time = fromTime
-        while (time <= toTime) {
-            val profile = profileFunction.getProfile(time)
-            var iob = 0.0
-            if (profile != null) iob = iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, profile).iob
+        val iobSamples = samples<IobTotal?>(GraphDataCache.Kind.IOB, fromTime)
+        val iobs = iobSamples.sample(toTime) { time -> profileFunction.getProfile(time)?.let { iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, it) } }
+        for (i in iobs.indices) {
+            val time = iobSamples.time(i)
+            val iob = iobs[i]?.iob ?: 0.0
             if (abs(lastIob - iob) > 0.02) {
                 if (abs(lastIob - iob) > 0.2) iobArray.add(ScaledDataPoint(time, lastIob, iobScale))
                 iobArray.add(ScaledDataPoint(time, iob, iobScale))
                 maxIobValueFound = max(maxIobValueFound, abs(iob))
                 lastIob = iob
             }
-            time += 5 * 60 * 1000L
         }
         iobSeries = FixedLineGraphSeries(Array(iobArray.size) { i -> iobArray[i] }).also {
             it.isDrawBackground = true
@@ -386,18 +380,17 @@ class GraphData(
         var maxIobValueFound = Double.MIN_VALUE
         var lastIob = 0.0
         val iobScale = Scale()
-        var time = fromTime
-        while (time <= toTime) {
-            val profile = profileFunction.getProfile(time)
-            var iob = 0.0
-            if (profile != null) iob = iobCobCalculatorPlugin.calculateAbsInsulinFromTreatmentsAndTempsSynchronized(time, profile).iob
+        val absIobSamples = samples<IobTotal?>(GraphDataCache.Kind.ABS_IOB, fromTime)
+        val absIobs = absIobSamples.sample(toTime) { time -> profileFunction.getProfile(time)?.let { iobCobCalculatorPlugin.calculateAbsInsulinFromTreatmentsAndTempsSynchronized(time, it) } }
+        for (i in absIobs.indices) {
+            val time = absIobSamples.time(i)
+            val iob = absIobs[i]?.iob ?: 0.0
             if (abs(lastIob - iob) > 0.02) {
                 if (abs(lastIob - iob) > 0.2) iobArray.add(ScaledDataPoint(time, lastIob, iobScale))
                 iobArray.add(ScaledDataPoint(time, iob, iobScale))
                 maxIobValueFound = max(maxIobValueFound, abs(iob))
                 lastIob = iob
             }
-            time += 5 * 60 * 1000L
         }
         iobSeries = FixedLineGraphSeries(Array(iobArray.size) { i -> iobArray[i] }).also {
             it.isDrawBackground = true
@@ -420,9 +413,11 @@ class GraphData(
         var maxCobValueFound = 0.0
         var lastCob = 0
         val cobScale = Scale()
-        var time = fromTime
-        while (time <= toTime) {
-            iobCobCalculatorPlugin.getAutosensData(time)?.let { autosensData ->
+        val autosensSamples = samples<AutosensData?>(GraphDataCache.Kind.AUTOSENS, fromTime)
+        val autosensDataList = autosensSamples.sample(toTime) { iobCobCalculatorPlugin.getAutosensData(it) }
+        for (i in autosensDataList.indices) {
+            val time = autosensSamples.time(i)
+            autosensDataList[i]?.let { autosensData ->
                 val cob = autosensData.cob.toInt()
                 if (cob != lastCob) {
                     if (autosensData.carbsFromBolus > 0) cobArray.add(ScaledDataPoint(time, lastCob.toDouble(), cobScale))
@@ -436,7 +431,6 @@ class GraphData(
                     minFailOverActiveList.add(autosensData)
                 }
             }
-            time += 5 * 60 * 1000L
         }
 
         // COB
@@ -461,9 +455,11 @@ class GraphData(
         val devArray: MutableList<DeviationDataPoint> = ArrayList()
         var maxDevValueFound = 0.0
         val devScale = Scale()
-        var time = fromTime
-        while (time <= toTime) {
-            iobCobCalculatorPlugin.getAutosensData(time)?.let { autosensData ->
+        val autosensSamples = samples<AutosensData?>(GraphDataCache.Kind.AUTOSENS, fromTime)
+        val autosensDataList = autosensSamples.sample(toTime) { iobCobCalculatorPlugin.getAutosensData(it) }
+        for (i in autosensDataList.indices) {
+            val time = autosensSamples.time(i)
+            autosensDataList[i]?.let { autosensData ->
                 var color = resourceHelper.gc(R.color.deviationblack) // "="
                 if (autosensData.type == "" || autosensData.type == "non-meal") {
                     if (autosensData.pastSensitivity == "C") color = resourceHelper.gc(R.color.deviationgrey)
@@ -477,7 +473,6 @@ class GraphData(
                 devArray.add(DeviationDataPoint(time.toDouble(), autosensData.deviation, color, devScale))
                 maxDevValueFound = max(maxDevValueFound, abs(autosensData.deviation))
             }
-            time += 5 * 60 * 1000L
         }
 
         // DEVIATIONS
@@ -497,14 +492,15 @@ class GraphData(
         var maxRatioValueFound = Double.MIN_VALUE
         var minRatioValueFound = Double.MAX_VALUE
         val ratioScale = Scale()
-        var time = fromTime
-        while (time <= toTime) {
-            iobCobCalculatorPlugin.getAutosensData(time)?.let { autosensData ->
+        val autosensSamples = samples<AutosensData?>(GraphDataCache.Kind.AUTOSENS, fromTime)
+        val autosensDataList = autosensSamples.sample(toTime) { iobCobCalculatorPlugin.getAutosensData(it) }
+        for (i in autosensDataList.indices) {
+            val time = autosensSamples.time(i)
+            autosensDataList[i]?.let { autosensData ->
                 ratioArray.add(ScaledDataPoint(time, autosensData.autosensResult.ratio - 1, ratioScale))
                 maxRatioValueFound = max(maxRatioValueFound, autosensData.autosensResult.ratio - 1)
                 minRatioValueFound = min(minRatioValueFound, autosensData.autosensResult.ratio - 1)
             }
-            time += 5 * 60 * 1000L
         }
 
         // RATIOS
@@ -527,15 +523,16 @@ class GraphData(
         var maxFromMinValueFound = 0.0
         val dsMaxScale = Scale()
         val dsMinScale = Scale()
-        var time = fromTime
-        while (time <= toTime) {
-            iobCobCalculatorPlugin.getAutosensData(time)?.let { autosensData ->
+        val autosensSamples = samples<AutosensData?>(GraphDataCache.Kind.AUTOSENS, fromTime)
+        val autosensDataList = autosensSamples.sample(toTime) { iobCobCalculatorPlugin.getAutosensData(it) }
+        for (i in autosensDataList.indices) {
+            val time = autosensSamples.time(i)
+            autosensDataList[i]?.let { autosensData ->
                 dsMaxArray.add(ScaledDataPoint(time, autosensData.slopeFromMaxDeviation, dsMaxScale))
                 dsMinArray.add(ScaledDataPoint(time, autosensData.slopeFromMinDeviation, dsMinScale))
                 maxFromMaxValueFound = max(maxFromMaxValueFound, abs(autosensData.slopeFromMaxDeviation))
                 maxFromMinValueFound = max(maxFromMinValueFound, abs(autosensData.slopeFromMinDeviation))
             }
-            time += 5 * 60 * 1000L
         }
 
         // Slopes
@@ -581,6 +578,9 @@ class GraphData(
         graph.gridLabelRenderer.numHorizontalLabels = 7 // only 7 because of the space
     }
 
+    private fun <T> samples(kind: GraphDataCache.Kind, fromTime: Long): GraphDataCache.Samples<T> =
+        cache?.samples(kind, fromTime) ?: GraphDataCache.Samples(fromTime, kind.step)
+
     private fun addSeries(s: Series<*>) = series.add(s)
 
     fun performUpdate() {
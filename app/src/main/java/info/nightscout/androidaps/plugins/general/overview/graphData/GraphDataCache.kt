@@ -0,0 +1,101 @@
+package info.nightscout.androidaps.plugins.general.overview.graphData
+
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Results of slow calculator queries shared by main and all secondary overview graphs
+ *
+ * Queries are sampled on a fixed grid starting at fromTime, so a refresh only appends samples
+ * after the last sampled time. Only samples before now are kept. Samples are dropped when their source data changes:
+ * treatments and temp targets by events, autosens by IobCobCalculatorPlugin.getAutosensDataVersion().
+ *
+ * Graphs must be built by one thread at a time, invalidate*() may be called from any thread.
+ */
+class GraphDataCache {
+
+    enum class Source { TREATMENTS, TEMP_TARGETS, AUTOSENS }
+
+    enum class Kind(val step: Long, val source: Source) {
+        BASAL(60 * 1000L, Source.TREATMENTS),
+        IOB(5 * 60 * 1000L, Source.TREATMENTS), // IOB and activity
+        ABS_IOB(5 * 60 * 1000L, Source.TREATMENTS),
+        TEMP_TARGET(5 * 60 * 1000L, Source.TEMP_TARGETS),
+        AUTOSENS(5 * 60 * 1000L, Source.AUTOSENS)
+    }
+
+    class Samples<T>(val fromTime: Long, val step: Long) {
+
+        private val values = ArrayList<T>()
+
+        fun time(index: Int): Long = fromTime + index * step
+
+        /**
+         * @return samples from fromTime to toTime (inclusive), only missing ones are taken from sampler
+         *
+         * Samples at or after now are taken on every call and not kept, they change as time passes
+         * (e.g. running temp basal is counted only up to now)
+         */
+        fun sample(toTime: Long, now: Long = System.currentTimeMillis(), sampler: (Long) -> T): List<T> {
+            if (toTime < fromTime) return emptyList()
+            val count = ((toTime - fromTime) / step + 1).toInt()
+            while (values.size < count && time(values.size) < now) values.add(sampler(time(values.size)))
+            if (values.size >= count) return values.subList(0, count)
+            val result = ArrayList<T>(count)
+            result.addAll(values)
+            for (index in values.size until count) result.add(sampler(time(index)))
+            return result
+        }
+    }
+
+    private val treatmentsVersion = AtomicInteger(0)
+    private val tempTargetsVersion = AtomicInteger(0)
+
+    // versions samples were taken with
+    private var sampledTreatmentsVersion = -1
+    private var sampledTempTargetsVersion = -1
+    private var sampledAutosensVersion = -1L
+
+    private val samples = HashMap<Kind, Samples<*>>()
+
+    fun invalidateTreatments() {
+        treatmentsVersion.incrementAndGet()
+    }
+
+    fun invalidateTempTargets() {
+        tempTargetsVersion.incrementAndGet()
+    }
+
+    @Synchronized
+    fun invalidateAll() {
+        invalidateTreatments()
+        invalidateTempTargets()
+        sampledAutosensVersion = -1L
+    }
+
+    /**
+     * Call before building graphs, drops samples of changed data
+     */
+    @Synchronized
+    fun prepare(autosensVersion: Long) {
+        val treatments = treatmentsVersion.get()
+        val tempTargets = tempTargetsVersion.get()
+        if (treatments != sampledTreatmentsVersion) drop(Source.TREATMENTS)
+        if (tempTargets != sampledTempTargetsVersion) drop(Source.TEMP_TARGETS)
+        if (autosensVersion != sampledAutosensVersion) drop(Source.AUTOSENS)
+        sampledTreatmentsVersion = treatments
+        sampledTempTargetsVersion = tempTargets
+        sampledAutosensVersion = autosensVersion
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    @Synchronized
+    fun <T> samples(kind: Kind, fromTime: Long): Samples<T> {
+        val cached = samples[kind]
+        if (cached != null && cached.fromTime == fromTime) return cached as Samples<T>
+        return Samples<T>(fromTime, kind.step).also { samples[kind] = it }
+    }
+
+    private fun drop(source: Source) {
+        samples.keys.removeAll { it.source == source }
+    }
+}
@@ -0,0 +1,108 @@
+package info.nightscout.androidaps.plugins.general.wear.wearintegration;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned delta sync of one data path to the watch.
+ * <p>
+ * Lists must be sorted by their time key. Delta message contains only the tail of each list
+ * from the first difference to previously sent lists and "[list]From" time. Watch drops its items
+ * older than syncWindowStart or newer than "from" and appends the tail. syncBase is the version
+ * the delta is built on, watch requests full resend (syncBase -1) when it doesn't match.
+ * Must be kept in sync with wear DataSync.
+ */
+class WatchSyncState {
+
+    static final String VERSION = "syncVersion";
+    static final String BASE = "syncBase";
+    static final String WINDOW_START = "syncWindowStart";
+    static final String FROM_SUFFIX = "From";
+
+    private static final long FULL_SNAPSHOT_INTERVAL = 60 * 60 * 1000L;
+
+    // list -> time key of its items
+    private final Map<String, String> lists;
+
+    private long version = 0;
+    private long lastFullSnapshot = 0;
+    // null if next message must be full
+    private Map<String, List<DataMap>> sent = null;
+
+    WatchSyncState(Map<String, String> lists) {
+        this.lists = lists;
+    }
+
+    /**
+     * Next message will be full snapshot
+     */
+    synchronized void reset() {
+        sent = null;
+    }
+
+    /**
+     * @param data complete data, lists are replaced by tails in delta message
+     * @return message to send
+     */
+    synchronized DataMap prepare(DataMap data, long windowStart, long now) {
+        boolean full = sent == null || now - lastFullSnapshot > FULL_SNAPSHOT_INTERVAL;
+        DataMap message = new DataMap();
+        message.putAll(data);
+        message.putLong(BASE, full ? -1 : version);
+        message.putLong(VERSION, ++version);
+        message.putLong(WINDOW_START, windowStart);
+
+        Map<String, List<DataMap>> current = new HashMap<>();
+        for (Map.Entry<String, String> list : lists.entrySet()) {
+            ArrayList<DataMap> items = data.getDataMapArrayList(list.getKey());
+            if (items == null) continue;
+            current.put(list.getKey(), items);
+            if (full) continue;
+            String timeKey = list.getValue();
+            List<DataMap> previous = sent.get(list.getKey());
+            if (previous == null) continue; // not sent yet, send whole list
+            long from = firstDifference(visible(previous, timeKey, windowStart), items, timeKey);
+            ArrayList<DataMap> tail = new ArrayList<>();
+            for (DataMap item : items)
+                if (item.getLong(timeKey) >= from) tail.add(item);
+            message.putDataMapArrayList(list.getKey(), tail);
+            message.putLong(list.getKey() + FROM_SUFFIX, from);
+        }
+        if (full) {
+            lastFullSnapshot = now;
+            sent = current;
+        } else {
+            sent.putAll(current);
+        }
+        return message;
+    }
+
+    // what watch keeps after trimming to window
+    private static List<DataMap> visible(List<DataMap> items, String timeKey, long windowStart) {
+        List<DataMap> result = new ArrayList<>();
+        for (DataMap item : items)
+            if (item.getLong(timeKey) >= windowStart) result.add(item);
+        return result;
+    }
+
+    /**
+     * @return time from which lists differ, Long.MAX_VALUE if they are equal
+     */
+    static long firstDifference(List<DataMap> previous, List<DataMap> current, String timeKey) {
+        int i = 0;
+        while (i < previous.size() && i < current.size() && previous.get(i).equals(current.get(i))) i++;
+        long from = Long.MAX_VALUE;
+        if (i < previous.size()) from = previous.get(i).getLong(timeKey);
+        if (i < current.size()) from = Math.min(from, current.get(i).getLong(timeKey));
+        return from;
+    }
+
+    static void sortByTime(List<DataMap> items, String timeKey) {
+        Collections.sort(items, (a, b) -> Long.compare(a.getLong(timeKey), b.getLong(timeKey)));
+    }
+}
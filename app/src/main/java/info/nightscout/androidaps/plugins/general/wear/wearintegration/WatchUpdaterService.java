@@ -22,7 +22,10 @@ import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -53,6 +56,7 @@ import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
 import info.nightscout.androidaps.receivers.ReceiverStatusStore;
 import info.nightscout.androidaps.utils.DecimalFormatter;
 import info.nightscout.androidaps.utils.DefaultValueHelper;
+import info.nightscout.androidaps.utils.T;
 import info.nightscout.androidaps.utils.ToastUtils;
 import info.nightscout.androidaps.utils.resources.ResourceHelper;
 import info.nightscout.androidaps.utils.sharedPreferences.SP;
@@ -103,6 +107,9 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
 
     private static boolean lastLoopStatus;
 
+    private final WatchSyncState bgSync = new WatchSyncState(Collections.singletonMap("entries", "timestamp"));
+    private final WatchSyncState basalSync = new WatchSyncState(basalSyncLists());
+
     private Handler handler;
 
     // Phone
@@ -248,6 +255,9 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
 
         if (wearIntegration()) {
             if (event != null && event.getPath().equals(WEARABLE_RESEND_PATH)) {
+                // watch lost track of versions, send everything
+                bgSync.reset();
+                basalSync.reset();
                 resendData();
             }
 
@@ -380,7 +390,8 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
         if (googleApiClient != null && !googleApiClient.isConnected() && !googleApiClient.isConnecting()) {
             googleApiConnect();
         }
-        long startTime = System.currentTimeMillis() - (long) (60000 * 60 * 5.5);
+        long now = System.currentTimeMillis();
+        long startTime = now - (long) (60000 * 60 * 5.5);
         BgReading last_bg = iobCobCalculatorPlugin.lastBg();
 
         if (last_bg == null) return;
@@ -402,7 +413,8 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
                 }
             }
             entries.putDataMapArrayList("entries", dataMaps);
-            (new SendToDataLayerThread(WEARABLE_DATA_PATH, googleApiClient)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, entries);
+            DataMap message = bgSync.prepare(entries, startTime, now);
+            (new SendToDataLayerThread(WEARABLE_DATA_PATH, googleApiClient)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, message);
         }
         sendPreferences();
         sendBasals();
@@ -415,7 +427,8 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
         }
 
         long now = System.currentTimeMillis();
-        final long startTimeWindow = now - (long) (60000 * 60 * 5.5);
+        // aligned to hour so segments are the same for an hour and only changes are sent
+        final long startTimeWindow = (now - (long) (60000 * 60 * 5.5)) / T.hours(1).msecs() * T.hours(1).msecs();
 
 
         ArrayList<DataMap> basals = new ArrayList<>();
@@ -548,12 +561,25 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
         }
 
 
+        WatchSyncState.sortByTime(temps, "starttime");
+        WatchSyncState.sortByTime(boluses, "date");
+
         DataMap dm = new DataMap();
         dm.putDataMapArrayList("basals", basals);
         dm.putDataMapArrayList("temps", temps);
         dm.putDataMapArrayList("boluses", boluses);
         dm.putDataMapArrayList("predictions", predictions);
-        (new SendToDataLayerThread(BASAL_DATA_PATH, googleApiClient)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, dm);
+        DataMap message = basalSync.prepare(dm, startTimeWindow, now);
+        (new SendToDataLayerThread(BASAL_DATA_PATH, googleApiClient)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, message);
+    }
+
+    // predictions change with every loop run, they are always sent whole
+    private static Map<String, String> basalSyncLists() {
+        Map<String, String> lists = new HashMap<>();
+        lists.put("basals", "starttime");
+        lists.put("temps", "starttime");
+        lists.put("boluses", "date");
+        return lists;
     }
 
     private DataMap tempDatamap(long startTime, double startBasal, long to, double toBasal, double amount) {
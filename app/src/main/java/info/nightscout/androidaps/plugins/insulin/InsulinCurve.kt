@@ -0,0 +1,71 @@
+package info.nightscout.androidaps.plugins.insulin
+
+import kotlin.math.exp
+import kotlin.math.pow
+
+/**
+ * Precomputed oref exponential insulin curve for 1U bolus
+ *
+ * IOB and activity are sampled every minute from 0 to DIA together with their slopes
+ * (IOB slope is -activity) and cubic Hermite interpolated in between.
+ * Building the table costs DIA * 60 evaluations of the analytic curve, lookup is then
+ * allocation and exp() free.
+ *
+ * @param peak insulin peak in minutes
+ * @param dia duration of insulin action in hours
+ */
+class InsulinCurve(val peak: Int, val dia: Double) {
+
+    private val td = dia * 60
+    private val tp = peak.toDouble()
+    private val tau = tp * (1 - tp / td) / (1 - 2 * tp / td)
+    private val a = 2 * tau / td
+    private val s = 1 / (1 - a + (1 + a) * exp(-td / tau))
+
+    private val size = td.toInt() + 2 // covers last fractional minute before td
+    private val iobTable = DoubleArray(size) { analyticIob(it.toDouble()) }
+    private val activityTable = DoubleArray(size) { analyticActivity(it.toDouble()) }
+    private val activitySlopeTable = DoubleArray(size) { analyticActivitySlope(it.toDouble()) }
+
+    fun matches(peak: Int, dia: Double): Boolean = this.peak == peak && this.dia == dia
+
+    /**
+     * @param t minutes from delivery
+     * @return remaining fraction of 1U, 0 after DIA
+     */
+    fun iob(t: Double): Double =
+        when {
+            t >= td -> 0.0
+            t < 0   -> analyticIob(t)
+            else    -> interpolate(iobTable, t) { -activityTable[it] }
+        }
+
+    /**
+     * @param t minutes from delivery
+     * @return activity of 1U in U/min, 0 after DIA
+     */
+    fun activity(t: Double): Double =
+        when {
+            t >= td -> 0.0
+            t < 0   -> analyticActivity(t)
+            else    -> interpolate(activityTable, t) { activitySlopeTable[it] }
+        }
+
+    private inline fun interpolate(table: DoubleArray, t: Double, slope: (Int) -> Double): Double {
+        val index = t.toInt()
+        val f = t - index
+        val f2 = f * f
+        val f3 = f2 * f
+        return (2 * f3 - 3 * f2 + 1) * table[index] + (f3 - 2 * f2 + f) * slope(index) +
+            (-2 * f3 + 3 * f2) * table[index + 1] + (f3 - f2) * slope(index + 1)
+    }
+
+    fun analyticIob(t: Double): Double =
+        1 - s * (1 - a) * ((t.pow(2.0) / (tau * td * (1 - a)) - t / tau - 1) * exp(-t / tau) + 1)
+
+    fun analyticActivity(t: Double): Double =
+        (s / tau.pow(2.0)) * t * (1 - t / td) * exp(-t / tau)
+
+    private fun analyticActivitySlope(t: Double): Double =
+        (s / tau.pow(2.0)) * exp(-t / tau) * ((1 - 2 * t / td) - t * (1 - t / td) / tau)
+}
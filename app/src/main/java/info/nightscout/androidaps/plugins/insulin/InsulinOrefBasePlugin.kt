@@ -64,21 +64,27 @@ abstract class InsulinOrefBasePlugin(
             return profile?.dia ?: MIN_DIA
         }
 
-    override fun iobCalcForTreatment(treatment: Treatment, time: Long, dia: Double): Iob {
-        val result = Iob()
+    @Volatile private var curve: InsulinCurve? = null
+
+    // cached table is rebuilt only when peak or DIA changes
+    fun insulinCurve(dia: Double): InsulinCurve {
         val peak = peak
-        if (treatment.insulin != 0.0) {
-            val bolusTime = treatment.date
-            val t = (time - bolusTime) / 1000.0 / 60.0
+        return curve?.takeIf { it.matches(peak, dia) } ?: InsulinCurve(peak, dia).also { curve = it }
+    }
+
+    override fun iobCalcForTreatment(treatment: Treatment, time: Long, dia: Double): Iob =
+        iobCalc(treatment.insulin, treatment.date, time, dia)
+
+    override fun iobCalc(insulin: Double, deliveryTime: Long, time: Long, dia: Double): Iob {
+        val result = Iob()
+        if (insulin != 0.0) {
+            val t = (time - deliveryTime) / 1000.0 / 60.0
             val td = dia * 60 //getDIA() always >= MIN_DIA
-            val tp = peak.toDouble()
             // force the IOB to 0 if over DIA hours have passed
             if (t < td) {
-                val tau = tp * (1 - tp / td) / (1 - 2 * tp / td)
-                val a = 2 * tau / td
-                val S = 1 / (1 - a + (1 + a) * Math.exp(-td / tau))
-                result.activityContrib = treatment.insulin * (S / Math.pow(tau, 2.0)) * t * (1 - t / td) * Math.exp(-t / tau)
-                result.iobContrib = treatment.insulin * (1 - S * (1 - a) * ((Math.pow(t, 2.0) / (tau * td * (1 - a)) - t / tau - 1) * Math.exp(-t / tau) + 1))
+                val curve = insulinCurve(dia)
+                result.activityContrib = insulin * curve.activity(t)
+                result.iobContrib = insulin * curve.iob(t)
             }
         }
         return result
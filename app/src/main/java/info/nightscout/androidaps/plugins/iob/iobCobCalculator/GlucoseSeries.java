@@ -0,0 +1,82 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator;
+
+import java.util.List;
+
+import info.nightscout.androidaps.db.BgReading;
+
+/**
+ * Dates and values of loaded BG readings in primitive arrays, newest first (same order as loaded list).
+ * <p>
+ * Lookups by time are binary searches, so bucketing and graph lookups don't need to scan
+ * whole 24h+ list for every 5 min step. Important with 1 min data (Libre via xDrip).
+ * Readings must be sorted by date and unique (date is primary key in db).
+ */
+public class GlucoseSeries {
+
+    private final List<BgReading> readings;
+    private final long[] timestamps;
+    private final double[] values;
+
+    public GlucoseSeries(List<BgReading> readings) {
+        this.readings = readings;
+        int size = readings.size();
+        timestamps = new long[size];
+        values = new double[size];
+        for (int i = 0; i < size; i++) {
+            BgReading reading = readings.get(i);
+            timestamps[i] = reading.date;
+            values[i] = reading.value;
+        }
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public long timestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double value(int index) {
+        return values[index];
+    }
+
+    public BgReading reading(int index) {
+        return readings.get(index);
+    }
+
+    public List<BgReading> getReadings() {
+        return readings;
+    }
+
+    /**
+     * @return index of newest reading with timestamp <= time, size() if all readings are newer
+     */
+    public int indexAtOrBefore(long time) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= time) high = mid;
+            else low = mid + 1;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of reading at time or the oldest one after time, -1 if there is none
+     */
+    public int findNewer(long time) {
+        int index = indexAtOrBefore(time);
+        if (index < timestamps.length && timestamps[index] == time) return index;
+        return index - 1;
+    }
+
+    /**
+     * @return index of reading at time or the newest one before time, -1 if there is none
+     */
+    public int findOlder(long time) {
+        int index = indexAtOrBefore(time);
+        return index < timestamps.length ? index : -1;
+    }
+}
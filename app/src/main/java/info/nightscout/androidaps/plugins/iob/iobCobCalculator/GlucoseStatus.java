@@ -69,107 +69,107 @@ public class GlucoseStatus {
         //long fromtime = DateUtil.now() - 60 * 1000L * 45;
         //List<BgReading> data = MainApp.getDbHelper().getBgreadingsDataFromTime(fromtime, false);
 
-        synchronized (iobCobCalculatorPlugin.getDataLock()) {
+        // bgReadings list is replaced, never modified, so it can be used without locking
+        // (and BgReadings in it must not be modified here)
+        List<BgReading> data = iobCobCalculatorPlugin.getBgReadings();
 
-            List<BgReading> data = iobCobCalculatorPlugin.getBgReadings();
+        if (data == null) {
+            aapsLogger.debug(LTag.GLUCOSE, "data=null");
+            return null;
+        }
 
-            if (data == null) {
-                aapsLogger.debug(LTag.GLUCOSE, "data=null");
-                return null;
-            }
+        int sizeRecords = data.size();
+        if (sizeRecords == 0) {
+            aapsLogger.debug(LTag.GLUCOSE, "sizeRecords==0");
+            return null;
+        }
 
-            int sizeRecords = data.size();
-            if (sizeRecords == 0) {
-                aapsLogger.debug(LTag.GLUCOSE, "sizeRecords==0");
-                return null;
-            }
+        if (data.get(0).date < DateUtil.now() - 7 * 60 * 1000L && !allowOldData) {
+            aapsLogger.debug(LTag.GLUCOSE, "olddata");
+            return null;
+        }
 
-            if (data.get(0).date < DateUtil.now() - 7 * 60 * 1000L && !allowOldData) {
-                aapsLogger.debug(LTag.GLUCOSE, "olddata");
-                return null;
-            }
+        BgReading now = data.get(0);
+        long now_date = now.date;
+        double now_value = now.value;
+        double change;
 
-            BgReading now = data.get(0);
-            long now_date = now.date;
-            double change;
-
-            if (sizeRecords == 1) {
-                GlucoseStatus status = new GlucoseStatus(injector);
-                status.glucose = now.value;
-                status.noise = 0d;
-                status.short_avgdelta = 0d;
-                status.delta = 0d;
-                status.long_avgdelta = 0d;
-                status.avgdelta = 0d; // for OpenAPS MA
-                status.date = now_date;
-                aapsLogger.debug(LTag.GLUCOSE, "sizeRecords==1");
-                return status.round();
-            }
+        if (sizeRecords == 1) {
+            GlucoseStatus status = new GlucoseStatus(injector);
+            status.glucose = now_value;
+            status.noise = 0d;
+            status.short_avgdelta = 0d;
+            status.delta = 0d;
+            status.long_avgdelta = 0d;
+            status.avgdelta = 0d; // for OpenAPS MA
+            status.date = now_date;
+            aapsLogger.debug(LTag.GLUCOSE, "sizeRecords==1");
+            return status.round();
+        }
 
-            ArrayList<Double> now_value_list = new ArrayList<>();
-            ArrayList<Double> last_deltas = new ArrayList<>();
-            ArrayList<Double> short_deltas = new ArrayList<>();
-            ArrayList<Double> long_deltas = new ArrayList<>();
-
-            // Use the latest sgv value in the now calculations
-            now_value_list.add(now.value);
-
-            for (int i = 1; i < sizeRecords; i++) {
-                if (data.get(i).value > 38) {
-                    BgReading then = data.get(i);
-                    long then_date = then.date;
-                    double avgdelta;
-                    long minutesago;
-
-                    minutesago = Math.round((now_date - then_date) / (1000d * 60));
-                    // multiply by 5 to get the same units as delta, i.e. mg/dL/5m
-                    change = now.value - then.value;
-                    avgdelta = change / minutesago * 5;
-
-                    aapsLogger.debug(LTag.GLUCOSE, then.toString() + " minutesago=" + minutesago + " avgdelta=" + avgdelta);
-
-                    // use the average of all data points in the last 2.5m for all further "now" calculations
-                    if (0 < minutesago && minutesago < 2.5) {
-                        // Keep and average all values within the last 2.5 minutes
-                        now_value_list.add(then.value);
-                        now.value = average(now_value_list);
-                        // short_deltas are calculated from everything ~5-15 minutes ago
-                    } else if (2.5 < minutesago && minutesago < 17.5) {
-                        //console.error(minutesago, avgdelta);
-                        short_deltas.add(avgdelta);
-                        // last_deltas are calculated from everything ~5 minutes ago
-                        if (2.5 < minutesago && minutesago < 7.5) {
-                            last_deltas.add(avgdelta);
-                        }
-                        // long_deltas are calculated from everything ~20-40 minutes ago
-                    } else if (17.5 < minutesago && minutesago < 42.5) {
-                        long_deltas.add(avgdelta);
-                    } else {
-                        // Do not process any more records after >= 42.5 minutes
-                        break;
+        ArrayList<Double> now_value_list = new ArrayList<>();
+        ArrayList<Double> last_deltas = new ArrayList<>();
+        ArrayList<Double> short_deltas = new ArrayList<>();
+        ArrayList<Double> long_deltas = new ArrayList<>();
+
+        // Use the latest sgv value in the now calculations
+        now_value_list.add(now_value);
+
+        for (int i = 1; i < sizeRecords; i++) {
+            if (data.get(i).value > 38) {
+                BgReading then = data.get(i);
+                long then_date = then.date;
+                double avgdelta;
+                long minutesago;
+
+                minutesago = Math.round((now_date - then_date) / (1000d * 60));
+                // multiply by 5 to get the same units as delta, i.e. mg/dL/5m
+                change = now_value - then.value;
+                avgdelta = change / minutesago * 5;
+
+                aapsLogger.debug(LTag.GLUCOSE, then.toString() + " minutesago=" + minutesago + " avgdelta=" + avgdelta);
+
+                // use the average of all data points in the last 2.5m for all further "now" calculations
+                if (0 < minutesago && minutesago < 2.5) {
+                    // Keep and average all values within the last 2.5 minutes
+                    now_value_list.add(then.value);
+                    now_value = average(now_value_list);
+                    // short_deltas are calculated from everything ~5-15 minutes ago
+                } else if (2.5 < minutesago && minutesago < 17.5) {
+                    //console.error(minutesago, avgdelta);
+                    short_deltas.add(avgdelta);
+                    // last_deltas are calculated from everything ~5 minutes ago
+                    if (2.5 < minutesago && minutesago < 7.5) {
+                        last_deltas.add(avgdelta);
                     }
+                    // long_deltas are calculated from everything ~20-40 minutes ago
+                } else if (17.5 < minutesago && minutesago < 42.5) {
+                    long_deltas.add(avgdelta);
+                } else {
+                    // Do not process any more records after >= 42.5 minutes
+                    break;
                 }
             }
+        }
 
-            GlucoseStatus status = new GlucoseStatus(injector);
-            status.glucose = now.value;
-            status.date = now_date;
-            status.noise = 0d; //for now set to nothing as not all CGMs report noise
+        GlucoseStatus status = new GlucoseStatus(injector);
+        status.glucose = now_value;
+        status.date = now_date;
+        status.noise = 0d; //for now set to nothing as not all CGMs report noise
 
-            status.short_avgdelta = average(short_deltas);
+        status.short_avgdelta = average(short_deltas);
 
-            if (last_deltas.isEmpty()) {
-                status.delta = status.short_avgdelta;
-            } else {
-                status.delta = average(last_deltas);
-            }
+        if (last_deltas.isEmpty()) {
+            status.delta = status.short_avgdelta;
+        } else {
+            status.delta = average(last_deltas);
+        }
 
-            status.long_avgdelta = average(long_deltas);
-            status.avgdelta = status.short_avgdelta; // for OpenAPS MA
+        status.long_avgdelta = average(long_deltas);
+        status.avgdelta = status.short_avgdelta; // for OpenAPS MA
 
-            aapsLogger.debug(LTag.GLUCOSE, status.log());
-            return status.round();
-        }
+        aapsLogger.debug(LTag.GLUCOSE, status.log());
+        return status.round();
     }
 
     public static double average(ArrayList<Double> array) {
@@ -0,0 +1,280 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+import info.nightscout.androidaps.R;
+import info.nightscout.androidaps.data.Iob;
+import info.nightscout.androidaps.data.IobTotal;
+import info.nightscout.androidaps.data.Profile;
+import info.nightscout.androidaps.db.ExtendedBolus;
+import info.nightscout.androidaps.db.TemporaryBasal;
+import info.nightscout.androidaps.db.Treatment;
+import info.nightscout.androidaps.interfaces.ActivePluginProvider;
+import info.nightscout.androidaps.interfaces.InsulinInterface;
+import info.nightscout.androidaps.interfaces.ProfileFunction;
+import info.nightscout.androidaps.plugins.treatments.TreatmentsPlugin;
+import info.nightscout.androidaps.utils.sharedPreferences.SP;
+
+/**
+ * Calculates IOB for a series of times &gt;= truncateTime in one pass.
+ * <p>
+ * Boluses and 5 min slices of temp basals / extended boluses (truncated to truncateTime) are
+ * collected once into delivery vectors. Because nothing is delivered after truncateTime the slices
+ * don't depend on calculated time and every point of the series is summed from the same vectors
+ * with the cached insulin curve instead of rescanning all treatments for every point.
+ * Slices keep their exact delivery time (no snapping to 5 min grid) so results are identical
+ * to calculateFromTreatmentsAndTemps called for every point.
+ * <p>
+ * Slicing must match TemporaryBasal.iobCalc and ExtendedBolus.iobCalc
+ */
+class IobArrayCalculator {
+
+    private final TreatmentsPlugin treatmentsPlugin;
+    private final ProfileFunction profileFunction;
+    private final ActivePluginProvider activePlugin;
+    private final InsulinInterface insulin;
+    private final SP sp;
+
+    // boluses, oldest first
+    private final Deliveries boluses = new Deliveries();
+    // temp basal slices (net insulin)
+    private final Deliveries basals = new Deliveries();
+    // extended bolus slices if pump is faking temps by extended boluses
+    private final Deliveries extended = new Deliveries();
+
+    private List<ExtendedBolus> extendedBoluses;
+    private boolean fakingTemps;
+
+    IobArrayCalculator(TreatmentsPlugin treatmentsPlugin, ProfileFunction profileFunction, ActivePluginProvider activePlugin, SP sp) {
+        this.treatmentsPlugin = treatmentsPlugin;
+        this.profileFunction = profileFunction;
+        this.activePlugin = activePlugin;
+        this.insulin = activePlugin.getActiveInsulin();
+        this.sp = sp;
+    }
+
+    static class SmbParams {
+        final AutosensResult lastAutosensResult;
+        final boolean exerciseMode;
+        final int halfBasalExerciseTarget;
+        final boolean isTempTarget;
+
+        SmbParams(AutosensResult lastAutosensResult, boolean exerciseMode, int halfBasalExerciseTarget, boolean isTempTarget) {
+            this.lastAutosensResult = lastAutosensResult;
+            this.exerciseMode = exerciseMode;
+            this.halfBasalExerciseTarget = halfBasalExerciseTarget;
+            this.isTempTarget = isTempTarget;
+        }
+    }
+
+    // parallel primitive arrays
+    static class Deliveries {
+        int size = 0;
+        long[] date = new long[64];
+        double[] insulin = new double[64];
+        double[] dia = new double[64];
+        boolean[] smb = new boolean[64];
+
+        void add(long date, double insulin, double dia, boolean smb) {
+            if (size == this.date.length) {
+                int newLength = size * 2;
+                this.date = Arrays.copyOf(this.date, newLength);
+                this.insulin = Arrays.copyOf(this.insulin, newLength);
+                this.dia = Arrays.copyOf(this.dia, newLength);
+                this.smb = Arrays.copyOf(this.smb, newLength);
+            }
+            this.date[size] = date;
+            this.insulin[size] = insulin;
+            this.dia[size] = dia;
+            this.smb[size] = smb;
+            size++;
+        }
+    }
+
+    /**
+     * Collect all insulin deliveries
+     *
+     * @param profile      current profile used for boluses, if null bolus IOB is zero
+     * @param truncateTime temp basals and extended boluses are cut to this time
+     * @param smbParams    null for AMA calculation
+     */
+    IobArrayCalculator prepare(@Nullable Profile profile, long truncateTime, @Nullable SmbParams smbParams) {
+        fakingTemps = activePlugin.getActivePump().isFakingTempsByExtendedBoluses();
+
+        if (profile != null) {
+            double dia = profile.getDia();
+            for (Treatment t : treatmentsPlugin.getTreatmentsFromHistory()) {
+                if (!t.isValid) continue;
+                if (t.insulin == 0) continue; // carbs only
+                boluses.add(t.date, t.insulin, dia, t.isSMB);
+            }
+        }
+
+        for (TemporaryBasal t : treatmentsPlugin.getTemporaryBasalsFromHistory().getList()) {
+            if (t.date > truncateTime) continue;
+            Profile tempProfile = profileFunction.getProfile(t.date);
+            if (tempProfile == null) continue;
+            long end = Math.min(t.end(), truncateTime);
+            if (smbParams == null) addTempBasalSlices(t, end, tempProfile);
+            else addTempBasalSlices(t, end, tempProfile, smbParams);
+        }
+
+        extendedBoluses = treatmentsPlugin.getExtendedBolusesFromHistory().getList();
+        if (fakingTemps) {
+            for (ExtendedBolus e : extendedBoluses) {
+                if (e.date > truncateTime) continue;
+                Profile extProfile = profileFunction.getProfile(e.date);
+                if (extProfile == null) continue;
+                long end = Math.min(e.end(), truncateTime);
+                addExtendedBolusSlices(e, end, extProfile, smbParams);
+            }
+        }
+        return this;
+    }
+
+    private static int durationToEnd(long date, long end) {
+        return Math.round((end - date) / 60f / 1000);
+    }
+
+    // TemporaryBasal.iobCalc(time, profile)
+    private void addTempBasalSlices(TemporaryBasal t, long end, Profile profile) {
+        int realDuration = durationToEnd(t.date, end);
+        if (realDuration <= 0) return;
+        double dia = profile.getDia();
+        int aboutFiveMinIntervals = (int) Math.ceil(realDuration / 5d);
+        double tempBolusSpacing = (double) (realDuration / aboutFiveMinIntervals);
+        for (long j = 0L; j < aboutFiveMinIntervals; j++) {
+            long calcdate = (long) (t.date + j * tempBolusSpacing * 60 * 1000 + 0.5d * tempBolusSpacing * 60 * 1000);
+            double basalRate = profile.getBasal(calcdate);
+            double netBasalRate;
+            if (t.isAbsolute) {
+                netBasalRate = t.absoluteRate - basalRate;
+            } else {
+                netBasalRate = (t.percentRate - 100) / 100d * basalRate;
+            }
+            basals.add(calcdate, netBasalRate * tempBolusSpacing / 60d, dia, false);
+        }
+    }
+
+    // TemporaryBasal.iobCalc(time, profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget)
+    private void addTempBasalSlices(TemporaryBasal t, long end, Profile profile, SmbParams smbParams) {
+        double realDuration = durationToEnd(t.date, end);
+        if (realDuration <= 0) return;
+        double sensitivityRatio = sensitivityRatio(profile, smbParams);
+        double dia = profile.getDia();
+        int aboutFiveMinIntervals = (int) Math.ceil(realDuration / 5d);
+        double tempBolusSpacing = realDuration / aboutFiveMinIntervals;
+        for (long j = 0L; j < aboutFiveMinIntervals; j++) {
+            long calcdate = (long) (t.date + j * tempBolusSpacing * 60 * 1000 + 0.5d * tempBolusSpacing * 60 * 1000);
+            double basalRate = profile.getBasal(calcdate);
+            basalRate *= sensitivityRatio;
+            double netBasalRate;
+            if (t.isAbsolute) {
+                netBasalRate = t.absoluteRate - basalRate;
+            } else {
+                double abs = t.percentRate / 100d * profile.getBasal(calcdate);
+                netBasalRate = abs - basalRate;
+            }
+            basals.add(calcdate, netBasalRate * tempBolusSpacing / 60d, dia, false);
+        }
+    }
+
+    // ExtendedBolus.iobCalc
+    private void addExtendedBolusSlices(ExtendedBolus e, long end, Profile profile, @Nullable SmbParams smbParams) {
+        double realDuration = durationToEnd(e.date, end);
+        if (realDuration <= 0) return;
+        double sensitivityRatio = smbParams != null ? sensitivityRatio(profile, smbParams) : 1;
+        double dia = profile.getDia();
+        int aboutFiveMinIntervals = (int) Math.ceil(realDuration / 5d);
+        double spacing = realDuration / aboutFiveMinIntervals;
+        for (long j = 0L; j < aboutFiveMinIntervals; j++) {
+            long calcdate = (long) (e.date + j * spacing * 60 * 1000 + 0.5d * spacing * 60 * 1000);
+            double rate = e.absoluteRate();
+            if (smbParams != null) rate -= profile.getBasal(calcdate) * (sensitivityRatio - 1);
+            extended.add(calcdate, rate * spacing / 60d, dia, false);
+        }
+    }
+
+    private static double sensitivityRatio(Profile profile, SmbParams smbParams) {
+        double sensitivityRatio = smbParams.lastAutosensResult.ratio;
+        double normalTarget = 100;
+        if (smbParams.exerciseMode && smbParams.isTempTarget && profile.getTargetMgdl() >= normalTarget + 5) {
+            double c = smbParams.halfBasalExerciseTarget - normalTarget;
+            sensitivityRatio = c / (c + profile.getTargetMgdl() - normalTarget);
+        }
+        return sensitivityRatio;
+    }
+
+    // TreatmentsPlugin.getCalculationToTimeTreatments
+    IobTotal bolusIob(long time, @Nullable Profile profile) {
+        IobTotal total = new IobTotal(time);
+        if (profile == null) return total;
+        double snoozeDivisor = sp.getDouble(R.string.key_openapsama_bolussnooze_dia_divisor, 2.0);
+        for (int i = 0; i < boluses.size; i++) {
+            long date = boluses.date[i];
+            if (date > time) continue;
+            Iob tIOB = insulin.iobCalc(boluses.insulin[i], date, time, boluses.dia[i]);
+            total.iob += tIOB.iobContrib;
+            total.activity += tIOB.activityContrib;
+            if (boluses.insulin[i] > 0 && date > total.lastBolusTime)
+                total.lastBolusTime = date;
+            if (!boluses.smb[i]) {
+                long timeSinceTreatment = time - date;
+                long snoozeTime = date + (long) (timeSinceTreatment * snoozeDivisor);
+                Iob bIOB = insulin.iobCalc(boluses.insulin[i], date, snoozeTime, boluses.dia[i]);
+                total.bolussnooze += bIOB.iobContrib;
+            }
+        }
+        // running extended bolus slices depend on time, they are few so calculate directly
+        if (!fakingTemps)
+            for (ExtendedBolus e : extendedBoluses) {
+                if (e.date > time) continue;
+                if (e.end() < time - profile.getDia() * 60 * 60 * 1000) continue; // no slice inside DIA
+                total.plus(e.iobCalc(time, profile));
+            }
+        return total;
+    }
+
+    // TreatmentsPlugin.getCalculationToTimeTempBasals
+    IobTotal basalIob(long time) {
+        IobTotal total = new IobTotal(time);
+        for (int i = 0; i < basals.size; i++) {
+            long calcdate = basals.date[i];
+            double dia_ago = time - basals.dia[i] * 60 * 60 * 1000;
+            if (calcdate > dia_ago && calcdate <= time) {
+                double tempBolusSize = basals.insulin[i];
+                Iob aIOB = insulin.iobCalc(tempBolusSize, calcdate, time, basals.dia[i]);
+                total.basaliob += aIOB.iobContrib;
+                total.activity += aIOB.activityContrib;
+                total.netbasalinsulin += tempBolusSize;
+                total.netInsulin += tempBolusSize;
+                if (tempBolusSize > 0) {
+                    total.hightempinsulin += tempBolusSize;
+                }
+            }
+        }
+        if (fakingTemps) {
+            IobTotal totalExt = new IobTotal(time);
+            for (int i = 0; i < extended.size; i++) {
+                long calcdate = extended.date[i];
+                double dia_ago = time - extended.dia[i] * 60 * 60 * 1000;
+                if (calcdate > dia_ago && calcdate <= time) {
+                    Iob aIOB = insulin.iobCalc(extended.insulin[i], calcdate, time, extended.dia[i]);
+                    totalExt.iob += aIOB.iobContrib;
+                    totalExt.activity += aIOB.activityContrib;
+                    totalExt.extendedBolusInsulin += extended.insulin[i];
+                }
+            }
+            // Convert to basal iob
+            totalExt.basaliob = totalExt.iob;
+            totalExt.iob = 0d;
+            totalExt.netbasalinsulin = totalExt.extendedBolusInsulin;
+            totalExt.hightempinsulin = totalExt.extendedBolusInsulin;
+            total.plus(totalExt);
+        }
+        return total;
+    }
+}
@@ -74,17 +74,24 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
 
     private final CompositeDisposable disposable = new CompositeDisposable();
 
-    private LongSparseArray<IobTotal> iobTable = new LongSparseArray<>(); // oldest at index 0
-    private LongSparseArray<IobTotal> absIobTable = new LongSparseArray<>(); // oldest at index 0, absolute insulin in the body
+    // memoization caches, locked on themselves only for get/put so readers never wait for calculation thread
+    private final LongSparseArray<IobTotal> iobTable = new LongSparseArray<>(); // oldest at index 0
+    private final LongSparseArray<IobTotal> absIobTable = new LongSparseArray<>(); // oldest at index 0, absolute insulin in the body
+    private final LongSparseArray<BasalData> basalDataTable = new LongSparseArray<>(); // oldest at index 0
+    // incremented under dataLock on every invalidation, results computed across it are not cached
+    private volatile long cacheGeneration = 0;
+    // working table of calculation thread, guarded by dataLock
     private LongSparseArray<AutosensData> autosensDataTable = new LongSparseArray<>(); // oldest at index 0
-    private LongSparseArray<BasalData> basalDataTable = new LongSparseArray<>(); // oldest at index 0
+    // immutable copy of autosensDataTable published for readers not holding dataLock
+    private volatile AutosensDataSnapshot autosensDataSnapshot = new AutosensDataSnapshot(0, new LongSparseArray<>());
 
     // we need to make sure that bucketed_data will always have the same timestamp for correct use of cached values
     // once referenceTime != null all bucketed data should be (x * 5min) from referenceTime
     Long referenceTime = null;
     private Boolean lastUsed5minCalculation = null; // true if used 5min bucketed data
 
-    private volatile List<BgReading> bgReadings = null; // newest at index 0
+    // loaded readings newest at index 0, with their dates and values. Replaced as a whole so readers see matching data
+    private volatile GlucoseSeries bgSeries = null;
     private volatile List<InMemoryGlucoseValue> bucketed_data = null;
 
     private final Object dataLock = new Object();
@@ -220,16 +227,57 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
         super.onStop();
     }
 
+    /**
+     * Working table of calculation thread. Use only while holding dataLock
+     * (calculation thread and sensitivity detection), other callers should use getAutosensData()
+     */
     public LongSparseArray<AutosensData> getAutosensDataTable() {
         return autosensDataTable;
     }
 
+    /**
+     * @return version of published autosens data, incremented on every change
+     */
+    public long getAutosensDataVersion() {
+        return autosensDataSnapshot.version;
+    }
+
+    // calculation thread works with its own table, everybody else with last published snapshot
+    private LongSparseArray<AutosensData> autosensDataForReading() {
+        return Thread.holdsLock(dataLock) ? autosensDataTable : autosensDataSnapshot.table;
+    }
+
+    /**
+     * Make current state of calculation visible to readers not holding dataLock
+     */
+    void publishAutosensData() {
+        synchronized (dataLock) {
+            autosensDataSnapshot = new AutosensDataSnapshot(autosensDataSnapshot.version + 1, autosensDataTable.clone());
+        }
+    }
+
+    private static class AutosensDataSnapshot {
+        final long version;
+        final LongSparseArray<AutosensData> table; // never modified after publishing
+
+        AutosensDataSnapshot(long version, LongSparseArray<AutosensData> table) {
+            this.version = version;
+            this.table = table;
+        }
+    }
+
     public List<BgReading> getBgReadings() {
-        return bgReadings;
+        GlucoseSeries series = bgSeries;
+        return series != null ? series.getReadings() : null;
     }
 
     public void setBgReadings(List<BgReading> bgReadings) {
-        this.bgReadings = bgReadings;
+        this.bgSeries = bgReadings != null ? new GlucoseSeries(bgReadings) : null;
+    }
+
+    @Nullable
+    public GlucoseSeries getBgSeries() {
+        return bgSeries;
     }
 
     public List<InMemoryGlucoseValue> getBucketedData() {
@@ -261,31 +309,141 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
         return newTime;
     }
 
-    void loadBgData(long to) {
+    // oldest BG needed for calculation
+    private long bgDataStart(long to) {
         Profile profile = profileFunction.getProfile(to);
         double dia = Constants.defaultDIA;
         if (profile != null) dia = profile.getDia();
-        long start = to - T.hours((long) (24 + dia)).msecs();
+        return to - T.hours((long) (24 + dia)).msecs();
+    }
+
+    void loadBgData(long to) {
+        long start = bgDataStart(to);
         if (DateUtil.isCloseToNow(to)) {
             // if close to now expect there can be some readings with time in close future (caused by wrong time setting)
             // so read all records
-            bgReadings = MainApp.getDbHelper().getBgreadingsDataFromTime(start, false);
-            getAapsLogger().debug(LTag.AUTOSENS, "BG data loaded. Size: " + bgReadings.size() + " Start date: " + dateUtil.dateAndTimeString(start));
+            setBgReadings(MainApp.getDbHelper().getBgreadingsDataFromTime(start, false));
+            getAapsLogger().debug(LTag.AUTOSENS, "BG data loaded. Size: " + bgSeries.size() + " Start date: " + dateUtil.dateAndTimeString(start));
         } else {
-            bgReadings = MainApp.getDbHelper().getBgreadingsDataFromTime(start, to, false);
-            getAapsLogger().debug(LTag.AUTOSENS, "BG data loaded. Size: " + bgReadings.size() + " Start date: " + dateUtil.dateAndTimeString(start) + " End date: " + dateUtil.dateAndTimeString(to));
+            setBgReadings(MainApp.getDbHelper().getBgreadingsDataFromTime(start, to, false));
+            getAapsLogger().debug(LTag.AUTOSENS, "BG data loaded. Size: " + bgSeries.size() + " Start date: " + dateUtil.dateAndTimeString(start) + " End date: " + dateUtil.dateAndTimeString(to));
+        }
+    }
+
+    /**
+     * Load BG data needed for calculation. If caused by new BG reading and data are already loaded
+     * only readings newer than the last loaded one are read from DB and appended to bucketed data.
+     * Backfilled or changed readings are handled by EventNewHistoryBgData which invalidates the cache
+     * and forces full reload.
+     */
+    void loadOrAppendBgData(long to, Event cause) {
+        if (cause instanceof EventNewBG && ((EventNewBG) cause).getBgReading() != null && appendBgData(to))
+            return;
+        loadBgData(to);
+        createBucketedData();
+    }
+
+    /**
+     * Append new readings to already loaded bgReadings and bucketed_data
+     *
+     * @return false if incremental update is not possible and full reload must be done
+     */
+    boolean appendBgData(long to) {
+        List<BgReading> loadedReadings = getBgReadings();
+        List<InMemoryGlucoseValue> loadedBuckets = bucketed_data;
+        if (loadedReadings == null || loadedReadings.size() < 3 || loadedBuckets == null || loadedBuckets.isEmpty())
+            return false;
+        if (lastUsed5minCalculation == null || !lastUsed5minCalculation || !DateUtil.isCloseToNow(to))
+            return false;
+
+        List<BgReading> newReadings = MainApp.getDbHelper().getBgreadingsDataFromTime(loadedReadings.get(0).date + 1, true);
+        if (!appendBgReadings(newReadings, to)) return false;
+        getAapsLogger().debug(LTag.AUTOSENS, "BG data appended. New: " + newReadings.size() + " Size: " + bgSeries.size() + " Buckets: " + bucketed_data.size());
+        return true;
+    }
+
+    /**
+     * @param newReadings readings newer than bgReadings.get(0), oldest first
+     */
+    boolean appendBgReadings(List<BgReading> newReadings, long to) {
+        List<BgReading> loadedReadings = getBgReadings();
+        List<InMemoryGlucoseValue> loadedBuckets = bucketed_data;
+        // data older than used by loadBgData is dropped while copying
+        long start = bgDataStart(to);
+        List<BgReading> readings = new ArrayList<>(loadedReadings.size() + newReadings.size());
+        for (int i = newReadings.size() - 1; i >= 0; i--) readings.add(newReadings.get(i));
+        for (BgReading reading : loadedReadings) {
+            if (reading.date < start) break;
+            readings.add(reading);
         }
+
+        // readings of the newest bucket are bucketed again together with the new ones
+        int last = newReadings.size();
+        while (last + 1 < readings.size() && Math.abs((readings.get(last + 1).date - readings.get(last).date) / (60 * 1000)) <= 2)
+            last++;
+        List<InMemoryGlucoseValue> newest = loadedBuckets.size() > 1 ? bucketNewestReadings(readings, last, loadedBuckets.get(1)) : null;
+        if (newest == null) {
+            // gap, invalid value or too big adjustment, let full calculation handle it
+            getAapsLogger().debug(LTag.AUTOSENS, "New BG data can't be appended. Recreating bucketed data.");
+            setBgReadings(readings);
+            createBucketedData();
+            return true;
+        }
+        int size = loadedBuckets.size();
+        while (size > 1 && loadedBuckets.get(size - 1).getTimestamp() < start) size--;
+        List<InMemoryGlucoseValue> buckets = new ArrayList<>(newest.size() + size - 1);
+        buckets.addAll(newest);
+        buckets.addAll(loadedBuckets.subList(1, size));
+
+        setBgReadings(readings);
+        bucketed_data = buckets;
+        if (!isAbout5minData()) createBucketedData(); // mode changed
+        return true;
+    }
+
+    /**
+     * Buckets readings 0..last the same way as createBucketedData5min and aligns them to 5 min after previous bucket
+     *
+     * @return buckets newest first, null if full calculation is needed
+     */
+    @Nullable
+    private List<InMemoryGlucoseValue> bucketNewestReadings(List<BgReading> readings, int last, InMemoryGlucoseValue previous) {
+        List<InMemoryGlucoseValue> buckets = new ArrayList<>();
+        buckets.add(new InMemoryGlucoseValue(readings.get(0).date, readings.get(0).value));
+        for (int i = 1; i <= last; i++) {
+            long bgTime = readings.get(i).date;
+            long lastbgTime = readings.get(i - 1).date;
+            if (readings.get(i).value < 39 || readings.get(i - 1).value < 39) return null;
+            long elapsed_minutes = (bgTime - lastbgTime) / (60 * 1000);
+            if (Math.abs(elapsed_minutes) > 8) {
+                return null; // needs interpolation
+            } else if (Math.abs(elapsed_minutes) > 2) {
+                buckets.add(new InMemoryGlucoseValue(bgTime, readings.get(i).value));
+            } else {
+                InMemoryGlucoseValue bucket = buckets.get(buckets.size() - 1);
+                bucket.setValue((bucket.getValue() + readings.get(i).value) / 2);
+            }
+        }
+        for (int i = buckets.size() - 1; i >= 0; i--) {
+            InMemoryGlucoseValue current = buckets.get(i);
+            long adjusted = (current.getTimestamp() - previous.getTimestamp() - T.mins(5).msecs()) / 1000;
+            if (Math.abs(adjusted) > 90) return null;
+            current.setTimestamp(previous.getTimestamp() + T.mins(5).msecs());
+            previous = current;
+        }
+        return buckets;
     }
 
     public boolean isAbout5minData() {
         synchronized (dataLock) {
-            if (bgReadings == null || bgReadings.size() < 3) {
+            GlucoseSeries series = bgSeries;
+            if (series == null || series.size() < 3) {
                 return true;
             }
             long totalDiff = 0;
-            for (int i = 1; i < bgReadings.size(); ++i) {
-                long bgTime = bgReadings.get(i).date;
-                long lastbgTime = bgReadings.get(i - 1).date;
+            for (int i = 1; i < series.size(); ++i) {
+                long bgTime = series.timestamp(i);
+                long lastbgTime = series.timestamp(i - 1);
                 long diff = lastbgTime - bgTime;
                 diff %= T.mins(5).msecs();
                 if (diff > T.mins(2).plus(T.secs(30)).msecs())
@@ -293,23 +451,31 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
                 totalDiff += diff;
                 diff = Math.abs(diff);
                 if (diff > T.secs(30).msecs()) {
-                    getAapsLogger().debug(LTag.AUTOSENS, "Interval detection: values: " + bgReadings.size() + " diff: " + (diff / 1000) + "[s] is5minData: " + false);
+                    getAapsLogger().debug(LTag.AUTOSENS, "Interval detection: values: " + series.size() + " diff: " + (diff / 1000) + "[s] is5minData: " + false);
                     return false;
                 }
             }
-            long averageDiff = totalDiff / bgReadings.size() / 1000;
+            long averageDiff = totalDiff / series.size() / 1000;
             boolean is5mindata = averageDiff < 1;
-            getAapsLogger().debug(LTag.AUTOSENS, "Interval detection: values: " + bgReadings.size() + " averageDiff: " + averageDiff + "[s] is5minData: " + is5mindata);
+            getAapsLogger().debug(LTag.AUTOSENS, "Interval detection: values: " + series.size() + " averageDiff: " + averageDiff + "[s] is5minData: " + is5mindata);
             return is5mindata;
         }
     }
 
     private void resetData() {
         synchronized (dataLock) {
-            iobTable = new LongSparseArray<>();
+            cacheGeneration++;
+            synchronized (iobTable) {
+                iobTable.clear();
+            }
+            synchronized (absIobTable) {
+                absIobTable.clear();
+            }
+            synchronized (basalDataTable) {
+                basalDataTable.clear();
+            }
             autosensDataTable = new LongSparseArray<>();
-            basalDataTable = new LongSparseArray<>();
-            absIobTable = new LongSparseArray<>();
+            publishAutosensData();
         }
     }
 
@@ -329,100 +495,93 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
 
     @Nullable
     public BgReading findNewer(long time) {
-        BgReading lastFound = bgReadings.get(0);
-        if (lastFound.date < time) return null;
-        for (int i = 1; i < bgReadings.size(); ++i) {
-            if (bgReadings.get(i).date == time) return bgReadings.get(i);
-            if (bgReadings.get(i).date > time) continue;
-            lastFound = bgReadings.get(i - 1);
-            if (bgReadings.get(i).date < time) break;
-        }
-        return lastFound;
+        GlucoseSeries series = bgSeries;
+        int index = series.findNewer(time);
+        return index >= 0 ? series.reading(index) : null;
     }
 
     @Nullable
     public BgReading findOlder(long time) {
-        BgReading lastFound = bgReadings.get(bgReadings.size() - 1);
-        if (lastFound.date > time) return null;
-        for (int i = bgReadings.size() - 2; i >= 0; --i) {
-            if (bgReadings.get(i).date == time) return bgReadings.get(i);
-            if (bgReadings.get(i).date < time) continue;
-            lastFound = bgReadings.get(i + 1);
-            if (bgReadings.get(i).date > time) break;
-        }
-        return lastFound;
+        GlucoseSeries series = bgSeries;
+        int index = series.findOlder(time);
+        return index >= 0 ? series.reading(index) : null;
     }
 
     private void createBucketedDataRecalculated() {
-        if (bgReadings == null || bgReadings.size() < 3) {
+        GlucoseSeries series = bgSeries;
+        if (series == null || series.size() < 3) {
             bucketed_data = null;
             return;
         }
 
-        bucketed_data = new ArrayList<>();
-        long currentTime = bgReadings.get(0).date - bgReadings.get(0).date % T.mins(5).msecs();
+        // build new list, readers may still use the published one
+        List<InMemoryGlucoseValue> buckets = new ArrayList<>();
+        long currentTime = series.timestamp(0) - series.timestamp(0) % T.mins(5).msecs();
         currentTime = adjustToReferenceTime(currentTime);
         getAapsLogger().debug("Adjusted time " + dateUtil.dateAndTimeAndSecondsString(currentTime));
         //log.debug("First reading: " + new Date(currentTime).toLocaleString());
 
         while (true) {
             // test if current value is older than current time
-            BgReading newer = findNewer(currentTime);
-            BgReading older = findOlder(currentTime);
-            if (newer == null || older == null)
+            int newer = series.findNewer(currentTime);
+            int older = series.findOlder(currentTime);
+            if (newer < 0 || older < 0)
                 break;
 
-            if (older.date == newer.date) { // direct hit
-                bucketed_data.add(new InMemoryGlucoseValue(newer));
+            if (older == newer) { // direct hit
+                buckets.add(new InMemoryGlucoseValue(series.timestamp(newer), series.value(newer)));
             } else {
-                double bgDelta = newer.value - older.value;
-                long timeDiffToNew = newer.date - currentTime;
+                double bgDelta = series.value(newer) - series.value(older);
+                long timeDiffToNew = series.timestamp(newer) - currentTime;
 
-                double currentBg = newer.value - (double) timeDiffToNew / (newer.date - older.date) * bgDelta;
+                double currentBg = series.value(newer) - (double) timeDiffToNew / (series.timestamp(newer) - series.timestamp(older)) * bgDelta;
                 InMemoryGlucoseValue newBgreading = new InMemoryGlucoseValue(currentTime, Math.round(currentBg), true);
-                bucketed_data.add(newBgreading);
+                buckets.add(newBgreading);
                 //log.debug("BG: " + newBgreading.value + " (" + new Date(newBgreading.date).toLocaleString() + ") Prev: " + older.value + " (" + new Date(older.date).toLocaleString() + ") Newer: " + newer.value + " (" + new Date(newer.date).toLocaleString() + ")");
             }
             currentTime -= T.mins(5).msecs();
 
         }
+        bucketed_data = buckets;
     }
 
 
     private void createBucketedData5min() {
-        if (bgReadings == null || bgReadings.size() < 3) {
+        GlucoseSeries series = bgSeries;
+        if (series == null || series.size() < 3) {
             bucketed_data = null;
             return;
         }
 
-        bucketed_data = new ArrayList<>();
-        bucketed_data.add(new InMemoryGlucoseValue(bgReadings.get(0)));
-        getAapsLogger().debug(LTag.AUTOSENS, "Adding. bgTime: " + DateUtil.toISOString(bgReadings.get(0).date) + " lastbgTime: " + "none-first-value" + " " + bgReadings.get(0).toString());
+        // build new list, readers may still use the published one
+        List<InMemoryGlucoseValue> buckets = new ArrayList<>();
+        buckets.add(new InMemoryGlucoseValue(series.timestamp(0), series.value(0)));
+        getAapsLogger().debug(LTag.AUTOSENS, "Adding. bgTime: " + DateUtil.toISOString(series.timestamp(0)) + " lastbgTime: " + "none-first-value" + " " + series.reading(0).toString());
         int j = 0;
-        for (int i = 1; i < bgReadings.size(); ++i) {
-            long bgTime = bgReadings.get(i).date;
-            long lastbgTime = bgReadings.get(i - 1).date;
-            //log.error("Processing " + i + ": " + new Date(bgTime).toString() + " " + bgReadings.get(i).value + "   Previous: " + new Date(lastbgTime).toString() + " " + bgReadings.get(i - 1).value);
-            if (bgReadings.get(i).value < 39 || bgReadings.get(i - 1).value < 39) {
+        for (int i = 1; i < series.size(); ++i) {
+            long bgTime = series.timestamp(i);
+            long lastbgTime = series.timestamp(i - 1);
+            //log.error("Processing " + i + ": " + new Date(bgTime).toString() + " " + series.value(i) + "   Previous: " + new Date(lastbgTime).toString() + " " + series.value(i - 1));
+            if (series.value(i) < 39 || series.value(i - 1) < 39) {
                 throw new IllegalStateException("<39");
             }
 
             long elapsed_minutes = (bgTime - lastbgTime) / (60 * 1000);
             if (Math.abs(elapsed_minutes) > 8) {
                 // interpolate missing data points
-                double lastbg = bgReadings.get(i - 1).value;
+                double lastbg = series.value(i - 1);
                 elapsed_minutes = Math.abs(elapsed_minutes);
                 //console.error(elapsed_minutes);
                 long nextbgTime;
                 while (elapsed_minutes > 5) {
                     nextbgTime = lastbgTime - 5 * 60 * 1000;
                     j++;
-                    double gapDelta = bgReadings.get(i).value - lastbg;
+                    double gapDelta = series.value(i) - lastbg;
                     //console.error(gapDelta, lastbg, elapsed_minutes);
                     double nextbg = lastbg + (5d / elapsed_minutes * gapDelta);
                     InMemoryGlucoseValue newBgreading = new InMemoryGlucoseValue(nextbgTime, Math.round(nextbg), true);
                     //console.error("Interpolated", bucketed_data[j]);
-                    bucketed_data.add(newBgreading);
+                    buckets.add(newBgreading);
                     getAapsLogger().debug(LTag.AUTOSENS, "Adding. bgTime: " + DateUtil.toISOString(bgTime) + " lastbgTime: " + DateUtil.toISOString(lastbgTime) + " " + newBgreading.toString());
 
                     elapsed_minutes = elapsed_minutes - 5;
@@ -430,27 +589,27 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
                     lastbgTime = nextbgTime;
                 }
                 j++;
-                InMemoryGlucoseValue newBgreading = new InMemoryGlucoseValue(bgTime, bgReadings.get(i).value);
-                bucketed_data.add(newBgreading);
+                InMemoryGlucoseValue newBgreading = new InMemoryGlucoseValue(bgTime, series.value(i));
+                buckets.add(newBgreading);
                 getAapsLogger().debug(LTag.AUTOSENS, "Adding. bgTime: " + DateUtil.toISOString(bgTime) + " lastbgTime: " + DateUtil.toISOString(lastbgTime) + " " + newBgreading.toString());
             } else if (Math.abs(elapsed_minutes) > 2) {
                 j++;
-                InMemoryGlucoseValue newBgreading = new InMemoryGlucoseValue(bgTime, bgReadings.get(i).value);
-                bucketed_data.add(newBgreading);
+                InMemoryGlucoseValue newBgreading = new InMemoryGlucoseValue(bgTime, series.value(i));
+                buckets.add(newBgreading);
                 getAapsLogger().debug(LTag.AUTOSENS, "Adding. bgTime: " + DateUtil.toISOString(bgTime) + " lastbgTime: " + DateUtil.toISOString(lastbgTime) + " " + newBgreading.toString());
             } else {
-                bucketed_data.get(j).setValue((bucketed_data.get(j).getValue() + bgReadings.get(i).value) / 2);
+                buckets.get(j).setValue((buckets.get(j).getValue() + series.value(i)) / 2);
                 //log.error("***** Average");
             }
         }
 
         // Normalize bucketed data
-        InMemoryGlucoseValue oldest = bucketed_data.get(bucketed_data.size() - 1);
+        InMemoryGlucoseValue oldest = buckets.get(buckets.size() - 1);
         oldest.setTimestamp(adjustToReferenceTime(oldest.getTimestamp()));
         getAapsLogger().debug("Adjusted time " + dateUtil.dateAndTimeAndSecondsString(oldest.getTimestamp()));
-        for (int i = bucketed_data.size() - 2; i >= 0; i--) {
-            InMemoryGlucoseValue current = bucketed_data.get(i);
-            InMemoryGlucoseValue previous = bucketed_data.get(i + 1);
+        for (int i = buckets.size() - 2; i >= 0; i--) {
+            InMemoryGlucoseValue current = buckets.get(i);
+            InMemoryGlucoseValue previous = buckets.get(i + 1);
             long msecDiff = current.getTimestamp() - previous.getTimestamp();
             long adjusted = (msecDiff - T.mins(5).msecs()) / 1000;
             getAapsLogger().debug(LTag.AUTOSENS, "Adjusting bucketed data time. Current: " + dateUtil.dateAndTimeAndSecondsString(current.getTimestamp()) + " to: " + dateUtil.dateAndTimeAndSecondsString(previous.getTimestamp() + T.mins(5).msecs()) + " by " + adjusted + " sec");
@@ -463,7 +622,8 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
             current.setTimestamp(previous.getTimestamp() + T.mins(5).msecs());
         }
 
-        getAapsLogger().debug(LTag.AUTOSENS, "Bucketed data created. Size: " + bucketed_data.size());
+        bucketed_data = buckets;
+        getAapsLogger().debug(LTag.AUTOSENS, "Bucketed data created. Size: " + buckets.size());
     }
 
     long calculateDetectionStart(long from, boolean limitDataToOldestAvailable) {
@@ -482,170 +642,151 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
         return getBGDataFrom;
     }
 
+    /**
+     * Doesn't wait for the calculation thread anymore, name kept for callers.
+     * Result computed while cached data is invalidated is returned but not cached
+     */
     public IobTotal calculateFromTreatmentsAndTempsSynchronized(long time, Profile profile) {
-        synchronized (dataLock) {
-            return calculateFromTreatmentsAndTemps(time, profile);
-        }
-    }
-
-    private IobTotal calculateFromTreatmentsAndTempsSynchronized(long time, AutosensResult lastAutosensResult, boolean exercise_mode, int half_basal_exercise_target, boolean isTempTarget) {
-        synchronized (dataLock) {
-            return calculateFromTreatmentsAndTemps(time, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
-        }
+        return calculateFromTreatmentsAndTemps(time, profile);
     }
 
     IobTotal calculateFromTreatmentsAndTemps(long time, Profile profile) {
+        long generation = cacheGeneration;
         long now = System.currentTimeMillis();
         time = roundUpTime(time);
-        if (time < now && iobTable.get(time) != null) {
-            //og.debug(">>> calculateFromTreatmentsAndTemps Cache hit " + new Date(time).toLocaleString());
-            return iobTable.get(time);
-        } else {
-            //log.debug(">>> calculateFromTreatmentsAndTemps Cache miss " + new Date(time).toLocaleString());
+        if (time < now) {
+            IobTotal cached;
+            synchronized (iobTable) {
+                cached = iobTable.get(time);
+            }
+            if (cached != null) {
+                //og.debug(">>> calculateFromTreatmentsAndTemps Cache hit " + new Date(time).toLocaleString());
+                return cached;
+            }
         }
+        //log.debug(">>> calculateFromTreatmentsAndTemps Cache miss " + new Date(time).toLocaleString());
         IobTotal bolusIob = treatmentsPlugin.getCalculationToTimeTreatments(time).round();
         IobTotal basalIob = treatmentsPlugin.getCalculationToTimeTempBasals(time, true, now).round();
-        // OpenAPSSMB only
-        // Add expected zero temp basal for next 240 mins
-        IobTotal basalIobWithZeroTemp = basalIob.copy();
-        TemporaryBasal t = new TemporaryBasal(injector)
-                .date(now + 60 * 1000L)
-                .duration(240)
-                .absolute(0);
-        if (t.date < time) {
-            IobTotal calc = t.iobCalc(time, profile);
-            basalIobWithZeroTemp.plus(calc);
-        }
-
-        basalIob.iobWithZeroTemp = IobTotal.combine(bolusIob, basalIobWithZeroTemp).round();
-
-        IobTotal iobTotal = IobTotal.combine(bolusIob, basalIob).round();
+        IobTotal iobTotal = combineWithZeroTemp(time, now, bolusIob, basalIob, profile, null);
         if (time < System.currentTimeMillis()) {
-            iobTable.put(time, iobTotal);
+            synchronized (iobTable) {
+                if (generation == cacheGeneration) iobTable.put(time, iobTotal);
+            }
         }
         return iobTotal;
     }
 
+    /**
+     * Doesn't wait for the calculation thread anymore, name kept for callers.
+     * Result computed while cached data is invalidated is returned but not cached
+     */
     public IobTotal calculateAbsInsulinFromTreatmentsAndTempsSynchronized(long time, Profile profile) {
-        synchronized (dataLock) {
-            long now = System.currentTimeMillis();
-            time = roundUpTime(time);
-            if (time < now && absIobTable.get(time) != null) {
-                //og.debug(">>> calculateFromTreatmentsAndTemps Cache hit " + new Date(time).toLocaleString());
-                return absIobTable.get(time);
-            } else {
-                //log.debug(">>> calculateFromTreatmentsAndTemps Cache miss " + new Date(time).toLocaleString());
+        long generation = cacheGeneration;
+        long now = System.currentTimeMillis();
+        time = roundUpTime(time);
+        if (time < now) {
+            IobTotal cached;
+            synchronized (absIobTable) {
+                cached = absIobTable.get(time);
             }
-            IobTotal bolusIob = treatmentsPlugin.getCalculationToTimeTreatments(time).round();
-            IobTotal basalIob = treatmentsPlugin.getAbsoluteIOBTempBasals(time).round();
-
-            IobTotal iobTotal = IobTotal.combine(bolusIob, basalIob).round();
-            if (time < System.currentTimeMillis()) {
-                absIobTable.put(time, iobTotal);
+            if (cached != null) {
+                //og.debug(">>> calculateFromTreatmentsAndTemps Cache hit " + new Date(time).toLocaleString());
+                return cached;
             }
-            return iobTotal;
         }
-    }
-
-    private IobTotal calculateFromTreatmentsAndTemps(long time, AutosensResult lastAutosensResult, boolean exercise_mode, int half_basal_exercise_target, boolean isTempTarget) {
-        long now = DateUtil.now();
-
+        //log.debug(">>> calculateFromTreatmentsAndTemps Cache miss " + new Date(time).toLocaleString());
         IobTotal bolusIob = treatmentsPlugin.getCalculationToTimeTreatments(time).round();
-        IobTotal basalIob = treatmentsPlugin.getCalculationToTimeTempBasals(time, now, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget).round();
-        // OpenAPSSMB only
-        // Add expected zero temp basal for next 240 mins
-        IobTotal basalIobWithZeroTemp = basalIob.copy();
-        TemporaryBasal t = new TemporaryBasal(injector)
-                .date(now + 60 * 1000L)
-                .duration(240)
-                .absolute(0);
-        if (t.date < time) {
-            Profile profile = profileFunction.getProfile(t.date);
-            if (profile != null) {
-                IobTotal calc = t.iobCalc(time, profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
-                basalIobWithZeroTemp.plus(calc);
+        IobTotal basalIob = treatmentsPlugin.getAbsoluteIOBTempBasals(time).round();
+
+        IobTotal iobTotal = IobTotal.combine(bolusIob, basalIob).round();
+        if (time < System.currentTimeMillis()) {
+            synchronized (absIobTable) {
+                if (generation == cacheGeneration) absIobTable.put(time, iobTotal);
             }
         }
-
-        basalIob.iobWithZeroTemp = IobTotal.combine(bolusIob, basalIobWithZeroTemp).round();
-
-        return IobTotal.combine(bolusIob, basalIob).round();
+        return iobTotal;
     }
 
     @Nullable
     public Long findPreviousTimeFromBucketedData(long time) {
-        if (bucketed_data == null)
+        List<InMemoryGlucoseValue> buckets = bucketed_data;
+        if (buckets == null)
             return null;
-        for (int index = 0; index < bucketed_data.size(); index++) {
-            if (bucketed_data.get(index).getTimestamp() <= time)
-                return bucketed_data.get(index).getTimestamp();
+        for (int index = 0; index < buckets.size(); index++) {
+            if (buckets.get(index).getTimestamp() <= time)
+                return buckets.get(index).getTimestamp();
         }
         return null;
     }
 
     public BasalData getBasalData(Profile profile, long time) {
-        synchronized (dataLock) {
-            long now = System.currentTimeMillis();
-            time = roundUpTime(time);
-            BasalData retval = basalDataTable.get(time);
-            if (retval == null) {
-                retval = new BasalData();
-                TemporaryBasal tb = treatmentsPlugin.getTempBasalFromHistory(time);
-                retval.basal = profile.getBasal(time);
-                if (tb != null) {
-                    retval.isTempBasalRunning = true;
-                    retval.tempBasalAbsolute = tb.tempBasalConvertedToAbsolute(time, profile);
-                } else {
-                    retval.isTempBasalRunning = false;
-                    retval.tempBasalAbsolute = retval.basal;
-                }
-                if (time < now) {
-                    basalDataTable.append(time, retval);
-                }
-                //log.debug(">>> getBasalData Cache miss " + new Date(time).toLocaleString());
+        long generation = cacheGeneration;
+        long now = System.currentTimeMillis();
+        time = roundUpTime(time);
+        BasalData retval;
+        synchronized (basalDataTable) {
+            retval = basalDataTable.get(time);
+        }
+        if (retval == null) {
+            retval = new BasalData();
+            TemporaryBasal tb = treatmentsPlugin.getTempBasalFromHistory(time);
+            retval.basal = profile.getBasal(time);
+            if (tb != null) {
+                retval.isTempBasalRunning = true;
+                retval.tempBasalAbsolute = tb.tempBasalConvertedToAbsolute(time, profile);
             } else {
-                //log.debug(">>> getBasalData Cache hit " +  new Date(time).toLocaleString());
+                retval.isTempBasalRunning = false;
+                retval.tempBasalAbsolute = retval.basal;
             }
-            return retval;
+            if (time < now) {
+                synchronized (basalDataTable) {
+                    if (generation == cacheGeneration) basalDataTable.append(time, retval);
+                }
+            }
+            //log.debug(">>> getBasalData Cache miss " + new Date(time).toLocaleString());
+        } else {
+            //log.debug(">>> getBasalData Cache hit " +  new Date(time).toLocaleString());
         }
+        return retval;
     }
 
     @Nullable
     public AutosensData getAutosensData(long time) {
-        synchronized (dataLock) {
-            long now = System.currentTimeMillis();
-            if (time > now) {
-                return null;
-            }
-            Long previous = findPreviousTimeFromBucketedData(time);
-            if (previous == null) {
-                return null;
-            }
-            time = roundUpTime(previous);
-            AutosensData data = autosensDataTable.get(time);
-            if (data != null) {
-                //log.debug(">>> AUTOSENSDATA Cache hit " + data.toString());
-                return data;
-            } else {
-                //log.debug(">>> AUTOSENSDATA Cache miss " + new Date(time).toLocaleString());
-                return null;
-            }
+        long now = System.currentTimeMillis();
+        if (time > now) {
+            return null;
+        }
+        Long previous = findPreviousTimeFromBucketedData(time);
+        if (previous == null) {
+            return null;
+        }
+        time = roundUpTime(previous);
+        AutosensData data = autosensDataForReading().get(time);
+        if (data != null) {
+            //log.debug(">>> AUTOSENSDATA Cache hit " + data.toString());
+            return data;
+        } else {
+            //log.debug(">>> AUTOSENSDATA Cache miss " + new Date(time).toLocaleString());
+            return null;
         }
     }
 
+    /**
+     * Waits (max 5s) for running calculation so APS and bolus wizard see the latest BG and carbs.
+     * Other readers should use getLastAutosensData which never waits.
+     */
     @Nullable
     public AutosensData getLastAutosensDataSynchronized(String reason) {
-        if (thread != null && thread.isAlive()) {
+        Thread calculation = thread;
+        if (calculation != null && calculation.isAlive() && calculation != Thread.currentThread()) {
             getAapsLogger().debug(LTag.AUTOSENS, "AUTOSENSDATA is waiting for calculation thread: " + reason);
             try {
-                thread.join(5000);
+                calculation.join(5000);
             } catch (InterruptedException ignored) {
             }
             getAapsLogger().debug(LTag.AUTOSENS, "AUTOSENSDATA finished waiting for calculation thread: " + reason);
         }
-        synchronized (dataLock) {
-            return getLastAutosensData(reason);
-        }
+        return getLastAutosensData(reason);
     }
 
 
@@ -680,18 +821,18 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
         double sum = 0;
         int count = 0;
         int valuesToProcess = timeInMinutes / 5;
-        synchronized (dataLock) {
-            for (int i = autosensDataTable.size() - 1; i >= 0 && count < valuesToProcess; i--) {
-                if (autosensDataTable.valueAt(i).failoverToMinAbsorbtionRate)
-                    sum++;
-                count++;
-            }
+        LongSparseArray<AutosensData> table = autosensDataForReading();
+        for (int i = table.size() - 1; i >= 0 && count < valuesToProcess; i--) {
+            if (table.valueAt(i).failoverToMinAbsorbtionRate)
+                sum++;
+            count++;
         }
         return sum / count;
     }
 
     @Nullable
     public AutosensData getLastAutosensData(String reason) {
+        LongSparseArray<AutosensData> autosensDataTable = autosensDataForReading();
         if (autosensDataTable.size() < 1) {
             getAapsLogger().debug(LTag.AUTOSENS, "AUTOSENSDATA null: autosensDataTable empty (" + reason + ")");
             return null;
@@ -721,6 +862,7 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
 
     @Override
     public String lastDataTime() {
+        LongSparseArray<AutosensData> autosensDataTable = autosensDataForReading();
         if (autosensDataTable.size() > 0)
             return dateUtil.dateAndTimeAndSecondsString(autosensDataTable.valueAt(autosensDataTable.size() - 1).time);
         else
@@ -777,16 +919,18 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
 
     public IobTotal[] calculateIobArrayInDia(Profile profile) {
         // predict IOB out to DIA plus 30m
-        long time = System.currentTimeMillis();
-        time = roundUpTime(time);
+        long now = System.currentTimeMillis();
+        long time = roundUpTime(now);
         int len = (int) ((profile.getDia() * 60 + 30) / 5);
         IobTotal[] array = new IobTotal[len];
-        int pos = 0;
+        Profile currentProfile = profileFunction.getProfile();
+        IobArrayCalculator calculator = new IobArrayCalculator(treatmentsPlugin, profileFunction, activePlugin, sp)
+                .prepare(currentProfile, now, null);
         for (int i = 0; i < len; i++) {
             long t = time + i * 5 * 60000;
-            IobTotal iob = calculateFromTreatmentsAndTempsSynchronized(t, profile);
-            array[pos] = iob;
-            pos++;
+            IobTotal bolusIob = calculator.bolusIob(t, currentProfile).round();
+            IobTotal basalIob = calculator.basalIob(t).round();
+            array[i] = combineWithZeroTemp(t, now, bolusIob, basalIob, profile, null);
         }
         return array;
     }
@@ -796,16 +940,40 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
         long now = DateUtil.now();
         int len = (4 * 60) / 5;
         IobTotal[] array = new IobTotal[len];
-        int pos = 0;
+        IobArrayCalculator.SmbParams smbParams = new IobArrayCalculator.SmbParams(lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
+        Profile profile = profileFunction.getProfile();
+        IobArrayCalculator calculator = new IobArrayCalculator(treatmentsPlugin, profileFunction, activePlugin, sp)
+                .prepare(profile, now, smbParams);
+        Profile zeroTempProfile = profileFunction.getProfile(now + 60 * 1000L);
         for (int i = 0; i < len; i++) {
             long t = now + i * 5 * 60000;
-            IobTotal iob = calculateFromTreatmentsAndTempsSynchronized(t, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget);
-            array[pos] = iob;
-            pos++;
+            IobTotal bolusIob = calculator.bolusIob(t, profile).round();
+            IobTotal basalIob = calculator.basalIob(t).round();
+            array[i] = combineWithZeroTemp(t, now, bolusIob, basalIob, zeroTempProfile, smbParams);
         }
         return array;
     }
 
+    private IobTotal combineWithZeroTemp(long time, long now, IobTotal bolusIob, IobTotal basalIob, @Nullable Profile profile, @Nullable IobArrayCalculator.SmbParams smbParams) {
+        // OpenAPSSMB only
+        // Add expected zero temp basal for next 240 mins
+        IobTotal basalIobWithZeroTemp = basalIob.copy();
+        TemporaryBasal t = new TemporaryBasal(injector)
+                .date(now + 60 * 1000L)
+                .duration(240)
+                .absolute(0);
+        if (t.date < time && profile != null) {
+            IobTotal calc = smbParams == null
+                    ? t.iobCalc(time, profile)
+                    : t.iobCalc(time, profile, smbParams.lastAutosensResult, smbParams.exerciseMode, smbParams.halfBasalExerciseTarget, smbParams.isTempTarget);
+            basalIobWithZeroTemp.plus(calc);
+        }
+
+        basalIob.iobWithZeroTemp = IobTotal.combine(bolusIob, basalIobWithZeroTemp).round();
+
+        return IobTotal.combine(bolusIob, basalIob).round();
+    }
+
     public String iobArrayToString(IobTotal[] array) {
         StringBuilder sb = new StringBuilder();
         sb.append("[");
@@ -861,20 +1029,25 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
             // clear up 5 min back for proper COB calculation
             long time = ev.getTime() - 5 * 60 * 1000L;
             getAapsLogger().debug(LTag.AUTOSENS, "Invalidating cached data to: " + dateUtil.dateAndTimeAndSecondsString(time));
-            for (int index = iobTable.size() - 1; index >= 0; index--) {
-                if (iobTable.keyAt(index) > time) {
-                    getAapsLogger().debug(LTag.AUTOSENS, "Removing from iobTable: " + dateUtil.dateAndTimeAndSecondsString(iobTable.keyAt(index)));
-                    iobTable.removeAt(index);
-                } else {
-                    break;
+            cacheGeneration++;
+            synchronized (iobTable) {
+                for (int index = iobTable.size() - 1; index >= 0; index--) {
+                    if (iobTable.keyAt(index) > time) {
+                        getAapsLogger().debug(LTag.AUTOSENS, "Removing from iobTable: " + dateUtil.dateAndTimeAndSecondsString(iobTable.keyAt(index)));
+                        iobTable.removeAt(index);
+                    } else {
+                        break;
+                    }
                 }
             }
-            for (int index = absIobTable.size() - 1; index >= 0; index--) {
-                if (absIobTable.keyAt(index) > time) {
-                    getAapsLogger().debug(LTag.AUTOSENS, "Removing from absIobTable: " + dateUtil.dateAndTimeAndSecondsString(absIobTable.keyAt(index)));
-                    absIobTable.removeAt(index);
-                } else {
-                    break;
+            synchronized (absIobTable) {
+                for (int index = absIobTable.size() - 1; index >= 0; index--) {
+                    if (absIobTable.keyAt(index) > time) {
+                        getAapsLogger().debug(LTag.AUTOSENS, "Removing from absIobTable: " + dateUtil.dateAndTimeAndSecondsString(absIobTable.keyAt(index)));
+                        absIobTable.removeAt(index);
+                    } else {
+                        break;
+                    }
                 }
             }
             for (int index = autosensDataTable.size() - 1; index >= 0; index--) {
@@ -885,12 +1058,15 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
                     break;
                 }
             }
-            for (int index = basalDataTable.size() - 1; index >= 0; index--) {
-                if (basalDataTable.keyAt(index) > time) {
-                    getAapsLogger().debug(LTag.AUTOSENS, "Removing from basalDataTable: " + dateUtil.dateAndTimeAndSecondsString(basalDataTable.keyAt(index)));
-                    basalDataTable.removeAt(index);
-                } else {
-                    break;
+            publishAutosensData();
+            synchronized (basalDataTable) {
+                for (int index = basalDataTable.size() - 1; index >= 0; index--) {
+                    if (basalDataTable.keyAt(index) > time) {
+                        getAapsLogger().debug(LTag.AUTOSENS, "Removing from basalDataTable: " + dateUtil.dateAndTimeAndSecondsString(basalDataTable.keyAt(index)));
+                        basalDataTable.removeAt(index);
+                    } else {
+                        break;
+                    }
                 }
             }
         }
@@ -901,9 +1077,15 @@ public class IobCobCalculatorPlugin extends PluginBase implements IobCobCalculat
     public void clearCache() {
         synchronized (dataLock) {
             getAapsLogger().debug(LTag.AUTOSENS, "Clearing cached data.");
-            iobTable = new LongSparseArray<>();
+            cacheGeneration++;
+            synchronized (iobTable) {
+                iobTable.clear();
+            }
+            synchronized (basalDataTable) {
+                basalDataTable.clear();
+            }
             autosensDataTable = new LongSparseArray<>();
-            basalDataTable = new LongSparseArray<>();
+            publishAutosensData();
         }
     }
 
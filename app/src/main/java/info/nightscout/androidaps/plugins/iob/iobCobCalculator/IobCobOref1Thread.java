@@ -115,8 +115,7 @@ public class IobCobOref1Thread extends Thread {
 
             synchronized (iobCobCalculatorPlugin.getDataLock()) {
                 if (bgDataReload) {
-                    iobCobCalculatorPlugin.loadBgData(end);
-                    iobCobCalculatorPlugin.createBucketedData();
+                    iobCobCalculatorPlugin.loadOrAppendBgData(end, cause);
                     rxBus.send(new EventAutosensBgLoaded(cause));
                 }
                 List<InMemoryGlucoseValue> bucketed_data = iobCobCalculatorPlugin.getBucketedData();
@@ -130,8 +129,17 @@ public class IobCobOref1Thread extends Thread {
                 long prevDataTime = IobCobCalculatorPlugin.roundUpTime(bucketed_data.get(bucketed_data.size() - 3).getTimestamp());
                 aapsLogger.debug(LTag.AUTOSENS, "Prev data time: " + dateUtil.dateAndTimeString(prevDataTime));
                 AutosensData previous = autosensDataTable.get(prevDataTime);
+                // calculated data always cover the oldest part of bucketed data (invalidation removes everything newer)
+                // so continue from the newest calculated record
+                int startIndex = bucketed_data.size() - 4;
+                for (int i = 0; i < startIndex; i++) {
+                    if (autosensDataTable.get(IobCobCalculatorPlugin.roundUpTime(bucketed_data.get(i).getTimestamp())) != null) {
+                        startIndex = i;
+                        break;
+                    }
+                }
                 // start from oldest to be able sub cob
-                for (int i = bucketed_data.size() - 4; i >= 0; i--) {
+                for (int i = startIndex; i >= 0; i--) {
                     String progress = i + (buildHelper.isDev() ? " (" + from + ")" : "");
                     rxBus.send(new EventIobCalculationProgress(progress));
 
@@ -141,8 +149,7 @@ public class IobCobOref1Thread extends Thread {
                         return;
                     }
                     // check if data already exists
-                    long bgTime = bucketed_data.get(i).getTimestamp();
-                    bgTime = IobCobCalculatorPlugin.roundUpTime(bgTime);
+                    long bgTime = IobCobCalculatorPlugin.roundUpTime(bucketed_data.get(i).getTimestamp());
                     if (bgTime > IobCobCalculatorPlugin.roundUpTime(now()))
                         continue;
 
@@ -158,7 +165,7 @@ public class IobCobOref1Thread extends Thread {
                         return; // profile not set yet
                     }
 
-                    aapsLogger.debug(LTag.AUTOSENS, "Processing calculation thread: " + from + " (" + i + "/" + bucketed_data.size() + ")");
+                    aapsLogger.debug(LTag.AUTOSENS, "Processing calculation thread: {} ({}/{})", from, i, bucketed_data.size());
 
                     double sens = profile.getIsfMgdl(bgTime);
 
@@ -199,12 +206,12 @@ public class IobCobOref1Thread extends Thread {
                         AutosensData hourAgoData = iobCobCalculatorPlugin.getAutosensData(hourago);
                         if (hourAgoData != null) {
                             int initialIndex = autosensDataTable.indexOfKey(hourAgoData.time);
-                            aapsLogger.debug(LTag.AUTOSENS, ">>>>> bucketed_data.size()=" + bucketed_data.size() + " i=" + i + " hourAgoData=" + hourAgoData.toString());
+                            aapsLogger.debug(LTag.AUTOSENS, ">>>>> bucketed_data.size()={} i={} hourAgoData={}", bucketed_data.size(), i, hourAgoData);
                             int past = 1;
                             try {
                                 for (; past < 12; past++) {
                                     AutosensData ad = autosensDataTable.valueAt(initialIndex + past);
-                                    aapsLogger.debug(LTag.AUTOSENS, ">>>>> past=" + past + " ad=" + (ad != null ? ad.toString() : null));
+                                    aapsLogger.debug(LTag.AUTOSENS, ">>>>> past={} ad={}", past, ad);
                                     if (ad == null) {
                                         aapsLogger.debug(LTag.AUTOSENS, autosensDataTable.toString());
                                         aapsLogger.debug(LTag.AUTOSENS, bucketed_data.toString());
@@ -240,7 +247,7 @@ public class IobCobOref1Thread extends Thread {
                                 break;
                             }
                         } else {
-                            aapsLogger.debug(LTag.AUTOSENS, ">>>>> bucketed_data.size()=" + bucketed_data.size() + " i=" + i + " hourAgoData=" + "null");
+                            aapsLogger.debug(LTag.AUTOSENS, ">>>>> bucketed_data.size()={} i={} hourAgoData=null", bucketed_data.size(), i);
                         }
                     }
 
@@ -378,11 +385,11 @@ public class IobCobOref1Thread extends Thread {
                     previous = autosensData;
                     if (bgTime < now())
                         autosensDataTable.put(bgTime, autosensData);
-                    aapsLogger.debug(LTag.AUTOSENS, "Running detectSensitivity from: " + dateUtil.dateAndTimeString(oldestTimeWithData) + " to: " + dateUtil.dateAndTimeString(bgTime) + " lastDataTime:" + iobCobCalculatorPlugin.lastDataTime());
+                    aapsLogger.debug(LTag.AUTOSENS, () -> "Running detectSensitivity from: " + dateUtil.dateAndTimeString(oldestTimeWithData) + " to: " + dateUtil.dateAndTimeString(bgTime) + " lastDataTime:" + iobCobCalculatorPlugin.lastDataTime());
                     AutosensResult sensitivity = iobCobCalculatorPlugin.detectSensitivityWithLock(oldestTimeWithData, bgTime);
-                    aapsLogger.debug(LTag.AUTOSENS, "Sensitivity result: " + sensitivity.toString());
+                    aapsLogger.debug(LTag.AUTOSENS, () -> "Sensitivity result: " + sensitivity.toString());
                     autosensData.autosensResult = sensitivity;
-                    aapsLogger.debug(LTag.AUTOSENS, autosensData.toString());
+                    aapsLogger.debug(LTag.AUTOSENS, autosensData::toString);
                 }
             }
             new Thread(() -> {
@@ -390,6 +397,8 @@ public class IobCobOref1Thread extends Thread {
                 rxBus.send(new EventAutosensCalculationFinished(cause));
             }).start();
         } finally {
+            // make calculated data visible to readers, also after abort
+            iobCobCalculatorPlugin.publishAutosensData();
             if (mWakeLock != null)
                 mWakeLock.release();
             rxBus.send(new EventIobCalculationProgress(""));
@@ -112,8 +112,7 @@ public class IobCobThread extends Thread {
 
             synchronized (iobCobCalculatorPlugin.getDataLock()) {
                 if (bgDataReload) {
-                    iobCobCalculatorPlugin.loadBgData(end);
-                    iobCobCalculatorPlugin.createBucketedData();
+                    iobCobCalculatorPlugin.loadOrAppendBgData(end, cause);
                     rxBus.send(new EventAutosensBgLoaded(cause));
                 }
                 List<InMemoryGlucoseValue> bucketed_data = iobCobCalculatorPlugin.getBucketedData();
@@ -127,8 +126,17 @@ public class IobCobThread extends Thread {
                 long prevDataTime = IobCobCalculatorPlugin.roundUpTime(bucketed_data.get(bucketed_data.size() - 3).getTimestamp());
                 aapsLogger.debug(LTag.AUTOSENS, "Prev data time: " + dateUtil.dateAndTimeString(prevDataTime));
                 AutosensData previous = autosensDataTable.get(prevDataTime);
+                // calculated data always cover the oldest part of bucketed data (invalidation removes everything newer)
+                // so continue from the newest calculated record
+                int startIndex = bucketed_data.size() - 4;
+                for (int i = 0; i < startIndex; i++) {
+                    if (autosensDataTable.get(IobCobCalculatorPlugin.roundUpTime(bucketed_data.get(i).getTimestamp())) != null) {
+                        startIndex = i;
+                        break;
+                    }
+                }
                 // start from oldest to be able sub cob
-                for (int i = bucketed_data.size() - 4; i >= 0; i--) {
+                for (int i = startIndex; i >= 0; i--) {
                     String progress = i + (buildHelper.isDev() ? " (" + from + ")" : "");
                     rxBus.send(new EventIobCalculationProgress(progress));
 
@@ -320,6 +328,8 @@ public class IobCobThread extends Thread {
                 rxBus.send(new EventAutosensCalculationFinished(cause));
             }).start();
         } finally {
+            // make calculated data visible to readers, also after abort
+            iobCobCalculatorPlugin.publishAutosensData();
             if (mWakeLock != null)
                 mWakeLock.release();
             rxBus.send(new EventIobCalculationProgress(""));
@@ -56,6 +56,7 @@ import info.nightscout.androidaps.plugins.pump.combo.events.EventComboPumpUpdate
 import info.nightscout.androidaps.plugins.pump.combo.ruffyscripter.BasalProfile;
 import info.nightscout.androidaps.plugins.pump.combo.ruffyscripter.BolusProgressReporter;
 import info.nightscout.androidaps.plugins.pump.combo.ruffyscripter.CommandResult;
+import info.nightscout.androidaps.plugins.pump.combo.ruffyscripter.MenuRing;
 import info.nightscout.androidaps.plugins.pump.combo.ruffyscripter.PumpState;
 import info.nightscout.androidaps.plugins.pump.combo.ruffyscripter.PumpWarningCodes;
 import info.nightscout.androidaps.plugins.pump.combo.ruffyscripter.RuffyCommands;
@@ -80,6 +81,7 @@ import info.nightscout.androidaps.utils.sharedPreferences.SP;
 public class ComboPlugin extends PumpPluginBase implements PumpInterface, ConstraintsInterface {
     static final String COMBO_TBRS_SET = "combo_tbrs_set";
     static final String COMBO_BOLUSES_DELIVERED = "combo_boluses_delivered";
+    static final String COMBO_MENU_RING = "combo_menu_ring";
 
     private final ResourceHelper resourceHelper;
     private final ProfileFunction profileFunction;
@@ -166,7 +168,8 @@ public class ComboPlugin extends PumpPluginBase implements PumpInterface, Constr
 
     @Override protected void onStart() {
         super.onStart();
-        ruffyScripter = new RuffyScripter(context);
+        ruffyScripter = new RuffyScripter(context,
+                new MenuRing(sp.getString(COMBO_MENU_RING, ""), menuRing -> sp.putString(COMBO_MENU_RING, menuRing)));
         OPERATION_NOT_SUPPORTED = new PumpEnactResult(getInjector())
                 .success(false).enacted(false).comment(getResourceHelper().gs(R.string.combo_pump_unsupported_operation));
     }
@@ -0,0 +1,153 @@
+package info.nightscout.androidaps.plugins.pump.combo.ruffyscripter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.monkey.d.ruffy.ruffy.driver.display.MenuType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Order of the pump's main menus. Menus can be hidden in the pump's menu settings, so the
+ * order is learned while navigating and stored, rather than hardcoded.
+ * <p>
+ * The MENU key moves to the next menu. The BACK key is expected to move to the previous menu,
+ * whether it does is learned as well.
+ * <p>
+ * Menus may have been hidden since the order was stored, so only steps seen in the current
+ * session are trusted for pressing keys without waiting for each menu.
+ */
+public class MenuRing {
+
+    public interface Storage {
+        void store(String menuRing);
+    }
+
+    public static class Path {
+        public final boolean forward;
+        // menus displayed after each key press, the last one is the target
+        public final List<MenuType> menus;
+        // all steps were seen in this session, keys can be pressed without waiting for each menu to be displayed
+        public final boolean predictable;
+
+        Path(boolean forward, List<MenuType> menus, boolean predictable) {
+            this.forward = forward;
+            this.menus = menus;
+            this.predictable = predictable;
+        }
+    }
+
+    private final Storage storage;
+
+    // menu -> menu displayed after pressing MENU
+    private final Map<MenuType, MenuType> next = new EnumMap<>(MenuType.class);
+    // null until BACK was pressed in a known ring
+    @Nullable private Boolean backSupported;
+    // menus whose next menu was seen in this session
+    private final Set<MenuType> confirmed = EnumSet.noneOf(MenuType.class);
+    private boolean backConfirmed = false;
+    private boolean changed = false;
+
+    public MenuRing(@Nullable String stored, Storage storage) {
+        this.storage = storage;
+        if (stored == null || stored.isEmpty()) return;
+        String[] parts = stored.split(";");
+        for (String step : parts[0].split(",")) {
+            String[] menus = step.split(">");
+            if (menus.length != 2) continue;
+            try {
+                next.put(MenuType.valueOf(menus[0]), MenuType.valueOf(menus[1]));
+            } catch (IllegalArgumentException e) {
+                // menu type removed from driver, will be learned again
+            }
+        }
+        if (parts.length > 1 && parts[1].startsWith("back="))
+            backSupported = Boolean.valueOf(parts[1].substring("back=".length()));
+    }
+
+    String serialize() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<MenuType, MenuType> step : next.entrySet()) {
+            if (sb.length() > 0) sb.append(",");
+            sb.append(step.getKey()).append(">").append(step.getValue());
+        }
+        if (backSupported != null) sb.append(";back=").append(backSupported);
+        return sb.toString();
+    }
+
+    /**
+     * Stores learned changes
+     */
+    public void save() {
+        if (!changed) return;
+        storage.store(serialize());
+        changed = false;
+    }
+
+    /**
+     * Stops trusting the stored order until it's seen again, e.g. after reconnecting as menus
+     * may have been hidden on the pump in between
+     */
+    public void newSession() {
+        confirmed.clear();
+        backConfirmed = false;
+    }
+
+    /**
+     * MENU was pressed in menu from and menu to was displayed
+     */
+    public void forward(MenuType from, MenuType to) {
+        confirmed.add(from);
+        if (next.get(from) == to) return;
+        next.put(from, to);
+        changed = true;
+    }
+
+    /**
+     * BACK was pressed in menu from and menu to was displayed
+     */
+    public void back(MenuType from, MenuType to) {
+        boolean supported = next.get(to) == from;
+        backConfirmed = true;
+        if (backSupported != null && backSupported == supported) return;
+        backSupported = supported;
+        changed = true;
+    }
+
+    /**
+     * @return the path with fewest key presses, null if target is not known to be reachable
+     */
+    @Nullable
+    public Path path(@NonNull MenuType from, @NonNull MenuType to) {
+        List<MenuType> forward = new ArrayList<>();
+        MenuType menu = from;
+        boolean closed = false;
+        while ((menu = next.get(menu)) != null && forward.size() <= next.size()) {
+            forward.add(menu);
+            if (menu == from) {
+                closed = true;
+                break;
+            }
+        }
+        int targetIndex = forward.indexOf(to);
+        if (targetIndex == -1) return null;
+        List<MenuType> forwardPath = forward.subList(0, targetIndex + 1);
+        boolean forwardConfirmed = confirmed.contains(from) && confirmed.containsAll(forwardPath.subList(0, forwardPath.size() - 1));
+        if (!closed || Boolean.FALSE.equals(backSupported))
+            return new Path(true, forwardPath, forwardConfirmed);
+
+        // forward ends with from, pressing BACK displays its menus in reverse order
+        List<MenuType> backwardPath = new ArrayList<>();
+        for (int i = forward.size() - 2; i >= targetIndex; i--)
+            backwardPath.add(forward.get(i));
+        // BACK from a menu leads to the menu whose next one it is
+        if (backwardPath.size() < forwardPath.size())
+            return new Path(false, backwardPath, Boolean.TRUE.equals(backSupported) && backConfirmed && confirmed.containsAll(backwardPath));
+        return new Path(true, forwardPath, forwardConfirmed);
+    }
+}
@@ -59,6 +59,8 @@ public class RuffyScripter implements RuffyCommands {
 
     private boolean started = false;
 
+    private final MenuRing menuRing;
+
     private final Object screenlock = new Object();
 
     private final IRTHandler mHandler = new IRTHandler.Stub() {
@@ -118,7 +120,8 @@ public class RuffyScripter implements RuffyCommands {
         }
     };
 
-    public RuffyScripter(Context context) {
+    public RuffyScripter(Context context, MenuRing menuRing) {
+        this.menuRing = menuRing;
         boolean boundSucceeded = false;
 
         try {
@@ -466,6 +469,8 @@ public class RuffyScripter implements RuffyCommands {
                 }
                 SystemClock.sleep(50);
             }
+            // menus may have been hidden while disconnected
+            menuRing.newSession();
         } catch (CommandException e) {
             try {
                 ruffyService.doRTDisconnect();
@@ -633,7 +638,7 @@ public class RuffyScripter implements RuffyCommands {
         log.debug("Releasing menu key");
     }
 
-    private void pressBackKey() {
+    public void pressBackKey() {
         log.debug("Pressing back key");
         pressKey(Key.BACK);
         log.debug("Releasing back key");
@@ -686,29 +691,98 @@ public class RuffyScripter implements RuffyCommands {
         }
     }
 
+    /**
+     * Navigates from the main menu using the learned menu order. Paths seen in this session are
+     * taken in the shorter direction without waiting for each menu to be displayed, others one
+     * menu at a time, learning the order.
+     */
     public void navigateToMenu(MenuType desiredMenu) {
         verifyMenuIsDisplayed(MenuType.MAIN_MENU);
         int moves = 20;
+        boolean skipIntermediateMenus = true;
         MenuType lastSeenMenu = getCurrentMenu().getType();
-        while (lastSeenMenu != desiredMenu) {
-            log.debug("Navigating to menu " + desiredMenu + ", current menu: " + lastSeenMenu);
-            moves--;
-            if (moves == 0) {
-                throw new CommandException("Menu not found searching for " + desiredMenu
-                        + ". Check menu settings on your pump to ensure it's not hidden.");
-            }
-            MenuType next = getCurrentMenu().getType();
-            pressMenuKey();
-            // sometimes the pump takes a bit longer (more than one screen refresh) to advance
-            // to the next menu. wait until we actually see the change to avoid overshoots.
-            while (next == lastSeenMenu) {
-                waitForScreenUpdate();
-                next = getCurrentMenu().getType();
+        try {
+            while (lastSeenMenu != desiredMenu) {
+                log.debug("Navigating to menu " + desiredMenu + ", current menu: " + lastSeenMenu);
+                MenuRing.Path path = menuRing.path(lastSeenMenu, desiredMenu);
+                if (path != null && path.predictable && skipIntermediateMenus && path.menus.size() > 1) {
+                    moves -= path.menus.size();
+                    if (moves <= 0) {
+                        throw new CommandException("Menu not found searching for " + desiredMenu
+                                + ". Check menu settings on your pump to ensure it's not hidden.");
+                    }
+                    log.debug("Expecting menus " + path.menus);
+                    for (int i = 0; i < path.menus.size(); i++) {
+                        if (path.forward) pressMenuKey();
+                        else pressBackKey();
+                    }
+                    waitForMenu(desiredMenu);
+                    // if a menu was hidden, the target shows up early and is passed by the remaining key presses
+                    lastSeenMenu = waitForStableMenu();
+                    if (lastSeenMenu != desiredMenu) {
+                        // menu order changed or a key press was lost, continue checking each menu
+                        log.debug("Ended in menu " + lastSeenMenu + " instead of " + desiredMenu);
+                        skipIntermediateMenus = false;
+                        menuRing.newSession();
+                    }
+                    continue;
+                }
+                moves--;
+                if (moves <= 0) {
+                    throw new CommandException("Menu not found searching for " + desiredMenu
+                            + ". Check menu settings on your pump to ensure it's not hidden.");
+                }
+                MenuType next = getCurrentMenu().getType();
+                if (path == null || path.forward) {
+                    pressMenuKey();
+                    // sometimes the pump takes a bit longer (more than one screen refresh) to advance
+                    // to the next menu. wait until we actually see the change to avoid overshoots.
+                    while (next == lastSeenMenu) {
+                        waitForScreenUpdate();
+                        next = getCurrentMenu().getType();
+                    }
+                    menuRing.forward(lastSeenMenu, next);
+                } else {
+                    pressBackKey();
+                    // back key may not move between menus at all
+                    for (int updates = 0; next == lastSeenMenu && updates < 5; updates++) {
+                        waitForScreenUpdate();
+                        next = getCurrentMenu().getType();
+                    }
+                    menuRing.back(lastSeenMenu, next);
+                }
+                lastSeenMenu = next;
             }
-            lastSeenMenu = getCurrentMenu().getType();
+        } finally {
+            menuRing.save();
         }
     }
 
+    /**
+     * Waits up to 5 screen updates for expected menu to be displayed
+     */
+    private void waitForMenu(MenuType expectedMenu) {
+        MenuType menu = getCurrentMenu().getType();
+        for (int updates = 0; menu != expectedMenu && updates < 5; updates++) {
+            waitForScreenUpdate();
+            menu = getCurrentMenu().getType();
+        }
+    }
+
+    /**
+     * @return displayed menu once it's the same after a screen update, or after 5 screen updates
+     */
+    private MenuType waitForStableMenu() {
+        MenuType menu = getCurrentMenu().getType();
+        for (int updates = 0; updates < 5; updates++) {
+            waitForScreenUpdate();
+            MenuType displayed = getCurrentMenu().getType();
+            if (displayed == menu) break;
+            menu = displayed;
+        }
+        return menu;
+    }
+
     /**
      * Wait till a menu changed has completed, "away" from the menu provided as argument.
      */
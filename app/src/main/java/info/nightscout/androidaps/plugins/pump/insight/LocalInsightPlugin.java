@@ -110,6 +110,7 @@ import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.GetPumpS
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.GetTotalDailyDoseMessage;
 import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.ResetPumpStatusRegisterMessage;
 import info.nightscout.androidaps.plugins.pump.insight.connection_service.InsightConnectionService;
+import info.nightscout.androidaps.plugins.pump.insight.connection_service.MessageRequest;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightBolusID;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightHistoryOffset;
 import info.nightscout.androidaps.plugins.pump.insight.database.InsightPumpID;
@@ -425,21 +426,36 @@ public class LocalInsightPlugin extends PumpPluginBase implements PumpInterface,
             resetMessage.setActiveTBRChanged(registerMessage.isActiveTBRChanged());
             resetMessage.setActiveBolusesChanged(registerMessage.isActiveBolusesChanged());
             connectionService.requestMessage(resetMessage).await();
-            if (registerMessage.isOperatingModeChanged())
-                operatingMode = connectionService.requestMessage(new GetOperatingModeMessage()).await().getOperatingMode();
-            if (registerMessage.isBatteryStatusChanged())
-                batteryStatus = connectionService.requestMessage(new GetBatteryStatusMessage()).await().getBatteryStatus();
-            if (registerMessage.isCartridgeStatusChanged())
-                cartridgeStatus = connectionService.requestMessage(new GetCartridgeStatusMessage()).await().getCartridgeStatus();
-            if (registerMessage.isTotalDailyDoseChanged())
-                totalDailyDose = connectionService.requestMessage(new GetTotalDailyDoseMessage()).await().getTDD();
+            // independent reads are sent without waiting for each response
+            MessageRequest<GetOperatingModeMessage> operatingModeRequest = registerMessage.isOperatingModeChanged()
+                ? connectionService.requestMessage(new GetOperatingModeMessage(), true) : null;
+            MessageRequest<GetBatteryStatusMessage> batteryStatusRequest = registerMessage.isBatteryStatusChanged()
+                ? connectionService.requestMessage(new GetBatteryStatusMessage(), true) : null;
+            MessageRequest<GetCartridgeStatusMessage> cartridgeStatusRequest = registerMessage.isCartridgeStatusChanged()
+                ? connectionService.requestMessage(new GetCartridgeStatusMessage(), true) : null;
+            MessageRequest<GetTotalDailyDoseMessage> totalDailyDoseRequest = registerMessage.isTotalDailyDoseChanged()
+                ? connectionService.requestMessage(new GetTotalDailyDoseMessage(), true) : null;
+            if (operatingModeRequest != null)
+                operatingMode = operatingModeRequest.await().getOperatingMode();
+            if (batteryStatusRequest != null)
+                batteryStatus = batteryStatusRequest.await().getBatteryStatus();
+            if (cartridgeStatusRequest != null)
+                cartridgeStatus = cartridgeStatusRequest.await().getCartridgeStatus();
+            if (totalDailyDoseRequest != null)
+                totalDailyDose = totalDailyDoseRequest.await().getTDD();
             if (operatingMode == OperatingMode.STARTED) {
-                if (registerMessage.isActiveBasalRateChanged())
-                    activeBasalRate = connectionService.requestMessage(new GetActiveBasalRateMessage()).await().getActiveBasalRate();
-                if (registerMessage.isActiveTBRChanged())
-                    activeTBR = connectionService.requestMessage(new GetActiveTBRMessage()).await().getActiveTBR();
-                if (registerMessage.isActiveBolusesChanged())
-                    activeBoluses = connectionService.requestMessage(new GetActiveBolusesMessage()).await().getActiveBoluses();
+                MessageRequest<GetActiveBasalRateMessage> activeBasalRateRequest = registerMessage.isActiveBasalRateChanged()
+                    ? connectionService.requestMessage(new GetActiveBasalRateMessage(), true) : null;
+                MessageRequest<GetActiveTBRMessage> activeTBRRequest = registerMessage.isActiveTBRChanged()
+                    ? connectionService.requestMessage(new GetActiveTBRMessage(), true) : null;
+                MessageRequest<GetActiveBolusesMessage> activeBolusesRequest = registerMessage.isActiveBolusesChanged()
+                    ? connectionService.requestMessage(new GetActiveBolusesMessage(), true) : null;
+                if (activeBasalRateRequest != null)
+                    activeBasalRate = activeBasalRateRequest.await().getActiveBasalRate();
+                if (activeTBRRequest != null)
+                    activeTBR = activeTBRRequest.await().getActiveTBR();
+                if (activeBolusesRequest != null)
+                    activeBoluses = activeBolusesRequest.await().getActiveBoluses();
             } else {
                 activeBasalRate = null;
                 activeTBR = null;
@@ -456,14 +472,21 @@ public class LocalInsightPlugin extends PumpPluginBase implements PumpInterface,
             resetMessage.setActiveTBRChanged(true);
             resetMessage.setActiveBolusesChanged(true);
             connectionService.requestMessage(resetMessage).await();
-            operatingMode = connectionService.requestMessage(new GetOperatingModeMessage()).await().getOperatingMode();
-            batteryStatus = connectionService.requestMessage(new GetBatteryStatusMessage()).await().getBatteryStatus();
-            cartridgeStatus = connectionService.requestMessage(new GetCartridgeStatusMessage()).await().getCartridgeStatus();
-            totalDailyDose = connectionService.requestMessage(new GetTotalDailyDoseMessage()).await().getTDD();
+            MessageRequest<GetOperatingModeMessage> operatingModeRequest = connectionService.requestMessage(new GetOperatingModeMessage(), true);
+            MessageRequest<GetBatteryStatusMessage> batteryStatusRequest = connectionService.requestMessage(new GetBatteryStatusMessage(), true);
+            MessageRequest<GetCartridgeStatusMessage> cartridgeStatusRequest = connectionService.requestMessage(new GetCartridgeStatusMessage(), true);
+            MessageRequest<GetTotalDailyDoseMessage> totalDailyDoseRequest = connectionService.requestMessage(new GetTotalDailyDoseMessage(), true);
+            operatingMode = operatingModeRequest.await().getOperatingMode();
+            batteryStatus = batteryStatusRequest.await().getBatteryStatus();
+            cartridgeStatus = cartridgeStatusRequest.await().getCartridgeStatus();
+            totalDailyDose = totalDailyDoseRequest.await().getTDD();
             if (operatingMode == OperatingMode.STARTED) {
-                activeBasalRate = connectionService.requestMessage(new GetActiveBasalRateMessage()).await().getActiveBasalRate();
-                activeTBR = connectionService.requestMessage(new GetActiveTBRMessage()).await().getActiveTBR();
-                activeBoluses = connectionService.requestMessage(new GetActiveBolusesMessage()).await().getActiveBoluses();
+                MessageRequest<GetActiveBasalRateMessage> activeBasalRateRequest = connectionService.requestMessage(new GetActiveBasalRateMessage(), true);
+                MessageRequest<GetActiveTBRMessage> activeTBRRequest = connectionService.requestMessage(new GetActiveTBRMessage(), true);
+                MessageRequest<GetActiveBolusesMessage> activeBolusesRequest = connectionService.requestMessage(new GetActiveBolusesMessage(), true);
+                activeBasalRate = activeBasalRateRequest.await().getActiveBasalRate();
+                activeTBR = activeTBRRequest.await().getActiveTBR();
+                activeBoluses = activeBolusesRequest.await().getActiveBoluses();
             } else {
                 activeBasalRate = null;
                 activeTBR = null;
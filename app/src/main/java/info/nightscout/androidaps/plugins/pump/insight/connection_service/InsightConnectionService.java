@@ -46,6 +46,7 @@ import info.nightscout.androidaps.plugins.pump.insight.exceptions.InvalidSatlCom
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.ReceivedPacketInInvalidStateException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.TimeoutException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.TooChattyPumpException;
+import info.nightscout.androidaps.plugins.pump.insight.exceptions.app_layer_errors.AppLayerErrorException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.satl_errors.SatlCompatibleStateErrorException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.satl_errors.SatlDecryptVerifyFailedErrorException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.satl_errors.SatlIncompatibleVersionErrorException;
@@ -60,6 +61,7 @@ import info.nightscout.androidaps.plugins.pump.insight.exceptions.satl_errors.Sa
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.satl_errors.SatlPairingRejectedException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.satl_errors.SatlUndefinedErrorException;
 import info.nightscout.androidaps.plugins.pump.insight.exceptions.satl_errors.SatlWrongStateException;
+import info.nightscout.androidaps.plugins.pump.insight.ids.AppCommandIDs;
 import info.nightscout.androidaps.plugins.pump.insight.ids.ServiceIDs;
 import info.nightscout.androidaps.plugins.pump.insight.satl.ConnectionRequest;
 import info.nightscout.androidaps.plugins.pump.insight.satl.ConnectionResponse;
@@ -94,6 +96,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
     private static final int BUFFER_SIZE = 1024;
     private static final int TIMEOUT_DURING_HANDSHAKE_NOTIFICATION_THRESHOLD = 3;
     private static final long RESPONSE_TIMEOUT = 6000;
+    private static final int MAX_PIPELINED_REQUESTS = 4;
 
     private final List<StateCallback> stateCallbacks = new ArrayList<>();
     private final List<Object> connectionRequests = new ArrayList<>();
@@ -117,6 +120,8 @@ public class InsightConnectionService extends DaggerService implements Connectio
     private KeyPair keyPair;
     private byte[] randomBytes;
     private final MessageQueue messageQueue = new MessageQueue();
+    // cleared when the pump rejects or drops requests sent while others are outstanding
+    private boolean pipeliningSupported = true;
     private final List<info.nightscout.androidaps.plugins.pump.insight.app_layer.Service> activatedServices = new ArrayList<>();
     private long lastDataTime;
     private long lastConnected;
@@ -206,6 +211,14 @@ public class InsightConnectionService extends DaggerService implements Connectio
     }
 
     public synchronized <T extends AppLayerMessage> MessageRequest<T> requestMessage(T message) {
+        return requestMessage(message, false);
+    }
+
+    /**
+     * @param pipelined the message may be sent before responses to other pipelined messages of
+     *                  different type are received. Only for reads that don't depend on each other.
+     */
+    public synchronized <T extends AppLayerMessage> MessageRequest<T> requestMessage(T message, boolean pipelined) {
         MessageRequest<T> messageRequest;
         if (getState() != InsightState.CONNECTED) {
             messageRequest = new MessageRequest<>(message);
@@ -221,6 +234,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
             messageQueue.enqueueRequest(closeRequest);
         } else {
             messageRequest = new MessageRequest<>(message);
+            messageRequest.pipelined = pipelined;
             messageQueue.enqueueRequest(messageRequest);
         }
         requestNextMessage();
@@ -228,9 +242,10 @@ public class InsightConnectionService extends DaggerService implements Connectio
     }
 
     private void requestNextMessage() {
-        while (messageQueue.getActiveRequest() == null && messageQueue.hasPendingMessages()) {
-            messageQueue.nextRequest();
-            info.nightscout.androidaps.plugins.pump.insight.app_layer.Service service = messageQueue.getActiveRequest().request.getService();
+        while (messageQueue.hasPendingMessages() && (messageQueue.getActiveRequest() == null || canPipeline(messageQueue.peekRequest()))) {
+            MessageRequest messageRequest = messageQueue.nextRequest();
+            messageRequest.sentPipelined = messageQueue.getActiveRequestCount() > 1;
+            info.nightscout.androidaps.plugins.pump.insight.app_layer.Service service = messageRequest.request.getService();
             if (service != info.nightscout.androidaps.plugins.pump.insight.app_layer.Service.CONNECTION && !activatedServices.contains(service)) {
                 if (service.getServicePassword() == null) {
                     ActivateServiceMessage activateServiceMessage = new ActivateServiceMessage();
@@ -244,8 +259,22 @@ public class InsightConnectionService extends DaggerService implements Connectio
                     serviceChallengeMessage.setVersion(service.getVersion());
                     sendAppLayerMessage(serviceChallengeMessage);
                 }
-            } else sendAppLayerMessage(messageQueue.getActiveRequest().request);
+            } else sendAppLayerMessage(messageRequest.request);
+        }
+    }
+
+    private boolean canPipeline(MessageRequest messageRequest) {
+        if (!pipeliningSupported || !messageRequest.pipelined) return false;
+        if (messageQueue.getActiveRequestCount() >= MAX_PIPELINED_REQUESTS) return false;
+        info.nightscout.androidaps.plugins.pump.insight.app_layer.Service service = messageRequest.request.getService();
+        if (service != info.nightscout.androidaps.plugins.pump.insight.app_layer.Service.CONNECTION && !activatedServices.contains(service))
+            return false;
+        // responses are matched to requests by their type
+        for (MessageRequest activeRequest : messageQueue.activeRequests) {
+            if (!activeRequest.pipelined || activeRequest.request.getClass() == messageRequest.request.getClass())
+                return false;
         }
+        return true;
     }
 
     public synchronized InsightState getState() {
@@ -309,7 +338,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
     }
 
     private void cleanup(boolean closeSocket) {
-        messageQueue.completeActiveRequest(new ConnectionLostException());
+        messageQueue.completeActiveRequests(new ConnectionLostException());
         messageQueue.completePendingRequests(new ConnectionLostException());
         if (recoveryTimer != null) {
             recoveryTimer.interrupt();
@@ -358,6 +387,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
                 return;
         }
         aapsLogger.info(LTag.PUMP, "Exception occurred: " + e.getClass().getSimpleName());
+        if (e instanceof TimeoutException && messageQueue.getActiveRequestCount() > 1) disablePipelining();
         if (pairingDataStorage.isPaired()) {
             if (e instanceof TimeoutException && (state == InsightState.SATL_SYN_REQUEST || state == InsightState.APP_CONNECT_MESSAGE)) {
                 if (++timeoutDuringHandshakeCounter == TIMEOUT_DURING_HANDSHAKE_NOTIFICATION_THRESHOLD) {
@@ -370,7 +400,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
             if (e instanceof ConnectionFailedException) {
                 cleanup(((ConnectionFailedException) e).getDurationOfConnectionAttempt() <= 1000);
             } else cleanup(true);
-            messageQueue.completeActiveRequest(e);
+            messageQueue.completeActiveRequests(e);
             messageQueue.completePendingRequests(e);
             if (connectionRequests.size() != 0) {
                 if (!(e instanceof ConnectionFailedException)) {
@@ -459,7 +489,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
         this.buffer.putBytes(buffer, bytesRead);
         try {
             while (SatlMessage.hasCompletePacket(this.buffer)) {
-                SatlMessage satlMessage = SatlMessage.deserialize(this.buffer, pairingDataStorage.getLastNonceReceived(), pairingDataStorage.getIncomingKey());
+                SatlMessage satlMessage = SatlMessage.deserialize(this.buffer, pairingDataStorage.getLastNonceReceived(), pairingDataStorage.getIncomingCipher());
                 if (pairingDataStorage.getIncomingKey() != null
                         && pairingDataStorage.getLastNonceReceived() != null
                         && !pairingDataStorage.getLastNonceReceived().isSmallerThan(satlMessage.getNonce())) {
@@ -479,13 +509,23 @@ public class InsightConnectionService extends DaggerService implements Connectio
             pairingDataStorage.setLastNonceSent(nonce);
             satlMessage.setNonce(nonce);
         }
-        ByteBuf serialized = satlMessage.serialize(satlMessage.getClass(), pairingDataStorage.getOutgoingKey());
+        ByteBuf serialized = satlMessage.serialize(satlMessage.getClass(), pairingDataStorage.getOutgoingCipher());
+        startTimeoutTimer();
+        return serialized.getBytes();
+    }
+
+    private void startTimeoutTimer() {
         if (timeoutTimer != null) timeoutTimer.interrupt();
         timeoutTimer = DelayedActionThread.runDelayed("TimeoutTimer", RESPONSE_TIMEOUT, () -> {
             timeoutTimer = null;
             handleException(new TimeoutException());
         });
-        return serialized.getBytes();
+    }
+
+    private void disablePipelining() {
+        if (!pipeliningSupported) return;
+        pipeliningSupported = false;
+        aapsLogger.info(LTag.PUMP, "Pipelined requests failed, sending requests one by one");
     }
 
     private void sendSatlMessage(SatlMessage satlMessage) {
@@ -653,6 +693,9 @@ public class InsightConnectionService extends DaggerService implements Connectio
             default:
                 handleException(new ReceivedPacketInInvalidStateException());
         }
+        // errors carry the command of the failed request, needed to match it when requests are pipelined
+        Class<? extends AppLayerMessage> command = dataMessage.getData().getSize() >= 4
+            ? AppCommandIDs.IDS.getType(dataMessage.getData().getUInt16LE(2)) : null;
         try {
             AppLayerMessage appLayerMessage = AppLayerMessage.unwrap(dataMessage);
             if (appLayerMessage instanceof BindMessage) processBindMessage();
@@ -671,14 +714,21 @@ public class InsightConnectionService extends DaggerService implements Connectio
             if (state != InsightState.CONNECTED) {
                 handleException(e);
             } else {
-                if (messageQueue.getActiveRequest() == null) {
+                MessageRequest messageRequest = messageQueue.findActiveRequest(command);
+                if (messageRequest == null) {
                     handleException(new TooChattyPumpException());
+                } else if (e instanceof AppLayerErrorException && messageRequest.sentPipelined && pipeliningSupported) {
+                    disablePipelining();
+                    messageQueue.requeueActiveRequest(messageRequest);
+                    requestNextMessage();
                 } else {
-                    messageQueue.completeActiveRequest(e);
+                    messageQueue.completeActiveRequest(messageRequest, e);
                     requestNextMessage();
                 }
             }
         }
+        // nothing was sent, but responses to pipelined requests are still outstanding
+        if (timeoutTimer == null && messageQueue.getActiveRequest() != null) startTimeoutTimer();
     }
 
     private void processBindMessage() {
@@ -734,6 +784,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
             } else {
                 activatedServices.add(messageQueue.getActiveRequest().request.getService());
                 sendAppLayerMessage(messageQueue.getActiveRequest().request);
+                requestNextMessage();
             }
         }
     }
@@ -768,7 +819,10 @@ public class InsightConnectionService extends DaggerService implements Connectio
 
     private void processGenericAppLayerMessage(AppLayerMessage appLayerMessage) {
         if (messageQueue.getActiveRequest() == null) handleException(new TooChattyPumpException());
-        else {
+        else if (messageQueue.getActiveRequestCount() > 1 && messageQueue.findActiveRequest(appLayerMessage.getClass()) == null) {
+            disablePipelining();
+            handleException(new TooChattyPumpException());
+        } else {
             try {
                 messageQueue.completeActiveRequest(appLayerMessage);
                 lastDataTime = System.currentTimeMillis();
@@ -8,29 +8,55 @@ import info.nightscout.androidaps.plugins.pump.insight.app_layer.AppLayerMessage
 
 public class MessageQueue {
 
-    MessageRequest activeRequest;
+    // sent requests waiting for their response, oldest first
+    final List<MessageRequest> activeRequests = new ArrayList<>();
     final List<MessageRequest> messageRequests = new ArrayList<>();
 
     public MessageRequest getActiveRequest() {
-        return activeRequest;
+        return activeRequests.size() == 0 ? null : activeRequests.get(0);
+    }
+
+    public int getActiveRequestCount() {
+        return activeRequests.size();
+    }
+
+    /**
+     * @return the oldest active request of given type, the oldest active request if type is null
+     */
+    public MessageRequest findActiveRequest(Class<? extends AppLayerMessage> type) {
+        if (type == null) return getActiveRequest();
+        for (MessageRequest activeRequest : activeRequests) {
+            if (activeRequest.request.getClass() == type) return activeRequest;
+        }
+        return null;
     }
 
     public void completeActiveRequest(AppLayerMessage response) {
+        MessageRequest activeRequest = findActiveRequest(response.getClass());
+        if (activeRequest == null) activeRequest = getActiveRequest();
         if (activeRequest == null) return;
         synchronized (activeRequest) {
             activeRequest.response = response;
             activeRequest.notifyAll();
         }
-        activeRequest = null;
+        activeRequests.remove(activeRequest);
     }
 
     public void completeActiveRequest(Exception exception) {
+        completeActiveRequest(getActiveRequest(), exception);
+    }
+
+    public void completeActiveRequest(MessageRequest activeRequest, Exception exception) {
         if (activeRequest == null) return;
         synchronized (activeRequest) {
             activeRequest.exception = exception;
             activeRequest.notifyAll();
         }
-        activeRequest = null;
+        activeRequests.remove(activeRequest);
+    }
+
+    public void completeActiveRequests(Exception exception) {
+        while (activeRequests.size() != 0) completeActiveRequest(exception);
     }
 
     public void completePendingRequests(Exception exception) {
@@ -48,11 +74,28 @@ public class MessageQueue {
         Collections.sort(messageRequests);
     }
 
-    public void nextRequest() {
-        if (messageRequests.size() != 0) {
-            activeRequest = messageRequests.get(0);
-            messageRequests.remove(0);
-        }
+    /**
+     * Puts an active request back to the pending ones, it's sent again
+     */
+    public void requeueActiveRequest(MessageRequest activeRequest) {
+        activeRequests.remove(activeRequest);
+        // ahead of pending requests of same priority
+        messageRequests.add(0, activeRequest);
+        Collections.sort(messageRequests);
+    }
+
+    public MessageRequest peekRequest() {
+        return messageRequests.size() == 0 ? null : messageRequests.get(0);
+    }
+
+    /**
+     * @return the request which became active
+     */
+    public MessageRequest nextRequest() {
+        if (messageRequests.size() == 0) return null;
+        MessageRequest messageRequest = messageRequests.remove(0);
+        activeRequests.add(messageRequest);
+        return messageRequest;
     }
 
     public boolean hasPendingMessages() {
@@ -60,7 +103,7 @@ public class MessageQueue {
     }
 
     public void reset() {
-        activeRequest = null;
+        activeRequests.clear();
         messageRequests.clear();
     }
 }
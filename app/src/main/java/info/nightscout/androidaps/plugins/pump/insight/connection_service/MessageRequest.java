@@ -7,6 +7,10 @@ public class MessageRequest<T extends AppLayerMessage> implements Comparable<Mes
     T request;
     T response;
     Exception exception;
+    // may be sent while responses to other requests are outstanding
+    boolean pipelined;
+    // was sent while responses to other requests were outstanding
+    boolean sentPipelined;
 
     MessageRequest(T request) {
         this.request = request;
@@ -4,33 +4,44 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * Circular buffer, reading from the start moves the start instead of copying the remaining bytes.
+ */
 public class ByteBuf {
 
     private final byte[] bytes;
+    private int start = 0;
     private int size = 0;
 
     public ByteBuf(int length) {
         bytes = new byte[length];
     }
 
+    private int index(int position) {
+        int index = start + position;
+        return index >= bytes.length ? index - bytes.length : index;
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > bytes.length) throw new ArrayIndexOutOfBoundsException(size + length);
+    }
+
 
     public byte[] getBytes() {
-        byte[] bytes = new byte[size];
-        System.arraycopy(this.bytes, 0, bytes, 0, size);
-        return bytes;
+        return getBytes(0, size);
     }
 
     public void shift(int offset) {
-        System.arraycopy(bytes, offset, bytes, 0, bytes.length - offset);
         size -= offset;
+        start = size == 0 ? 0 : index(offset);
     }
 
     public byte getByte(int position) {
-        return bytes[position];
+        return bytes[index(position)];
     }
 
     public byte getByte() {
-        return bytes[0];
+        return getByte(0);
     }
 
     public byte readByte() {
@@ -40,19 +51,23 @@ public class ByteBuf {
     }
 
     public void putByte(byte b) {
-        bytes[size] = b;
+        ensureCapacity(1);
+        bytes[index(size)] = b;
         size += 1;
     }
 
 
     public void putBytes(byte b, int count) {
-        for (int i = 0; i < count; i++) bytes[size++] = b;
+        for (int i = 0; i < count; i++) putByte(b);
     }
 
 
     public byte[] getBytes(int position, int length) {
         byte[] copy = new byte[length];
-        System.arraycopy(bytes, position, copy, 0, length);
+        int index = index(position);
+        int first = Math.min(length, bytes.length - index);
+        System.arraycopy(bytes, index, copy, 0, first);
+        System.arraycopy(bytes, 0, copy, first, length - first);
         return copy;
     }
 
@@ -71,7 +86,11 @@ public class ByteBuf {
     }
 
     public void putBytes(byte[] bytes, int length) {
-        System.arraycopy(bytes, 0, this.bytes, size, length);
+        ensureCapacity(length);
+        int index = index(size);
+        int first = Math.min(length, this.bytes.length - index);
+        System.arraycopy(bytes, 0, this.bytes, index, first);
+        System.arraycopy(bytes, first, this.bytes, 0, length - first);
         size += length;
     }
 
@@ -83,7 +102,7 @@ public class ByteBuf {
     private byte[] getBytesLE(int position, int length) {
         byte[] copy = new byte[length];
         for (int i = 0; i < length; i++)
-            copy[i] = bytes[length - 1 - i + position];
+            copy[i] = getByte(length - 1 - i + position);
         return copy;
     }
 
@@ -98,8 +117,9 @@ public class ByteBuf {
     }
 
     private void putBytesLE(byte[] bytes, int length) {
+        ensureCapacity(length);
         for (int i = 0; i < length; i++)
-            this.bytes[size + length - 1 - i] = bytes[i];
+            this.bytes[index(size + length - 1 - i)] = bytes[i];
         size += length;
     }
 
@@ -109,12 +129,12 @@ public class ByteBuf {
 
 
     public void putByteBuf(ByteBuf byteBuf) {
-        putBytes(byteBuf.getBytes(), byteBuf.getSize());
+        for (int i = 0; i < byteBuf.size; i++) putByte(byteBuf.getByte(i));
     }
 
 
     private short getUInt8(int position) {
-        return (short) (bytes[position] & 0xFF);
+        return (short) (getByte(position) & 0xFF);
     }
 
     private short getUInt8() {
@@ -133,8 +153,8 @@ public class ByteBuf {
 
 
     public int getUInt16LE(int position) {
-        return (bytes[position++] & 0xFF |
-                (bytes[position] & 0xFF) << 8);
+        return (getByte(position++) & 0xFF |
+                (getByte(position) & 0xFF) << 8);
     }
 
     private int getUInt16LE() {
@@ -226,8 +246,8 @@ public class ByteBuf {
 
 
     private short getShort(int position) {
-        return (short) (bytes[position++] << 8 |
-                bytes[position] & 0xFF);
+        return (short) (getByte(position++) << 8 |
+                getByte(position) & 0xFF);
     }
 
     public short getShort() {
@@ -247,10 +267,10 @@ public class ByteBuf {
 
 
     private long getUInt32LE(int position) {
-        return ((long) bytes[position++] & 0xFF) |
-                ((long) bytes[position++] & 0xFF) << 8 |
-                ((long) bytes[position++] & 0xFF) << 16 |
-                ((long) bytes[position] & 0xFF) << 24;
+        return ((long) getByte(position++) & 0xFF) |
+                ((long) getByte(position++) & 0xFF) << 8 |
+                ((long) getByte(position++) & 0xFF) << 16 |
+                ((long) getByte(position) & 0xFF) << 24;
     }
 
     private long getUInt32LE() {
@@ -347,6 +367,7 @@ public class ByteBuf {
     }
 
     public void clear() {
-        shift(size);
+        start = 0;
+        size = 0;
     }
 }
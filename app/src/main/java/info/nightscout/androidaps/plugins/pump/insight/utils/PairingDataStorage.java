@@ -7,6 +7,7 @@ import org.spongycastle.util.encoders.Hex;
 
 import info.nightscout.androidaps.plugins.pump.insight.descriptors.FirmwareVersions;
 import info.nightscout.androidaps.plugins.pump.insight.descriptors.SystemIdentification;
+import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.TwofishCipher;
 
 public class PairingDataStorage {
 
@@ -19,6 +20,9 @@ public class PairingDataStorage {
     private long commId;
     private byte[] incomingKey;
     private byte[] outgoingKey;
+    // key schedules of the keys above, computed once instead of for each message
+    private TwofishCipher incomingCipher;
+    private TwofishCipher outgoingCipher;
     private FirmwareVersions firmwareVersions;
     private SystemIdentification systemIdentification;
 
@@ -35,6 +39,8 @@ public class PairingDataStorage {
         incomingKey = incomingKeyHex == null ? null : Hex.decode(incomingKeyHex);
         String outgoingKeyHex = preferences.getString("outgoingKey", null);
         outgoingKey = outgoingKeyHex == null ? null : Hex.decode(outgoingKeyHex);
+        incomingCipher = incomingKey == null ? null : new TwofishCipher(incomingKey);
+        outgoingCipher = outgoingKey == null ? null : new TwofishCipher(outgoingKey);
 
         String pumpSerial = preferences.getString("pumpSerial", null);
         String manufacturingDate = preferences.getString("manufacturingDate", null);
@@ -99,11 +105,13 @@ public class PairingDataStorage {
 
     public void setIncomingKey(byte[] incomingKey) {
         this.incomingKey = incomingKey;
+        this.incomingCipher = incomingKey == null ? null : new TwofishCipher(incomingKey);
         preferences.edit().putString("incomingKey", incomingKey == null ? null : Hex.toHexString(incomingKey)).apply();
     }
 
     public void setOutgoingKey(byte[] outgoingKey) {
         this.outgoingKey = outgoingKey;
+        this.outgoingCipher = outgoingKey == null ? null : new TwofishCipher(outgoingKey);
         preferences.edit().putString("outgoingKey", outgoingKey == null ? null : Hex.toHexString(outgoingKey)).apply();
     }
 
@@ -139,6 +147,14 @@ public class PairingDataStorage {
         return this.outgoingKey;
     }
 
+    public TwofishCipher getIncomingCipher() {
+        return this.incomingCipher;
+    }
+
+    public TwofishCipher getOutgoingCipher() {
+        return this.outgoingCipher;
+    }
+
     public FirmwareVersions getFirmwareVersions() {
         return firmwareVersions;
     }
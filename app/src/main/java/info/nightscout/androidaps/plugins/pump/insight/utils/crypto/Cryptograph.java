@@ -7,13 +7,10 @@ import org.spongycastle.crypto.digests.MD5Digest;
 import org.spongycastle.crypto.digests.SHA1Digest;
 import org.spongycastle.crypto.encodings.OAEPEncoding;
 import org.spongycastle.crypto.engines.RSAEngine;
-import org.spongycastle.crypto.engines.TwofishEngine;
 import org.spongycastle.crypto.generators.RSAKeyPairGenerator;
 import org.spongycastle.crypto.macs.HMac;
-import org.spongycastle.crypto.modes.CBCBlockCipher;
 import org.spongycastle.crypto.params.AsymmetricKeyParameter;
 import org.spongycastle.crypto.params.KeyParameter;
-import org.spongycastle.crypto.params.ParametersWithIV;
 import org.spongycastle.crypto.params.RSAKeyGenerationParameters;
 import org.spongycastle.crypto.params.RSAKeyParameters;
 import org.spongycastle.crypto.params.RSAPrivateCrtKeyParameters;
@@ -136,45 +133,32 @@ public class Cryptograph {
         return combined;
     }
 
-    private static byte[] produceCCMPrimitive(byte headerByte, byte[] nonce, short number) {
-        ByteBuf byteBuf = new ByteBuf(16);
-        byteBuf.putByte(headerByte);
-        byteBuf.putBytes(nonce);
-        byteBuf.putShort(number);
-        return byteBuf.getBytes();
-    }
-
-    private static byte[] produceIV(byte[] nonce, short payloadSize) {
-        return produceCCMPrimitive((byte) 0x59, nonce, payloadSize);
+    private static void produceCCMPrimitive(byte headerByte, byte[] nonce, short number, byte[] block) {
+        block[0] = headerByte;
+        System.arraycopy(nonce, 0, block, 1, nonce.length);
+        block[14] = (byte) (number >> 8);
+        block[15] = (byte) number;
     }
 
-    private static byte[] produceCTRBlock(byte[] nonce, short counter) {
-        return produceCCMPrimitive((byte) 0x01, nonce, counter);
-    }
-
-    private static byte[] blockCipherZeroPad(byte[] input) {
-        int modulus = input.length % 16;
-        if (modulus == 0) return input;
-        byte[] append = new byte[16 - modulus];
-        for (int i = 0; i < 16 - modulus; i++) {
-            append[i] = 0x00;
+    public static byte[] encryptDataCTR(byte[] data, TwofishCipher cipher, byte[] nonce) {
+        byte[] result = new byte[data.length];
+        byte[] keyStream = new byte[TwofishCipher.BLOCK_SIZE];
+        for (int offset = 0, counter = 1; offset < data.length; offset += TwofishCipher.BLOCK_SIZE, counter++) {
+            produceCCMPrimitive((byte) 0x01, nonce, (short) counter, keyStream);
+            cipher.processBlock(keyStream, keyStream);
+            int length = Math.min(TwofishCipher.BLOCK_SIZE, data.length - offset);
+            for (int i = 0; i < length; i++) result[offset + i] = (byte) (data[offset + i] ^ keyStream[i]);
         }
-        return combine(input, append);
+        return result;
     }
 
-    public static byte[] encryptDataCTR(byte[] data, byte[] key, byte[] nonce) {
-        byte[] padded = blockCipherZeroPad(data);
-        int length = padded.length >> 4;
-        byte[] result = new byte[length * 16];
-        TwofishEngine engine = new TwofishEngine();
-        engine.init(true, new KeyParameter(key));
-        for (int i = 0; i < length; i++) {
-            engine.processBlock(produceCTRBlock(nonce, (short) (i + 1)), 0, result, i * 16);
+    // CBC over zero padded data, state holds the last ciphertext block
+    private static void processCBC(TwofishCipher cipher, byte[] state, byte[] data) {
+        for (int offset = 0; offset < data.length; offset += TwofishCipher.BLOCK_SIZE) {
+            int length = Math.min(TwofishCipher.BLOCK_SIZE, data.length - offset);
+            for (int i = 0; i < length; i++) state[i] ^= data[offset + i];
+            cipher.processBlock(state, state);
         }
-        byte[] xor = byteArrayXOR(padded, result);
-        byte[] copy = new byte[Math.min(data.length, xor.length)];
-        System.arraycopy(xor, 0, copy, 0, copy.length);
-        return copy;
     }
 
     private static byte[] processHeader(byte[] header) {
@@ -185,24 +169,18 @@ public class Cryptograph {
         return byteBuf.getBytes();
     }
 
-    public static byte[] produceCCMTag(byte[] nonce, byte[] payload, byte[] header, byte[] key) {
-        TwofishEngine engine = new TwofishEngine();
-        engine.init(true, new KeyParameter(key));
-        byte[] initializationVector = new byte[engine.getBlockSize()];
-        engine.processBlock(produceIV(nonce, (short) payload.length), 0, initializationVector, 0);
-        CBCBlockCipher cbc = new CBCBlockCipher(new TwofishEngine());
-        cbc.init(true, new ParametersWithIV(new KeyParameter(key), initializationVector));
-        byte[] processedHeader = blockCipherZeroPad(processHeader(header));
-        byte[] processedPayload = blockCipherZeroPad(payload);
-        byte[] combine = combine(processedHeader, blockCipherZeroPad(processedPayload));
-        byte[] result = new byte[combine.length];
-        for (int i = 0; i < combine.length / 16; i++)
-            cbc.processBlock(combine, i * 16, result, i * 16);
-        byte[] result2 = new byte[8];
-        System.arraycopy(result, result.length - 16, result2, 0, 8);
-        byte[] ctr = new byte[engine.getBlockSize()];
-        engine.processBlock(produceCTRBlock(nonce, (short) 0), 0, ctr, 0);
-        return byteArrayXOR(result2, ctr);
+    public static byte[] produceCCMTag(byte[] nonce, byte[] payload, byte[] header, TwofishCipher cipher) {
+        byte[] state = new byte[TwofishCipher.BLOCK_SIZE];
+        produceCCMPrimitive((byte) 0x59, nonce, (short) payload.length, state);
+        cipher.processBlock(state, state);
+        processCBC(cipher, state, processHeader(header));
+        processCBC(cipher, state, payload);
+        byte[] ctr = new byte[TwofishCipher.BLOCK_SIZE];
+        produceCCMPrimitive((byte) 0x01, nonce, (short) 0, ctr);
+        cipher.processBlock(ctr, ctr);
+        byte[] tag = new byte[8];
+        for (int i = 0; i < tag.length; i++) tag[i] = (byte) (state[i] ^ ctr[i]);
+        return tag;
     }
 
     public static int calculateCRC(byte[] bytes) {
@@ -0,0 +1,25 @@
+package info.nightscout.androidaps.plugins.pump.insight.utils.crypto;
+
+import org.spongycastle.crypto.engines.TwofishEngine;
+import org.spongycastle.crypto.params.KeyParameter;
+
+/**
+ * Twofish encryption with the key schedule of one key computed once
+ */
+public class TwofishCipher {
+
+    static final int BLOCK_SIZE = 16;
+
+    private final TwofishEngine engine = new TwofishEngine();
+
+    public TwofishCipher(byte[] key) {
+        engine.init(true, new KeyParameter(key));
+    }
+
+    /**
+     * Encrypts one block, input and output may be the same array
+     */
+    void processBlock(byte[] input, byte[] output) {
+        engine.processBlock(input, 0, output, 0);
+    }
+}
@@ -78,6 +78,7 @@ class DexcomPlugin @Inject constructor(
         try {
             val sensorType = intent.getStringExtra("sensorType") ?: ""
             val glucoseValues = intent.getBundleExtra("glucoseValues")
+            val bgReadings = ArrayList<BgReading>()
             for (i in 0 until glucoseValues.size()) {
                 glucoseValues.getBundle(i.toString())?.let { glucoseValue ->
                     val bgReading = BgReading()
@@ -85,16 +86,16 @@ class DexcomPlugin @Inject constructor(
                     bgReading.direction = glucoseValue.getString("trendArrow")
                     bgReading.date = glucoseValue.getLong("timestamp") * 1000
                     bgReading.raw = 0.0
-                    if (MainApp.getDbHelper().createIfNotExists(bgReading, "Dexcom$sensorType")) {
-                        if (sp.getBoolean(R.string.key_dexcomg5_nsupload, false)) {
-                            nsUpload.uploadBg(bgReading, "AndroidAPS-Dexcom$sensorType")
-                        }
-                        if (sp.getBoolean(R.string.key_dexcomg5_xdripupload, false)) {
-                            nsUpload.sendToXdrip(bgReading)
-                        }
-                    }
+                    bgReadings.add(bgReading)
                 }
             }
+            val created = MainApp.getDbHelper().createIfNotExists(bgReadings, "Dexcom$sensorType")
+            if (sp.getBoolean(R.string.key_dexcomg5_nsupload, false)) {
+                nsUpload.uploadBgs(created, "AndroidAPS-Dexcom$sensorType")
+            }
+            if (sp.getBoolean(R.string.key_dexcomg5_xdripupload, false)) {
+                nsUpload.sendToXdrip(created)
+            }
             val meters = intent.getBundleExtra("meters")
             for (i in 0 until meters.size()) {
                 val meter = meters.getBundle(i.toString())
@@ -77,19 +77,20 @@ class EversensePlugin @Inject constructor(
                 aapsLogger.debug(LTag.BGSOURCE, "glucoseLevels" + Arrays.toString(glucoseLevels))
                 aapsLogger.debug(LTag.BGSOURCE, "glucoseRecordNumbers" + Arrays.toString(glucoseRecordNumbers))
                 aapsLogger.debug(LTag.BGSOURCE, "glucoseTimestamps" + Arrays.toString(glucoseTimestamps))
-                for (i in glucoseLevels.indices) {
-                    val bgReading = BgReading()
-                    bgReading.value = glucoseLevels[i].toDouble()
-                    bgReading.date = glucoseTimestamps[i]
-                    bgReading.raw = 0.0
-                    val isNew = MainApp.getDbHelper().createIfNotExists(bgReading, "Eversense")
-                    if (isNew && sp.getBoolean(R.string.key_dexcomg5_nsupload, false)) {
-                        nsUpload.uploadBg(bgReading, "AndroidAPS-Eversense")
-                    }
-                    if (isNew && sp.getBoolean(R.string.key_dexcomg5_xdripupload, false)) {
-                        nsUpload.sendToXdrip(bgReading)
+                val bgReadings = glucoseLevels.indices.map { i ->
+                    BgReading().also {
+                        it.value = glucoseLevels[i].toDouble()
+                        it.date = glucoseTimestamps[i]
+                        it.raw = 0.0
                     }
                 }
+                val created = MainApp.getDbHelper().createIfNotExists(bgReadings, "Eversense")
+                if (sp.getBoolean(R.string.key_dexcomg5_nsupload, false)) {
+                    nsUpload.uploadBgs(created, "AndroidAPS-Eversense")
+                }
+                if (sp.getBoolean(R.string.key_dexcomg5_xdripupload, false)) {
+                    nsUpload.sendToXdrip(created)
+                }
             }
         }
         if (bundle.containsKey("calibrationGlucoseLevels")) {
@@ -43,6 +43,7 @@ class MM640gPlugin @Inject constructor(
             val data = bundle.getString("data")
             aapsLogger.debug(LTag.BGSOURCE, "Received MM640g Data: $data")
             if (data != null && data.isNotEmpty()) {
+                val bgReadings = ArrayList<BgReading>()
                 try {
                     val jsonArray = JSONArray(data)
                     for (i in 0 until jsonArray.length()) {
@@ -54,7 +55,7 @@ class MM640gPlugin @Inject constructor(
                                 bgReading.direction = jsonObject.getString("direction")
                                 bgReading.date = jsonObject.getLong("date")
                                 bgReading.raw = jsonObject.getDouble("sgv")
-                                MainApp.getDbHelper().createIfNotExists(bgReading, "MM640g")
+                                bgReadings.add(bgReading)
                             }
 
                             else  -> aapsLogger.debug(LTag.BGSOURCE, "Unknown entries type: $type")
@@ -63,6 +64,7 @@ class MM640gPlugin @Inject constructor(
                 } catch (e: JSONException) {
                     aapsLogger.error("Exception: ", e)
                 }
+                MainApp.getDbHelper().createIfNotExists(bgReadings, "MM640g")
             }
         }
     }
@@ -45,7 +45,7 @@ class PoctechPlugin @Inject constructor(
     override fun handleNewData(intent: Intent) {
         if (!isEnabled(PluginType.BGSOURCE)) return
         val bundle = intent.extras ?: return
-        val bgReading = BgReading()
+        val bgReadings = ArrayList<BgReading>()
         val data = bundle.getString("data")
         aapsLogger.debug(LTag.BGSOURCE, "Received Poctech Data $data")
         try {
@@ -53,21 +53,24 @@ class PoctechPlugin @Inject constructor(
             aapsLogger.debug(LTag.BGSOURCE, "Received Poctech Data size:" + jsonArray.length())
             for (i in 0 until jsonArray.length()) {
                 val json = jsonArray.getJSONObject(i)
+                val bgReading = BgReading()
                 bgReading.value = json.getDouble("current")
                 bgReading.direction = json.getString("direction")
                 bgReading.date = json.getLong("date")
                 bgReading.raw = json.getDouble("raw")
                 if (safeGetString(json, "units", Constants.MGDL) == "mmol/L") bgReading.value = bgReading.value * Constants.MMOLL_TO_MGDL
-                val isNew = MainApp.getDbHelper().createIfNotExists(bgReading, "Poctech")
-                if (isNew && sp.getBoolean(R.string.key_dexcomg5_nsupload, false)) {
-                    nsUpload.uploadBg(bgReading, "AndroidAPS-Poctech")
-                }
-                if (isNew && sp.getBoolean(R.string.key_dexcomg5_xdripupload, false)) {
-                    nsUpload.sendToXdrip(bgReading)
-                }
+                bgReadings.add(bgReading)
             }
         } catch (e: JSONException) {
             aapsLogger.error("Exception: ", e)
         }
+        // readings parsed before an error are stored as before
+        val created = MainApp.getDbHelper().createIfNotExists(bgReadings, "Poctech")
+        if (sp.getBoolean(R.string.key_dexcomg5_nsupload, false)) {
+            nsUpload.uploadBgs(created, "AndroidAPS-Poctech")
+        }
+        if (sp.getBoolean(R.string.key_dexcomg5_xdripupload, false)) {
+            nsUpload.sendToXdrip(created)
+        }
     }
 }
\ No newline at end of file
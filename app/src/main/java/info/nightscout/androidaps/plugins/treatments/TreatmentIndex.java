@@ -0,0 +1,112 @@
+package info.nightscout.androidaps.plugins.treatments;
+
+import androidx.collection.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import info.nightscout.androidaps.db.PendingChanges;
+import info.nightscout.androidaps.db.Treatment;
+
+/**
+ * Immutable snapshot of treatments sorted by date (oldest first) with primitive date keys.
+ * <p>
+ * A new instance is built on every reload or change and published by replacing the reference,
+ * so readers never need to lock and can query time windows by binary search.
+ */
+class TreatmentIndex {
+
+    static final TreatmentIndex EMPTY = new TreatmentIndex(new ArrayList<>());
+
+    private final Treatment[] items;
+    private final long[] dates;
+
+    TreatmentIndex(Collection<Treatment> treatments) {
+        items = treatments.toArray(new Treatment[0]);
+        Arrays.sort(items, (a, b) -> Long.compare(a.date, b.date));
+        dates = new long[items.length];
+        for (int i = 0; i < items.length; i++)
+            dates[i] = items[i].date;
+    }
+
+    /**
+     * @return new index with changes applied in order and treatments older than `from` dropped
+     */
+    TreatmentIndex withChanges(List<PendingChanges.Change<Treatment>> changes, long from) {
+        LongSparseArray<Treatment> byDate = new LongSparseArray<>(items.length + changes.size());
+        for (int i = firstAtOrAfter(from); i < items.length; i++)
+            byDate.append(dates[i], items[i]);
+        for (PendingChanges.Change<Treatment> change : changes) {
+            if (change.isRemoval()) byDate.remove(change.date);
+            else if (change.date >= from) byDate.put(change.date, change.record);
+        }
+        List<Treatment> result = new ArrayList<>(byDate.size());
+        for (int i = 0; i < byDate.size(); i++)
+            result.add(byDate.valueAt(i));
+        return new TreatmentIndex(result);
+    }
+
+    int size() {
+        return items.length;
+    }
+
+    Treatment get(int index) {
+        return items[index];
+    }
+
+    long oldestDate() {
+        return dates[0];
+    }
+
+    /**
+     * @return index of first treatment with date >= time, size() if there is none
+     */
+    int firstAtOrAfter(long time) {
+        int low = 0;
+        int high = dates.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[mid] < time) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of first treatment with date > time, size() if there is none
+     */
+    int firstAfter(long time) {
+        int low = 0;
+        int high = dates.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[mid] <= time) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return treatments with from <= date <= to, newest first
+     */
+    List<Treatment> newestFirst(long from, long to) {
+        int start = firstAtOrAfter(from);
+        int end = firstAfter(to);
+        List<Treatment> result = new ArrayList<>(Math.max(0, end - start));
+        for (int i = end - 1; i >= start; i--)
+            result.add(items[i]);
+        return result;
+    }
+
+    /**
+     * @return all treatments, newest first
+     */
+    List<Treatment> newestFirst() {
+        List<Treatment> result = new ArrayList<>(items.length);
+        for (int i = items.length - 1; i >= 0; i--)
+            result.add(items[i]);
+        return result;
+    }
+}
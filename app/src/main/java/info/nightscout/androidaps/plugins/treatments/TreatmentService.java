@@ -21,6 +21,7 @@ import org.json.JSONObject;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -32,9 +33,9 @@ import javax.inject.Inject;
 import dagger.android.HasAndroidInjector;
 import info.nightscout.androidaps.db.DatabaseHelper;
 import info.nightscout.androidaps.db.ICallback;
+import info.nightscout.androidaps.db.PendingChanges;
 import info.nightscout.androidaps.db.Source;
 import info.nightscout.androidaps.db.Treatment;
-import info.nightscout.androidaps.events.Event;
 import info.nightscout.androidaps.events.EventNsTreatment;
 import info.nightscout.androidaps.events.EventReloadTreatmentData;
 import info.nightscout.androidaps.events.EventTreatmentChange;
@@ -71,6 +72,8 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
     private static final ScheduledExecutorService treatmentEventWorker = Executors.newSingleThreadScheduledExecutor();
     private static ScheduledFuture<?> scheduledTreatmentEventPost = null;
 
+    private final PendingChanges<Treatment> treatmentChanges = new PendingChanges<>();
+
     public TreatmentService(HasAndroidInjector injector) {
         injector.androidInjector().inject(this);
         onCreate();
@@ -128,6 +131,7 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
 
         public void executeRaw(String statement, String... arguments) throws SQLException {
             wrapped.executeRaw(statement, arguments);
+            treatmentChanges.reloadAll();
         }
 
         public List<Treatment> queryForAll() throws SQLException {
@@ -136,11 +140,13 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
 
         public void delete(Treatment data) throws SQLException {
             wrapped.delete(data);
+            treatmentChanges.removed(data.date);
             openHumansUploader.enqueueTreatment(data, true);
         }
 
         public void create(Treatment data) throws SQLException {
             wrapped.create(data);
+            treatmentChanges.stored(data, data.date);
             openHumansUploader.enqueueTreatment(data);
         }
 
@@ -150,6 +156,7 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
 
         public void update(Treatment data) throws SQLException {
             wrapped.update(data);
+            treatmentChanges.stored(data, data.date);
             openHumansUploader.enqueueTreatment(data);
         }
 
@@ -184,6 +191,7 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
             try {
                 TableUtils.dropTable(connectionSource, Treatment.class, true);
                 TableUtils.createTableIfNotExists(connectionSource, Treatment.class);
+                treatmentChanges.reloadAll();
             } catch (SQLException e) {
                 aapsLogger.error("Can't create database", e);
                 throw new RuntimeException(e);
@@ -219,6 +227,7 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
         } catch (SQLException e) {
             aapsLogger.error("Unhandled exception", e);
         }
+        treatmentChanges.reloadAll();
         scheduleTreatmentChange(null, true);
     }
 
@@ -233,17 +242,17 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
      * on some methods the earliestDataChange event is handled separatly, in that it is checked if it is
      * set to null by another event already (eg. scheduleExtendedBolusChange).
      *
-     * @param event
+     * @param treatment
      * @param eventWorker
      * @param callback
      */
-    private void scheduleEvent(final Event event, ScheduledExecutorService eventWorker,
+    private void scheduleEvent(@Nullable final Treatment treatment, ScheduledExecutorService eventWorker,
                                final ICallback callback) {
 
         class PostRunnable implements Runnable {
             public void run() {
                 aapsLogger.debug(LTag.DATATREATMENTS, "Firing EventReloadTreatmentData");
-                rxBus.send(event);
+                rxBus.send(reloadEvent(treatment));
                 if (DatabaseHelper.earliestDataChange != null) {
                     aapsLogger.debug(LTag.DATATREATMENTS, "Firing EventNewHistoryData");
                     rxBus.send(new EventNewHistoryData(DatabaseHelper.earliestDataChange));
@@ -268,14 +277,14 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
     public void scheduleTreatmentChange(@Nullable final Treatment treatment, boolean runImmediately) {
         if (runImmediately) {
             aapsLogger.debug(LTag.DATATREATMENTS, "Firing EventReloadTreatmentData");
-            rxBus.send(new EventReloadTreatmentData(new EventTreatmentChange(treatment)));
+            rxBus.send(reloadEvent(treatment));
             if (DatabaseHelper.earliestDataChange != null) {
                 aapsLogger.debug(LTag.DATATREATMENTS, "Firing EventNewHistoryData");
                 rxBus.send(new EventNewHistoryData(DatabaseHelper.earliestDataChange));
             }
             DatabaseHelper.earliestDataChange = null;
         } else {
-            this.scheduleEvent(new EventReloadTreatmentData(new EventTreatmentChange(treatment)), treatmentEventWorker, new ICallback() {
+            this.scheduleEvent(treatment, treatmentEventWorker, new ICallback() {
                 @Override
                 public void setPost(ScheduledFuture<?> post) {
                     scheduledTreatmentEventPost = post;
@@ -289,6 +298,13 @@ public class TreatmentService extends OrmLiteBaseService<DatabaseHelper> {
         }
     }
 
+    // changes are taken at the time of firing to include everything stored during debounce
+    private EventReloadTreatmentData reloadEvent(@Nullable Treatment treatment) {
+        List<PendingChanges.Change<Treatment>> changes = treatmentChanges.drain();
+        databaseHelper.invalidateDailyStats(PendingChanges.oldestDate(changes));
+        return new EventReloadTreatmentData(new EventTreatmentChange(treatment), changes, Collections.emptyList());
+    }
+
     public List<Treatment> getTreatmentData() {
         try {
             return this.getDao().queryForAll();
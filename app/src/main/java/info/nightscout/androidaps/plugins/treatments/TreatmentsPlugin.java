@@ -31,6 +31,7 @@ import info.nightscout.androidaps.data.OverlappingIntervals;
 import info.nightscout.androidaps.data.Profile;
 import info.nightscout.androidaps.data.ProfileIntervals;
 import info.nightscout.androidaps.db.ExtendedBolus;
+import info.nightscout.androidaps.db.PendingChanges;
 import info.nightscout.androidaps.db.ProfileSwitch;
 import info.nightscout.androidaps.db.Source;
 import info.nightscout.androidaps.db.TempTarget;
@@ -41,6 +42,7 @@ import info.nightscout.androidaps.events.EventReloadTempBasalData;
 import info.nightscout.androidaps.events.EventReloadTreatmentData;
 import info.nightscout.androidaps.events.EventTempTargetChange;
 import info.nightscout.androidaps.interfaces.ActivePluginProvider;
+import info.nightscout.androidaps.interfaces.Interval;
 import info.nightscout.androidaps.interfaces.PluginBase;
 import info.nightscout.androidaps.interfaces.PluginDescription;
 import info.nightscout.androidaps.interfaces.PluginType;
@@ -87,7 +89,7 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
     private IobTotal lastTreatmentCalculation;
     private IobTotal lastTempBasalsCalculation;
 
-    private final ArrayList<Treatment> treatments = new ArrayList<>();
+    private volatile TreatmentIndex treatments = TreatmentIndex.EMPTY;
     private final Intervals<TemporaryBasal> tempBasals = new NonOverlappingIntervals<>();
     private final Intervals<ExtendedBolus> extendedBoluses = new NonOverlappingIntervals<>();
     private final Intervals<TempTarget> tempTargets = new OverlappingIntervals<>();
@@ -141,8 +143,8 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
                 .observeOn(Schedulers.io())
                 .subscribe(event -> {
                             getAapsLogger().debug(LTag.DATATREATMENTS, "EventReloadTreatmentData");
-                            initializeTreatmentData(range());
-                            initializeExtendedBolusData(range());
+                            updateTreatmentData(event.getTreatmentChanges(), range());
+                            updateExtendedBolusData(event.getExtendedBolusChanges(), range());
                             updateTotalIOBTreatments();
                             rxBus.send(event.getNext());
                         },
@@ -151,7 +153,7 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
         disposable.add(rxBus
                 .toObservable(EventReloadProfileSwitchData.class)
                 .observeOn(Schedulers.io())
-                .subscribe(event -> initializeProfileSwitchData(range()),
+                .subscribe(event -> updateProfileSwitchData(event.getChanges(), range()),
                         fabricPrivacy::logException
                 ));
         disposable.add(rxBus
@@ -165,7 +167,7 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
                 .observeOn(Schedulers.io())
                 .subscribe(event -> {
                             getAapsLogger().debug(LTag.DATATREATMENTS, "EventReloadTempBasalData");
-                            initializeTempBasalData(range());
+                            updateTempBasalData(event.getChanges(), range());
                             updateTotalIOBTempBasals();
                         },
                         fabricPrivacy::logException
@@ -199,10 +201,8 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
 
     private void initializeTreatmentData(long range) {
         getAapsLogger().debug(LTag.DATATREATMENTS, "initializeTreatmentData");
-        synchronized (treatments) {
-            treatments.clear();
-            treatments.addAll(getService().getTreatmentDataFromTime(DateUtil.now() - range, false));
-        }
+        // build new snapshot off the published one, readers keep using the old until swapped
+        treatments = new TreatmentIndex(getService().getTreatmentDataFromTime(DateUtil.now() - range, false));
     }
 
     private void initializeTempBasalData(long range) {
@@ -235,6 +235,62 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
         }
     }
 
+    // Change lists come from db change events, null means data must be reloaded from db
+
+    private void updateTreatmentData(@Nullable List<PendingChanges.Change<Treatment>> changes, long range) {
+        if (changes == null) {
+            initializeTreatmentData(range);
+        } else if (!changes.isEmpty()) {
+            getAapsLogger().debug(LTag.DATATREATMENTS, "updateTreatmentData changes: " + changes.size());
+            treatments = treatments.withChanges(changes, DateUtil.now() - range);
+        }
+    }
+
+    private void updateTempBasalData(@Nullable List<PendingChanges.Change<TemporaryBasal>> changes, long range) {
+        if (changes == null) initializeTempBasalData(range);
+        else applyChanges(tempBasals, changes, DateUtil.now() - range);
+    }
+
+    private void updateExtendedBolusData(@Nullable List<PendingChanges.Change<ExtendedBolus>> changes, long range) {
+        if (changes == null) initializeExtendedBolusData(range);
+        else applyChanges(extendedBoluses, changes, DateUtil.now() - range);
+    }
+
+    private <T extends Interval> void applyChanges(Intervals<T> intervals, List<PendingChanges.Change<T>> changes, long from) {
+        if (changes.isEmpty()) return;
+        synchronized (intervals) {
+            for (PendingChanges.Change<T> change : changes) {
+                if (change.isRemoval()) intervals.remove(change.date);
+                else if (change.date >= from) intervals.add(change.record);
+            }
+            intervals.removeOlderThan(from);
+        }
+    }
+
+    private void updateProfileSwitchData(@Nullable List<PendingChanges.Change<ProfileSwitch>> changes, long range) {
+        if (changes == null) {
+            initializeProfileSwitchData(range);
+            return;
+        }
+        if (changes.isEmpty()) return;
+        long from = DateUtil.now() - range;
+        synchronized (profiles) {
+            for (PendingChanges.Change<ProfileSwitch> change : changes) {
+                if (change.isRemoval()) {
+                    ProfileSwitch removed = profiles.remove(change.date);
+                    // previous switch without duration may be older than loaded range
+                    if (removed != null && removed.isEndingEvent()) {
+                        initializeProfileSwitchData(range);
+                        return;
+                    }
+                } else if (change.date >= from || change.record.isEndingEvent()) {
+                    profiles.add(change.record);
+                }
+            }
+            profiles.removeOlderThan(from);
+        }
+    }
+
     @Override
     public IobTotal getLastCalculationTreatments() {
         return lastTreatmentCalculation;
@@ -251,27 +307,37 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
         PumpInterface pumpInterface = activePlugin.getActivePump();
 
         double dia = profile.getDia();
-
-        synchronized (treatments) {
-            for (int pos = 0; pos < treatments.size(); pos++) {
-                Treatment t = treatments.get(pos);
-                if (!t.isValid) continue;
-                if (t.date > time) continue;
-                Iob tIOB = t.iobCalc(time, dia);
-                total.iob += tIOB.iobContrib;
-                total.activity += tIOB.activityContrib;
-                if (t.insulin > 0 && t.date > total.lastBolusTime)
-                    total.lastBolusTime = t.date;
-                if (!t.isSMB) {
-                    // instead of dividing the DIA that only worked on the bilinear curves,
-                    // multiply the time the treatment is seen active.
-                    long timeSinceTreatment = time - t.date;
-                    long snoozeTime = t.date + (long) (timeSinceTreatment * sp.getDouble(R.string.key_openapsama_bolussnooze_dia_divisor, 2.0));
-                    Iob bIOB = t.iobCalc(snoozeTime, dia);
-                    total.bolussnooze += bIOB.iobContrib;
-                }
+        double snoozeDivisor = sp.getDouble(R.string.key_openapsama_bolussnooze_dia_divisor, 2.0);
+
+        // treatments older than DIA (or DIA / divisor for bolus snooze) contribute nothing
+        TreatmentIndex snapshot = treatments;
+        long window = (long) (dia * 60 * 60 * 1000L);
+        if (snoozeDivisor < 1) window = snoozeDivisor > 0 ? (long) (window / snoozeDivisor) : Long.MAX_VALUE / 2;
+        int start = snapshot.firstAtOrAfter(time - window);
+        int end = snapshot.firstAfter(time);
+        for (int pos = start; pos < end; pos++) {
+            Treatment t = snapshot.get(pos);
+            if (!t.isValid) continue;
+            Iob tIOB = t.iobCalc(time, dia);
+            total.iob += tIOB.iobContrib;
+            total.activity += tIOB.activityContrib;
+            if (t.insulin > 0 && t.date > total.lastBolusTime)
+                total.lastBolusTime = t.date;
+            if (!t.isSMB) {
+                // instead of dividing the DIA that only worked on the bilinear curves,
+                // multiply the time the treatment is seen active.
+                long timeSinceTreatment = time - t.date;
+                long snoozeTime = t.date + (long) (timeSinceTreatment * snoozeDivisor);
+                Iob bIOB = t.iobCalc(snoozeTime, dia);
+                total.bolussnooze += bIOB.iobContrib;
             }
         }
+        // last bolus may be older than the window
+        for (int pos = start - 1; pos >= 0 && total.lastBolusTime == 0; pos--) {
+            Treatment t = snapshot.get(pos);
+            if (t.isValid && t.insulin > 0)
+                total.lastBolusTime = t.date;
+        }
 
         if (!pumpInterface.isFakingTempsByExtendedBoluses())
             synchronized (extendedBoluses) {
@@ -292,9 +358,7 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
 
     @Override
     public List<Treatment> getTreatmentsFromHistory() {
-        synchronized (treatments) {
-            return new ArrayList<>(treatments);
-        }
+        return treatments.newestFirst();
     }
 
 
@@ -307,34 +371,24 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
      */
     @Override
     public List<Treatment> getTreatmentsFromHistoryAfterTimestamp(long fromTimestamp) {
-        List<Treatment> in5minback = new ArrayList<>();
-
         long time = System.currentTimeMillis();
-        synchronized (treatments) {
-//            getAapsLogger().debug(MedtronicHistoryData.doubleBolusDebug, LTag.DATATREATMENTS, "DoubleBolusDebug: AllTreatmentsInDb: " + new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().toJson(treatments));
-
-            for (Treatment t : treatments) {
-                if (t.date <= time && t.date >= fromTimestamp)
-                    in5minback.add(t);
-            }
-//            getAapsLogger().debug(MedtronicHistoryData.doubleBolusDebug, LTag.DATATREATMENTS, "DoubleBolusDebug: FilteredTreatments: AfterTime={}, Items={} " + fromTimestamp + " " + new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().toJson(in5minback));
-            return in5minback;
-        }
+        List<Treatment> in5minback = treatments.newestFirst(fromTimestamp, time);
+//        getAapsLogger().debug(MedtronicHistoryData.doubleBolusDebug, LTag.DATATREATMENTS, "DoubleBolusDebug: FilteredTreatments: AfterTime={}, Items={} " + fromTimestamp + " " + new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create().toJson(in5minback));
+        return in5minback;
     }
 
 
     @Override
     public List<Treatment> getCarbTreatments5MinBackFromHistory(long time) {
         List<Treatment> in5minback = new ArrayList<>();
-        synchronized (treatments) {
-            for (Treatment t : treatments) {
-                if (!t.isValid)
-                    continue;
-                if (t.date <= time && t.date > time - 5 * 60 * 1000 && t.carbs > 0)
-                    in5minback.add(t);
-            }
-            return in5minback;
+        TreatmentIndex snapshot = treatments;
+        int start = snapshot.firstAfter(time - 5 * 60 * 1000);
+        for (int pos = snapshot.firstAfter(time) - 1; pos >= start; pos--) {
+            Treatment t = snapshot.get(pos);
+            if (t.isValid && t.carbs > 0)
+                in5minback.add(t);
         }
+        return in5minback;
     }
 
     @Override
@@ -703,10 +757,9 @@ public class TreatmentsPlugin extends PluginBase implements TreatmentsInterface
             if (extendedBoluses.size() > 0)
                 oldestTime = Math.min(oldestTime, extendedBoluses.get(0).date);
         }
-        synchronized (treatments) {
-            if (treatments.size() > 0)
-                oldestTime = Math.min(oldestTime, treatments.get(treatments.size() - 1).date);
-        }
+        TreatmentIndex snapshot = treatments;
+        if (snapshot.size() > 0)
+            oldestTime = Math.min(oldestTime, snapshot.oldestDate());
         oldestTime -= 15 * 60 * 1000L; // allow 15 min before
         return oldestTime;
     }
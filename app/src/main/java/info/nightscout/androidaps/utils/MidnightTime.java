@@ -54,6 +54,11 @@ public class MidnightTime {
         return m;
     }
 
+    // days around DST change are not 24h long
+    public static long calcNextDay(long midnight) {
+        return calc(midnight + 25 * 60 * 60 * 1000L);
+    }
+
     static void resetCache() {
         hits = 0;
         misses = 0;
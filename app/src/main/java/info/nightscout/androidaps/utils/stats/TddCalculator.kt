@@ -5,6 +5,7 @@ import android.util.LongSparseArray
 import dagger.android.HasAndroidInjector
 import info.nightscout.androidaps.MainApp
 import info.nightscout.androidaps.R
+import info.nightscout.androidaps.db.DailyStats
 import info.nightscout.androidaps.db.TDD
 import info.nightscout.androidaps.interfaces.ActivePluginProvider
 import info.nightscout.androidaps.interfaces.ProfileFunction
@@ -43,16 +44,65 @@ class TddCalculator @Inject constructor(
         service = TreatmentService(injector) // plugin is not started
     }
 
+    /**
+     * Finished days are taken from DailyStats table. Only days newer than the oldest
+     * missing (or invalidated) day are calculated from treatments and stored.
+     */
     fun calculate(days: Long): LongSparseArray<TDD> {
-        val range = T.days(days + 1).msecs()
         val startTime = MidnightTime.calc(DateUtil.now() - T.days(days).msecs())
         val endTime = MidnightTime.calc(DateUtil.now())
-        initializeData(range)
+        val fakingTemps = activePlugin.activePump.isFakingTempsByExtendedBoluses
+        val dbHelper = MainApp.getDbHelper()
+        val generation = dbHelper.dailyStatsGeneration
+
+        val stored = LongSparseArray<DailyStats>()
+        for (dailyStats in dbHelper.getDailyStats(startTime, endTime)) stored.put(dailyStats.date, dailyStats)
+        var calculateFrom = startTime
+        while (calculateFrom < endTime) {
+            val dailyStats = stored[calculateFrom]
+            if (dailyStats == null || !dailyStats.tddCalculated || dailyStats.fakingTemps != fakingTemps) break
+            calculateFrom = MidnightTime.calcNextDay(calculateFrom)
+        }
+
+        if (calculateFrom < endTime) {
+            aapsLogger.debug(LTag.CORE, "Calculating TDD from " + dateUtil.dateAndTimeString(calculateFrom))
+            val calculated = calculate(calculateFrom, endTime, fakingTemps)
+            val toStore = ArrayList<DailyStats>()
+            var day = calculateFrom
+            while (day < endTime) {
+                val dailyStats = stored[day] ?: DailyStats(day).also { stored.put(day, it) }
+                val tdd = calculated[day]
+                dailyStats.tddCalculated = true
+                dailyStats.tddPresent = tdd != null
+                dailyStats.fakingTemps = fakingTemps
+                dailyStats.bolus = tdd?.bolus ?: 0.0
+                dailyStats.basal = tdd?.basal ?: 0.0
+                dailyStats.carbs = tdd?.carbs ?: 0.0
+                toStore.add(dailyStats)
+                day = MidnightTime.calcNextDay(day)
+            }
+            dbHelper.storeDailyStats(toStore, generation)
+        }
+
+        val result = LongSparseArray<TDD>()
+        for (i in 0 until stored.size()) {
+            val dailyStats = stored.valueAt(i)
+            if (!dailyStats.tddPresent) continue
+            val tdd = TDD(dailyStats.date, dailyStats.bolus, dailyStats.basal, dailyStats.bolus + dailyStats.basal)
+            tdd.carbs = dailyStats.carbs
+            result.put(dailyStats.date, tdd)
+        }
+        aapsLogger.debug(LTag.CORE, result.toString())
+        return result
+    }
+
+    private fun calculate(startTime: Long, endTime: Long, fakingTemps: Boolean): LongSparseArray<TDD> {
+        initializeData(DateUtil.now() - startTime + T.days(1).msecs())
 
         val result = LongSparseArray<TDD>()
         for (t in treatmentsFromHistory) {
             if (!t.isValid) continue
-            if (t.date < startTime || t.date > endTime) continue
+            if (t.date < startTime || t.date >= endTime) continue
             val midnight = MidnightTime.calc(t.date)
             val tdd = result[midnight] ?: TDD(midnight, 0.0, 0.0, 0.0)
             tdd.bolus += t.insulin
@@ -68,7 +118,7 @@ class TddCalculator @Inject constructor(
             val absoluteRate = tbr?.tempBasalConvertedToAbsolute(t, profile) ?: profile.getBasal(t)
             tdd.basal += absoluteRate / 60.0 * 5.0
 
-            if (!activePlugin.activePump.isFakingTempsByExtendedBoluses) {
+            if (!fakingTemps) {
                 // they are not included in TBRs
                 val eb = getExtendedBolusFromHistory(t)
                 val absoluteEbRate = eb?.absoluteRate() ?: 0.0
@@ -80,7 +130,6 @@ class TddCalculator @Inject constructor(
             val tdd = result.valueAt(i)
             tdd.total = tdd.bolus + tdd.basal
         }
-        aapsLogger.debug(LTag.CORE, result.toString())
         return result
     }
 
@@ -6,6 +6,7 @@ import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.MainApp
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.data.Profile
+import info.nightscout.androidaps.db.DailyStats
 import info.nightscout.androidaps.interfaces.ProfileFunction
 import info.nightscout.androidaps.utils.DateUtil
 import info.nightscout.androidaps.utils.HtmlHelper
@@ -21,12 +22,20 @@ class TirCalculator @Inject constructor(
     private val profileFunction: ProfileFunction,
     private val dateUtil: DateUtil
 ){
+    private val rangeLowMgdl = Constants.STATS_RANGE_LOW_MMOL * Constants.MMOLL_TO_MGDL
+    private val rangeHighMgdl = Constants.STATS_RANGE_HIGH_MMOL * Constants.MMOLL_TO_MGDL
+    private val targetHighMgdl = Constants.STATS_TARGET_HIGH_MMOL * Constants.MMOLL_TO_MGDL
+
     fun calculate(days: Long, lowMgdl: Double, highMgdl: Double): LongSparseArray<TIR> {
         if (lowMgdl < 39) throw RuntimeException("Low below 39")
         if (lowMgdl > highMgdl) throw RuntimeException("Low > High")
         val startTime = MidnightTime.calc(DateUtil.now() - T.days(days).msecs())
         val endTime = MidnightTime.calc(DateUtil.now())
 
+        // stats ranges are precalculated in DailyStats
+        if (lowMgdl == rangeLowMgdl && (highMgdl == targetHighMgdl || highMgdl == rangeHighMgdl))
+            return fromDailyStats(startTime, endTime, lowMgdl, highMgdl)
+
         val bgReadings = MainApp.getDbHelper().getBgreadingsDataFromTime(startTime, endTime, true)
         val result = LongSparseArray<TIR>()
         for (bg in bgReadings) {
@@ -44,6 +53,61 @@ class TirCalculator @Inject constructor(
         return result
     }
 
+    private fun fromDailyStats(startTime: Long, endTime: Long, lowMgdl: Double, highMgdl: Double): LongSparseArray<TIR> {
+        val dbHelper = MainApp.getDbHelper()
+        val generation = dbHelper.dailyStatsGeneration
+
+        val stored = LongSparseArray<DailyStats>()
+        for (dailyStats in dbHelper.getDailyStats(startTime, endTime)) stored.put(dailyStats.date, dailyStats)
+        var calculateFrom = startTime
+        while (calculateFrom < endTime && stored[calculateFrom]?.tirCalculated == true)
+            calculateFrom = MidnightTime.calcNextDay(calculateFrom)
+
+        if (calculateFrom < endTime) {
+            val toStore = ArrayList<DailyStats>()
+            var day = calculateFrom
+            while (day < endTime) {
+                val dailyStats = stored[day] ?: DailyStats(day).also { stored.put(day, it) }
+                dailyStats.tirCalculated = true
+                dailyStats.bgBelow = 0
+                dailyStats.bgInTarget = 0
+                dailyStats.bgInRange = 0
+                dailyStats.bgAbove = 0
+                toStore.add(dailyStats)
+                day = MidnightTime.calcNextDay(day)
+            }
+            for (bg in MainApp.getDbHelper().getBgreadingsDataFromTime(calculateFrom, endTime - 1, true)) {
+                val dailyStats = stored[MidnightTime.calc(bg.date)] ?: continue
+                when {
+                    bg.value < 39              -> Unit
+                    bg.value < rangeLowMgdl    -> dailyStats.bgBelow++
+                    bg.value <= targetHighMgdl -> dailyStats.bgInTarget++
+                    bg.value <= rangeHighMgdl  -> dailyStats.bgInRange++
+                    else                       -> dailyStats.bgAbove++
+                }
+            }
+            dbHelper.storeDailyStats(toStore, generation)
+        }
+
+        val result = LongSparseArray<TIR>()
+        for (i in 0 until stored.size()) {
+            val dailyStats = stored.valueAt(i)
+            if (dailyStats.bgBelow + dailyStats.bgInTarget + dailyStats.bgInRange + dailyStats.bgAbove == 0) continue
+            val tir = TIR(dailyStats.date, lowMgdl, highMgdl)
+            tir.below = dailyStats.bgBelow
+            if (highMgdl == targetHighMgdl) {
+                tir.inRange = dailyStats.bgInTarget
+                tir.above = dailyStats.bgInRange + dailyStats.bgAbove
+            } else {
+                tir.inRange = dailyStats.bgInTarget + dailyStats.bgInRange
+                tir.above = dailyStats.bgAbove
+            }
+            tir.count = tir.below + tir.inRange + tir.above
+            result.append(dailyStats.date, tir)
+        }
+        return result
+    }
+
     fun averageTIR(tirs: LongSparseArray<TIR>): TIR {
         val totalTir = if (tirs.size() > 0) {
             TIR(tirs.valueAt(0).date, tirs.valueAt(0).lowThreshold, tirs.valueAt(0).highThreshold)
@@ -46,6 +46,25 @@ class NonOverlappingIntervalsTest : TestBase() {
         Assert.assertEquals(null, list.getValueByInterval(startDate + T.hours(10).msecs() + 1))
     }
 
+    @Test
+    fun removeRestoresCutInterval() {
+        list.reset()
+        list.add(TemporaryBasal(injector).date(startDate).duration(T.hours(10).mins().toInt()).absolute(1.0))
+        list.add(TemporaryBasal(injector).date(startDate + T.hours(5).msecs()).duration(0))
+        Assert.assertEquals(null, list.getValueByInterval(startDate + T.hours(6).msecs()))
+
+        // removing stop makes first temp running again
+        Assert.assertNotNull(list.remove(startDate + T.hours(5).msecs()))
+        Assert.assertNull(list.remove(startDate + T.hours(5).msecs()))
+        Assert.assertEquals(1.0, list.getValueByInterval(startDate + T.hours(6).msecs())!!.absoluteRate, 0.01)
+        Assert.assertEquals(startDate + T.hours(10).msecs(), list.get(0).end())
+
+        list.add(TemporaryBasal(injector).date(startDate + T.hours(1).msecs()).duration(T.hours(1).mins().toInt()).absolute(2.0))
+        list.removeOlderThan(startDate + 1)
+        Assert.assertEquals(1, list.size())
+        Assert.assertEquals(2.0, list.getValueByInterval(startDate + T.hours(1).msecs())!!.absoluteRate, 0.01)
+    }
+
     @Test
     fun testCopyConstructor() {
         list.reset()
@@ -87,4 +87,39 @@ class ProfileIntervalsTest : TestBaseWithProfile() {
         Assert.assertEquals(startDate + T.hours(1).msecs(), list.getReversed(0).date)
         Assert.assertEquals(startDate + T.hours(1).msecs(), list.reversedList[0].date)
     }
-}
\ No newline at end of file
+
+    @Test fun memoizedLookupMatchesFreshLookup() {
+        val random = Random(3)
+        for (round in 0 until 20) {
+            list.reset()
+            var date = startDate
+            for (i in 0 until 8) {
+                date += T.mins(random.nextInt(600).toLong()).msecs()
+                list.add(ProfileSwitch(profileInjector).date(date).duration(random.nextInt(3) * 60).profileName("$round-$i").profile(validProfile))
+            }
+            for (i in 0 until 300) {
+                val time = startDate - T.hours(1).msecs() + (random.nextDouble() * T.hours(90).msecs()).toLong()
+                // a fresh copy has nothing memoized
+                Assert.assertEquals(ProfileIntervals(list).getValueToTime(time), list.getValueToTime(time))
+                Assert.assertEquals(ProfileIntervals(list).getValueToTime(time + 1), list.getValueToTime(time + 1))
+            }
+        }
+    }
+
+    @Test fun removeOlderThanKeepsNewestPermanentSwitch() {
+        list.reset()
+        list.add(ProfileSwitch(profileInjector).date(startDate).profileName("1").profile(validProfile))
+        list.add(ProfileSwitch(profileInjector).date(startDate + T.hours(1).msecs()).profileName("2").profile(validProfile))
+        list.add(ProfileSwitch(profileInjector).date(startDate + T.hours(2).msecs()).duration(60).profileName("3").profile(validProfile))
+        list.add(ProfileSwitch(profileInjector).date(startDate + T.hours(4).msecs()).duration(60).profileName("4").profile(validProfile))
+        Assert.assertEquals("3", (list.getValueToTime(startDate + T.hours(2).msecs() + 1) as ProfileSwitch?)!!.profileName)
+
+        list.removeOlderThan(startDate + T.hours(3).msecs())
+        Assert.assertEquals(2, list.list.size)
+        Assert.assertEquals("2", (list.getValueToTime(startDate + T.hours(2).msecs() + 1) as ProfileSwitch?)!!.profileName)
+        Assert.assertEquals("4", (list.getValueToTime(startDate + T.hours(4).msecs() + 1) as ProfileSwitch?)!!.profileName)
+
+        Assert.assertEquals("4", list.remove(startDate + T.hours(4).msecs())!!.profileName)
+        Assert.assertEquals("2", (list.getValueToTime(startDate + T.hours(4).msecs() + 1) as ProfileSwitch?)!!.profileName)
+    }
+}
@@ -6,6 +6,8 @@ import info.nightscout.androidaps.TestBaseWithProfile
 import info.nightscout.androidaps.interfaces.PumpDescription
 import info.nightscout.androidaps.plugins.pump.virtual.VirtualPumpPlugin
 import info.nightscout.androidaps.utils.FabricPrivacy
+import org.joda.time.DateTime
+import org.json.JSONArray
 import org.json.JSONObject
 import org.junit.Assert
 import org.junit.Before
@@ -147,4 +149,26 @@ class ProfileTest : TestBaseWithProfile() {
         p.isValid("Test")
         //Assert.assertEquals(true, ((AAPSMocker.MockedBus) MainApp.bus()).notificationSent);
     }
-}
\ No newline at end of file
+
+    @Test
+    fun blocksNotAlignedToSlotsTest() {
+        val profile = JSONObject(okProfile)
+        profile.put("sens", JSONArray("[{\"time\":\"00:00\",\"value\":\"100\"},{\"time\":\"06:15\",\"value\":\"110\"},{\"time\":\"06:20\",\"value\":\"120\"}]"))
+        val p = Profile(profileInjector, profile, 100, 0)
+        Assert.assertEquals(100.0, p.getIsfTimeFromMidnight(6 * 60 * 60), 0.01)
+        Assert.assertEquals(100.0, p.getIsfTimeFromMidnight(6 * 60 * 60 + 15 * 60 - 1), 0.01)
+        Assert.assertEquals(110.0, p.getIsfTimeFromMidnight(6 * 60 * 60 + 15 * 60), 0.01)
+        Assert.assertEquals(120.0, p.getIsfTimeFromMidnight(6 * 60 * 60 + 20 * 60), 0.01)
+        Assert.assertEquals(120.0, p.getIsfTimeFromMidnight(23 * 60 * 60 + 59 * 60), 0.01)
+        Assert.assertEquals(100.0, p.getIsfTimeFromMidnight(-1), 0.01)
+    }
+
+    @Test
+    fun secondsFromMidnightTest() {
+        val random = Random(1)
+        for (i in 0 until 10000) {
+            val time = 1600000000000L + (random.nextDouble() * 365 * 24 * 60 * 60 * 1000).toLong()
+            Assert.assertEquals(DateTime(time).millisOfDay / 1000, Profile.secondsFromMidnight(time))
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package info.nightscout.androidaps.logging
+
+import ch.qos.logback.classic.Level
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Ignore
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mock
+import org.powermock.modules.junit4.PowerMockRunner
+import org.slf4j.LoggerFactory
+
+@RunWith(PowerMockRunner::class)
+class AAPSLoggerProductionTest : TestBase() {
+
+    @Mock lateinit var sp: SP
+
+    private lateinit var l: L
+    private lateinit var logger: AAPSLoggerProduction
+    private val apsLogger = LoggerFactory.getLogger(LTag.APS.tag) as? ch.qos.logback.classic.Logger
+    private var apsLevel: Level? = null
+
+    @Before
+    fun prepare() {
+        l = L(sp)
+        l.findByName(LTag.APS.tag).enable(true)
+        l.findByName(LTag.UI.tag).enable(false)
+        // measure the logger itself, not appenders
+        apsLevel = apsLogger?.level
+        apsLogger?.level = Level.OFF
+        logger = AAPSLoggerProduction(l)
+    }
+
+    @After
+    fun restoreLevel() {
+        apsLogger?.level = apsLevel
+    }
+
+    @Test
+    fun tagLookupMatchesSettings() {
+        Assert.assertTrue(l.isEnabled(LTag.APS))
+        Assert.assertFalse(l.isEnabled(LTag.UI))
+        for (tag in LTag.values())
+            Assert.assertEquals(l.findByName(tag.tag).enabled, l.isEnabled(tag))
+    }
+
+    @Test
+    fun lazyMessageIsBuiltOnlyForEnabledTag() {
+        var built = 0
+        logger.debug(LTag.UI) { built++; "ui" }
+        logger.info(LTag.UI) { built++; "ui" }
+        Assert.assertEquals(0, built)
+        logger.debug(LTag.APS) { built++; "aps" }
+        logger.info(LTag.APS) { built++; "aps" }
+        Assert.assertEquals(2, built)
+    }
+
+    // no assertion, prints cost of one call for comparison
+    @Ignore("Benchmark, run manually")
+    @Test
+    fun perCallCost() {
+        val value = 5.0
+        measure("disabled tag, concatenated message") { logger.debug(LTag.UI, "value: " + value + " at " + it) }
+        measure("disabled tag, lazy message") { logger.debug(LTag.UI) { "value: " + value + " at " + it } }
+        measure("enabled tag, concatenated message") { logger.debug(LTag.APS, "value: " + value + " at " + it) }
+        measure("enabled tag, lazy message") { logger.debug(LTag.APS) { "value: " + value + " at " + it } }
+        l.callerMarker = true
+        measure("enabled tag, caller marker") { logger.debug(LTag.APS, "value: " + value + " at " + it) }
+        l.callerMarker = false
+    }
+
+    private fun measure(name: String, call: (Int) -> Unit) {
+        val calls = 200000
+        repeat(calls) { call(it) } // warm up
+        val start = System.nanoTime()
+        repeat(calls) { call(it) }
+        println(name + ": " + (System.nanoTime() - start) / calls + " ns/call")
+    }
+}
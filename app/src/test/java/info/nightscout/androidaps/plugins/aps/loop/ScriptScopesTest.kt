@@ -0,0 +1,55 @@
+package info.nightscout.androidaps.plugins.aps.loop
+
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.db.StaticInjector
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Function
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import org.powermock.modules.junit4.PowerMockRunner
+
+@RunWith(PowerMockRunner::class)
+class ScriptScopesTest : TestBase() {
+
+    @Mock lateinit var scriptReader: ScriptReader
+
+    private lateinit var sut: ScriptScopes
+
+    @Before
+    fun prepare() {
+        StaticInjector(HasAndroidInjector { AndroidInjector { } }) // LoggerCallback is created by Rhino
+        `when`(scriptReader.readFile("OpenAPSAMA/loggerhelper.js")).thenReturn("var console = { };".toByteArray())
+        // assignment to undeclared variable as done in determine-basal.js
+        `when`(scriptReader.readFile("Test/determine-basal.js")).thenReturn("function determine_basal(a) { leaked = a; return leaked; }".toByteArray())
+        `when`(scriptReader.readFile("Test/basal-set-temp.js")).thenReturn("var tempBasalFunctions = {};".toByteArray())
+        sut = ScriptScopes(aapsLogger)
+    }
+
+    @Test
+    fun compileOnceAndKeepSharedScopeClean() {
+        val rhino = sut.enterContext()
+        try {
+            val scope1 = sut.newScope(rhino, scriptReader, "Test")
+            val scope2 = sut.newScope(rhino, scriptReader, "Test")
+            verify(scriptReader, times(1)).readFile("Test/determine-basal.js")
+
+            val determineBasal = ScriptableObject.getProperty(scope1, "determine_basal") as Function
+            Assert.assertEquals(5, (determineBasal.call(rhino, scope1, scope1, arrayOf<Any>(5)) as Number).toInt())
+            Assert.assertEquals(5, (ScriptableObject.getProperty(scope1, "leaked") as Number).toInt())
+            Assert.assertEquals(Scriptable.NOT_FOUND, ScriptableObject.getProperty(scope2, "leaked"))
+            Assert.assertNotEquals(Scriptable.NOT_FOUND, ScriptableObject.getProperty(scope2, "tempBasalFunctions"))
+        } finally {
+            Context.exit()
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package info.nightscout.androidaps.plugins.aps.openAPSSMB
+
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.data.IobTotal
+import info.nightscout.androidaps.db.StaticInjector
+import info.nightscout.androidaps.plugins.aps.loop.ScriptReader
+import info.nightscout.androidaps.plugins.aps.loop.ScriptScopes
+import info.nightscout.androidaps.utils.DateUtil
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Function
+import org.mozilla.javascript.NativeJSON
+import org.mozilla.javascript.NativeObject
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import org.mozilla.javascript.Undefined
+import org.powermock.modules.junit4.PowerMockRunner
+import org.skyscreamer.jsonassert.JSONAssert
+import java.io.File
+import java.util.*
+import kotlin.math.exp
+import kotlin.math.min
+import kotlin.math.roundToLong
+import kotlin.math.sin
+
+/**
+ * Replays inputs prepared by DetermineBasalAdapterSMBJS.setData, randomized and in the logged form,
+ * through determine-basal.js and DetermineBasalSMB and expects identical results
+ */
+@RunWith(PowerMockRunner::class)
+class DetermineBasalSMBTest : TestBase() {
+
+    @Mock lateinit var scriptReader: ScriptReader
+
+    private lateinit var scriptScopes: ScriptScopes
+    private val sut = DetermineBasalSMB()
+
+    @Before
+    fun prepare() {
+        StaticInjector(HasAndroidInjector { AndroidInjector { } }) // LoggerCallback is created by Rhino
+        `when`(scriptReader.readFile(anyString())).thenAnswer { File("src/main/assets/" + it.arguments[0]).readBytes() }
+        // keep script output out of the test log
+        `when`(scriptReader.readFile("OpenAPSAMA/loggerhelper.js")).thenReturn("var console = { log: function() {}, error: function() {} };".toByteArray())
+        scriptScopes = ScriptScopes(aapsLogger)
+    }
+
+    @Test
+    fun nativeEngineGivesSameResultAsScript() {
+        val random = Random(7)
+        val outcomes = HashSet<String>()
+        for (i in 0 until 1000) {
+            val inputs = generate(random)
+            val expected = invokeScript(inputs)
+            val actual = sut.determineBasal(inputs)
+            JSONAssert.assertEquals("case $i", expected, actual.toString(), true)
+            outcomes.add(JSONObject(expected).optString("reason").substringAfterLast("; ").replace(Regex("[0-9.\\-]+"), "#"))
+        }
+        // make sure replayed inputs reach most of the branches
+        Assert.assertTrue(outcomes.size > 20)
+    }
+
+    @Test
+    fun recordedLoopInputsGiveSameResult() {
+        val runs = readLoopInputs(File("src/test/res/openapssmb/loop_inputs.log"))
+        Assert.assertTrue(runs.isNotEmpty())
+        for ((i, inputs) in runs.withIndex()) {
+            JSONAssert.assertEquals("run $i", invokeScript(inputs), sut.determineBasal(inputs).toString(), true)
+        }
+    }
+
+    @Test
+    fun scriptParametersMatchJson() {
+        val random = Random(11)
+        for (i in 0 until 100) {
+            val inputs = generate(random)
+            val rhino = scriptScopes.enterContext()
+            try {
+                val scope = scriptScopes.newScope(rhino, scriptReader, "OpenAPSSMB")
+                fun json(param: Scriptable) = NativeJSON.stringify(rhino, scope, param, null, null).toString()
+                JSONAssert.assertEquals(inputs.glucoseStatusJson().toString(), json(inputs.glucoseStatusParam(rhino, scope)), true)
+                JSONAssert.assertEquals(inputs.currentTempJson().toString(), json(inputs.currentTempParam(rhino, scope)), true)
+                JSONAssert.assertEquals(inputs.profileJson().toString(), json(inputs.profileParam(rhino, scope)), true)
+                JSONAssert.assertEquals(inputs.mealDataJson().toString(), json(inputs.mealDataParam(rhino, scope)), true)
+                JSONAssert.assertEquals(inputs.autosensDataJson().toString(), json(inputs.autosensDataParam(rhino, scope)), true)
+                // time of iob ticks is not passed to the script
+                val iobData = JSONArray(inputs.iobDataJson().toString())
+                for (t in 0 until iobData.length()) {
+                    iobData.getJSONObject(t).remove("time")
+                    iobData.getJSONObject(t).optJSONObject("iobWithZeroTemp")?.remove("time")
+                }
+                JSONAssert.assertEquals(iobData.toString(), json(inputs.iobDataParam(rhino, scope)), true)
+            } finally {
+                Context.exit()
+            }
+        }
+    }
+
+    @Test
+    fun javaScriptFormattingTest() {
+        Assert.assertEquals("5", DetermineBasalSMB.str(5.0))
+        Assert.assertEquals("-0.35", DetermineBasalSMB.str(-0.35))
+        Assert.assertEquals("0.30000000000000004", DetermineBasalSMB.str(0.1 + 0.2))
+        Assert.assertEquals("1.1102230246251565e-16", DetermineBasalSMB.str(1.1102230246251565e-16))
+        Assert.assertEquals("NaN", DetermineBasalSMB.str(Double.NaN))
+        Assert.assertEquals("0.13", DetermineBasalSMB.toFixed(0.125, 2))
+        Assert.assertEquals("1.00", DetermineBasalSMB.toFixed(1.005, 2))
+        Assert.assertEquals("-0.00", DetermineBasalSMB.toFixed(-0.001, 2))
+        Assert.assertEquals(-2.0, DetermineBasalSMB.round(-2.5), 0.0)
+        Assert.assertEquals(1.3, DetermineBasalSMB.round(1.25, 1), 0.0)
+    }
+
+    private fun invokeScript(inputs: DetermineBasalInputsSMB): String {
+        val rhino = scriptScopes.enterContext()
+        try {
+            val scope = scriptScopes.newScope(rhino, scriptReader, "OpenAPSSMB")
+            val determineBasal = ScriptableObject.getProperty(scope, "determine_basal") as Function
+            val params = arrayOf(
+                inputs.glucoseStatusParam(rhino, scope),
+                inputs.currentTempParam(rhino, scope),
+                inputs.iobDataParam(rhino, scope),
+                inputs.profileParam(rhino, scope),
+                inputs.autosensDataParam(rhino, scope),
+                inputs.mealDataParam(rhino, scope),
+                ScriptableObject.getProperty(scope, "tempBasalFunctions"),
+                inputs.microBolusAllowed,
+                Undefined.instance,
+                inputs.currentTime,
+                inputs.isSaveCgmSource
+            )
+            val result = determineBasal.call(rhino, scope, scope, params) as NativeObject
+            return NativeJSON.stringify(rhino, scope, result, null, null).toString()
+        } finally {
+            Context.exit()
+        }
+    }
+
+    // inputs as logged by DetermineBasalAdapterSMBJS.invoke, log prefix of the lines is skipped
+    private fun readLoopInputs(file: File): List<DetermineBasalInputsSMB> {
+        val keys = listOf("Glucose status:", "IOB data:", "Current temp:", "Profile:", "Meal data:", "Autosens data:", "MicroBolusAllowed:", "SMBAlwaysAllowed:", "CurrentTime:", "isSaveCgmSource:")
+        val runs = ArrayList<DetermineBasalInputsSMB>()
+        val values = HashMap<String, String>()
+        for (line in file.readLines()) {
+            if (line.startsWith("#")) continue
+            val key = keys.firstOrNull { line.contains(it) } ?: continue
+            values[key] = line.substringAfter(key).trim()
+            // isSaveCgmSource is logged last
+            if (key == "isSaveCgmSource:") {
+                runs.add(inputsFromLog(values))
+                values.clear()
+            }
+        }
+        return runs
+    }
+
+    private fun inputsFromLog(values: Map<String, String>): DetermineBasalInputsSMB {
+        val glucoseStatus = JSONObject(values["Glucose status:"])
+        val currentTemp = JSONObject(values["Current temp:"])
+        val iobData = JSONArray(values["IOB data:"])
+        val profile = JSONObject(values["Profile:"])
+        val mealData = JSONObject(values["Meal data:"])
+        val autosensData = JSONObject(values["Autosens data:"])
+
+        val inputs = DetermineBasalInputsSMB()
+        inputs.maxIob = profile.getDouble("max_iob")
+        inputs.maxDailyBasal = profile.getDouble("max_daily_basal")
+        inputs.maxBasal = profile.getDouble("max_basal")
+        inputs.minBg = profile.getDouble("min_bg")
+        inputs.maxBg = profile.getDouble("max_bg")
+        inputs.targetBg = profile.getDouble("target_bg")
+        inputs.carbRatio = profile.getDouble("carb_ratio")
+        inputs.sens = profile.getDouble("sens")
+        inputs.maxDailySafetyMultiplier = profile.getInt("max_daily_safety_multiplier")
+        inputs.currentBasalSafetyMultiplier = profile.getDouble("current_basal_safety_multiplier")
+        inputs.sensitivityRaisesTarget = profile.getBoolean("sensitivity_raises_target")
+        inputs.resistanceLowersTarget = profile.getBoolean("resistance_lowers_target")
+        inputs.advTargetAdjustments = profile.getBoolean("adv_target_adjustments")
+        inputs.exerciseMode = profile.getBoolean("exercise_mode")
+        inputs.halfBasalExerciseTarget = profile.getInt("half_basal_exercise_target")
+        inputs.maxCOB = profile.getInt("maxCOB")
+        inputs.skipNeutralTemps = profile.getBoolean("skip_neutral_temps")
+        inputs.remainingCarbsCap = profile.getInt("remainingCarbsCap")
+        inputs.enableUAM = profile.getBoolean("enableUAM")
+        inputs.a52RiskEnable = profile.getBoolean("A52_risk_enable")
+        inputs.smbInterval = profile.getInt("SMBInterval")
+        inputs.enableSMBWithCOB = profile.getBoolean("enableSMB_with_COB")
+        inputs.enableSMBWithTempTarget = profile.getBoolean("enableSMB_with_temptarget")
+        inputs.allowSMBWithHighTempTarget = profile.getBoolean("allowSMB_with_high_temptarget")
+        inputs.enableSMBAlways = profile.getBoolean("enableSMB_always")
+        inputs.enableSMBAfterCarbs = profile.getBoolean("enableSMB_after_carbs")
+        inputs.maxSMBBasalMinutes = profile.getInt("maxSMBBasalMinutes")
+        inputs.maxUAMSMBBasalMinutes = profile.getInt("maxUAMSMBBasalMinutes")
+        inputs.bolusIncrement = profile.getDouble("bolus_increment")
+        inputs.carbsReqThreshold = profile.getInt("carbsReqThreshold")
+        inputs.currentBasal = profile.getDouble("current_basal")
+        inputs.tempTargetSet = profile.getBoolean("temptargetSet")
+        inputs.autosensMax = profile.getDouble("autosens_max")
+        if (profile.has("out_units")) inputs.outUnits = profile.getString("out_units")
+
+        inputs.tempDuration = currentTemp.getInt("duration")
+        inputs.tempRate = currentTemp.getDouble("rate")
+        if (currentTemp.has("minutesrunning")) inputs.tempMinutesRunning = currentTemp.getInt("minutesrunning")
+
+        inputs.iobArray = Array(iobData.length()) { iobTick(iobData.getJSONObject(it)) }
+
+        inputs.glucose = glucoseStatus.getDouble("glucose")
+        inputs.noise = glucoseStatus.getDouble("noise")
+        inputs.delta = glucoseStatus.getDouble("delta")
+        inputs.shortAvgDelta = glucoseStatus.getDouble("short_avgdelta")
+        inputs.longAvgDelta = glucoseStatus.getDouble("long_avgdelta")
+        inputs.glucoseDate = glucoseStatus.getLong("date")
+
+        inputs.carbs = mealData.getDouble("carbs")
+        inputs.boluses = mealData.getDouble("boluses")
+        inputs.mealCOB = mealData.getDouble("mealCOB")
+        inputs.slopeFromMaxDeviation = mealData.getDouble("slopeFromMaxDeviation")
+        inputs.slopeFromMinDeviation = mealData.getDouble("slopeFromMinDeviation")
+        inputs.lastBolusTime = mealData.getLong("lastBolusTime")
+        inputs.lastCarbTime = mealData.getLong("lastCarbTime")
+
+        inputs.autosensRatio = autosensData.getDouble("ratio")
+
+        inputs.microBolusAllowed = values["MicroBolusAllowed:"]!!.toBoolean()
+        inputs.smbAlwaysAllowed = values["SMBAlwaysAllowed:"]!!.toBoolean()
+        inputs.currentTime = values["CurrentTime:"]!!.toLong()
+        inputs.isSaveCgmSource = values["isSaveCgmSource:"]!!.toBoolean()
+
+        // nothing of the logged inputs is lost
+        JSONAssert.assertEquals(glucoseStatus, inputs.glucoseStatusJson(), true)
+        JSONAssert.assertEquals(currentTemp, inputs.currentTempJson(), true)
+        JSONAssert.assertEquals(iobData, inputs.iobDataJson(), true)
+        JSONAssert.assertEquals(profile, inputs.profileJson(), true)
+        JSONAssert.assertEquals(mealData, inputs.mealDataJson(), true)
+        JSONAssert.assertEquals(autosensData, inputs.autosensDataJson(), true)
+        return inputs
+    }
+
+    private fun iobTick(json: JSONObject): IobTotal =
+        IobTotal(DateUtil.fromISODateString(json.getString("time")).time).also {
+            it.iob = json.getDouble("iob")
+            it.basaliob = json.getDouble("basaliob")
+            it.bolussnooze = json.getDouble("bolussnooze")
+            it.activity = json.getDouble("activity")
+            it.lastBolusTime = json.getLong("lastBolusTime")
+            json.optJSONObject("iobWithZeroTemp")?.let { zeroTemp -> it.iobWithZeroTemp = iobTick(zeroTemp) }
+        }
+
+    private fun <T> Random.pick(vararg values: T): T = values[nextInt(values.size)]
+
+    private fun Random.between(from: Double, to: Double, digits: Int): Double {
+        val scale = Math.pow(10.0, digits.toDouble())
+        return ((from + nextDouble() * (to - from)) * scale).roundToLong() / scale
+    }
+
+    // same values as DetermineBasalAdapterSMBJS.setData collects, randomized
+    private fun generate(r: Random): DetermineBasalInputsSMB {
+        val inputs = DetermineBasalInputsSMB()
+        val now = 1602842400000L + r.nextInt(24 * 60) * 60000L + r.nextInt(60000)
+
+        val bg = if (r.nextInt(5) == 0) r.pick(10.0, 38.0, 39.0, 40.0, 55.0, 70.0, 80.0) else r.between(40.0, 350.0, 0)
+        val delta = if (r.nextInt(6) == 0) 0.0 else r.between(-15.0, 15.0, r.nextInt(3))
+        inputs.glucose = bg
+        inputs.noise = if (r.nextInt(20) == 0) r.pick(2.0, 3.0) else 0.0
+        inputs.delta = delta
+        inputs.shortAvgDelta = if (r.nextInt(6) == 0) 0.0 else delta + r.between(-3.0, 3.0, 2)
+        inputs.longAvgDelta = if (r.nextInt(6) == 0) 0.0 else delta + r.between(-5.0, 5.0, 2)
+        inputs.glucoseDate = now - if (r.nextInt(15) == 0) 20 * 60000L else r.nextInt(6 * 60000).toLong()
+
+        val basal = r.pick(0.35, 0.5, 0.85, 1.0, 1.2, 2.05)
+        val duration = r.pick(0, 0, 5, 10, 20, 29, 30, 60, 120)
+        inputs.tempDuration = duration
+        inputs.tempRate = if (duration == 0) 0.0 else r.pick(0.0, 0.25, basal, basal * 1.5, 2.0, 3.5)
+        if (duration > 0) inputs.tempMinutesRunning = 30 - min(30, duration)
+
+        var minBg = 100.0
+        var maxBg = 100.0
+        var tempTarget = false
+        when (r.nextInt(5)) {
+            1    -> { minBg = 90.0; maxBg = 110.0 }
+            2    -> { minBg = 80.0; maxBg = 80.0 }
+            3    -> { minBg = 140.0; maxBg = 140.0; tempTarget = true }
+            4    -> { minBg = r.between(72.0, 180.0, 1); maxBg = minBg; tempTarget = r.nextBoolean() }
+        }
+        val smb = r.nextInt(4) != 0
+        inputs.maxIob = r.pick(0.0, 2.0, 3.0, 7.0)
+        inputs.maxDailyBasal = r.pick(basal, basal * 1.3)
+        inputs.maxBasal = r.pick(1.0, 2.0, 4.0)
+        inputs.minBg = minBg
+        inputs.maxBg = maxBg
+        inputs.targetBg = (minBg + maxBg) / 2
+        inputs.carbRatio = r.pick(5.0, 10.0, 12.5, 20.0)
+        inputs.sens = r.pick(30.0, 54.3, 72.0, 100.0)
+        inputs.sensitivityRaisesTarget = r.nextBoolean()
+        inputs.resistanceLowersTarget = r.nextBoolean()
+        inputs.advTargetAdjustments = r.nextBoolean()
+        inputs.exerciseMode = r.nextInt(5) == 0
+        inputs.skipNeutralTemps = r.nextBoolean()
+        inputs.enableUAM = r.nextBoolean()
+        inputs.smbInterval = r.pick(3, 5)
+        inputs.enableSMBWithCOB = smb && r.nextBoolean()
+        inputs.enableSMBWithTempTarget = smb && r.nextBoolean()
+        inputs.allowSMBWithHighTempTarget = smb && r.nextBoolean()
+        inputs.enableSMBAlways = smb && r.nextBoolean()
+        inputs.enableSMBAfterCarbs = smb && r.nextBoolean()
+        inputs.bolusIncrement = r.pick(0.1, 0.05, 0.025)
+        inputs.currentBasal = basal
+        inputs.tempTargetSet = tempTarget
+        if (r.nextInt(3) == 0) inputs.outUnits = "mmol/L"
+
+        inputs.autosensRatio = if (r.nextInt(3) == 0) 1.0 else r.between(0.7, 1.2, 2)
+
+        val carbs = if (r.nextInt(3) == 0) 0.0 else r.pick(10.0, 30.0, 60.0, 120.0)
+        inputs.carbs = carbs
+        inputs.boluses = r.between(0.0, 8.0, 2)
+        inputs.mealCOB = if (carbs == 0.0) 0.0 else r.between(0.0, carbs, 1)
+        inputs.slopeFromMaxDeviation = if (r.nextInt(3) == 0) 0.0 else r.between(-3.0, 0.0, 3)
+        inputs.slopeFromMinDeviation = if (r.nextInt(3) == 0) 0.0 else r.between(0.0, 3.0, 3)
+        inputs.lastBolusTime = now - r.nextInt(300) * 60000L
+        inputs.lastCarbTime = if (carbs == 0.0) 0 else now - r.nextInt(360) * 60000L
+
+        val iob = if (r.nextInt(5) == 0) r.between(-1.5, 0.0, 2) else r.between(0.0, 7.0, 3)
+        val activity = iob * r.between(0.005, 0.02, 4)
+        val lastBolusTime = now - r.nextInt(240) * 60000L - r.nextInt(60000)
+        val ticks = if (r.nextInt(40) == 0) 1 else 48 // single element array is rejected by the script
+        inputs.iobArray = Array(ticks) { i ->
+            val decay = exp(-i / 20.0)
+            val tick = IobTotal(now + i * 5 * 60000L)
+            tick.iob = iob * decay
+            tick.basaliob = iob * decay / 3
+            tick.activity = activity * decay * (1 + 0.3 * sin(i / 5.0))
+            tick.lastBolusTime = lastBolusTime
+            tick.iobWithZeroTemp = IobTotal(tick.time).also {
+                it.iob = iob * decay - 0.1 * i / 48
+                it.activity = activity * decay - 0.0005 * i / 48
+                it.lastBolusTime = lastBolusTime
+            }
+            tick
+        }
+
+        inputs.microBolusAllowed = r.nextBoolean()
+        inputs.smbAlwaysAllowed = r.nextBoolean()
+        inputs.currentTime = now
+        inputs.isSaveCgmSource = r.nextInt(4) == 0
+        return inputs
+    }
+}
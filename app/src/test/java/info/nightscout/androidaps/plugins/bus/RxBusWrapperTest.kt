@@ -0,0 +1,69 @@
+package info.nightscout.androidaps.plugins.bus
+
+import info.nightscout.androidaps.events.Event
+import io.reactivex.plugins.RxJavaPlugins
+import io.reactivex.schedulers.TestScheduler
+import org.junit.After
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RxBusWrapperTest {
+
+    private open class EventParent(val value: Int) : Event()
+    private class EventChild(value: Int) : EventParent(value)
+    private class EventOther : Event()
+
+    private val rxBus = RxBusWrapper()
+
+    @After fun reset() {
+        RxJavaPlugins.reset()
+    }
+
+    @Test fun eventsAreRoutedByClassAndSuperclass() {
+        val parents = rxBus.toObservable(EventParent::class.java).test()
+        val children = rxBus.toObservable(EventChild::class.java).test()
+        val all = rxBus.toObservable(Event::class.java).test()
+
+        rxBus.send(EventParent(1))
+        rxBus.send(EventChild(2))
+        rxBus.send(EventOther())
+
+        Assert.assertEquals(listOf(1, 2), parents.values().map { it.value })
+        Assert.assertEquals(listOf(2), children.values().map { it.value })
+        Assert.assertEquals(3, all.valueCount())
+    }
+
+    @Test fun laterSubscriptionReceivesAlreadySentClass() {
+        rxBus.send(EventChild(1))
+        val parents = rxBus.toObservable(EventParent::class.java).test()
+        rxBus.send(EventChild(2))
+        Assert.assertEquals(listOf(2), parents.values().map { it.value })
+    }
+
+    @Test fun conflatedObservableDeliversLatest() {
+        val scheduler = TestScheduler()
+        RxJavaPlugins.setComputationSchedulerHandler { scheduler }
+        val progress = rxBus.toObservable(EventParent::class.java, 100).test()
+
+        for (i in 1..10) rxBus.send(EventParent(i))
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS)
+        rxBus.send(EventParent(11))
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS)
+
+        Assert.assertEquals(listOf(1, 10, 11), progress.values().map { it.value })
+    }
+
+    @Test fun statisticsCountSubscribersAndEvents() {
+        val first = rxBus.toObservable(EventParent::class.java).subscribe()
+        val second = rxBus.toObservable(EventParent::class.java).subscribe()
+        rxBus.send(EventParent(1))
+        rxBus.send(EventChild(2))
+        second.dispose()
+
+        val stats = rxBus.statistics().first { it.eventType == EventParent::class.java }
+        Assert.assertEquals(1, stats.subscribers)
+        Assert.assertEquals(2, stats.sent)
+        first.dispose()
+    }
+}
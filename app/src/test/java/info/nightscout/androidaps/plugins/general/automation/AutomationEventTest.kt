@@ -8,8 +8,12 @@ import info.nightscout.androidaps.plugins.aps.loop.LoopPlugin
 import info.nightscout.androidaps.plugins.bus.RxBusWrapper
 import info.nightscout.androidaps.plugins.configBuilder.ConfigBuilderPlugin
 import info.nightscout.androidaps.plugins.general.automation.actions.ActionLoopEnable
+import info.nightscout.androidaps.plugins.general.automation.triggers.Trigger
+import info.nightscout.androidaps.plugins.general.automation.triggers.TriggerConnector
 import info.nightscout.androidaps.plugins.general.automation.triggers.TriggerConnectorTest
 import info.nightscout.androidaps.plugins.general.automation.triggers.TriggerDummy
+import info.nightscout.androidaps.plugins.general.automation.triggers.TriggerPumpLastConnection
+import info.nightscout.androidaps.plugins.general.automation.triggers.TriggerWifiSsid
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import org.json.JSONObject
 import org.junit.Assert
@@ -18,6 +22,7 @@ import org.junit.runner.RunWith
 import org.mockito.Mock
 import org.powermock.core.classloader.annotations.PrepareForTest
 import org.powermock.modules.junit4.PowerMockRunner
+import java.util.*
 
 @RunWith(PowerMockRunner::class)
 @PrepareForTest(ConfigBuilderPlugin::class)
@@ -71,4 +76,27 @@ class AutomationEventTest : TestBase() {
         Assert.assertFalse(event.actions === clone.actions) // not the same object reference
         Assert.assertEquals(clone.toJSON(), clone.toJSON())
     }
+
+    @Test
+    fun onlyChangedInputsAreEvaluated() {
+        val event = AutomationEvent(injector)
+        // without triggers event is evaluated always
+        event.evaluated()
+        Assert.assertTrue(event.needsEvaluation())
+
+        val trigger = TriggerConnector(injector)
+        trigger.list.add(TriggerPumpLastConnection(injector))
+        trigger.list.add(TriggerWifiSsid(injector))
+        event.trigger = trigger
+        Assert.assertEquals(setOf(Trigger.Input.PUMP, Trigger.Input.NETWORK), event.inputs())
+
+        event.evaluated()
+        Assert.assertFalse(event.needsEvaluation())
+        event.inputsChanged(EnumSet.of(Trigger.Input.BG, Trigger.Input.LOCATION))
+        Assert.assertFalse(event.needsEvaluation())
+        event.inputsChanged(EnumSet.of(Trigger.Input.NETWORK))
+        Assert.assertTrue(event.needsEvaluation())
+        event.evaluated()
+        Assert.assertFalse(event.needsEvaluation())
+    }
 }
\ No newline at end of file
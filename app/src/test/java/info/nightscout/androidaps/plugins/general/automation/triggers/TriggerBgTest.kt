@@ -5,10 +5,12 @@ import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.db.BgReading
 import info.nightscout.androidaps.interfaces.ProfileFunction
+import info.nightscout.androidaps.plugins.general.automation.AutomationPlugin
 import info.nightscout.androidaps.plugins.general.automation.elements.Comparator
 import info.nightscout.androidaps.plugins.general.nsclient.data.NSSgv
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
 import info.nightscout.androidaps.utils.DateUtil
+import info.nightscout.androidaps.utils.T
 import org.json.JSONObject
 import org.junit.Assert
 import org.junit.Before
@@ -62,6 +64,18 @@ class TriggerBgTest : TriggerTestBase() {
         Assert.assertTrue(t.shouldRun())
     }
 
+    @Test
+    fun staleBgIsNoticedByTimer() {
+        `when`(iobCobCalculatorPlugin.bgReadings).thenReturn(generateOneCurrentRecordBgData())
+        val t = TriggerBg(injector).comparator(Comparator.Compare.IS_NOT_AVAILABLE)
+        Assert.assertFalse(t.shouldRun())
+        // no new BG arrives, only the timer runs
+        Assert.assertTrue(t.inputs().any { AutomationPlugin.timerInputs.contains(it) })
+        Assert.assertTrue(TriggerDelta(injector).inputs().any { AutomationPlugin.timerInputs.contains(it) })
+        `when`(DateUtil.now()).thenReturn(now + T.mins(8).msecs())
+        Assert.assertTrue(t.shouldRun())
+    }
+
     @Test
     fun copyConstructorTest() {
         val t: TriggerBg = TriggerBg(injector).setUnits(Constants.MGDL).setValue(213.0).comparator(Comparator.Compare.IS_EQUAL_OR_LESSER)
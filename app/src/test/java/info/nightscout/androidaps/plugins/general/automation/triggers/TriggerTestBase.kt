@@ -32,10 +32,12 @@ open class TriggerTestBase : TestBaseWithProfile() {
     @Mock lateinit var automationPlugin: AutomationPlugin
 
     lateinit var receiverStatusStore: ReceiverStatusStore
+    lateinit var triggerData: TriggerData
 
     @Before
     fun prepareMock1() {
         receiverStatusStore = ReceiverStatusStore(context, rxBus)
+        triggerData = TriggerData(injector, iobCobCalculatorPlugin, profileFunction, treatmentsPlugin)
     }
 
     var injector: HasAndroidInjector = HasAndroidInjector {
@@ -50,6 +52,7 @@ open class TriggerTestBase : TestBaseWithProfile() {
                 it.treatmentsPlugin = treatmentsPlugin
                 it.activePlugin = activePlugin
                 it.iobCobCalculatorPlugin = iobCobCalculatorPlugin
+                it.triggerData = triggerData
             }
             if (it is TriggerBg) {
                 it.profileFunction = profileFunction
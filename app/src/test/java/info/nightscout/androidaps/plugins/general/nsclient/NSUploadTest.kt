@@ -0,0 +1,77 @@
+package info.nightscout.androidaps.plugins.general.nsclient
+
+import android.content.Context
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.db.BgReading
+import info.nightscout.androidaps.db.DbRequest
+import info.nightscout.androidaps.interfaces.DatabaseHelperInterface
+import info.nightscout.androidaps.interfaces.UploadQueueInterface
+import info.nightscout.androidaps.plugins.configBuilder.RunningConfiguration
+import info.nightscout.androidaps.utils.resources.ResourceHelper
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import org.json.JSONObject
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mock
+import org.powermock.core.classloader.annotations.PrepareForTest
+import org.powermock.modules.junit4.PowerMockRunner
+
+@RunWith(PowerMockRunner::class)
+@PrepareForTest(RunningConfiguration::class)
+class NSUploadTest : TestBase() {
+
+    @Mock lateinit var resourceHelper: ResourceHelper
+    @Mock lateinit var sp: SP
+    @Mock lateinit var context: Context
+    @Mock lateinit var runningConfiguration: RunningConfiguration
+    @Mock lateinit var databaseHelper: DatabaseHelperInterface
+
+    private val queued = ArrayList<DbRequest>()
+    private val uploadQueue = object : UploadQueueInterface {
+        override fun add(dbRequest: DbRequest) {
+            queued.add(dbRequest)
+        }
+
+        override fun addAll(dbRequests: List<DbRequest>) {
+            queued.addAll(dbRequests)
+        }
+    }
+
+    private val injector = HasAndroidInjector { AndroidInjector { } }
+
+    private lateinit var sut: NSUpload
+
+    @Before
+    fun prepare() {
+        sut = NSUpload(injector, aapsLogger, resourceHelper, sp, context, uploadQueue, runningConfiguration, databaseHelper)
+    }
+
+    @Test
+    fun batchRequestsHaveUniqueIds() {
+        val readings = (0 until 12).map { index ->
+            BgReading(injector).also {
+                it.date = 1000000L + index * 5 * 60 * 1000L
+                it.value = 100.0 + index
+            }
+        }
+        sut.uploadBgs(readings, "test")
+
+        Assert.assertEquals(12, queued.size)
+        Assert.assertEquals(12, queued.map { it.nsClientID }.toSet().size)
+        queued.forEachIndexed { index, request ->
+            val data = JSONObject(request.data)
+            Assert.assertEquals("dbAdd", request.action)
+            Assert.assertEquals("entries", request.collection)
+            Assert.assertEquals(request.nsClientID, data.getString("NSCLIENT_ID"))
+            Assert.assertEquals(readings[index].date, data.getLong("date"))
+            Assert.assertEquals(readings[index].value, data.getDouble("sgv"), 0.01)
+        }
+        // later requests don't reuse ids of the batch
+        sut.uploadBg(readings[0], "test")
+        Assert.assertEquals(13, queued.map { it.nsClientID }.toSet().size)
+    }
+}
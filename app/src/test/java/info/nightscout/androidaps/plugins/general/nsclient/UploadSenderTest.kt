@@ -0,0 +1,167 @@
+package info.nightscout.androidaps.plugins.general.nsclient
+
+import android.content.Context
+import com.j256.ormlite.dao.CloseableIterator
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.db.DbRequest
+import info.nightscout.androidaps.interfaces.DatabaseHelperInterface
+import info.nightscout.androidaps.plugins.bus.RxBusWrapper
+import info.nightscout.androidaps.plugins.general.nsclient.acks.NSAddAck
+import info.nightscout.androidaps.plugins.general.nsclient.acks.NSUpdateAck
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import io.reactivex.disposables.CompositeDisposable
+import io.socket.client.Ack
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentMatchers
+import org.mockito.Mock
+import org.mockito.Mockito
+import org.mockito.Mockito.`when`
+import java.util.*
+
+class UploadSenderTest : TestBase() {
+
+    @Mock lateinit var databaseHelper: DatabaseHelperInterface
+    @Mock lateinit var context: Context
+    @Mock lateinit var sp: SP
+
+    private val rxBus = RxBusWrapper()
+    private val disposable = CompositeDisposable()
+
+    // db table of queued requests
+    private val db = ArrayList<DbRequest>()
+    private var transactions = 0
+    // runnables posted to NSClientService's thread
+    private val serviceThread = ArrayDeque<Runnable>()
+    private val server = StandInServer()
+
+    private lateinit var uploadQueue: UploadQueue
+    private lateinit var sut: UploadSender
+
+    private class Emitted(val event: String, val message: JSONObject, val ack: Ack) {
+
+        val key: String get() = if (event == "dbAdd") message.getJSONObject("data").getString("NSCLIENT_ID") else event + " " + message.getString("_id")
+    }
+
+    // socket.io server acking like NS
+    private class StandInServer : UploadSender.Connection {
+
+        var connected = true
+        val received = ArrayList<Emitted>()
+        val pending = ArrayList<Emitted>()
+
+        override fun canWrite(): Boolean = connected
+
+        override fun emit(event: String, message: JSONObject, ack: Ack) {
+            val emitted = Emitted(event, message, ack)
+            received.add(emitted)
+            pending.add(emitted)
+        }
+
+        fun ack(emitted: Emitted) {
+            if (emitted.event == "dbAdd") emitted.ack.call(JSONArray().put(JSONObject(emitted.message.getJSONObject("data").toString()).put("_id", "id" + emitted.key)))
+            else emitted.ack.call(JSONObject().put("result", "success"))
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    @Before
+    fun prepare() {
+        `when`(databaseHelper.getDbRequestInterator()).thenAnswer {
+            val iterator = db.toList().iterator()
+            val closeable = Mockito.mock(CloseableIterator::class.java) as CloseableIterator<DbRequest>
+            `when`(closeable.hasNext()).thenAnswer { iterator.hasNext() }
+            `when`(closeable.next()).thenAnswer { iterator.next() }
+            closeable
+        }
+        `when`(databaseHelper.deleteDbRequests(ArgumentMatchers.anyCollection(), ArgumentMatchers.anyMap())).thenAnswer { invocation ->
+            val nsClientIds = invocation.getArgument<Collection<String>>(0)
+            val mongoIds = invocation.getArgument<Map<String, Set<String>>>(1)
+            transactions++
+            val size = db.size
+            db.removeAll { nsClientIds.contains(it.nsClientID) || mongoIds[it.action]?.contains(it._id) == true }
+            size - db.size
+        }
+        `when`(databaseHelper.size(ArgumentMatchers.anyString())).thenAnswer { db.size.toLong() }
+
+        uploadQueue = object : UploadQueue(aapsLogger, databaseHelper, context, sp, rxBus) {
+            override fun runOnServiceThread(runnable: Runnable) {
+                serviceThread.add(runnable)
+            }
+        }
+        sut = UploadSender(aapsLogger, rxBus, databaseHelper, uploadQueue, server)
+        // as subscribed by NSClientService
+        disposable.add(rxBus.toObservable(NSAddAck::class.java).subscribe { sut.processAddAck(it) })
+        disposable.add(rxBus.toObservable(NSUpdateAck::class.java).subscribe { sut.processUpdateAck(it) })
+    }
+
+    @After
+    fun dispose() {
+        disposable.clear()
+    }
+
+    private fun runServiceThread() {
+        while (serviceThread.isNotEmpty()) serviceThread.poll()!!.run()
+    }
+
+    private fun queue(adds: Int, updates: Int, removes: Int) {
+        repeat(adds) { db.add(DbRequest("dbAdd", "treatments", JSONObject().put("value", it))) }
+        repeat(updates) { db.add(DbRequest("dbUpdate", "treatments", "update$it", JSONObject().put("value", it))) }
+        repeat(removes) { db.add(DbRequest("dbRemove", "treatments", "remove$it")) }
+    }
+
+    // server acks in random batches and order, queue must be drained without duplicates
+    @Test fun queueIsDrainedThroughWindow() {
+        queue(1000, 20, 20)
+        val random = Random(1)
+        var acks = 0
+
+        sut.sendQueued()
+        while (db.isNotEmpty()) {
+            Assert.assertTrue(server.pending.isNotEmpty())
+            Assert.assertTrue(server.pending.size <= UploadWindow.MAX_IN_FLIGHT)
+            server.pending.shuffle(random)
+            val acked = server.pending.take(1 + random.nextInt(server.pending.size))
+            server.pending.removeAll(acked)
+            acked.forEach { server.ack(it) }
+            acks += acked.size
+            // removal in one transaction, then refill
+            runServiceThread()
+        }
+
+        Assert.assertEquals(1040, server.received.size)
+        Assert.assertEquals(1040, server.received.map { it.key }.toSet().size)
+        Assert.assertEquals(1040, acks)
+        Assert.assertTrue(transactions < acks / 5)
+        Assert.assertEquals(0, uploadQueue.uploadWindow.inFlight())
+        Assert.assertEquals(1040L, uploadQueue.uploadWindow.totalAcked())
+    }
+
+    @Test fun unackedRequestsAreSentAgainAfterReconnect() {
+        queue(10, 0, 0)
+        server.connected = false
+        sut.sendQueued()
+        Assert.assertEquals(0, server.received.size)
+
+        server.connected = true
+        sut.sendQueued()
+        Assert.assertEquals(10, server.received.size)
+        // in flight requests are not sent twice
+        sut.sendQueued()
+        Assert.assertEquals(10, server.received.size)
+
+        // acks of previous connection never come
+        server.pending.clear()
+        uploadQueue.uploadWindow.reset()
+        sut.sendQueued()
+        Assert.assertEquals(20, server.received.size)
+        server.pending.forEach { server.ack(it) }
+        runServiceThread()
+        Assert.assertEquals(0, db.size)
+        Assert.assertEquals(1, transactions)
+    }
+}
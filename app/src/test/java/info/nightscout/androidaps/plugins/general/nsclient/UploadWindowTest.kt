@@ -0,0 +1,53 @@
+package info.nightscout.androidaps.plugins.general.nsclient
+
+import info.nightscout.androidaps.db.DbRequest
+import org.junit.Assert
+import org.junit.Test
+
+class UploadWindowTest {
+
+    private fun request(action: String, nsClientID: String, _id: String = ""): DbRequest =
+        DbRequest().also {
+            it.action = action
+            it.nsClientID = nsClientID
+            it._id = _id
+        }
+
+    @Test fun keysMatchAcks() {
+        Assert.assertEquals(UploadWindow.addKey("123"), UploadWindow.key(request("dbAdd", "123")))
+        Assert.assertEquals(UploadWindow.updateKey("dbRemove", "abc"), UploadWindow.key(request("dbRemove", "124", "abc")))
+    }
+
+    @Test fun windowIsBounded() {
+        val window = UploadWindow(2, 1000)
+        Assert.assertTrue(window.trySend("a", 0))
+        Assert.assertFalse(window.trySend("a", 0))
+        Assert.assertTrue(window.trySend("b", 0))
+        Assert.assertFalse(window.trySend("c", 0))
+        Assert.assertEquals(0, window.free(0))
+
+        window.acked(listOf("a"), 10)
+        Assert.assertEquals(1, window.free(10))
+        Assert.assertTrue(window.trySend("c", 10))
+    }
+
+    @Test fun unackedRequestsExpire() {
+        val window = UploadWindow(2, 1000)
+        window.trySend("a", 0)
+        window.trySend("b", 500)
+        Assert.assertEquals(1, window.free(1001))
+        Assert.assertFalse(window.isInFlight("a"))
+        Assert.assertTrue(window.isInFlight("b"))
+    }
+
+    @Test fun onlySentRequestsAreCounted() {
+        val window = UploadWindow(10, 1000)
+        window.trySend("a", 0)
+        window.trySend("b", 0)
+        window.acked(listOf("a", "b", "removedLocally"), 1000)
+        Assert.assertEquals(2, window.totalSent())
+        Assert.assertEquals(2, window.totalAcked())
+        Assert.assertEquals(2, window.ackedPerMinute(1000))
+        Assert.assertEquals(0, window.ackedPerMinute(61000))
+    }
+}
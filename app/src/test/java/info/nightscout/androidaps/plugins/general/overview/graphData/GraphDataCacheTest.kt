@@ -0,0 +1,73 @@
+package info.nightscout.androidaps.plugins.general.overview.graphData
+
+import org.junit.Assert
+import org.junit.Test
+
+class GraphDataCacheTest {
+
+    private val step = GraphDataCache.Kind.IOB.step
+    private val cache = GraphDataCache()
+    private var calls = 0
+    private val sampler: (Long) -> Long = { calls++; it }
+
+    @Test fun onlyMissingSamplesAreTaken() {
+        cache.prepare(1)
+        val samples = cache.samples<Long>(GraphDataCache.Kind.IOB, 0)
+        Assert.assertEquals(listOf(0L, step, 2 * step), samples.sample(2 * step + 1, sampler = sampler))
+        Assert.assertEquals(3, calls)
+        // next refresh with later now and second graph using shorter range
+        Assert.assertEquals(5, cache.samples<Long>(GraphDataCache.Kind.IOB, 0).sample(4 * step, sampler = sampler).size)
+        Assert.assertEquals(2, cache.samples<Long>(GraphDataCache.Kind.IOB, 0).sample(step, sampler = sampler).size)
+        Assert.assertEquals(5, calls)
+        Assert.assertTrue(samples.sample(-1, sampler = sampler).isEmpty())
+    }
+
+    @Test fun samplesAreDroppedBySource() {
+        cache.prepare(1)
+        cache.samples<Long>(GraphDataCache.Kind.IOB, 0).sample(step, sampler = sampler)
+        cache.samples<Long>(GraphDataCache.Kind.TEMP_TARGET, 0).sample(step, sampler = sampler)
+        cache.samples<Long>(GraphDataCache.Kind.AUTOSENS, 0).sample(step, sampler = sampler)
+        Assert.assertEquals(6, calls)
+
+        // new BG: only autosens is recalculated
+        cache.prepare(2)
+        cache.samples<Long>(GraphDataCache.Kind.IOB, 0).sample(step, sampler = sampler)
+        cache.samples<Long>(GraphDataCache.Kind.TEMP_TARGET, 0).sample(step, sampler = sampler)
+        cache.samples<Long>(GraphDataCache.Kind.AUTOSENS, 0).sample(step, sampler = sampler)
+        Assert.assertEquals(8, calls)
+
+        cache.invalidateTreatments()
+        cache.prepare(2)
+        cache.samples<Long>(GraphDataCache.Kind.IOB, 0).sample(step, sampler = sampler)
+        cache.samples<Long>(GraphDataCache.Kind.TEMP_TARGET, 0).sample(step, sampler = sampler)
+        Assert.assertEquals(10, calls)
+
+        cache.invalidateAll()
+        cache.prepare(2)
+        cache.samples<Long>(GraphDataCache.Kind.TEMP_TARGET, 0).sample(step, sampler = sampler)
+        cache.samples<Long>(GraphDataCache.Kind.AUTOSENS, 0).sample(step, sampler = sampler)
+        Assert.assertEquals(14, calls)
+    }
+
+    @Test fun futureSamplesAreNotKept() {
+        val samples = cache.samples<Long>(GraphDataCache.Kind.IOB, 0)
+        Assert.assertEquals(listOf(0L, step, 2 * step, 3 * step), samples.sample(3 * step, step + 1, sampler))
+        Assert.assertEquals(4, calls)
+        // time passed, former future samples are taken again
+        Assert.assertEquals(4, samples.sample(3 * step, 3 * step, sampler).size)
+        Assert.assertEquals(6, calls)
+        Assert.assertEquals(4, samples.sample(3 * step, 4 * step, sampler).size)
+        Assert.assertEquals(7, calls)
+        Assert.assertEquals(4, samples.sample(3 * step, 5 * step, sampler).size)
+        Assert.assertEquals(7, calls)
+    }
+
+    @Test fun movedRangeStartsNewSamples() {
+        cache.prepare(1)
+        cache.samples<Long>(GraphDataCache.Kind.BASAL, 0).sample(10 * 60 * 1000L, sampler = sampler)
+        Assert.assertEquals(11, calls)
+        val moved = cache.samples<Long>(GraphDataCache.Kind.BASAL, 60 * 60 * 1000L)
+        Assert.assertEquals(listOf(60 * 60 * 1000L), moved.sample(60 * 60 * 1000L, sampler = sampler))
+        Assert.assertEquals(12, calls)
+    }
+}
@@ -0,0 +1,85 @@
+package info.nightscout.androidaps.plugins.general.wear.wearintegration
+
+import com.google.android.gms.wearable.DataMap
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+
+class WatchSyncStateTest {
+
+    private val hour = 60 * 60 * 1000L
+    private val sut = WatchSyncState(Collections.singletonMap("entries", "timestamp"))
+
+    private fun entry(timestamp: Long, sgv: Double = 100.0 + timestamp): DataMap =
+        DataMap().also {
+            it.putLong("timestamp", timestamp)
+            it.putDouble("sgvDouble", sgv)
+        }
+
+    private fun entries(from: Long, to: Long): ArrayList<DataMap> {
+        val entries = ArrayList<DataMap>()
+        for (t in from..to step 5) entries.add(entry(t))
+        return entries
+    }
+
+    private fun data(entries: ArrayList<DataMap>): DataMap =
+        DataMap().also { it.putDataMapArrayList("entries", entries) }
+
+    private fun assertFull(message: DataMap, entries: ArrayList<DataMap>) {
+        Assert.assertEquals(-1L, message.getLong(WatchSyncState.BASE))
+        Assert.assertEquals(entries, message.getDataMapArrayList("entries"))
+        Assert.assertFalse(message.containsKey("entries" + WatchSyncState.FROM_SUFFIX))
+    }
+
+    private fun assertDelta(message: DataMap, from: Long, tail: List<DataMap>) {
+        Assert.assertEquals(message.getLong(WatchSyncState.VERSION) - 1, message.getLong(WatchSyncState.BASE))
+        Assert.assertEquals(from, message.getLong("entries" + WatchSyncState.FROM_SUFFIX))
+        Assert.assertEquals(tail, message.getDataMapArrayList("entries"))
+    }
+
+    @Test fun unchangedDataSendsNothing() {
+        assertFull(sut.prepare(data(entries(0, 50)), 0, 0), entries(0, 50))
+        val message = sut.prepare(data(entries(0, 50)), 0, 1000)
+        assertDelta(message, Long.MAX_VALUE, emptyList())
+        Assert.assertEquals(2L, message.getLong(WatchSyncState.VERSION))
+    }
+
+    @Test fun changedMiddleItemIsSentFromItsTimestamp() {
+        sut.prepare(data(entries(0, 50)), 0, 0)
+        val changed = entries(0, 50)
+        changed[5] = entry(25, 1.0)
+        assertDelta(sut.prepare(data(changed), 0, 1000), 25, changed.subList(5, changed.size))
+    }
+
+    @Test fun itemsLeavingWindowAreNotSent() {
+        sut.prepare(data(entries(0, 50)), 0, 0)
+        // watch drops items older than window start itself, only new item is sent
+        assertDelta(sut.prepare(data(entries(20, 55)), 20, 1000), 55, listOf(entry(55)))
+        // item removed inside window
+        val removed = entries(20, 55)
+        removed.removeAt(2)
+        assertDelta(sut.prepare(data(removed), 20, 2000), 30, removed.subList(2, removed.size))
+    }
+
+    @Test fun fullSnapshotIsSentAfterHour() {
+        sut.prepare(data(entries(0, 50)), 0, hour)
+        assertDelta(sut.prepare(data(entries(0, 50)), 0, 2 * hour), Long.MAX_VALUE, emptyList())
+        assertFull(sut.prepare(data(entries(0, 50)), 0, 2 * hour + 1), entries(0, 50))
+        // counted from last full snapshot
+        assertDelta(sut.prepare(data(entries(0, 50)), 0, 3 * hour), Long.MAX_VALUE, emptyList())
+    }
+
+    @Test fun fullSnapshotIsSentAfterResendRequest() {
+        sut.prepare(data(entries(0, 50)), 0, 0)
+        sut.reset()
+        assertFull(sut.prepare(data(entries(0, 50)), 0, 1000), entries(0, 50))
+        assertDelta(sut.prepare(data(entries(0, 55)), 0, 2000), 55, listOf(entry(55)))
+    }
+
+    @Test fun firstDifference() {
+        Assert.assertEquals(Long.MAX_VALUE, WatchSyncState.firstDifference(entries(0, 50), entries(0, 50), "timestamp"))
+        Assert.assertEquals(55L, WatchSyncState.firstDifference(entries(0, 50), entries(0, 55), "timestamp"))
+        Assert.assertEquals(50L, WatchSyncState.firstDifference(entries(0, 50), entries(0, 45), "timestamp"))
+        Assert.assertEquals(0L, WatchSyncState.firstDifference(entries(0, 50), ArrayList(), "timestamp"))
+    }
+}
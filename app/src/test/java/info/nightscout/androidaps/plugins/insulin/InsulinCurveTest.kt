@@ -0,0 +1,52 @@
+package info.nightscout.androidaps.plugins.insulin
+
+import org.junit.Assert
+import org.junit.Test
+
+class InsulinCurveTest {
+
+    // peaks of Rapid, UltraRapid, Lyumjev and range of FreePeak
+    private val peaks = intArrayOf(75, 55, 45, 35, 100, 120)
+    private val dias = doubleArrayOf(5.0, 6.0, 7.5, 9.0)
+
+    @Test
+    fun tableStaysCloseToAnalyticCurve() {
+        for (peak in peaks) {
+            for (dia in dias) {
+                val curve = InsulinCurve(peak, dia)
+                var t = 0.0
+                while (t < dia * 60) {
+                    Assert.assertEquals("iob peak=$peak dia=$dia t=$t", curve.analyticIob(t), curve.iob(t), 1e-7)
+                    Assert.assertEquals("activity peak=$peak dia=$dia t=$t", curve.analyticActivity(t), curve.activity(t), 1e-9)
+                    t += 0.37
+                }
+            }
+        }
+    }
+
+    @Test
+    fun exactAtWholeMinutes() {
+        val curve = InsulinCurve(75, 5.0)
+        for (t in 0 until 300) {
+            Assert.assertEquals(curve.analyticIob(t.toDouble()), curve.iob(t.toDouble()), 0.0)
+            Assert.assertEquals(curve.analyticActivity(t.toDouble()), curve.activity(t.toDouble()), 0.0)
+        }
+    }
+
+    @Test
+    fun zeroAfterDia() {
+        val curve = InsulinCurve(55, 5.0)
+        Assert.assertEquals(0.0, curve.iob(300.0), 0.0)
+        Assert.assertEquals(0.0, curve.activity(300.0), 0.0)
+        Assert.assertEquals(0.0, curve.iob(1000.0), 0.0)
+        Assert.assertEquals(1.0, curve.iob(0.0), 1e-9)
+    }
+
+    @Test
+    fun matchesTest() {
+        val curve = InsulinCurve(55, 5.0)
+        Assert.assertTrue(curve.matches(55, 5.0))
+        Assert.assertFalse(curve.matches(75, 5.0))
+        Assert.assertFalse(curve.matches(55, 6.0))
+    }
+}
@@ -0,0 +1,39 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator
+
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.db.BgReading
+import info.nightscout.androidaps.utils.T
+import org.junit.Assert
+import org.junit.Test
+
+class GlucoseSeriesTest {
+
+    private val injector = HasAndroidInjector { AndroidInjector { } }
+
+    // newest first as loaded from db
+    private val series = GlucoseSeries(listOf(20, 15, 10, 5).map { BgReading(injector).date(T.mins(it.toLong()).msecs()).value(100.0 + it) })
+
+    @Test fun columnsFollowReadings() {
+        Assert.assertEquals(4, series.size())
+        Assert.assertEquals(T.mins(20).msecs(), series.timestamp(0))
+        Assert.assertEquals(105.0, series.value(3), 0.01)
+        Assert.assertEquals(T.mins(15).msecs(), series.reading(1).date)
+    }
+
+    @Test fun indexAtOrBeforeTest() {
+        Assert.assertEquals(0, series.indexAtOrBefore(T.mins(25).msecs()))
+        Assert.assertEquals(1, series.indexAtOrBefore(T.mins(15).msecs()))
+        Assert.assertEquals(2, series.indexAtOrBefore(T.mins(14).msecs()))
+        Assert.assertEquals(4, series.indexAtOrBefore(T.mins(4).msecs()))
+    }
+
+    @Test fun findNewerAndOlderTest() {
+        Assert.assertEquals(2, series.findNewer(T.mins(8).msecs()))
+        Assert.assertEquals(3, series.findOlder(T.mins(8).msecs()))
+        Assert.assertEquals(1, series.findNewer(T.mins(15).msecs()))
+        Assert.assertEquals(1, series.findOlder(T.mins(15).msecs()))
+        Assert.assertEquals(-1, series.findNewer(T.mins(22).msecs()))
+        Assert.assertEquals(-1, series.findOlder(T.mins(4).msecs()))
+    }
+}
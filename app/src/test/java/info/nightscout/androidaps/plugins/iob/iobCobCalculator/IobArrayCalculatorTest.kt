@@ -0,0 +1,108 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator
+
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.TestBaseWithProfile
+import info.nightscout.androidaps.data.IobTotal
+import info.nightscout.androidaps.data.NonOverlappingIntervals
+import info.nightscout.androidaps.db.TemporaryBasal
+import info.nightscout.androidaps.db.Treatment
+import info.nightscout.androidaps.interfaces.PumpInterface
+import info.nightscout.androidaps.plugins.insulin.InsulinOrefRapidActingPlugin
+import info.nightscout.androidaps.utils.DateUtil
+import info.nightscout.androidaps.utils.FabricPrivacy
+import info.nightscout.androidaps.utils.T
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import org.powermock.core.classloader.annotations.PrepareForTest
+import org.powermock.modules.junit4.PowerMockRunner
+
+@RunWith(PowerMockRunner::class)
+@PrepareForTest(FabricPrivacy::class)
+class IobArrayCalculatorTest : TestBaseWithProfile() {
+
+    @Mock lateinit var sp: SP
+    @Mock lateinit var pump: PumpInterface
+
+    val injector = HasAndroidInjector {
+        AndroidInjector {
+            if (it is TemporaryBasal) {
+                it.aapsLogger = aapsLogger
+                it.activePlugin = activePluginProvider
+                it.profileFunction = profileFunction
+                it.sp = sp
+            }
+            if (it is Treatment) {
+                it.activePlugin = activePluginProvider
+                it.profileFunction = profileFunction
+                it.defaultValueHelper = defaultValueHelper
+                it.resourceHelper = resourceHelper
+            }
+        }
+    }
+
+    private val now = DateUtil.now()
+    private val tbrs = NonOverlappingIntervals<TemporaryBasal>()
+    private val boluses: MutableList<Treatment> = ArrayList()
+
+    @Before
+    fun prepare() {
+        val insulin = InsulinOrefRapidActingPlugin(profileInjector, resourceHelper, profileFunction, rxBus, aapsLogger)
+        `when`(profileFunction.getProfile(ArgumentMatchers.anyLong())).thenReturn(validProfile)
+        `when`(activePluginProvider.activeInsulin).thenReturn(insulin)
+        `when`(activePluginProvider.activePump).thenReturn(pump)
+        `when`(sp.getDouble(ArgumentMatchers.anyInt(), ArgumentMatchers.anyDouble())).thenReturn(2.0)
+
+        tbrs.add(TemporaryBasal(injector).date(now - T.mins(200).msecs()).duration(60).percent(150))
+        tbrs.add(TemporaryBasal(injector).date(now - T.mins(100).msecs()).duration(37).absolute(0.0))
+        tbrs.add(TemporaryBasal(injector).date(now - T.mins(23).msecs()).duration(30).absolute(2.5))
+        `when`(treatmentsPlugin.temporaryBasalsFromHistory).thenReturn(tbrs)
+        `when`(treatmentsPlugin.extendedBolusesFromHistory).thenReturn(NonOverlappingIntervals())
+
+        boluses.add(Treatment(injector).also { it.date = now - T.mins(150).msecs(); it.insulin = 5.0 })
+        boluses.add(Treatment(injector).also { it.date = now - T.mins(40).msecs(); it.insulin = 0.4; it.isSMB = true })
+        boluses.add(Treatment(injector).also { it.date = now - T.mins(10).msecs(); it.carbs = 20.0 })
+        `when`(treatmentsPlugin.treatmentsFromHistory).thenReturn(boluses)
+    }
+
+    @Test
+    fun sameResultAsPerPointCalculation() {
+        val calculator = IobArrayCalculator(treatmentsPlugin, profileFunction, activePluginProvider, sp).prepare(validProfile, now, null)
+        for (i in 0 until 48) {
+            val time = now + i * T.mins(5).msecs()
+            val bolus = calculator.bolusIob(time, validProfile)
+            val basal = calculator.basalIob(time)
+
+            var iob = 0.0
+            var activity = 0.0
+            var snooze = 0.0
+            for (t in boluses) {
+                iob += t.iobCalc(time, validProfile.dia).iobContrib
+                activity += t.iobCalc(time, validProfile.dia).activityContrib
+                if (!t.isSMB) snooze += t.iobCalc(t.date + (time - t.date) * 2, validProfile.dia).iobContrib
+            }
+            Assert.assertEquals(iob, bolus.iob, 1e-9)
+            Assert.assertEquals(activity, bolus.activity, 1e-9)
+            Assert.assertEquals(snooze, bolus.bolussnooze, 1e-9)
+            Assert.assertEquals(now - T.mins(40).msecs(), bolus.lastBolusTime)
+
+            val expectedBasal = IobTotal(time)
+            for (t in tbrs.list) {
+                val cut = TemporaryBasal(injector)
+                cut.copyFrom(t)
+                if (cut.end() > now) cut.cutEndTo(now)
+                expectedBasal.plus(cut.iobCalc(time, validProfile))
+            }
+            Assert.assertEquals(expectedBasal.basaliob, basal.basaliob, 1e-9)
+            Assert.assertEquals(expectedBasal.activity, basal.activity, 1e-9)
+            Assert.assertEquals(expectedBasal.netbasalinsulin, basal.netbasalinsulin, 1e-9)
+            Assert.assertEquals(expectedBasal.hightempinsulin, basal.hightempinsulin, 1e-9)
+        }
+    }
+}
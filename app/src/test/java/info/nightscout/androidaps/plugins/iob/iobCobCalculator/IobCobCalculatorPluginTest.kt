@@ -2,10 +2,14 @@ package info.nightscout.androidaps.plugins.iob.iobCobCalculator
 
 import dagger.android.AndroidInjector
 import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.data.IobTotal
+import info.nightscout.androidaps.data.Profile
 import info.nightscout.androidaps.db.BgReading
 import info.nightscout.androidaps.interfaces.ActivePluginProvider
 import info.nightscout.androidaps.plugins.bus.RxBusWrapper
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.data.AutosensData
 import info.nightscout.androidaps.interfaces.ProfileFunction
 import info.nightscout.androidaps.plugins.sensitivity.SensitivityAAPSPlugin
 import info.nightscout.androidaps.plugins.sensitivity.SensitivityOref1Plugin
@@ -21,7 +25,9 @@ import org.junit.Assert
 import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers
 import org.mockito.Mock
+import org.mockito.Mockito.`when`
 import org.powermock.core.classloader.annotations.PrepareForTest
 import org.powermock.modules.junit4.PowerMockRunner
 import java.util.*
@@ -42,6 +48,7 @@ class IobCobCalculatorPluginTest : TestBase() {
     @Mock lateinit var defaultValueHelper: DefaultValueHelper
     @Mock lateinit var fabricPrivacy: FabricPrivacy
     @Mock lateinit var dateUtil: DateUtil
+    @Mock lateinit var profile: Profile
 
     lateinit var iobCobCalculatorPlugin: IobCobCalculatorPlugin
 
@@ -434,4 +441,126 @@ class IobCobCalculatorPluginTest : TestBase() {
         Assert.assertEquals(T.mins(20).msecs(), iobCobCalculatorPlugin.findPreviousTimeFromBucketedData(T.mins(20).msecs()))
         Assert.assertEquals(T.mins(20).msecs(), iobCobCalculatorPlugin.findPreviousTimeFromBucketedData(T.mins(25).msecs()))
     }
-}
\ No newline at end of file
+    @Test
+    fun appendBgReadingsTest() {
+        val bgReadingList: MutableList<BgReading> = ArrayList()
+        bgReadingList.add(BgReading(injector).date(T.mins(20).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(15).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(10).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(5).msecs()).value(100.0))
+        iobCobCalculatorPlugin.bgReadings = bgReadingList
+        iobCobCalculatorPlugin.referenceTime = null
+        iobCobCalculatorPlugin.createBucketedData()
+
+        // new 5 min reading adds one bucket
+        Assert.assertTrue(iobCobCalculatorPlugin.appendBgReadings(listOf(BgReading(injector).date(T.mins(25).msecs()).value(120.0)), T.mins(26).msecs()))
+        Assert.assertEquals(5, iobCobCalculatorPlugin.bgReadings.size)
+        Assert.assertEquals(5, iobCobCalculatorPlugin.bucketedData.size)
+        Assert.assertEquals(T.mins(25).msecs(), iobCobCalculatorPlugin.bucketedData[0].timestamp)
+        Assert.assertEquals(120.0, iobCobCalculatorPlugin.bucketedData[0].value, 0.01)
+        Assert.assertEquals(T.mins(20).msecs(), iobCobCalculatorPlugin.bucketedData[1].timestamp)
+
+        // reading close to previous one is averaged
+        Assert.assertTrue(iobCobCalculatorPlugin.appendBgReadings(listOf(BgReading(injector).date(T.mins(25).msecs() + T.secs(5).msecs()).value(140.0)), T.mins(26).msecs()))
+        Assert.assertEquals(5, iobCobCalculatorPlugin.bucketedData.size)
+        Assert.assertEquals(130.0, iobCobCalculatorPlugin.bucketedData[0].value, 0.01)
+
+        // data older than needed for calculation is dropped, readings and series stay in sync
+        val to = T.hours((24 + Constants.defaultDIA).toLong()).msecs() + T.mins(17).msecs()
+        Assert.assertTrue(iobCobCalculatorPlugin.appendBgReadings(listOf(BgReading(injector).date(T.mins(30).msecs()).value(120.0)), to))
+        Assert.assertEquals(listOf(T.mins(30).msecs(), T.mins(25).msecs() + T.secs(5).msecs(), T.mins(25).msecs(), T.mins(20).msecs()), iobCobCalculatorPlugin.bgReadings.map { it.date })
+        Assert.assertEquals(4, iobCobCalculatorPlugin.bgSeries!!.size())
+        Assert.assertEquals(listOf(T.mins(30).msecs(), T.mins(25).msecs(), T.mins(20).msecs()), iobCobCalculatorPlugin.bucketedData.map { it.timestamp })
+
+        // gap is interpolated the same way as full calculation
+        bgReadingList.clear()
+        bgReadingList.add(BgReading(injector).date(T.mins(20).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(15).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(10).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(5).msecs()).value(100.0))
+        iobCobCalculatorPlugin.bgReadings = bgReadingList
+        iobCobCalculatorPlugin.referenceTime = null
+        iobCobCalculatorPlugin.createBucketedData()
+        Assert.assertTrue(iobCobCalculatorPlugin.appendBgReadings(listOf(BgReading(injector).date(T.mins(35).msecs()).value(130.0)), T.mins(36).msecs()))
+        Assert.assertEquals(7, iobCobCalculatorPlugin.bucketedData.size)
+        Assert.assertEquals(T.mins(35).msecs(), iobCobCalculatorPlugin.bucketedData[0].timestamp)
+        Assert.assertEquals(120.0, iobCobCalculatorPlugin.bucketedData[1].value, 0.01)
+
+        // off grid readings with jitter and double readings give the same buckets as full calculation
+        val random = Random(5)
+        val readings = ArrayList<BgReading>() // oldest first
+        var time = T.hours(1).msecs() + T.secs(17).msecs()
+        for (i in 0 until 100) {
+            readings.add(BgReading(injector).date(time + T.secs(random.nextInt(11) - 5L).msecs()).value(80.0 + random.nextInt(100)))
+            if (random.nextInt(5) == 0) readings.add(BgReading(injector).date(readings.last().date + T.secs(5L + random.nextInt(16)).msecs()).value(80.0 + random.nextInt(100)))
+            if (i == 70) time += T.mins(10).msecs() // gap, falls back to full calculation
+            time += T.mins(5).msecs()
+        }
+        val now = time + T.hours(1).msecs()
+        iobCobCalculatorPlugin.bgReadings = readings.subList(0, 40).reversed()
+        iobCobCalculatorPlugin.referenceTime = null
+        iobCobCalculatorPlugin.createBucketedData()
+        var loaded = 40
+        while (loaded < readings.size) {
+            val count = minOf(1 + random.nextInt(2), readings.size - loaded)
+            Assert.assertTrue(iobCobCalculatorPlugin.appendBgReadings(readings.subList(loaded, loaded + count), now))
+            loaded += count
+            Assert.assertTrue(iobCobCalculatorPlugin.isAbout5minData)
+            val appended = iobCobCalculatorPlugin.bucketedData
+            iobCobCalculatorPlugin.bgReadings = readings.subList(0, loaded).reversed()
+            iobCobCalculatorPlugin.createBucketedData()
+            val full = iobCobCalculatorPlugin.bucketedData
+            Assert.assertEquals(full.size, appended.size)
+            for (i in full.indices) {
+                Assert.assertEquals(full[i].timestamp, appended[i].timestamp)
+                Assert.assertEquals(full[i].value, appended[i].value, 0.0)
+                Assert.assertEquals(full[i].interpolated, appended[i].interpolated)
+            }
+        }
+    }
+
+    @Test
+    fun autosensDataVisibleToReadersAfterPublishTest() {
+        val bgReadingList: MutableList<BgReading> = ArrayList()
+        bgReadingList.add(BgReading(injector).date(T.mins(20).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(15).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(10).msecs()).value(100.0))
+        bgReadingList.add(BgReading(injector).date(T.mins(5).msecs()).value(100.0))
+        iobCobCalculatorPlugin.bgReadings = bgReadingList
+        iobCobCalculatorPlugin.createBucketedData()
+
+        val autosensData = AutosensData(injector)
+        autosensData.time = T.mins(20).msecs()
+        val version = iobCobCalculatorPlugin.autosensDataVersion
+        synchronized(iobCobCalculatorPlugin.dataLock) {
+            iobCobCalculatorPlugin.autosensDataTable.put(autosensData.time, autosensData)
+            // calculation thread sees its own work
+            Assert.assertEquals(autosensData, iobCobCalculatorPlugin.getAutosensData(T.mins(20).msecs()))
+        }
+        // others see only published data
+        Assert.assertNull(iobCobCalculatorPlugin.getAutosensData(T.mins(20).msecs()))
+        iobCobCalculatorPlugin.publishAutosensData()
+        Assert.assertEquals(autosensData, iobCobCalculatorPlugin.getAutosensData(T.mins(20).msecs()))
+        Assert.assertEquals(version + 1, iobCobCalculatorPlugin.autosensDataVersion)
+    }
+
+    @Test
+    fun iobComputedAcrossInvalidationIsNotCachedTest() {
+        val time = IobCobCalculatorPlugin.roundUpTime(DateUtil.now() - T.hours(1).msecs())
+        var calculations = 0
+        `when`(treatmentsPlugin.getCalculationToTimeTreatments(time)).thenAnswer {
+            // treatments change while this result is computed
+            if (calculations++ == 0) iobCobCalculatorPlugin.clearCache()
+            IobTotal(time)
+        }
+        `when`(treatmentsPlugin.getCalculationToTimeTempBasals(ArgumentMatchers.eq(time), ArgumentMatchers.eq(true), ArgumentMatchers.anyLong())).thenReturn(IobTotal(time))
+
+        iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, profile)
+        // stale result was not cached
+        iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, profile)
+        Assert.assertEquals(2, calculations)
+        // result computed without invalidation is
+        iobCobCalculatorPlugin.calculateFromTreatmentsAndTempsSynchronized(time, profile)
+        Assert.assertEquals(2, calculations)
+    }
+}
@@ -0,0 +1,87 @@
+package info.nightscout.androidaps.plugins.pump.combo.ruffyscripter
+
+import org.junit.Assert
+import org.junit.Test
+import org.monkey.d.ruffy.ruffy.driver.display.MenuType
+
+class MenuRingTest {
+
+    private val ring = listOf(MenuType.MAIN_MENU, MenuType.STOP_MENU, MenuType.BOLUS_MENU, MenuType.TBR_MENU, MenuType.MY_DATA_MENU, MenuType.BASAL_1_MENU, MenuType.ALARM_MENU)
+    private var stored: String? = null
+
+    private fun learned(): MenuRing {
+        val menuRing = MenuRing(null) { stored = it }
+        for (i in ring.indices) menuRing.forward(ring[i], ring[(i + 1) % ring.size])
+        return menuRing
+    }
+
+    @Test fun unknownMenuIsExplored() {
+        val menuRing = MenuRing("") { stored = it }
+        Assert.assertNull(menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU))
+        menuRing.forward(MenuType.MAIN_MENU, MenuType.STOP_MENU)
+        Assert.assertNull(menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU))
+        val path = menuRing.path(MenuType.MAIN_MENU, MenuType.STOP_MENU)!!
+        Assert.assertTrue(path.forward)
+        Assert.assertEquals(listOf(MenuType.STOP_MENU), path.menus)
+    }
+
+    @Test fun shorterDirectionIsUsed() {
+        val menuRing = learned()
+        Assert.assertEquals(listOf(MenuType.STOP_MENU, MenuType.BOLUS_MENU, MenuType.TBR_MENU), menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU)!!.menus)
+
+        // back key was not tried yet
+        var path = menuRing.path(MenuType.MAIN_MENU, MenuType.BASAL_1_MENU)!!
+        Assert.assertFalse(path.forward)
+        Assert.assertFalse(path.predictable)
+        Assert.assertEquals(listOf(MenuType.ALARM_MENU, MenuType.BASAL_1_MENU), path.menus)
+
+        menuRing.back(MenuType.MAIN_MENU, MenuType.ALARM_MENU)
+        path = menuRing.path(MenuType.MAIN_MENU, MenuType.BASAL_1_MENU)!!
+        Assert.assertFalse(path.forward)
+        Assert.assertTrue(path.predictable)
+
+        menuRing.back(MenuType.ALARM_MENU, MenuType.ALARM_MENU)
+        path = menuRing.path(MenuType.MAIN_MENU, MenuType.BASAL_1_MENU)!!
+        Assert.assertTrue(path.forward)
+        Assert.assertEquals(5, path.menus.size)
+    }
+
+    @Test fun changedOrderIsLearned() {
+        val menuRing = learned()
+        // TBR menu hidden
+        menuRing.forward(MenuType.BOLUS_MENU, MenuType.MY_DATA_MENU)
+        Assert.assertNull(menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU))
+        Assert.assertEquals(3, menuRing.path(MenuType.MAIN_MENU, MenuType.MY_DATA_MENU)!!.menus.size)
+    }
+
+    @Test fun learnedOrderIsStored() {
+        val menuRing = learned()
+        menuRing.back(MenuType.MAIN_MENU, MenuType.ALARM_MENU)
+        menuRing.save()
+        val restored = MenuRing(stored) { }
+        Assert.assertEquals(stored, restored.serialize())
+        // menus may have been hidden since, stored order is not trusted before it's seen
+        Assert.assertFalse(restored.path(MenuType.MAIN_MENU, MenuType.ALARM_MENU)!!.predictable)
+        restored.back(MenuType.MAIN_MENU, MenuType.ALARM_MENU)
+        restored.forward(MenuType.ALARM_MENU, MenuType.MAIN_MENU)
+        Assert.assertTrue(restored.path(MenuType.MAIN_MENU, MenuType.ALARM_MENU)!!.predictable)
+
+        // nothing new to store
+        stored = null
+        menuRing.forward(MenuType.MAIN_MENU, MenuType.STOP_MENU)
+        menuRing.save()
+        Assert.assertNull(stored)
+    }
+
+    @Test fun newSessionRequiresStepsToBeSeenAgain() {
+        val menuRing = learned()
+        Assert.assertTrue(menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU)!!.predictable)
+        menuRing.newSession()
+        Assert.assertFalse(menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU)!!.predictable)
+        menuRing.forward(MenuType.MAIN_MENU, MenuType.STOP_MENU)
+        menuRing.forward(MenuType.STOP_MENU, MenuType.BOLUS_MENU)
+        menuRing.forward(MenuType.BOLUS_MENU, MenuType.TBR_MENU)
+        Assert.assertFalse(menuRing.path(MenuType.MAIN_MENU, MenuType.MY_DATA_MENU)!!.predictable)
+        Assert.assertTrue(menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU)!!.predictable)
+    }
+}
@@ -0,0 +1,82 @@
+package info.nightscout.androidaps.plugins.pump.combo.ruffyscripter
+
+import android.content.Context
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.Mockito
+import org.monkey.d.ruffy.ruffy.driver.display.Menu
+import org.monkey.d.ruffy.ruffy.driver.display.MenuType
+import java.util.*
+
+class RuffyScripterTest {
+
+    private val ring = listOf(MenuType.MAIN_MENU, MenuType.STOP_MENU, MenuType.BOLUS_MENU, MenuType.TBR_MENU, MenuType.MY_DATA_MENU, MenuType.BASAL_1_MENU, MenuType.ALARM_MENU)
+    private var stored: String? = null
+
+    // pump display, handles one key press per screen update
+    private inner class FakePump(private val menus: List<MenuType>) {
+
+        var displayed = MenuType.MAIN_MENU
+        val keys: Deque<Boolean> = ArrayDeque() // true for MENU, false for BACK
+
+        fun update() {
+            val forward = keys.pollFirst() ?: return
+            val index = menus.indexOf(displayed)
+            displayed = menus[(index + if (forward) 1 else menus.size - 1) % menus.size]
+        }
+    }
+
+    private inner class ScriptedRuffyScripter(private val pump: FakePump, menuRing: MenuRing) : RuffyScripter(Mockito.mock(Context::class.java), menuRing) {
+
+        override fun getCurrentMenu(): Menu = Menu(pump.displayed)
+        override fun pressMenuKey() {
+            pump.keys.add(true)
+        }
+
+        override fun pressBackKey() {
+            pump.keys.add(false)
+        }
+
+        override fun waitForScreenUpdate() = pump.update()
+    }
+
+    private fun learned(): MenuRing {
+        val menuRing = MenuRing(null) { stored = it }
+        for (i in ring.indices) menuRing.forward(ring[i], ring[(i + 1) % ring.size])
+        menuRing.back(MenuType.MAIN_MENU, MenuType.ALARM_MENU)
+        return menuRing
+    }
+
+    private fun assertStaysIn(pump: FakePump, menu: MenuType) {
+        Assert.assertEquals(menu, pump.displayed)
+        Assert.assertTrue(pump.keys.isEmpty())
+        pump.update()
+        Assert.assertEquals(menu, pump.displayed)
+    }
+
+    @Test fun learnedPathIsTakenWithoutWaiting() {
+        val pump = FakePump(ring)
+        ScriptedRuffyScripter(pump, learned()).navigateToMenu(MenuType.TBR_MENU)
+        assertStaysIn(pump, MenuType.TBR_MENU)
+    }
+
+    @Test fun storedOrderIsCheckedMenuByMenu() {
+        learned().save()
+        // stop menu hidden since the order was stored
+        val pump = FakePump(ring - MenuType.STOP_MENU)
+        val menuRing = MenuRing(stored) { stored = it }
+        ScriptedRuffyScripter(pump, menuRing).navigateToMenu(MenuType.TBR_MENU)
+        assertStaysIn(pump, MenuType.TBR_MENU)
+        Assert.assertEquals(listOf(MenuType.BOLUS_MENU, MenuType.TBR_MENU), menuRing.path(MenuType.MAIN_MENU, MenuType.TBR_MENU)!!.menus)
+    }
+
+    @Test fun targetPassedByRemainingKeyPressesIsNavigatedBackTo() {
+        val menuRing = learned()
+        // stop menu hidden after the order was seen
+        val pump = FakePump(ring - MenuType.STOP_MENU)
+        ScriptedRuffyScripter(pump, menuRing).navigateToMenu(MenuType.TBR_MENU)
+        assertStaysIn(pump, MenuType.TBR_MENU)
+        // order is checked again
+        Assert.assertFalse(menuRing.path(MenuType.MAIN_MENU, MenuType.BOLUS_MENU)!!.predictable)
+    }
+}
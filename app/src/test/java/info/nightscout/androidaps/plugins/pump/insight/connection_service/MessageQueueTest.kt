@@ -0,0 +1,104 @@
+package info.nightscout.androidaps.plugins.pump.insight.connection_service
+
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.AppLayerMessage
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.remote_control.CancelBolusMessage
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.GetBatteryStatusMessage
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.GetCartridgeStatusMessage
+import info.nightscout.androidaps.plugins.pump.insight.app_layer.status.GetOperatingModeMessage
+import info.nightscout.androidaps.plugins.pump.insight.exceptions.ConnectionLostException
+import info.nightscout.androidaps.plugins.pump.insight.exceptions.app_layer_errors.BolusAmountNotInRangeException
+import info.nightscout.androidaps.plugins.pump.insight.ids.AppCommandIDs
+import info.nightscout.androidaps.plugins.pump.insight.utils.ByteBuf
+import org.junit.Assert
+import org.junit.Test
+
+class MessageQueueTest {
+
+    private val messageQueue = MessageQueue()
+
+    private fun <T : AppLayerMessage> send(message: T): MessageRequest<T> {
+        val messageRequest = MessageRequest(message)
+        messageQueue.enqueueRequest(messageRequest)
+        Assert.assertSame(messageRequest, messageQueue.nextRequest())
+        return messageRequest
+    }
+
+    @Test fun responsesAreMatchedByType() {
+        val battery = send(GetBatteryStatusMessage())
+        val cartridge = send(GetCartridgeStatusMessage())
+        Assert.assertEquals(2, messageQueue.activeRequestCount)
+
+        val cartridgeResponse = GetCartridgeStatusMessage()
+        messageQueue.completeActiveRequest(cartridgeResponse)
+        Assert.assertSame(cartridgeResponse, cartridge.await())
+        Assert.assertNull(battery.response)
+        Assert.assertSame(battery, messageQueue.activeRequest)
+
+        val batteryResponse = GetBatteryStatusMessage()
+        messageQueue.completeActiveRequest(batteryResponse)
+        Assert.assertSame(batteryResponse, battery.await())
+        Assert.assertEquals(0, messageQueue.activeRequestCount)
+    }
+
+    @Test fun errorResponseIsMatchedByCommandId() {
+        val battery = send(GetBatteryStatusMessage())
+        val cartridge = send(GetCartridgeStatusMessage())
+        val operatingMode = send(GetOperatingModeMessage())
+
+        // version, status service, command of GetCartridgeStatusMessage, BolusAmountNotInRangeException
+        val data = ByteBuf(6)
+        data.putByte(0x20)
+        data.putByte(15)
+        data.putUInt16LE(826)
+        data.putUInt16LE(6017)
+        val command = AppCommandIDs.IDS.getType(data.getUInt16LE(2))
+        val exception = try {
+            AppLayerMessage.deserialize(data)
+            null
+        } catch (e: Exception) {
+            e
+        }
+        Assert.assertTrue(exception is BolusAmountNotInRangeException)
+
+        val messageRequest = messageQueue.findActiveRequest(command)
+        Assert.assertSame(cartridge, messageRequest)
+        messageQueue.completeActiveRequest(messageRequest, exception)
+        Assert.assertSame(exception, cartridge.exception)
+        Assert.assertEquals(listOf(battery, operatingMode), messageQueue.activeRequests)
+        Assert.assertNull(battery.exception)
+        Assert.assertNull(operatingMode.exception)
+    }
+
+    @Test fun requeuedRequestKeepsPriorityOrder() {
+        val battery = send(GetBatteryStatusMessage())
+        val cartridge = MessageRequest(GetCartridgeStatusMessage())
+        val cancelBolus = MessageRequest(CancelBolusMessage())
+        messageQueue.enqueueRequest(cartridge)
+        messageQueue.enqueueRequest(cancelBolus)
+
+        messageQueue.requeueActiveRequest(battery)
+        Assert.assertEquals(0, messageQueue.activeRequestCount)
+        Assert.assertEquals(3, messageQueue.messageRequests.size)
+        // ahead of the pending request of same priority
+        Assert.assertTrue(messageQueue.messageRequests.indexOf(battery) < messageQueue.messageRequests.indexOf(cartridge))
+        for (i in 1 until messageQueue.messageRequests.size)
+            Assert.assertTrue(messageQueue.messageRequests[i - 1] <= messageQueue.messageRequests[i])
+        Assert.assertSame(messageQueue.peekRequest(), messageQueue.nextRequest())
+    }
+
+    @Test fun completeActiveRequestsLeavesPendingRequests() {
+        val battery = send(GetBatteryStatusMessage())
+        val cartridge = send(GetCartridgeStatusMessage())
+        val operatingMode = MessageRequest(GetOperatingModeMessage())
+        messageQueue.enqueueRequest(operatingMode)
+
+        val exception = ConnectionLostException()
+        messageQueue.completeActiveRequests(exception)
+        Assert.assertEquals(0, messageQueue.activeRequestCount)
+        Assert.assertSame(exception, battery.exception)
+        Assert.assertSame(exception, cartridge.exception)
+        Assert.assertNull(operatingMode.exception)
+        Assert.assertTrue(messageQueue.hasPendingMessages())
+        Assert.assertSame(operatingMode, messageQueue.peekRequest())
+    }
+}
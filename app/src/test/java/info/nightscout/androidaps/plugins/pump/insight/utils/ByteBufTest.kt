@@ -0,0 +1,30 @@
+package info.nightscout.androidaps.plugins.pump.insight.utils
+
+import org.junit.Assert
+import org.junit.Test
+
+class ByteBufTest {
+
+    @Test fun readsAcrossTheEndOfTheBuffer() {
+        val byteBuf = ByteBuf(8)
+        byteBuf.putBytes(byteArrayOf(1, 2, 3, 4, 5, 6))
+        Assert.assertArrayEquals(byteArrayOf(1, 2, 3, 4, 5), byteBuf.readBytes(5))
+        byteBuf.putUInt32LE(0x0A090807)
+        byteBuf.putUInt16LE(0x0C0B)
+        Assert.assertEquals(7, byteBuf.size)
+        Assert.assertEquals(6.toByte(), byteBuf.readByte())
+        Assert.assertEquals(0x0807, byteBuf.getUInt16LE(0))
+        Assert.assertArrayEquals(byteArrayOf(7, 8, 9, 10, 11, 12), byteBuf.bytes)
+        Assert.assertEquals(0x0A090807L, byteBuf.readUInt32LE())
+        Assert.assertEquals(0x0C0B, byteBuf.readUInt16LE())
+        Assert.assertEquals(0, byteBuf.size)
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException::class)
+    fun overflowIsRejected() {
+        val byteBuf = ByteBuf(4)
+        byteBuf.putBytes(byteArrayOf(1, 2, 3))
+        byteBuf.readByte()
+        byteBuf.putBytes(byteArrayOf(4, 5, 6))
+    }
+}
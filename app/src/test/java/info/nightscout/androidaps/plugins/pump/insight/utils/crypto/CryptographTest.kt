@@ -0,0 +1,82 @@
+package info.nightscout.androidaps.plugins.pump.insight.utils.crypto
+
+import org.junit.Assert
+import org.junit.Test
+import org.spongycastle.crypto.engines.TwofishEngine
+import org.spongycastle.crypto.modes.CBCBlockCipher
+import org.spongycastle.crypto.params.KeyParameter
+import org.spongycastle.crypto.params.ParametersWithIV
+import java.util.Random
+
+class CryptographTest {
+
+    private val payloadLengths = intArrayOf(0, 1, 15, 16, 17, 1000)
+
+    @Test fun twofishKnownAnswer() {
+        // first entry of the Twofish ECB known answer test, 128 bit key
+        val block = ByteArray(16)
+        TwofishCipher(ByteArray(16)).processBlock(block, block)
+        Assert.assertArrayEquals(hex("9F589F5CF6122C32B6BFEC2F2AE8C35A"), block)
+    }
+
+    @Test fun encryptDataCTRMatchesCBCBlockCipherImplementation() {
+        val random = Random(25)
+        for (length in payloadLengths) {
+            val key = bytes(random, 16)
+            val nonce = bytes(random, 13)
+            val data = bytes(random, length)
+            val encrypted = Cryptograph.encryptDataCTR(data, TwofishCipher(key), nonce)
+            Assert.assertArrayEquals("length $length", referenceEncryptDataCTR(data, key, nonce), encrypted)
+            Assert.assertArrayEquals("length $length", data, Cryptograph.encryptDataCTR(encrypted, TwofishCipher(key), nonce))
+        }
+    }
+
+    @Test fun produceCCMTagMatchesCBCBlockCipherImplementation() {
+        val random = Random(25)
+        for (length in payloadLengths) {
+            val key = bytes(random, 16)
+            val nonce = bytes(random, 13)
+            val header = bytes(random, 21)
+            val payload = bytes(random, length)
+            Assert.assertArrayEquals("length $length", referenceProduceCCMTag(nonce, payload, header, key), Cryptograph.produceCCMTag(nonce, payload, header, TwofishCipher(key)))
+        }
+    }
+
+    // previous implementation with a new engine per call and CBCBlockCipher over padded copies
+
+    private fun referenceEncryptDataCTR(data: ByteArray, key: ByteArray, nonce: ByteArray): ByteArray {
+        val padded = zeroPad(data)
+        val result = ByteArray(padded.size)
+        val engine = TwofishEngine()
+        engine.init(true, KeyParameter(key))
+        for (i in 0 until padded.size / 16) engine.processBlock(ccmPrimitive(0x01, nonce, i + 1), 0, result, i * 16)
+        return ByteArray(data.size) { (padded[it].toInt() xor result[it].toInt()).toByte() }
+    }
+
+    private fun referenceProduceCCMTag(nonce: ByteArray, payload: ByteArray, header: ByteArray, key: ByteArray): ByteArray {
+        val engine = TwofishEngine()
+        engine.init(true, KeyParameter(key))
+        val initializationVector = ByteArray(16)
+        engine.processBlock(ccmPrimitive(0x59, nonce, payload.size), 0, initializationVector, 0)
+        val cbc = CBCBlockCipher(TwofishEngine())
+        cbc.init(true, ParametersWithIV(KeyParameter(key), initializationVector))
+        val processedHeader = byteArrayOf((header.size shr 8).toByte(), header.size.toByte()) + header
+        val combined = zeroPad(processedHeader) + zeroPad(payload)
+        val result = ByteArray(combined.size)
+        for (i in 0 until combined.size / 16) cbc.processBlock(combined, i * 16, result, i * 16)
+        val ctr = ByteArray(16)
+        engine.processBlock(ccmPrimitive(0x01, nonce, 0), 0, ctr, 0)
+        return ByteArray(8) { (result[result.size - 16 + it].toInt() xor ctr[it].toInt()).toByte() }
+    }
+
+    private fun ccmPrimitive(headerByte: Int, nonce: ByteArray, number: Int): ByteArray =
+        byteArrayOf(headerByte.toByte()) + nonce + byteArrayOf((number shr 8).toByte(), number.toByte())
+
+    private fun zeroPad(input: ByteArray): ByteArray =
+        if (input.size % 16 == 0) input else input + ByteArray(16 - input.size % 16)
+
+    private fun bytes(random: Random, length: Int): ByteArray = ByteArray(length).also { random.nextBytes(it) }
+
+    private fun hex(string: String): ByteArray =
+        ByteArray(string.length / 2) { string.substring(it * 2, it * 2 + 2).toInt(16).toByte() }
+}
@@ -7,6 +7,8 @@ import info.nightscout.androidaps.MainApp
 import info.nightscout.androidaps.TestBaseWithProfile
 import info.nightscout.androidaps.db.DatabaseHelper
 import info.nightscout.androidaps.db.TemporaryBasal
+import info.nightscout.androidaps.db.Treatment
+import info.nightscout.androidaps.interfaces.PumpInterface
 import info.nightscout.androidaps.plugins.general.nsclient.NSUpload
 import info.nightscout.androidaps.plugins.general.nsclient.UploadQueue
 import info.nightscout.androidaps.plugins.insulin.InsulinOrefRapidActingPlugin
@@ -35,6 +37,7 @@ class TreatmentsPluginTest : TestBaseWithProfile() {
     @Mock lateinit var treatmentService: TreatmentService
     @Mock lateinit var nsUpload: NSUpload
     @Mock lateinit var uploadQueue: UploadQueue
+    @Mock lateinit var pump: PumpInterface
 
     val injector = HasAndroidInjector {
         AndroidInjector {
@@ -44,6 +47,12 @@ class TreatmentsPluginTest : TestBaseWithProfile() {
                 it.profileFunction = profileFunction
                 it.sp = sp
             }
+            if (it is Treatment) {
+                it.activePlugin = activePluginProvider
+                it.profileFunction = profileFunction
+                it.defaultValueHelper = defaultValueHelper
+                it.resourceHelper = resourceHelper
+            }
         }
     }
 
@@ -103,4 +112,34 @@ class TreatmentsPluginTest : TestBaseWithProfile() {
         val iob110pct = sot.getAbsoluteIOBTempBasals(now)
         Assert.assertEquals(1.1, iob110pct.basaliob / iob100pct.basaliob, 0.0001)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `treatment queries use only requested window`() {
+        val now = DateUtil.now()
+        val treatments: MutableList<Treatment> = ArrayList()
+        // descending as returned from db
+        treatments.add(Treatment(injector).also { it.date = now - T.mins(2).msecs(); it.carbs = 10.0 })
+        treatments.add(Treatment(injector).also { it.date = now - T.mins(4).msecs(); it.carbs = 5.0; it.isValid = false })
+        treatments.add(Treatment(injector).also { it.date = now - T.mins(30).msecs(); it.insulin = 1.0; it.isSMB = true })
+        treatments.add(Treatment(injector).also { it.date = now - T.hours(7).msecs(); it.insulin = 3.0 })
+        `when`(treatmentService.getTreatmentDataFromTime(ArgumentMatchers.anyLong(), ArgumentMatchers.anyBoolean())).thenReturn(treatments)
+        `when`(profileFunction.getProfile()).thenReturn(validProfile)
+        `when`(activePluginProvider.activePump).thenReturn(pump)
+        `when`(sp.getDouble(ArgumentMatchers.anyInt(), ArgumentMatchers.anyDouble())).thenReturn(2.0)
+        sot.initializeData(T.hours(30).msecs())
+
+        Assert.assertEquals(treatments, sot.treatmentsFromHistory)
+        Assert.assertEquals(1, sot.getCarbTreatments5MinBackFromHistory(now).size)
+        Assert.assertEquals(0, sot.getCarbTreatments5MinBackFromHistory(now - T.mins(3).msecs()).size)
+        Assert.assertEquals(3, sot.getTreatmentsFromHistoryAfterTimestamp(now - T.mins(30).msecs()).size)
+        Assert.assertEquals(now - T.hours(7).msecs() - T.mins(15).msecs(), sot.oldestDataAvailable())
+
+        val iob = sot.getCalculationToTimeTreatments(now)
+        Assert.assertEquals(treatments[2].iobCalc(now, validProfile.dia).iobContrib, iob.iob, 1e-9)
+        Assert.assertEquals(now - T.mins(30).msecs(), iob.lastBolusTime)
+        // bolus older than DIA is still reported as last bolus
+        val before = sot.getCalculationToTimeTreatments(now - T.mins(31).msecs())
+        Assert.assertEquals(0.0, before.iob, 0.0)
+        Assert.assertEquals(now - T.hours(7).msecs(), before.lastBolusTime)
+    }
+}
@@ -8,6 +8,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.Calendar;
+import java.util.TimeZone;
 
 /**
  * Created by mike on 20.11.2017.
@@ -45,6 +46,25 @@ public class MidnightTimeTest {
         Assert.assertEquals(midnight, MidnightTime.calc(now));
     }
 
+    @Test
+    public void calcNextDay() {
+        TimeZone timeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Prague"));
+            Calendar c = Calendar.getInstance();
+            // day of DST change is 23h long
+            c.set(2020, Calendar.MARCH, 29, 0, 0, 0);
+            c.set(Calendar.MILLISECOND, 0);
+            long midnight = c.getTimeInMillis();
+            c.add(Calendar.DAY_OF_MONTH, 1);
+            Assert.assertEquals(c.getTimeInMillis(), MidnightTime.calcNextDay(midnight));
+            Assert.assertEquals(23 * 60 * 60 * 1000L, MidnightTime.calcNextDay(midnight) - midnight);
+        } finally {
+            TimeZone.setDefault(timeZone);
+            MidnightTime.resetCache();
+        }
+    }
+
     @Test
     public void resetCache() {
         long now = DateUtil.now();
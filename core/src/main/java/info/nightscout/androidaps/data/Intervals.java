@@ -44,6 +44,27 @@ public abstract class Intervals<T extends Interval> {
         merge();
     }
 
+    /**
+     * @return removed interval, null if none starts at `start`
+     */
+    @Nullable
+    public synchronized T remove(long start) {
+        T interval = rawData.get(start);
+        if (interval != null) {
+            rawData.remove(start);
+            merge();
+        }
+        return interval;
+    }
+
+    /**
+     * Drops intervals starting before `time`
+     */
+    public synchronized void removeOlderThan(long time) {
+        while (rawData.size() > 0 && rawData.keyAt(0) < time)
+            rawData.removeAt(0);
+    }
+
 
     public synchronized List<T> getList() {
         List<T> list = new ArrayList<>();
@@ -20,11 +20,14 @@ public class NonOverlappingIntervals<T extends Interval> extends Intervals<T> {
     }
 
     public synchronized void merge() {
-        for (int index = 0; index < rawData.size() - 1; index++) {
+        for (int index = 0; index < rawData.size(); index++) {
             Interval i = rawData.valueAt(index);
-            long startOfNewer = rawData.valueAt(index + 1).start();
+            long startOfNewer = index < rawData.size() - 1 ? rawData.valueAt(index + 1).start() : Long.MAX_VALUE;
             if (i.originalEnd() > startOfNewer) {
                 i.cutEndTo(startOfNewer);
+            } else if (i.end() != i.originalEnd()) {
+                // interval which cut this one was removed or moved
+                i.cutEndTo(i.originalEnd());
             }
         }
     }
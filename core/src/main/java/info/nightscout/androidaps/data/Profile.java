@@ -2,7 +2,7 @@ package info.nightscout.androidaps.data;
 
 import androidx.collection.LongSparseArray;
 
-import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -31,6 +31,8 @@ import info.nightscout.androidaps.utils.Round;
 import info.nightscout.androidaps.utils.resources.ResourceHelper;
 
 public class Profile {
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
     @Inject public AAPSLogger aapsLogger;
     @Inject public ActivePluginProvider activePlugin;
     @Inject public ResourceHelper resourceHelper;
@@ -45,15 +47,15 @@ public class Profile {
     private double dia;
     private TimeZone timeZone;
     private JSONArray isf;
-    private LongSparseArray<Double> isf_v; // oldest at index 0
+    private LookupTable isf_v; // oldest at index 0
     private JSONArray ic;
-    private LongSparseArray<Double> ic_v; // oldest at index 0
+    private LookupTable ic_v; // oldest at index 0
     private JSONArray basal;
-    private LongSparseArray<Double> basal_v; // oldest at index 0
+    private volatile LookupTable basal_v; // oldest at index 0
     private JSONArray targetLow;
-    private LongSparseArray<Double> targetLow_v; // oldest at index 0
+    private LookupTable targetLow_v; // oldest at index 0
     private JSONArray targetHigh;
-    private LongSparseArray<Double> targetHigh_v; // oldest at index 0
+    private LookupTable targetHigh_v; // oldest at index 0
 
     private int percentage;
     private int timeshift;
@@ -133,6 +135,12 @@ public class Profile {
             isValid = false;
             isValidated = true;
         }
+        // precalculate lookup tables, percentage and timeshift are applied here
+        isf_v = convertToSparseArray(isf);
+        ic_v = convertToSparseArray(ic);
+        basal_v = convertToSparseArray(basal);
+        targetLow_v = convertToSparseArray(targetLow);
+        targetHigh_v = convertToSparseArray(targetHigh);
     }
 
     public String log() {
@@ -172,10 +180,10 @@ public class Profile {
         return timeZone;
     }
 
-    private LongSparseArray<Double> convertToSparseArray(JSONArray array) {
+    private LookupTable convertToSparseArray(JSONArray array) {
         if (array == null) {
             isValid = false;
-            return new LongSparseArray<>();
+            return new LookupTable(new LongSparseArray<>());
         }
 
         double multiplier = getMultiplier(array);
@@ -203,10 +211,10 @@ public class Profile {
 
         // check if start is at 0 (midnight)
         // and add last value before midnight if not
-        if (sparse.keyAt(0) != 0) {
+        if (sparse.size() > 0 && sparse.keyAt(0) != 0) {
             sparse.put(0, sparse.valueAt(sparse.size() - 1));
         }
-        return sparse;
+        return new LookupTable(sparse);
     }
 
     public synchronized boolean isValid(String from) {
@@ -217,20 +225,10 @@ public class Profile {
         if (!isValid)
             return false;
         if (!isValidated) {
-            if (basal_v == null)
-                basal_v = convertToSparseArray(basal);
             validate(basal_v);
-            if (isf_v == null)
-                isf_v = convertToSparseArray(isf);
             validate(isf_v);
-            if (ic_v == null)
-                ic_v = convertToSparseArray(ic);
             validate(ic_v);
-            if (targetLow_v == null)
-                targetLow_v = convertToSparseArray(targetLow);
             validate(targetLow_v);
-            if (targetHigh_v == null)
-                targetHigh_v = convertToSparseArray(targetHigh);
             validate(targetHigh_v);
 
             if (targetHigh_v.size() != targetLow_v.size()) isValid = false;
@@ -258,17 +256,22 @@ public class Profile {
 
             // Check for minimal basal value
             PumpDescription description = pump.getPumpDescription();
+            double[] limited = null;
             for (int i = 0; i < basal_v.size(); i++) {
                 if (basal_v.valueAt(i) < description.basalMinimumRate) {
-                    basal_v.setValueAt(i, description.basalMinimumRate);
+                    if (limited == null) limited = basal_v.copyValues();
+                    limited[i] = description.basalMinimumRate;
                     if (notify)
                         sendBelowMinimumNotification(from);
                 } else if (basal_v.valueAt(i) > description.basalMaximumRate) {
-                    basal_v.setValueAt(i, description.basalMaximumRate);
+                    if (limited == null) limited = basal_v.copyValues();
+                    limited[i] = description.basalMaximumRate;
                     if (notify)
                         sendAboveMaximumNotification(from);
                 }
             }
+            // tables are immutable, readers see either old or new values
+            if (limited != null) basal_v = basal_v.withValues(limited);
 
         }
         return isValid;
@@ -282,13 +285,13 @@ public class Profile {
         rxBus.send(new EventNewNotification(new Notification(Notification.MAXIMUM_BASAL_VALUE_REPLACED, resourceHelper.gs(R.string.maximumbasalvaluereplaced, from), Notification.NORMAL)));
     }
 
-    private void validate(LongSparseArray array) {
+    private void validate(LookupTable array) {
         if (array.size() == 0) {
             isValid = false;
             return;
         }
         for (int index = 0; index < array.size(); index++) {
-            if (array.valueAt(index).equals(0d)) {
+            if (array.valueAt(index) == 0d) {
                 isValid = false;
                 return;
             }
@@ -323,7 +326,7 @@ public class Profile {
         return shiftedTime;
     }
 
-    private double getMultiplier(LongSparseArray<Double> array) {
+    private double getMultiplier(LookupTable array) {
         double multiplier = 1d;
 
         if (array == isf_v)
@@ -355,19 +358,8 @@ public class Profile {
         return multiplier;
     }
 
-    private double getValueToTime(LongSparseArray<Double> array, Integer timeAsSeconds) {
-        Double lastValue = null;
-
-        for (Integer index = 0; index < array.size(); index++) {
-            long tas = array.keyAt(index);
-            double value = array.valueAt(index);
-            if (lastValue == null) lastValue = value;
-            if (timeAsSeconds < tas) {
-                break;
-            }
-            lastValue = value;
-        }
-        return lastValue;
+    private double getValueToTime(LookupTable array, int timeAsSeconds) {
+        return array.get(timeAsSeconds);
     }
 
     public static String format_HH_MM(Integer timeAsSeconds) {
@@ -379,7 +371,7 @@ public class Profile {
         return time;
     }
 
-    private String getValuesList(LongSparseArray<Double> array, LongSparseArray<Double> array2, DecimalFormat format, String units) {
+    private String getValuesList(LookupTable array, LookupTable array2, DecimalFormat format, String units) {
         String retValue = "";
 
         for (Integer index = 0; index < array.size(); index++) {
@@ -410,20 +402,14 @@ public class Profile {
     }
 
     public double getIsfTimeFromMidnight(int timeAsSeconds) {
-        if (isf_v == null)
-            isf_v = convertToSparseArray(isf);
         return getValueToTime(isf_v, timeAsSeconds);
     }
 
     public String getIsfList() {
-        if (isf_v == null)
-            isf_v = convertToSparseArray(isf);
         return getValuesList(isf_v, null, new DecimalFormat("0.0"), getUnits() + resourceHelper.gs(R.string.profile_per_unit));
     }
 
     public ProfileValue[] getIsfsMgdl() {
-        if (isf_v == null)
-            isf_v = convertToSparseArray(ic);
         ProfileValue[] ret = new ProfileValue[isf_v.size()];
 
         for (int index = 0; index < isf_v.size(); index++) {
@@ -443,20 +429,14 @@ public class Profile {
     }
 
     public double getIcTimeFromMidnight(int timeAsSeconds) {
-        if (ic_v == null)
-            ic_v = convertToSparseArray(ic);
         return getValueToTime(ic_v, timeAsSeconds);
     }
 
     public String getIcList() {
-        if (ic_v == null)
-            ic_v = convertToSparseArray(ic);
         return getValuesList(ic_v, null, new DecimalFormat("0.0"), resourceHelper.gs(R.string.profile_carbs_per_unit));
     }
 
     public ProfileValue[] getIcs() {
-        if (ic_v == null)
-            ic_v = convertToSparseArray(ic);
         ProfileValue[] ret = new ProfileValue[ic_v.size()];
 
         for (Integer index = 0; index < ic_v.size(); index++) {
@@ -475,16 +455,11 @@ public class Profile {
         return getBasalTimeFromMidnight(secondsFromMidnight(time));
     }
 
-    public synchronized double getBasalTimeFromMidnight(int timeAsSeconds) {
-        if (basal_v == null) {
-            basal_v = convertToSparseArray(basal);
-        }
+    public double getBasalTimeFromMidnight(int timeAsSeconds) {
         return getValueToTime(basal_v, timeAsSeconds);
     }
 
     public String getBasalList() {
-        if (basal_v == null)
-            basal_v = convertToSparseArray(basal);
         return getValuesList(basal_v, null, new DecimalFormat("0.00"), resourceHelper.gs(R.string.profile_ins_units_per_hour));
     }
 
@@ -510,9 +485,7 @@ public class Profile {
         }
     }
 
-    public synchronized ProfileValue[] getBasalValues() {
-        if (basal_v == null)
-            basal_v = convertToSparseArray(basal);
+    public ProfileValue[] getBasalValues() {
         ProfileValue[] ret = new ProfileValue[basal_v.size()];
 
         for (Integer index = 0; index < basal_v.size(); index++) {
@@ -539,8 +512,6 @@ public class Profile {
     }
 
     double getTargetLowTimeFromMidnight(int timeAsSeconds) {
-        if (targetLow_v == null)
-            targetLow_v = convertToSparseArray(targetLow);
         return getValueToTime(targetLow_v, timeAsSeconds);
     }
 
@@ -557,8 +528,6 @@ public class Profile {
     }
 
     double getTargetHighTimeFromMidnight(int timeAsSeconds) {
-        if (targetHigh_v == null)
-            targetHigh_v = convertToSparseArray(targetHigh);
         return getValueToTime(targetHigh_v, timeAsSeconds);
     }
 
@@ -579,10 +548,6 @@ public class Profile {
     }
 
     public TargetValue[] getTargets() {
-        if (targetLow_v == null)
-            targetLow_v = convertToSparseArray(targetLow);
-        if (targetHigh_v == null)
-            targetHigh_v = convertToSparseArray(targetHigh);
         TargetValue[] ret = new TargetValue[targetLow_v.size()];
 
         for (Integer index = 0; index < targetLow_v.size(); index++) {
@@ -595,10 +560,6 @@ public class Profile {
     }
 
     public ProfileValue[] getSingleTargetsMgdl() {
-        if (targetLow_v == null)
-            targetLow_v = convertToSparseArray(targetLow);
-        if (targetHigh_v == null)
-            targetHigh_v = convertToSparseArray(targetHigh);
         ProfileValue[] ret = new ProfileValue[targetLow_v.size()];
 
         for (int index = 0; index < targetLow_v.size(); index++) {
@@ -610,10 +571,6 @@ public class Profile {
     }
 
     public String getTargetList() {
-        if (targetLow_v == null)
-            targetLow_v = convertToSparseArray(targetLow);
-        if (targetHigh_v == null)
-            targetHigh_v = convertToSparseArray(targetHigh);
         return getValuesList(targetLow_v, targetHigh_v, new DecimalFormat("0.0"), getUnits());
     }
 
@@ -627,15 +584,14 @@ public class Profile {
     }
 
     public static int secondsFromMidnight() {
-        // long passed = DateUtil.now() - MidnightTime.calc();
-        long passed = new DateTime().getMillisOfDay();
-        return (int) (passed / 1000);
+        return secondsFromMidnight(System.currentTimeMillis());
     }
 
+    // same as new DateTime(date).getMillisOfDay() / 1000 without allocating DateTime
     public static int secondsFromMidnight(long date) {
-        //long midnight = MidnightTime.calc(date);
-        //long passed = date - midnight;
-        long passed = new DateTime(date).getMillisOfDay();
+        long local = date + DateTimeZone.getDefault().getOffset(date);
+        long passed = local % MILLIS_PER_DAY;
+        if (passed < 0) passed += MILLIS_PER_DAY;
         return (int) (passed / 1000);
     }
 
@@ -859,4 +815,75 @@ public class Profile {
         return true;
     }
 
+    /**
+     * Profile blocks as primitive arrays with precalculated value for every 30 min slot of the day.
+     * Slots where a block starts in the middle fall back to scanning the blocks.
+     */
+    private static final class LookupTable {
+        private static final int SLOT_SECONDS = 30 * 60;
+        private static final int SLOTS = 24 * 60 * 60 / SLOT_SECONDS;
+
+        private final long[] keys;
+        private final double[] values;
+        private final double[] slots = new double[SLOTS]; // NaN if slot is not covered by single block
+
+        LookupTable(LongSparseArray<Double> sparse) {
+            keys = new long[sparse.size()];
+            values = new double[sparse.size()];
+            for (int i = 0; i < sparse.size(); i++) {
+                keys[i] = sparse.keyAt(i);
+                values[i] = sparse.valueAt(i);
+            }
+            fillSlots();
+        }
+
+        private LookupTable(long[] keys, double[] values) {
+            this.keys = keys;
+            this.values = values;
+            fillSlots();
+        }
+
+        private void fillSlots() {
+            int block = 0;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                long start = slot * SLOT_SECONDS;
+                while (block + 1 < keys.length && keys[block + 1] <= start) block++;
+                boolean split = block + 1 < keys.length && keys[block + 1] < start + SLOT_SECONDS;
+                slots[slot] = keys.length == 0 || split ? Double.NaN : values[block];
+            }
+        }
+
+        double get(int timeAsSeconds) {
+            if (timeAsSeconds >= 0 && timeAsSeconds < SLOTS * SLOT_SECONDS) {
+                double value = slots[timeAsSeconds / SLOT_SECONDS];
+                if (!Double.isNaN(value)) return value;
+            }
+            // value of last block started before timeAsSeconds, first block if none
+            double lastValue = values[0];
+            for (int i = 0; i < keys.length && keys[i] <= timeAsSeconds; i++)
+                lastValue = values[i];
+            return lastValue;
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        long keyAt(int index) {
+            return keys[index];
+        }
+
+        double valueAt(int index) {
+            return values[index];
+        }
+
+        double[] copyValues() {
+            return values.clone();
+        }
+
+        LookupTable withValues(double[] newValues) {
+            return new LookupTable(keys, newValues);
+        }
+    }
+
 }
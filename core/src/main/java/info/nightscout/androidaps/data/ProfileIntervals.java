@@ -4,6 +4,7 @@ import androidx.annotation.Nullable;
 import androidx.collection.LongSparseArray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import info.nightscout.androidaps.interfaces.Interval;
@@ -17,8 +18,17 @@ import info.nightscout.androidaps.interfaces.Interval;
 
 public class ProfileIntervals<T extends Interval> {
 
+    private static final Object NOT_RESOLVED = new Object();
+
     private LongSparseArray<T> rawData; // oldest at index 0
 
+    // Result of getValueToTime changes only where some interval starts or stops matching.
+    // timeline holds these points sorted, timelineValues[i + 1] the result for [timeline[i], timeline[i + 1])
+    // and timelineValues[0] the result before timeline[0]. Values are resolved on first use.
+    private long[] timeline;
+    private Object[] timelineValues;
+    private int lastSegment = -1;
+
     public ProfileIntervals() {
         rawData = new LongSparseArray<>();
     }
@@ -29,6 +39,7 @@ public class ProfileIntervals<T extends Interval> {
 
     public synchronized ProfileIntervals<T> reset() {
         rawData = new LongSparseArray<>();
+        invalidateTimeline();
         return this;
     }
 
@@ -37,6 +48,7 @@ public class ProfileIntervals<T extends Interval> {
             rawData.put(newInterval.start(), newInterval);
             merge();
         }
+        invalidateTimeline();
     }
 
     public synchronized void add(List<T> list) {
@@ -45,20 +57,111 @@ public class ProfileIntervals<T extends Interval> {
                 rawData.put(interval.start(), interval);
         }
         merge();
+        invalidateTimeline();
+    }
+
+    /**
+     * @return removed interval, null if none starts at `start`
+     */
+    @Nullable
+    public synchronized T remove(long start) {
+        T interval = rawData.get(start);
+        if (interval != null) {
+            rawData.remove(start);
+            merge();
+            invalidateTimeline();
+        }
+        return interval;
+    }
+
+    /**
+     * Drops intervals starting before `time` except the newest one with zero duration
+     * which is used for times not covered by any other record
+     */
+    public synchronized void removeOlderThan(long time) {
+        T newestPermanent = null;
+        for (int index = rawData.size() - 1; index >= 0; index--) {
+            if (rawData.valueAt(index).durationInMsec() == 0) {
+                newestPermanent = rawData.valueAt(index);
+                break;
+            }
+        }
+        boolean changed = false;
+        int index = 0;
+        while (index < rawData.size() && rawData.keyAt(index) < time) {
+            if (rawData.valueAt(index) == newestPermanent) {
+                index++;
+            } else {
+                rawData.removeAt(index);
+                changed = true;
+            }
+        }
+        if (changed) invalidateTimeline();
+    }
+
+    private void invalidateTimeline() {
+        timeline = null;
+        timelineValues = null;
+        lastSegment = -1;
+    }
+
+    private void buildTimeline() {
+        long[] points = new long[rawData.size() * 2];
+        for (int index = 0; index < rawData.size(); index++) {
+            Interval interval = rawData.valueAt(index);
+            points[2 * index] = interval.start();
+            // match() includes end
+            points[2 * index + 1] = interval.end() + 1;
+        }
+        Arrays.sort(points);
+        int count = 0;
+        for (int i = 0; i < points.length; i++)
+            if (count == 0 || points[i] != points[count - 1]) points[count++] = points[i];
+        timeline = Arrays.copyOf(points, count);
+        timelineValues = new Object[count + 1];
+        Arrays.fill(timelineValues, NOT_RESOLVED);
+    }
+
+    private boolean inSegment(int segment, long time) {
+        return (segment == 0 || timeline[segment - 1] <= time) && (segment == timeline.length || time < timeline[segment]);
     }
 
     private synchronized void merge() {
-        for (int index = 0; index < rawData.size() - 1; index++) {
+        for (int index = 0; index < rawData.size(); index++) {
             Interval i = rawData.valueAt(index);
-            long startOfNewer = rawData.valueAt(index + 1).start();
+            long startOfNewer = index < rawData.size() - 1 ? rawData.valueAt(index + 1).start() : Long.MAX_VALUE;
             if (i.originalEnd() > startOfNewer) {
                 i.cutEndTo(startOfNewer);
+            } else if (i.end() != i.originalEnd()) {
+                // interval which cut this one was removed or moved
+                i.cutEndTo(i.originalEnd());
             }
         }
     }
 
+    /**
+     * Same as resolveValueToTime but the result is memoized for whole timeline segment
+     */
     @Nullable
     public synchronized Interval getValueToTime(long time) {
+        if (rawData.size() == 0) return null;
+        if (timeline == null) buildTimeline();
+        int segment = lastSegment;
+        if (segment < 0 || !inSegment(segment, time)) {
+            int pos = Arrays.binarySearch(timeline, time);
+            segment = pos >= 0 ? pos + 1 : -pos - 1;
+            lastSegment = segment;
+        }
+        Object value = timelineValues[segment];
+        if (value == NOT_RESOLVED) {
+            value = resolveValueToTime(time);
+            timelineValues[segment] = value;
+        }
+        return (Interval) value;
+    }
+
+    @Nullable
+    private Interval resolveValueToTime(long time) {
         int index = binarySearch(time);
         if (index >= 0) return rawData.valueAt(index);
         // if we request data older than first record, use oldest with zero duration instead
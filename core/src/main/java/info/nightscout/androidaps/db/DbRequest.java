@@ -31,14 +31,22 @@ public class DbRequest {
     @DatabaseField
     public String _id = null;
 
+    // last assigned nsClientID, requests of one batch are created within the same millisecond
+    private static long lastNSClientID = 0;
+
     public DbRequest() {
     }
 
+    static synchronized String nextNSClientID() {
+        lastNSClientID = Math.max(lastNSClientID + 1, DateUtil.now());
+        return "" + lastNSClientID;
+    }
+
     // dbAdd
     public DbRequest(String action, String collection, JSONObject json) {
         this.action = action;
         this.collection = collection;
-        this.nsClientID = "" + DateUtil.now();
+        this.nsClientID = nextNSClientID();
         try {
             json.put("NSCLIENT_ID", nsClientID);
         } catch (JSONException e) {
@@ -52,7 +60,7 @@ public class DbRequest {
     public DbRequest(String action, String collection, String _id, JSONObject json) {
         this.action = action;
         this.collection = collection;
-        this.nsClientID = "" + DateUtil.now();
+        this.nsClientID = nextNSClientID();
         try {
             json.put("NSCLIENT_ID", nsClientID);
         } catch (JSONException e) {
@@ -68,7 +76,7 @@ public class DbRequest {
         JSONObject json = new JSONObject();
         this.action = action;
         this.collection = collection;
-        this.nsClientID = "" + DateUtil.now();
+        this.nsClientID = nextNSClientID();
         try {
             json.put("NSCLIENT_ID", nsClientID);
         } catch (JSONException e) {
@@ -249,14 +249,10 @@ public class ExtendedBolus implements Interval, DataPointWithLabelInterface {
                 if (calcdate > dia_ago && calcdate <= time) {
                     double tempBolusSize = absoluteRate() * spacing / 60d;
 
-                    Treatment tempBolusPart = new Treatment();
-                    tempBolusPart.insulin = tempBolusSize;
-                    tempBolusPart.date = calcdate;
-
-                    Iob aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia);
+                    Iob aIOB = insulinInterface.iobCalc(tempBolusSize, calcdate, time, dia);
                     result.iob += aIOB.iobContrib;
                     result.activity += aIOB.activityContrib;
-                    result.extendedBolusInsulin += tempBolusPart.insulin;
+                    result.extendedBolusInsulin += tempBolusSize;
                 }
             }
         }
@@ -300,14 +296,10 @@ public class ExtendedBolus implements Interval, DataPointWithLabelInterface {
                 if (calcdate > dia_ago && calcdate <= time) {
                     double tempBolusSize = netBasalRate * spacing / 60d;
 
-                    Treatment tempBolusPart = new Treatment();
-                    tempBolusPart.insulin = tempBolusSize;
-                    tempBolusPart.date = calcdate;
-
-                    Iob aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia);
+                    Iob aIOB = insulinInterface.iobCalc(tempBolusSize, calcdate, time, dia);
                     result.iob += aIOB.iobContrib;
                     result.activity += aIOB.activityContrib;
-                    result.extendedBolusInsulin += tempBolusPart.insulin;
+                    result.extendedBolusInsulin += tempBolusSize;
                 }
             }
         }
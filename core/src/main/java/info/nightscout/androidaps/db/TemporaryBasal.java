@@ -280,16 +280,12 @@ public class TemporaryBasal implements Interval, DbObjectBase {
                     double tempBolusSize = netBasalRate * tempBolusSpacing / 60d;
                     netBasalAmount += tempBolusSize;
 
-                    Treatment tempBolusPart = new Treatment();
-                    tempBolusPart.insulin = tempBolusSize;
-                    tempBolusPart.date = calcdate;
-
-                    Iob aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia);
+                    Iob aIOB = insulinInterface.iobCalc(tempBolusSize, calcdate, time, dia);
                     result.basaliob += aIOB.iobContrib;
                     result.activity += aIOB.activityContrib;
-                    result.netbasalinsulin += tempBolusPart.insulin;
-                    if (tempBolusPart.insulin > 0) {
-                        result.hightempinsulin += tempBolusPart.insulin;
+                    result.netbasalinsulin += tempBolusSize;
+                    if (tempBolusSize > 0) {
+                        result.hightempinsulin += tempBolusSize;
                     }
                 }
                 result.netRatio = netBasalRate; // ratio at the end of interval
@@ -347,16 +343,12 @@ public class TemporaryBasal implements Interval, DbObjectBase {
                     double tempBolusSize = netBasalRate * tempBolusSpacing / 60d;
                     netBasalAmount += tempBolusSize;
 
-                    Treatment tempBolusPart = new Treatment();
-                    tempBolusPart.insulin = tempBolusSize;
-                    tempBolusPart.date = calcdate;
-
-                    Iob aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia);
+                    Iob aIOB = insulinInterface.iobCalc(tempBolusSize, calcdate, time, dia);
                     result.basaliob += aIOB.iobContrib;
                     result.activity += aIOB.activityContrib;
-                    result.netbasalinsulin += tempBolusPart.insulin;
-                    if (tempBolusPart.insulin > 0) {
-                        result.hightempinsulin += tempBolusPart.insulin;
+                    result.netbasalinsulin += tempBolusSize;
+                    if (tempBolusSize > 0) {
+                        result.hightempinsulin += tempBolusSize;
                     }
                 }
                 result.netRatio = netBasalRate; // ratio at the end of interval
@@ -10,12 +10,14 @@ interface DatabaseHelperInterface {
     fun createOrUpdate(record: DanaRHistoryRecord)
     fun createOrUpdate(record: OmnipodHistoryRecord)
     fun create(record: DbRequest)
+    fun create(records: List<DbRequest>)
     fun getDanaRHistoryRecordsByType(type: Byte): List<DanaRHistoryRecord>
     fun getTDDs(): List<TDD>
     fun size(table: String): Long
     fun deleteAllDbRequests()
     fun deleteDbRequest(id: String): Int
     fun deleteDbRequestbyMongoId(action: String, _id: String)
+    fun deleteDbRequests(nsClientIds: Collection<String>, mongoIds: Map<String, Set<String>>): Int
     fun getDbRequestInterator(): CloseableIterator<DbRequest>
     fun roundDateToSec(date: Long): Long
     fun createOrUpdateTDD(record: TDD)
@@ -27,4 +29,5 @@ interface DatabaseHelperInterface {
     fun findOmnipodHistoryRecordByPumpId(pumpId: Long): OmnipodHistoryRecord?
     fun getTDDsForLastXDays(days: Int): List<TDD>
     fun getProfileSwitchData(from: Long, ascending: Boolean): List<ProfileSwitch>
+    fun invalidateDailyStats(from: Long)
 }
@@ -27,4 +27,9 @@ interface InsulinInterface : ConfigExportImportInterface{
     val dia: Double
 
     fun iobCalcForTreatment(treatment: Treatment, time: Long, dia: Double): Iob
+
+    /**
+     * Same as iobCalcForTreatment without need of Treatment object (used for temp basal slices)
+     */
+    fun iobCalc(insulin: Double, deliveryTime: Long, time: Long, dia: Double): Iob
 }
\ No newline at end of file
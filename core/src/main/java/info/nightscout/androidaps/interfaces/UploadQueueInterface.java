@@ -1,8 +1,12 @@
 package info.nightscout.androidaps.interfaces;
 
+import java.util.List;
+
 import info.nightscout.androidaps.db.DbRequest;
 
 public interface UploadQueueInterface {
 
     void add(DbRequest dbRequest);
+
+    void addAll(List<DbRequest> dbRequests);
 }
@@ -10,10 +10,13 @@ interface AAPSLogger {
     fun debug(enable: Boolean, tag: LTag, message: String)
     fun debug(tag: LTag, message: String)
     fun debug(tag: LTag, format: String, vararg arguments: Any?)
+    // message is built only if tag is enabled
+    fun debug(tag: LTag, message: () -> String)
     fun warn(tag: LTag, message: String)
     fun warn(tag: LTag, format: String, vararg arguments: Any?)
     fun info(tag: LTag, message: String)
     fun info(tag: LTag, format: String, vararg arguments: Any?)
+    fun info(tag: LTag, message: () -> String)
     fun error(tag: LTag, message: String)
     fun error(tag: LTag, message: String, throwable: Throwable)
     fun error(tag: LTag, format: String, vararg arguments: Any?)
@@ -1,5 +1,6 @@
 package info.nightscout.androidaps.logging
 
+import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
 /**
@@ -8,66 +9,85 @@ import org.slf4j.LoggerFactory
 
 class AAPSLoggerProduction constructor(val l: L) : AAPSLogger {
 
+    // indexed by LTag.ordinal
+    private val loggers: Array<Logger> = LTag.values().map { LoggerFactory.getLogger(it.tag) }.toTypedArray()
+
+    private fun logger(tag: LTag): Logger = loggers[tag.ordinal]
+
+    // must be called directly from the logging method to point to its caller
+    private fun marker(): String =
+        if (l.callerMarker) Throwable().stackTrace[2].toLogString() else ""
+
     override fun debug(message: String) {
-        LoggerFactory.getLogger(LTag.CORE.tag).debug(stackLogMarker() + message)
+        logger(LTag.CORE).debug(marker() + message)
     }
 
     override fun debug(enable: Boolean, tag: LTag, message: String) {
-        if (enable && l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + message)
+        if (enable && l.isEnabled(tag))
+            logger(tag).debug(marker() + message)
     }
 
     override fun debug(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + message)
+        if (l.isEnabled(tag))
+            logger(tag).debug(marker() + message)
     }
 
     override fun debug(tag: LTag, format: String, vararg arguments: Any?) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + format, arguments)
+        if (l.isEnabled(tag))
+            logger(tag).debug(marker() + format, *arguments)
+    }
+
+    override fun debug(tag: LTag, message: () -> String) {
+        if (l.isEnabled(tag))
+            logger(tag).debug(marker() + message())
     }
 
     override fun warn(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).warn(stackLogMarker() + message)
+        if (l.isEnabled(tag))
+            logger(tag).warn(marker() + message)
     }
 
     override fun warn(tag: LTag, format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(tag.tag).warn(stackLogMarker() + format, arguments)
+        logger(tag).warn(marker() + format, *arguments)
     }
 
     override fun info(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).info(stackLogMarker() + message)
+        if (l.isEnabled(tag))
+            logger(tag).info(marker() + message)
     }
 
     override fun info(tag: LTag, format: String, vararg arguments: Any?) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).info(stackLogMarker() + format, arguments)
+        if (l.isEnabled(tag))
+            logger(tag).info(marker() + format, *arguments)
+    }
+
+    override fun info(tag: LTag, message: () -> String) {
+        if (l.isEnabled(tag))
+            logger(tag).info(marker() + message())
     }
 
     override fun error(tag: LTag, message: String) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + message)
+        logger(tag).error(marker() + message)
     }
 
     override fun error(message: String) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + message)
+        logger(LTag.CORE).error(marker() + message)
     }
 
     override fun error(message: String, throwable: Throwable) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + message, throwable)
+        logger(LTag.CORE).error(marker() + message, throwable)
     }
 
     override fun error(format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + format, arguments)
+        logger(LTag.CORE).error(marker() + format, *arguments)
     }
 
     override fun error(tag: LTag, message: String, throwable: Throwable) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + message, throwable)
+        logger(tag).error(marker() + message, throwable)
     }
 
     override fun error(tag: LTag, format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + format, arguments)
+        logger(tag).error(marker() + format, *arguments)
     }
 }
 
@@ -75,4 +95,4 @@ fun StackTraceElement.toLogString(): String = "[${this.className.substringAfterL
 
 /* Needs to be inline. Don't remove even if IDE suggests it. */
 @Suppress("NOTHING_TO_INLINE")
-inline fun stackLogMarker() = Throwable().stackTrace[1].toLogString()
\ No newline at end of file
+inline fun stackLogMarker() = Throwable().stackTrace[1].toLogString()
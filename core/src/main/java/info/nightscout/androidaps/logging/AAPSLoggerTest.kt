@@ -22,6 +22,10 @@ class AAPSLoggerTest : AAPSLogger {
         println("DEBUG: : " + tag.tag + " " + String.format(format, arguments))
     }
 
+    override fun debug(tag: LTag, message: () -> String) {
+        println("DEBUG: : " + tag.tag + " " + message())
+    }
+
     override fun warn(tag: LTag, message: String) {
         println("WARN: " + tag.tag + " " + message)
     }
@@ -38,6 +42,10 @@ class AAPSLoggerTest : AAPSLogger {
         println("INFO: : " + tag.tag + " " + String.format(format, arguments))
     }
 
+    override fun info(tag: LTag, message: () -> String) {
+        println("INFO: : " + tag.tag + " " + message())
+    }
+
     override fun error(tag: LTag, message: String) {
         println("ERROR: " + tag.tag + " " + message)
     }
@@ -11,17 +11,27 @@ class L @Inject constructor(
 ) {
 
     private var logElements: MutableList<LogElement> = ArrayList()
+    // same elements indexed by LTag.ordinal
+    private val elementsByTag: Array<LogElement>
+    private val elementsByName: Map<String, LogElement>
+
+    // prefix messages with [Class.method():line] of the caller, needs stack trace per call
+    var callerMarker: Boolean = sp.getBoolean(CALLER_MARKER_KEY, false)
+        set(value) {
+            field = value
+            sp.putBoolean(CALLER_MARKER_KEY, value)
+        }
 
     init {
         LTag.values().forEach { logElements.add(LogElement(it, sp)) }
+        elementsByTag = logElements.toTypedArray()
+        elementsByName = logElements.associateBy { it.name }
     }
 
-    fun findByName(name: String): LogElement {
-        for (element in logElements) {
-            if (element.name == name) return element
-        }
-        return LogElement(false, sp)
-    }
+    fun isEnabled(tag: LTag): Boolean = elementsByTag[tag.ordinal].enabled
+
+    fun findByName(name: String): LogElement =
+        elementsByName[name] ?: LogElement(false, sp)
 
     fun getLogElements(): List<LogElement> {
         return logElements
@@ -31,6 +41,12 @@ class L @Inject constructor(
         for (element in logElements) {
             element.resetToDefault()
         }
+        callerMarker = false
+    }
+
+    companion object {
+
+        private const val CALLER_MARKER_KEY = "log_caller_marker"
     }
 
     class LogElement {
@@ -2,24 +2,102 @@ package info.nightscout.androidaps.plugins.bus
 
 import info.nightscout.androidaps.events.Event
 import io.reactivex.Observable
-import io.reactivex.schedulers.Schedulers
 import io.reactivex.subjects.PublishSubject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Event bus with one subject per subscribed event class.
+ *
+ * Event is delivered only to listeners of its own class and its superclasses/interfaces,
+ * so sending an event nobody listens to costs a map lookup.
+ */
 @Singleton
 open class RxBusWrapper @Inject constructor() {
 
-    private val publisher = PublishSubject.create<Event>()
+    class EventStats(val eventType: Class<*>, val subscribers: Int, val sent: Long, val dispatchNanos: Long) {
+
+        val avgDispatchNanos: Long get() = if (sent > 0) dispatchNanos / sent else 0
+
+        override fun toString(): String =
+            "${eventType.simpleName} subscribers: $subscribers sent: $sent avg dispatch: ${avgDispatchNanos / 1000}us"
+    }
+
+    private class Route {
+
+        val subject = PublishSubject.create<Any>()
+        val subscribers = AtomicInteger()
+        val sent = AtomicLong()
+        val dispatchNanos = AtomicLong()
+    }
+
+    // subscribed class -> route
+    private val routes = ConcurrentHashMap<Class<*>, Route>()
+
+    // sent class -> routes of all subscribed classes it is assignable to
+    private val dispatch = ConcurrentHashMap<Class<*>, Array<Route>>()
 
     fun send(event: Event) {
-        publisher.onNext(event)
+        for (route in routesFor(event.javaClass)) {
+            if (!route.subject.hasObservers()) continue
+            val start = System.nanoTime()
+            route.subject.onNext(event)
+            route.dispatchNanos.addAndGet(System.nanoTime() - start)
+            route.sent.incrementAndGet()
+        }
     }
 
     // Listen should return an Observable and not the publisher
-    // Using ofType we filter only events that match that class type
-    fun <T> toObservable(eventType: Class<T>): Observable<T> =
-        publisher
-            .subscribeOn(Schedulers.io())
-            .ofType(eventType)
-}
\ No newline at end of file
+    // Only events of eventType class (or subclasses) are routed to this subject
+    @Suppress("UNCHECKED_CAST")
+    fun <T> toObservable(eventType: Class<T>): Observable<T> {
+        val route = route(eventType)
+        return (route.subject as Observable<T>)
+            .doOnSubscribe { route.subscribers.incrementAndGet() }
+            .doFinally { route.subscribers.decrementAndGet() }
+    }
+
+    /**
+     * Deliver at most one event per period, always the latest one.
+     * Intended for progress like events where intermediate values can be dropped.
+     */
+    fun <T> toObservable(eventType: Class<T>, conflateMsec: Long): Observable<T> =
+        toObservable(eventType).throttleLatest(conflateMsec, TimeUnit.MILLISECONDS, true)
+
+    fun statistics(): List<EventStats> =
+        routes.map { (eventType, route) -> EventStats(eventType, route.subscribers.get(), route.sent.get(), route.dispatchNanos.get()) }
+            .sortedByDescending { it.dispatchNanos }
+
+    private fun route(eventType: Class<*>): Route =
+        routes[eventType] ?: synchronized(this) {
+            routes.getOrPut(eventType) {
+                // new subscribed class, dispatch tables must be rebuilt
+                dispatch.clear()
+                Route()
+            }
+        }
+
+    private fun routesFor(eventClass: Class<*>): Array<Route> =
+        dispatch[eventClass] ?: synchronized(this) {
+            dispatch.getOrPut(eventClass) {
+                supertypes(eventClass).mapNotNull { routes[it] }.toTypedArray()
+            }
+        }
+
+    private fun supertypes(eventClass: Class<*>): Set<Class<*>> {
+        val result = LinkedHashSet<Class<*>>()
+        val pending = ArrayDeque<Class<*>>()
+        pending.add(eventClass)
+        while (pending.isNotEmpty()) {
+            val clazz = pending.removeFirst()
+            if (!result.add(clazz)) continue
+            clazz.superclass?.let { pending.add(it) }
+            pending.addAll(clazz.interfaces)
+        }
+        return result
+    }
+}
@@ -14,6 +14,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -403,6 +405,17 @@ public class NSUpload {
     }
 
     public void uploadBg(BgReading reading, String source) {
+        uploadQueue.add(new DbRequest("dbAdd", "entries", bgData(reading, source)));
+    }
+
+    public void uploadBgs(List<BgReading> readings, String source) {
+        List<DbRequest> requests = new ArrayList<>(readings.size());
+        for (BgReading reading : readings)
+            requests.add(new DbRequest("dbAdd", "entries", bgData(reading, source)));
+        uploadQueue.addAll(requests);
+    }
+
+    private JSONObject bgData(BgReading reading, String source) {
         JSONObject data = new JSONObject();
         try {
             data.put("device", source);
@@ -414,7 +427,7 @@ public class NSUpload {
         } catch (JSONException e) {
             aapsLogger.error("Unhandled exception", e);
         }
-        uploadQueue.add(new DbRequest("dbAdd", "entries", data));
+        return data;
     }
 
     public void uploadAppStart() {
@@ -462,23 +475,33 @@ public class NSUpload {
     }
 
     public void sendToXdrip(BgReading bgReading) {
+        sendToXdrip(Collections.singletonList(bgReading));
+    }
+
+    /**
+     * All readings are sent in one broadcast
+     */
+    public void sendToXdrip(List<BgReading> bgReadings) {
+        if (bgReadings.isEmpty()) return;
         final String XDRIP_PLUS_NS_EMULATOR = "com.eveningoutpost.dexdrip.NS_EMULATOR";
         SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
 
         try {
             final JSONArray entriesBody = new JSONArray();
-            JSONObject json = new JSONObject();
-            json.put("sgv", bgReading.value);
-            if (bgReading.direction == null) {
-                json.put("direction", "NONE");
-            } else {
-                json.put("direction", bgReading.direction);
+            for (BgReading bgReading : bgReadings) {
+                JSONObject json = new JSONObject();
+                json.put("sgv", bgReading.value);
+                if (bgReading.direction == null) {
+                    json.put("direction", "NONE");
+                } else {
+                    json.put("direction", bgReading.direction);
+                }
+                json.put("device", "G5");
+                json.put("type", "sgv");
+                json.put("date", bgReading.date);
+                json.put("dateString", format.format(bgReading.date));
+                entriesBody.put(json);
             }
-            json.put("device", "G5");
-            json.put("type", "sgv");
-            json.put("date", bgReading.date);
-            json.put("dateString", format.format(bgReading.date));
-            entriesBody.put(json);
 
             final Bundle bundle = new Bundle();
             bundle.putString("action", "add");
@@ -51,8 +51,7 @@ public abstract class MedtronicHistoryDecoder<T extends MedtronicHistoryEntry> i
 
 
     // TODO_ extend this to also use bigger pages (for now we support only 1024 pages)
-    private List<Byte> checkPage(RawHistoryPage page, boolean partial) throws RuntimeException {
-        List<Byte> byteList = new ArrayList<Byte>();
+    private byte[] checkPage(RawHistoryPage page, boolean partial) throws RuntimeException {
 
         // if (!partial && page.getData().length != 1024 /* page.commandType.getRecordLength() */) {
         // LOG.error("Page size is not correct. Size should be {}, but it was {} instead.", 1024,
@@ -63,13 +62,13 @@ public abstract class MedtronicHistoryDecoder<T extends MedtronicHistoryEntry> i
 
         if (medtronicUtil.getMedtronicPumpModel() == null) {
             aapsLogger.error(LTag.PUMPCOMM, "Device Type is not defined.");
-            return byteList;
+            return new byte[0];
         }
 
         if (page.getData().length != 1024) {
-            return ByteUtil.getListFromByteArray(page.getData());
+            return page.getData();
         } else if (page.isChecksumOK()) {
-            return ByteUtil.getListFromByteArray(page.getOnlyData());
+            return page.getOnlyData();
         } else {
             return null;
         }
@@ -167,7 +166,13 @@ public abstract class MedtronicHistoryDecoder<T extends MedtronicHistoryEntry> i
 
 
     private List<T> processPageAndCreateRecords(RawHistoryPage rawHistoryPage, boolean partial) {
-        List<Byte> dataClear = checkPage(rawHistoryPage, partial);
+        byte[] dataClear = checkPage(rawHistoryPage, partial);
+
+        if (dataClear == null) {
+            aapsLogger.error(LTag.PUMPCOMM, "Page checksum is wrong, page is not decoded.");
+            return new ArrayList<>();
+        }
+
         List<T> records = createRecords(dataClear);
 
         for (T record : records) {
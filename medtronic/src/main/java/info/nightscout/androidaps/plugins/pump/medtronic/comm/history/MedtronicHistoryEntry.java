@@ -4,6 +4,7 @@ import com.google.gson.annotations.Expose;
 
 import org.slf4j.Logger;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,7 +23,7 @@ import info.nightscout.androidaps.plugins.pump.common.utils.StringUtil;
 
 public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInterface {
 
-    protected List<Byte> rawData;
+    protected byte[] rawData;
 
     public static final Logger LOG = StacktraceLoggerWrapper.getLogger(MedtronicHistoryEntry.class);
 
@@ -72,7 +73,12 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
 
 
     public void setData(List<Byte> listRawData, boolean doNotProcess) {
-        this.rawData = listRawData;
+        setData(ByteUtil.getByteArrayFromList(listRawData), doNotProcess);
+    }
+
+
+    public void setData(byte[] rawData, boolean doNotProcess) {
+        this.rawData = rawData;
 
         // System.out.println("Head: " + sizes[0] + ", dates: " + sizes[1] +
         // ", body=" + sizes[2]);
@@ -80,26 +86,15 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
         if (doNotProcess)
             return;
 
-        head = new byte[getHeadLength() - 1];
-        for (int i = 1; i < (getHeadLength()); i++) {
-            head[i - 1] = listRawData.get(i);
-        }
+        head = Arrays.copyOfRange(rawData, 1, getHeadLength());
 
         if (getDateTimeLength() > 0) {
-            datetime = new byte[getDateTimeLength()];
-
-            for (int i = getHeadLength(), j = 0; j < getDateTimeLength(); i++, j++) {
-                datetime[j] = listRawData.get(i);
-            }
+            datetime = Arrays.copyOfRange(rawData, getHeadLength(), getHeadLength() + getDateTimeLength());
         }
 
         if (getBodyLength() > 0) {
-            body = new byte[getBodyLength()];
-
-            for (int i = (getHeadLength() + getDateTimeLength()), j = 0; j < getBodyLength(); i++, j++) {
-                body[j] = listRawData.get(i);
-            }
-
+            int bodyStart = getHeadLength() + getDateTimeLength();
+            body = Arrays.copyOfRange(rawData, bodyStart, bodyStart + getBodyLength());
         }
 
     }
@@ -231,22 +226,22 @@ public abstract class MedtronicHistoryEntry implements MedtronicHistoryEntryInte
     public abstract String getToStringStart();
 
 
-    public List<Byte> getRawData() {
+    public byte[] getRawData() {
         return rawData;
     }
 
 
     public byte getRawDataByIndex(int index) {
-        return rawData.get(index);
+        return rawData[index];
     }
 
 
     public int getUnsignedRawDataByIndex(int index) {
-        return ByteUtil.convertUnsignedByteToInt(rawData.get(index));
+        return ByteUtil.convertUnsignedByteToInt(rawData[index]);
     }
 
 
-    public void setRawData(List<Byte> rawData) {
+    public void setRawData(byte[] rawData) {
         this.rawData = rawData;
     }
 
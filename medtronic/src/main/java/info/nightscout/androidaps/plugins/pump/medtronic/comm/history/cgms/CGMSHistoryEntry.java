@@ -46,7 +46,7 @@ public class CGMSHistoryEntry extends MedtronicHistoryEntry {
         if (this.entryType.schemaSet) {
             super.setData(listRawData, doNotProcess);
         } else {
-            this.rawData = listRawData;
+            this.rawData = ByteUtil.getByteArrayFromList(listRawData);
         }
     }
 
@@ -9,6 +9,7 @@ import java.util.List;
 
 import info.nightscout.androidaps.logging.LTag;
 import info.nightscout.androidaps.logging.StacktraceLoggerWrapper;
+import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.pump.common.utils.DateTimeUtil;
 import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.MedtronicHistoryDecoder;
 import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.RecordDecodeStatus;
@@ -120,9 +121,9 @@ public class MedtronicCGMSHistoryDecoder extends MedtronicHistoryDecoder<CGMSHis
     }
 
 
-    public List<CGMSHistoryEntry> createRecords(List<Byte> dataClearInput) {
+    public List<CGMSHistoryEntry> createRecords(byte[] dataClearInput) {
 
-        List<Byte> dataClear = reverseList(dataClearInput, Byte.class);
+        List<Byte> dataClear = reverseList(ByteUtil.getListFromByteArray(dataClearInput), Byte.class);
 
         prepareStatistics();
 
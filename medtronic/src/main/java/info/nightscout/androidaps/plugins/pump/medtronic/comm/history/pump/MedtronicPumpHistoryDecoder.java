@@ -1,6 +1,7 @@
 package info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -48,93 +49,79 @@ public class MedtronicPumpHistoryDecoder extends MedtronicHistoryDecoder<PumpHis
     }
 
 
-    public List<PumpHistoryEntry> createRecords(List<Byte> dataClear) {
+    public List<PumpHistoryEntry> createRecords(byte[] dataClear) {
         prepareStatistics();
 
         int counter = 0;
         int record = 0;
-        boolean incompletePacket;
+        // last 2 bytes of page are CRC
+        int dataEnd = Math.min(dataClear.length, 1022);
 
         List<PumpHistoryEntry> outList = new ArrayList<>();
-        String skipped = null;
+        int skipped = 0;
 
-        if (dataClear.size() == 0) {
+        if (dataClear.length == 0) {
             aapsLogger.error(LTag.PUMPBTCOMM, "Empty page.");
             return outList;
         }
 
+        MedtronicDeviceType pumpModel = medtronicUtil.getMedtronicPumpModel();
+
         do {
-            int opCode = dataClear.get(counter);
+            int opCode = dataClear[counter];
             boolean special = false;
-            incompletePacket = false;
 
             if (opCode == 0) {
                 counter++;
-                if (skipped == null)
-                    skipped = "0x00";
-                else
-                    skipped += " 0x00";
+                skipped++;
                 continue;
             } else {
-                if (skipped != null) {
-                    aapsLogger.warn(LTag.PUMPBTCOMM, " ... Skipped " + skipped);
-                    skipped = null;
+                if (skipped > 0) {
+                    aapsLogger.warn(LTag.PUMPBTCOMM, " ... Skipped " + skipped + " x 0x00");
+                    skipped = 0;
                 }
             }
 
             PumpHistoryEntryType entryType = PumpHistoryEntryType.getByCode(opCode);
 
             PumpHistoryEntry pe = new PumpHistoryEntry();
-            pe.setEntryType(medtronicUtil.getMedtronicPumpModel(), entryType);
+            pe.setEntryType(pumpModel, entryType);
             pe.setOffset(counter);
 
+            int start = counter;
             counter++;
 
             if (counter >= 1022) {
                 break;
             }
 
-            List<Byte> listRawData = new ArrayList<>();
-            listRawData.add((byte) opCode);
+            int end;
 
             if (entryType == PumpHistoryEntryType.UnabsorbedInsulin
                     || entryType == PumpHistoryEntryType.UnabsorbedInsulin512) {
-                int elements = dataClear.get(counter);
-                listRawData.add((byte) elements);
-                counter++;
-
-                int els = getUnsignedInt(elements);
-
-                for (int k = 0; k < (els - 2); k++) {
-                    if (counter<1022) {
-                        listRawData.add(dataClear.get(counter));
-                        counter++;
-                    }
+                if (counter >= dataEnd) {
+                    aapsLogger.error(LTag.PUMPBTCOMM, "OpCode: " + ByteUtil.shortHexString((byte) opCode) + ", Invalid package: "
+                            + ByteUtil.getHex(Arrays.copyOfRange(dataClear, start, counter)));
+                    break;
                 }
 
+                int els = getUnsignedInt(dataClear[counter]);
+                // opCode, elements and els - 2 bytes, cut at end of page
+                end = Math.min(counter + 1 + Math.max(els - 2, 0), dataEnd);
+
                 special = true;
             } else {
+                end = start + Math.max(entryType.getTotalLength(pumpModel), 1);
 
-                for (int j = 0; j < (entryType.getTotalLength(medtronicUtil.getMedtronicPumpModel()) - 1); j++) {
-
-                    try {
-                        listRawData.add(dataClear.get(counter));
-                        counter++;
-                    } catch (Exception ex) {
-                        aapsLogger.error(LTag.PUMPBTCOMM, "OpCode: " + ByteUtil.shortHexString((byte) opCode) + ", Invalid package: "
-                                + ByteUtil.getHex(listRawData));
-                        // throw ex;
-                        incompletePacket = true;
-                        break;
-                    }
-
-                }
-
-                if (incompletePacket)
+                if (end > dataClear.length) {
+                    aapsLogger.error(LTag.PUMPBTCOMM, "OpCode: " + ByteUtil.shortHexString((byte) opCode) + ", Invalid package: "
+                            + ByteUtil.getHex(Arrays.copyOfRange(dataClear, start, dataClear.length)));
                     break;
-
+                }
             }
 
+            counter = end;
+
             if (entryType == PumpHistoryEntryType.None) {
                 aapsLogger.error(LTag.PUMPBTCOMM, "Error in code. We should have not come into this branch.");
             } else {
@@ -143,10 +130,10 @@ public class MedtronicPumpHistoryDecoder extends MedtronicHistoryDecoder<PumpHis
                     pe.setOpCode(opCode);
                 }
 
-                if (entryType.getHeadLength(medtronicUtil.getMedtronicPumpModel()) == 0)
+                if (entryType.getHeadLength(pumpModel) == 0)
                     special = true;
 
-                pe.setData(listRawData, special);
+                pe.setData(Arrays.copyOfRange(dataClear, start, end), special);
 
                 RecordDecodeStatus decoded = decodeRecord(pe);
 
@@ -166,7 +153,7 @@ public class MedtronicPumpHistoryDecoder extends MedtronicHistoryDecoder<PumpHis
                 }
             }
 
-        } while (counter < dataClear.size());
+        } while (counter < dataClear.length);
 
         return outList;
     }
@@ -32,6 +32,7 @@ import info.nightscout.androidaps.db.TemporaryBasal;
 import info.nightscout.androidaps.interfaces.ActivePluginProvider;
 import info.nightscout.androidaps.interfaces.DatabaseHelperInterface;
 import info.nightscout.androidaps.logging.AAPSLogger;
+import info.nightscout.androidaps.logging.L;
 import info.nightscout.androidaps.logging.LTag;
 import info.nightscout.androidaps.plugins.general.nsclient.NSUpload;
 import info.nightscout.androidaps.plugins.pump.common.defs.PumpType;
@@ -81,6 +82,7 @@ public class MedtronicHistoryData {
     private final MedtronicUtil medtronicUtil;
     private final MedtronicPumpHistoryDecoder medtronicPumpHistoryDecoder;
     private final DatabaseHelperInterface databaseHelper;
+    private final L l;
 
     private final List<PumpHistoryEntry> allHistory;
     private List<PumpHistoryEntry> newHistory = null;
@@ -112,7 +114,8 @@ public class MedtronicHistoryData {
             NSUpload nsUpload,
             MedtronicUtil medtronicUtil,
             MedtronicPumpHistoryDecoder medtronicPumpHistoryDecoder,
-            DatabaseHelperInterface databaseHelperInterface
+            DatabaseHelperInterface databaseHelperInterface,
+            L l
     ) {
         this.allHistory = new ArrayList<>();
 
@@ -124,6 +127,7 @@ public class MedtronicHistoryData {
         this.medtronicUtil = medtronicUtil;
         this.medtronicPumpHistoryDecoder = medtronicPumpHistoryDecoder;
         this.databaseHelper = databaseHelperInterface;
+        this.l = l;
     }
 
     private Gson gson() {
@@ -156,15 +160,23 @@ public class MedtronicHistoryData {
 
         this.newHistory = newEntries;
 
-        showLogs("List of history (before filtering): [" + this.newHistory.size() + "]", gson().toJson(this.newHistory));
+        showLogs("List of history (before filtering): [" + this.newHistory.size() + "]", this.newHistory);
     }
 
 
-    private void showLogs(String header, String data) {
+    /**
+     * Items are serialized only when PUMP logging is enabled, history lists can be long
+     */
+    private void showLogs(String header, Object items) {
+        if (!l.isEnabled(LTag.PUMP))
+            return;
+
         if (header != null) {
             aapsLogger.debug(LTag.PUMP, header);
         }
 
+        String data = gson().toJson(items);
+
         if (StringUtils.isNotBlank(data)) {
             for (final String token : StringUtil.splitString(data, 3500)) {
                 aapsLogger.debug(LTag.PUMP, "{}", token);
@@ -230,7 +242,7 @@ public class MedtronicHistoryData {
 
         aapsLogger.debug(LTag.PUMP, "New History entries found: {}", this.newHistory.size());
 
-        showLogs("List of history (after filtering): [" + this.newHistory.size() + "]", gson().toJson(this.newHistory));
+        showLogs("List of history (after filtering): [" + this.newHistory.size() + "]", this.newHistory);
 
     }
 
@@ -343,7 +355,7 @@ public class MedtronicHistoryData {
 
         List<PumpHistoryEntry> items = getDataForPumpSuspends();
 
-        showLogs("isPumpSuspended: ", gson().toJson(items));
+        showLogs("isPumpSuspended: ", items);
 
         if (isCollectionNotEmpty(items)) {
 
@@ -1270,11 +1282,11 @@ public class MedtronicHistoryData {
 
 
         if (!finishedItems) {
-            showLogs("NoDeliveryRewindPrimeRecords: Not finished Items: ", gson().toJson(tempData));
+            showLogs("NoDeliveryRewindPrimeRecords: Not finished Items: ", tempData);
             return outList;
         }
 
-        showLogs("NoDeliveryRewindPrimeRecords: Records to evaluate: ", gson().toJson(tempData));
+        showLogs("NoDeliveryRewindPrimeRecords: Records to evaluate: ", tempData);
 
         List<PumpHistoryEntry> items = getFilteredItems(tempData, //
                 PumpHistoryEntryType.Prime
@@ -0,0 +1,320 @@
+package info.nightscout.androidaps.plugins.pump.medtronic.comm.history;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.nightscout.androidaps.logging.AAPSLogger;
+import info.nightscout.androidaps.logging.AAPSLoggerTest;
+import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
+import info.nightscout.androidaps.plugins.pump.common.utils.CRC;
+import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump.MedtronicPumpHistoryDecoder;
+import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump.PumpHistoryEntry;
+import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump.PumpHistoryEntryType;
+import info.nightscout.androidaps.plugins.pump.medtronic.defs.MedtronicDeviceType;
+import info.nightscout.androidaps.plugins.pump.medtronic.util.MedtronicUtil;
+
+/**
+ * Decodes 1024 byte pages through processPageAndCreateRecords and compares records with the
+ * previous List&lt;Byte&gt; implementation of createRecords.
+ */
+public class MedtronicHistoryDecoderUTest {
+
+    private static final MedtronicDeviceType pumpModel = MedtronicDeviceType.Medtronic_522;
+
+    private final AAPSLogger aapsLogger = new AAPSLoggerTest();
+    private MedtronicUtil medtronicUtil;
+    private RecordingDecoder decoder;
+
+
+    // keeps all entries created from page, also the ones not returned
+    private static class RecordingDecoder extends MedtronicPumpHistoryDecoder {
+
+        private final List<PumpHistoryEntry> created = new ArrayList<>();
+        private boolean creating = false;
+
+
+        RecordingDecoder(AAPSLogger aapsLogger, MedtronicUtil medtronicUtil) {
+            super(aapsLogger, medtronicUtil);
+        }
+
+
+        @Override
+        public List<PumpHistoryEntry> createRecords(byte[] dataClear) {
+            creating = true;
+            try {
+                return super.createRecords(dataClear);
+            } finally {
+                creating = false;
+            }
+        }
+
+
+        @Override
+        public RecordDecodeStatus decodeRecord(PumpHistoryEntry record) {
+            if (creating)
+                created.add(record);
+            return super.decodeRecord(record);
+        }
+    }
+
+
+    // history page as written by pump, data is cut at 1022 bytes and followed by CRC
+    private static class PageBuilder {
+
+        private final byte[] data = new byte[1022];
+        private final List<Integer> offsets = new ArrayList<>();
+        private int position = 0;
+
+
+        PageBuilder record(PumpHistoryEntryType entryType) {
+            int length = entryType.getTotalLength(pumpModel);
+            int start = position;
+            put((byte) entryType.getCode());
+            for (int i = 1; i < length; i++)
+                put((byte) 0x01);
+            if (entryType.getDateLength() == 5) {
+                // 12.10.2020 10:15:30
+                byte[] dateTime = new byte[]{(byte) 0x9E, (byte) 0x8F, 0x0A, 0x0C, 0x14};
+                for (int i = 0; i < dateTime.length && start + entryType.getHeadLength(pumpModel) + i < data.length; i++)
+                    data[start + entryType.getHeadLength(pumpModel) + i] = dateTime[i];
+            }
+            // truncated record is not decoded
+            if (position <= data.length)
+                offsets.add(start);
+            return this;
+        }
+
+
+        PageBuilder unabsorbedInsulin(int elements) {
+            offsets.add(position);
+            put((byte) PumpHistoryEntryType.UnabsorbedInsulin.getCode());
+            put((byte) elements);
+            for (int i = 0; i < elements - 2; i++)
+                put((byte) (0x10 + i));
+            return this;
+        }
+
+
+        PageBuilder skip(int count) {
+            position += count;
+            return this;
+        }
+
+
+        int position() {
+            return position;
+        }
+
+
+        private void put(byte value) {
+            if (position < data.length)
+                data[position] = value;
+            position++;
+        }
+
+
+        RawHistoryPage page(AAPSLogger aapsLogger) {
+            RawHistoryPage page = new RawHistoryPage(aapsLogger);
+            page.appendData(data);
+            page.appendData(CRC.calculate16CCITT(data));
+            return page;
+        }
+    }
+
+
+    @Before
+    public void prepare() {
+        medtronicUtil = Mockito.mock(MedtronicUtil.class);
+        Mockito.when(medtronicUtil.getMedtronicPumpModel()).thenReturn(pumpModel);
+        decoder = new RecordingDecoder(aapsLogger, medtronicUtil);
+        // injected into base class
+        MedtronicHistoryDecoder<PumpHistoryEntry> base = decoder;
+        base.aapsLogger = aapsLogger;
+        base.medtronicUtil = medtronicUtil;
+    }
+
+
+    private PageBuilder recordedEntries() {
+        PageBuilder builder = new PageBuilder();
+        while (builder.position() < 900) {
+            builder.record(PumpHistoryEntryType.BGReceived)
+                    .record(PumpHistoryEntryType.Bolus)
+                    .unabsorbedInsulin(5)
+                    .record(PumpHistoryEntryType.TempBasalRate)
+                    .record(PumpHistoryEntryType.TempBasalDuration)
+                    .unabsorbedInsulin(1)
+                    .record(PumpHistoryEntryType.Rewind)
+                    .record(PumpHistoryEntryType.Prime)
+                    .skip(3);
+        }
+        return builder;
+    }
+
+
+    @Test
+    public void pageWithUnabsorbedInsulinCutAtEndOfPage() {
+        PageBuilder builder = recordedEntries();
+        builder.skip(1010 - builder.position()).unabsorbedInsulin(40);
+        RawHistoryPage page = builder.page(aapsLogger);
+        Assert.assertTrue(page.isChecksumOK());
+
+        List<PumpHistoryEntry> records = decoder.processPageAndCreateRecords(page);
+        List<PumpHistoryEntry> previous = previousCreateRecords(ByteUtil.getListFromByteArray(page.getOnlyData()));
+
+        assertSameEntries(previous, decoder.created);
+        Assert.assertEquals(builder.offsets, offsets(decoder.created));
+
+        PumpHistoryEntry last = decoder.created.get(decoder.created.size() - 1);
+        Assert.assertEquals(PumpHistoryEntryType.UnabsorbedInsulin, last.getEntryType());
+        Assert.assertEquals(1010, last.getOffset());
+        Assert.assertEquals(12, last.getRawData().length);
+
+        assertOkEntriesReturned(previous, records);
+    }
+
+
+    @Test
+    public void pageWithTruncatedRecordAtEndOfPage() {
+        PageBuilder builder = recordedEntries();
+        builder.skip(1018 - builder.position()).record(PumpHistoryEntryType.Bolus);
+        RawHistoryPage page = builder.page(aapsLogger);
+
+        List<PumpHistoryEntry> records = decoder.processPageAndCreateRecords(page);
+        List<PumpHistoryEntry> previous = previousCreateRecords(ByteUtil.getListFromByteArray(page.getOnlyData()));
+
+        assertSameEntries(previous, decoder.created);
+        Assert.assertEquals(builder.offsets, offsets(decoder.created));
+        Assert.assertTrue(decoder.created.get(decoder.created.size() - 1).getOffset() < 1018);
+
+        assertOkEntriesReturned(previous, records);
+    }
+
+
+    @Test
+    public void pageWithWrongChecksumIsNotDecoded() {
+        byte[] data = recordedEntries().page(aapsLogger).getData();
+        data[1023] ^= 0x01;
+        RawHistoryPage page = new RawHistoryPage(aapsLogger);
+        page.appendData(data);
+        Assert.assertFalse(page.isChecksumOK());
+
+        Assert.assertEquals(0, decoder.processPageAndCreateRecords(page).size());
+        Assert.assertEquals(0, decoder.created.size());
+    }
+
+
+    private void assertSameEntries(List<PumpHistoryEntry> expected, List<PumpHistoryEntry> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getEntryType(), actual.get(i).getEntryType());
+            Assert.assertEquals(expected.get(i).getOffset(), actual.get(i).getOffset());
+            Assert.assertArrayEquals("offset " + expected.get(i).getOffset(), expected.get(i).getRawData(), actual.get(i).getRawData());
+        }
+    }
+
+
+    private void assertOkEntriesReturned(List<PumpHistoryEntry> previous, List<PumpHistoryEntry> records) {
+        List<Integer> expected = new ArrayList<>();
+        for (PumpHistoryEntry entry : previous) {
+            if (decoder.decodeRecord(entry) == RecordDecodeStatus.OK)
+                expected.add(entry.getOffset());
+        }
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, offsets(records));
+    }
+
+
+    private List<Integer> offsets(List<PumpHistoryEntry> entries) {
+        List<Integer> offsets = new ArrayList<>();
+        for (PumpHistoryEntry entry : entries) {
+            offsets.add(entry.getOffset());
+        }
+        return offsets;
+    }
+
+
+    // previous implementation of MedtronicPumpHistoryDecoder.createRecords, without decoding
+    private List<PumpHistoryEntry> previousCreateRecords(List<Byte> dataClear) {
+        int counter = 0;
+        boolean incompletePacket;
+
+        List<PumpHistoryEntry> outList = new ArrayList<>();
+
+        do {
+            int opCode = dataClear.get(counter);
+            boolean special = false;
+            incompletePacket = false;
+
+            if (opCode == 0) {
+                counter++;
+                continue;
+            }
+
+            PumpHistoryEntryType entryType = PumpHistoryEntryType.getByCode(opCode);
+
+            PumpHistoryEntry pe = new PumpHistoryEntry();
+            pe.setEntryType(pumpModel, entryType);
+            pe.setOffset(counter);
+
+            counter++;
+
+            if (counter >= 1022) {
+                break;
+            }
+
+            List<Byte> listRawData = new ArrayList<>();
+            listRawData.add((byte) opCode);
+
+            if (entryType == PumpHistoryEntryType.UnabsorbedInsulin
+                    || entryType == PumpHistoryEntryType.UnabsorbedInsulin512) {
+                int elements = dataClear.get(counter);
+                listRawData.add((byte) elements);
+                counter++;
+
+                int els = elements & 0xFF;
+
+                for (int k = 0; k < (els - 2); k++) {
+                    if (counter < 1022) {
+                        listRawData.add(dataClear.get(counter));
+                        counter++;
+                    }
+                }
+
+                special = true;
+            } else {
+
+                for (int j = 0; j < (entryType.getTotalLength(pumpModel) - 1); j++) {
+
+                    try {
+                        listRawData.add(dataClear.get(counter));
+                        counter++;
+                    } catch (Exception ex) {
+                        incompletePacket = true;
+                        break;
+                    }
+
+                }
+
+                if (incompletePacket)
+                    break;
+
+            }
+
+            if (entryType != PumpHistoryEntryType.None) {
+                if (entryType.getHeadLength(pumpModel) == 0)
+                    special = true;
+
+                pe.setData(listRawData, special);
+                outList.add(pe);
+            }
+
+        } while (counter < dataClear.size());
+
+        return outList;
+    }
+}
@@ -55,7 +55,7 @@ public class RFSpyReader {
 
     // This timeout must be coordinated with the length of the RFSpy radio operation or Bad Things Happen.
     byte[] poll(int timeout_ms) {
-        aapsLogger.debug(LTag.PUMPBTCOMM, ThreadUtil.sig() + "Entering poll at t==" + SystemClock.uptimeMillis() + ", timeout is " + timeout_ms
+        aapsLogger.debug(LTag.PUMPBTCOMM, () -> ThreadUtil.sig() + "Entering poll at t==" + SystemClock.uptimeMillis() + ", timeout is " + timeout_ms
                 + " mDataQueue size is " + mDataQueue.size());
 
         if (mDataQueue.isEmpty()) {
@@ -64,10 +64,10 @@ public class RFSpyReader {
                 // returns null if timeout.
                 byte[] dataFromQueue = mDataQueue.poll(timeout_ms, TimeUnit.MILLISECONDS);
                 if (dataFromQueue != null) {
-                    aapsLogger.debug(LTag.PUMPBTCOMM, "Got data [" + ByteUtil.shortHexString(dataFromQueue) + "] at t=="
+                    aapsLogger.debug(LTag.PUMPBTCOMM, () -> "Got data [" + ByteUtil.shortHexString(dataFromQueue) + "] at t=="
                             + SystemClock.uptimeMillis());
                 } else {
-                    aapsLogger.debug(LTag.PUMPBTCOMM, "Got data [null] at t==" + SystemClock.uptimeMillis());
+                    aapsLogger.debug(LTag.PUMPBTCOMM, () -> "Got data [null] at t==" + SystemClock.uptimeMillis());
                 }
                 return dataFromQueue;
             } catch (InterruptedException e) {
@@ -83,7 +83,7 @@ public class RFSpyReader {
     void newDataIsAvailable() {
         releaseCount++;
 
-        aapsLogger.debug(LTag.PUMPBTCOMM, ThreadUtil.sig() + "waitForRadioData released(count=" + releaseCount + ") at t="
+        aapsLogger.debug(LTag.PUMPBTCOMM, () -> ThreadUtil.sig() + "waitForRadioData released(count=" + releaseCount + ") at t="
                 + SystemClock.uptimeMillis());
         waitForRadioData.release();
     }
@@ -103,7 +103,7 @@ public class RFSpyReader {
                     try {
                         acquireCount++;
                         waitForRadioData.acquire();
-                        aapsLogger.debug(LTag.PUMPBTCOMM, ThreadUtil.sig() + "waitForRadioData acquired (count=" + acquireCount + ") at t="
+                        aapsLogger.debug(LTag.PUMPBTCOMM, () -> ThreadUtil.sig() + "waitForRadioData acquired (count=" + acquireCount + ") at t="
                                 + SystemClock.uptimeMillis());
                         SystemClock.sleep(100);
                         SystemClock.sleep(1);
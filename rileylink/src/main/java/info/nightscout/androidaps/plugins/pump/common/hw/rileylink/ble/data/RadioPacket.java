@@ -6,6 +6,7 @@ import javax.inject.Inject;
 
 import dagger.android.HasAndroidInjector;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.RileyLinkUtil;
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bAbstract;
 import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 import info.nightscout.androidaps.plugins.pump.common.utils.CRC;
 
@@ -47,8 +48,10 @@ public class RadioPacket {
             case FourByteSixByteLocal: {
                 byte[] withCRC = getWithCRC();
 
-                byte[] encoded = rileyLinkUtil.getEncoding4b6b().encode4b6b(withCRC);
-                return ByteUtil.concat(encoded, (byte) 0);
+                // encoded packet is terminated by 0
+                byte[] encoded = new byte[Encoding4b6bAbstract.encodedLength(withCRC.length) + 1];
+                rileyLinkUtil.getEncoding4b6b().encode4b6b(withCRC, 0, withCRC.length, encoded, 0);
+                return encoded;
             }
 
             case FourByteSixByteRileyLink: {
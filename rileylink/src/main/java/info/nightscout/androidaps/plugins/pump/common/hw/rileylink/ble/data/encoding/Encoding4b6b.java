@@ -13,4 +13,20 @@ public interface Encoding4b6b {
 
     byte[] decode4b6b(byte[] data) throws RileyLinkCommunicationException;
 
+
+    /**
+     * Encodes length bytes of src into dst, which must have room for Encoding4b6bAbstract.encodedLength(length) bytes.
+     *
+     * @return number of bytes written
+     */
+    int encode4b6b(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset);
+
+
+    /**
+     * Decodes length bytes of src into dst, which must have room for Encoding4b6bAbstract.decodedLength(length) bytes.
+     *
+     * @return number of bytes written
+     */
+    int decode4b6b(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) throws RileyLinkCommunicationException;
+
 }
@@ -2,7 +2,11 @@ package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.enc
 
 import org.slf4j.Logger;
 
+import java.util.Arrays;
+
+import info.nightscout.androidaps.logging.StacktraceLoggerWrapper;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.RileyLinkCommunicationException;
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.defs.RileyLinkBLEError;
 import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 
 
@@ -12,6 +16,8 @@ import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 
 public abstract class Encoding4b6bAbstract implements Encoding4b6b {
 
+    private static final Logger LOG = StacktraceLoggerWrapper.getLogger(Encoding4b6bAbstract.class);
+
     /**
      * encode4b6bMap is an ordered list of translations 6bits -> 4 bits, in order from 0x0 to 0xF
      * The 6 bit codes are what is used on the RF side of the RileyLink to communicate
@@ -23,12 +29,122 @@ public abstract class Encoding4b6bAbstract implements Encoding4b6b {
 
     // 21, 49, 50, 35, 52, 37, 38, 22, 26, 25, 42, 11, 44, 13, 14, 28
 
+    // byte -> its two 6 bit codes
+    private static final short[] encode12bTable = new short[256];
+    // two 6 bit codes -> byte, -1 if any of them is invalid
+    private static final short[] decode12bTable = new short[4096];
+    // 6 bit code -> nibble, -1 if invalid
+    private static final byte[] decode6bTable = new byte[64];
+
+    static {
+        Arrays.fill(decode6bTable, (byte)-1);
+        for (int i = 0; i < encode4b6bList.length; i++) {
+            decode6bTable[encode4b6bList[i]] = (byte)i;
+        }
+        Arrays.fill(decode12bTable, (short)-1);
+        for (int b = 0; b < 256; b++) {
+            encode12bTable[b] = (short)(encode4b6bList[b >> 4] << 6 | encode4b6bList[b & 0x0f]);
+            decode12bTable[encode12bTable[b]] = (short)b;
+        }
+    }
+
     @Override public abstract byte[] encode4b6b(byte[] data);
 
 
     @Override public abstract byte[] decode4b6b(byte[] data) throws RileyLinkCommunicationException;
 
 
+    /**
+     * 2 input bytes produce 3 output bytes, odd final input byte produces 2 output bytes.
+     */
+    public static int encodedLength(int length) {
+        return 3 * (length / 2) + 2 * (length % 2);
+    }
+
+
+    public static int decodedLength(int length) {
+        return 2 * (length / 3) + (length % 3) / 2;
+    }
+
+
+    @Override public int encode4b6b(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        int end = srcOffset + length;
+        int i = srcOffset;
+        int j = dstOffset;
+        for (; i + 1 < end; i += 2) {
+            int bits = encode12bTable[src[i] & 0xff] << 12 | encode12bTable[src[i + 1] & 0xff];
+            dst[j++] = (byte)(bits >> 16);
+            dst[j++] = (byte)(bits >> 8);
+            dst[j++] = (byte)bits;
+        }
+        if (i < end) {
+            // final nibble 0x5 marks uneven packet boundary (to match pump behavior)
+            int bits = encode12bTable[src[i] & 0xff] << 4 | 0x5;
+            dst[j++] = (byte)(bits >> 8);
+            dst[j++] = (byte)bits;
+        }
+        return j - dstOffset;
+    }
+
+
+    @Override public int decode4b6b(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset)
+            throws RileyLinkCommunicationException {
+        // built only when there is an error
+        StringBuilder errors = null;
+        int codingErrors = 0;
+        int end = srcOffset + length;
+        int i = srcOffset;
+        int j = dstOffset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            int hi = decode12bTable[bits >> 12];
+            int lo = decode12bTable[bits & 0xfff];
+            if (hi < 0 || lo < 0) {
+                errors = codingError(errors, i - srcOffset, bits >> 12);
+                codingErrors++;
+            }
+            dst[j++] = (byte)hi;
+            dst[j++] = (byte)lo;
+        }
+        int remaining = end - i;
+        if (remaining == 2) {
+            int bits = (src[i] & 0xff) << 8 | (src[i + 1] & 0xff);
+            int last = decode12bTable[bits >> 4];
+            if (last < 0) {
+                errors = codingError(errors, i - srcOffset, bits >> 4);
+                codingErrors++;
+            }
+            dst[j++] = (byte)last;
+            if ((bits & 0x0f) != 0x05) {
+                if (errors == null) errors = new StringBuilder();
+                errors.append("decode4b6b: failed clean decode -- extra bits available (not marker)(4)\n");
+                codingErrors++;
+            }
+        } else if (remaining == 1) {
+            if (errors == null) errors = new StringBuilder();
+            errors.append("decode4b6b: failed clean decode -- extra bits available (not marker)(8)\n");
+            codingErrors++;
+        }
+
+        if (codingErrors > 0) {
+            byte[] raw = Arrays.copyOfRange(src, srcOffset, end);
+            String errorData = "Input data: " + ByteUtil.shortHexString(raw) + "\n" + errors
+                    + "decode4b6b: " + codingErrors + " coding errors encountered.";
+            writeError(LOG, raw, errorData);
+            throw new RileyLinkCommunicationException(RileyLinkBLEError.CodingErrors, errorData);
+        }
+        return j - dstOffset;
+    }
+
+
+    private static StringBuilder codingError(StringBuilder errors, int offset, int codes) {
+        if (errors == null) errors = new StringBuilder();
+        errors.append(String.format("decode4b6b: i=%d, coding error: highcode=0x%02X, lowcode=0x%02X.\n",
+                offset, codes >> 6, codes & 0x3f));
+        return errors;
+    }
+
+
     protected short convertUnsigned(byte x) {
         short ss = x;
 
@@ -40,14 +156,11 @@ public abstract class Encoding4b6bAbstract implements Encoding4b6b {
     }
 
 
-    /* O(n) lookup. Run on an O(n) translation of a byte-stream, gives O(n**2) performance. Sigh. */
+    /**
+     * @return nibble for 6 bit code, -1 if code is invalid
+     */
     public static int encode4b6bListIndex(byte b) {
-        for (int i = 0; i < encode4b6bList.length; i++) {
-            if (b == encode4b6bList[i]) {
-                return i;
-            }
-        }
-        return -1;
+        return b >= 0 && b < decode6bTable.length ? decode6bTable[b] : -1;
     }
 
 
@@ -2,9 +2,6 @@ package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.enc
 
 import org.slf4j.Logger;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import info.nightscout.androidaps.logging.StacktraceLoggerWrapper;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.RileyLinkCommunicationException;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.defs.RileyLinkBLEError;
@@ -17,7 +14,6 @@ import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 public class Encoding4b6bGo extends Encoding4b6bAbstract {
 
     public static final Logger LOG = StacktraceLoggerWrapper.getLogger(Encoding4b6bGo.class);
-    private static Map<Short, Short> decodeGoMap;
 
 
     @Override public byte[] encode4b6b(byte[] src) {
@@ -57,9 +53,6 @@ public class Encoding4b6bGo extends Encoding4b6bAbstract {
     @Override public byte[] decode4b6b(byte[] src) throws RileyLinkCommunicationException {
         int n = src.length;
 
-        if (decodeGoMap == null)
-            initDecodeGo();
-
         StringBuilder errorMessageBuilder = new StringBuilder();
 
         errorMessageBuilder.append("Input data: " + ByteUtil.getHex(src) + "\n");
@@ -123,41 +116,9 @@ public class Encoding4b6bGo extends Encoding4b6bAbstract {
     }
 
 
-    public static void initDecodeGo() {
-
-        decodeGoMap = new HashMap<>();
-
-        putToMap(0x0B, 0x0B);
-        putToMap(0x0D, 0x0D);
-        putToMap(0x0E, 0x0E);
-        putToMap(0x15, 0x00);
-        putToMap(0x16, 0x07);
-        putToMap(0x19, 0x09);
-        putToMap(0x1A, 0x08);
-        putToMap(0x1C, 0x0F);
-        putToMap(0x23, 0x03);
-        putToMap(0x25, 0x05);
-        putToMap(0x26, 0x06);
-        putToMap(0x2A, 0x0A);
-        putToMap(0x2C, 0x0C);
-        putToMap(0x31, 0x01);
-        putToMap(0x32, 0x02);
-        putToMap(0x34, 0x04);
-
-    }
-
-
     private static short decode6b_goMap(int value) {
-        short val = (short)value;
-        if (decodeGoMap.containsKey(val))
-            return decodeGoMap.get(val);
-        else
-            return (short)0xff;
-    }
-
-
-    private static void putToMap(int val1, int val2) {
-        decodeGoMap.put((short)val1, (short)val2);
+        int nibble = encode4b6bListIndex((byte)value);
+        return nibble < 0 ? (short)0xff : (short)nibble;
     }
 
 }
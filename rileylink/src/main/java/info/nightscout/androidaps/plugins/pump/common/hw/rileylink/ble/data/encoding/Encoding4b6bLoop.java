@@ -35,7 +35,8 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
      */
     @Override public byte[] encode4b6b(byte[] data) {
 
-        List<Byte> buffer = new ArrayList<Byte>();
+        byte[] buffer = new byte[encodedLength(data.length)];
+        int position = 0;
         int bitAccumulator = 0x0;
         int bitcount = 0;
 
@@ -56,7 +57,7 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
             bitcount += 6;
 
             while (bitcount >= 8) {
-                buffer.add((byte)((bitAccumulator >> (bitcount - 8)) & 0xff));
+                buffer[position++] = (byte)((bitAccumulator >> (bitcount - 8)) & 0xff);
                 bitcount -= 8;
                 bitAccumulator &= (0xffff >> (16 - bitcount));
             }
@@ -64,10 +65,10 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
 
         if (bitcount > 0) {
             bitAccumulator <<= (8 - bitcount);
-            buffer.add((byte)((bitAccumulator | 0x5) & 0xff));
+            buffer[position] = (byte)((bitAccumulator | 0x5) & 0xff);
         }
 
-        return ByteUtil.getByteArrayFromList(buffer);
+        return buffer;
     }
 
 
@@ -0,0 +1,104 @@
+package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bAbstract;
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bGeoff;
+import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
+
+/**
+ * Compares table based 4b6b encoding with previous bit by bit implementation working on boxed lists.
+ */
+public class Encoding4b6bBenchmarkUTest {
+
+    private final Encoding4b6bGeoff encoding = new Encoding4b6bGeoff();
+
+
+    @Test
+    public void sameAsBoxedEncoder() throws Exception {
+        Random random = new Random(1);
+
+        for (int length = 0; length < 200; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            byte[] encoded = encoding.encode4b6b(data);
+            Assert.assertArrayEquals(boxedEncode4b6b(data), encoded);
+            Assert.assertArrayEquals(data, encoding.decode4b6b(encoded));
+        }
+    }
+
+
+    // history page is received in 64 byte frames
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark() throws Exception {
+        byte[] frame = new byte[65];
+        new Random(1).nextBytes(frame);
+        byte[] encoded = new byte[Encoding4b6bAbstract.encodedLength(frame.length)];
+        byte[] decoded = new byte[frame.length];
+        int iterations = 200000;
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                boxedEncode4b6b(frame);
+            }
+            long boxed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                encoding.encode4b6b(frame, 0, frame.length, encoded, 0);
+            }
+            long table = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                encoding.decode4b6b(encoded, 0, encoded.length, decoded, 0);
+            }
+            long decode = System.nanoTime() - start;
+
+            System.out.println(String.format("encode boxed: %d ns/frame, encode table: %d ns/frame, decode table: %d ns/frame",
+                    boxed / iterations, table / iterations, decode / iterations));
+        }
+        Assert.assertArrayEquals(frame, decoded);
+    }
+
+
+    private static byte[] boxedEncode4b6b(byte[] data) {
+        List<Byte> inData = ByteUtil.getListFromByteArray(data);
+        List<Byte> outData = new ArrayList<>();
+
+        int acc = 0;
+        int bitcount = 0;
+        for (int i = 0; i < inData.size(); i++) {
+            acc <<= 6;
+            acc |= Encoding4b6bAbstract.encode4b6bList[(inData.get(i) >> 4) & 0x0f];
+            bitcount += 6;
+
+            acc <<= 6;
+            acc |= Encoding4b6bAbstract.encode4b6bList[inData.get(i) & 0x0f];
+            bitcount += 6;
+
+            while (bitcount >= 8) {
+                outData.add((byte)(acc >> (bitcount - 8) & 0xff));
+                bitcount -= 8;
+                acc &= (0xffff >> (16 - bitcount));
+            }
+        }
+        if (bitcount > 0) {
+            acc <<= 6;
+            acc |= 0x14; // marks uneven packet boundary.
+            bitcount += 6;
+            outData.add((byte)((acc >> (bitcount - 8)) & 0xff));
+        }
+
+        return ByteUtil.getByteArrayFromList(outData);
+    }
+}
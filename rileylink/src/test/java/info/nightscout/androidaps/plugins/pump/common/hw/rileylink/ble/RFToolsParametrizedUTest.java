@@ -10,6 +10,7 @@ import org.junit.runners.Parameterized;
 
 import android.util.Log;
 
+import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bAbstract;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bGeoff;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bGo;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.encoding.Encoding4b6bLoop;
@@ -353,6 +354,40 @@ public class RFToolsParametrizedUTest {
     }
 
 
+    @Test
+    public void geoffRoundTrip() throws Exception {
+        Encoding4b6bGeoff decoder = new Encoding4b6bGeoff();
+
+        Assert.assertArrayEquals(decoded, decoder.decode4b6b(decoder.encode4b6b(this.decoded)));
+    }
+
+
+    @Test
+    public void bufferRoundTrip() throws Exception {
+        Encoding4b6bGeoff decoder = new Encoding4b6bGeoff();
+
+        // caller provided buffers with data not at start
+        byte[] encodedX = new byte[Encoding4b6bAbstract.encodedLength(decoded.length) + 5];
+        int encodedLength = decoder.encode4b6b(this.decoded, 0, decoded.length, encodedX, 3);
+        Assert.assertEquals(encoded.length, encodedLength);
+        Assert.assertArrayEquals(encoded, Arrays.copyOfRange(encodedX, 3, 3 + encodedLength));
+
+        byte[] decodedX = new byte[Encoding4b6bAbstract.decodedLength(encodedLength) + 2];
+        int decodedLength = decoder.decode4b6b(encodedX, 3, encodedLength, decodedX, 1);
+        Assert.assertEquals(decoded.length, decodedLength);
+        Assert.assertArrayEquals(decoded, Arrays.copyOfRange(decodedX, 1, 1 + decodedLength));
+    }
+
+
+    @Test(expected = RileyLinkCommunicationException.class)
+    public void geoffDecodeCorrupted() throws Exception {
+        byte[] corrupted = Arrays.copyOf(encoded, encoded.length);
+        corrupted[1] = (byte)0xFF;
+
+        new Encoding4b6bGeoff().decode4b6b(corrupted);
+    }
+
+
     private short[] createShortArray(byte[] data) {
 
         short[] outData = new short[data.length];
@@ -0,0 +1,66 @@
+package info.nightscout.androidaps.data;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies versioned delta messages of one data path sent by phone WatchSyncState.
+ * <p>
+ * Merged state is complete data as it was sent before deltas were introduced, so it can be
+ * persisted and broadcast to watchfaces unchanged.
+ */
+public class DataSync {
+
+    static final String VERSION = "syncVersion";
+    static final String BASE = "syncBase";
+    static final String WINDOW_START = "syncWindowStart";
+    static final String FROM_SUFFIX = "From";
+
+    // list -> time key of its items
+    private static final Map<String, String> TIME_KEYS = new HashMap<>();
+
+    static {
+        TIME_KEYS.put("entries", "timestamp");
+        TIME_KEYS.put("basals", "starttime");
+        TIME_KEYS.put("temps", "starttime");
+        TIME_KEYS.put("boluses", "date");
+    }
+
+    private long version = -1;
+    private DataMap merged = null;
+
+    /**
+     * @return merged data or null if message doesn't follow last applied version and full resend is needed
+     */
+    public synchronized DataMap apply(DataMap message) {
+        if (!message.containsKey(VERSION)) return message; // single BG or old phone app
+        long base = message.getLong(BASE, -1);
+        if (base != -1 && (merged == null || base != version)) return null;
+
+        long windowStart = message.getLong(WINDOW_START, 0);
+        DataMap result = new DataMap();
+        result.putAll(message);
+        for (String key : message.keySet()) {
+            String timeKey = TIME_KEYS.get(key);
+            if (timeKey == null || base == -1 || !message.containsKey(key + FROM_SUFFIX)) continue;
+            long from = message.getLong(key + FROM_SUFFIX);
+            ArrayList<DataMap> items = new ArrayList<>();
+            ArrayList<DataMap> previous = merged.getDataMapArrayList(key);
+            if (previous != null)
+                for (DataMap item : previous) {
+                    long time = item.getLong(timeKey);
+                    if (time >= windowStart && time < from) items.add(item);
+                }
+            ArrayList<DataMap> tail = message.getDataMapArrayList(key);
+            if (tail != null) items.addAll(tail);
+            result.putDataMapArrayList(key, items);
+        }
+        for (String key : TIME_KEYS.keySet()) result.remove(key + FROM_SUFFIX);
+        version = message.getLong(VERSION);
+        merged = result;
+        return result;
+    }
+}
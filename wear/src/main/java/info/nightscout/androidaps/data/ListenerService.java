@@ -88,6 +88,9 @@ public class ListenerService extends WearableListenerService implements GoogleAp
 
     GoogleApiClient googleApiClient;
     private long lastRequest = 0;
+    // static, service is recreated for each event but deltas build on what process received before
+    private static final DataSync bgSync = new DataSync();
+    private static final DataSync basalSync = new DataSync();
     private DismissThread bolusprogressThread;
     private static final String TAG = "ListenerService";
 
@@ -519,7 +522,11 @@ public class ListenerService extends WearableListenerService implements GoogleAp
                     Persistence.storeDataMap(RawDisplayData.STATUS_PERSISTENCE_KEY, dataMap);
                     LocalBroadcastManager.getInstance(this).sendBroadcast(messageIntent);
                 } else if (path.equals(BASAL_DATA_PATH)) {
-                    dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+                    dataMap = basalSync.apply(DataMapItem.fromDataItem(event.getDataItem()).getDataMap());
+                    if (dataMap == null) {
+                        requestData();
+                        continue;
+                    }
                     Intent messageIntent = new Intent();
                     messageIntent.setAction(Intent.ACTION_SEND);
                     messageIntent.putExtra("basals", dataMap.toBundle());
@@ -543,7 +550,11 @@ public class ListenerService extends WearableListenerService implements GoogleAp
                     String actionstring = DataMapItem.fromDataItem(event.getDataItem()).getDataMap().getString("actionstring");
                     cancelNotificationRequest(actionstring);
                 } else {
-                    dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+                    dataMap = bgSync.apply(DataMapItem.fromDataItem(event.getDataItem()).getDataMap());
+                    if (dataMap == null) {
+                        requestData();
+                        continue;
+                    }
                     Intent messageIntent = new Intent();
                     messageIntent.setAction(Intent.ACTION_SEND);
                     messageIntent.putExtra("data", dataMap.toBundle());
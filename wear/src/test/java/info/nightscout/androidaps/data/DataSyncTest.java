@@ -0,0 +1,87 @@
+package info.nightscout.androidaps.data;
+
+import com.google.android.gms.wearable.DataMap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DataSyncTest {
+
+    private DataMap entry(long timestamp, double sgv) {
+        DataMap entry = new DataMap();
+        entry.putLong("timestamp", timestamp);
+        entry.putDouble("sgvDouble", sgv);
+        return entry;
+    }
+
+    private DataMap message(long base, long version, long windowStart, ArrayList<DataMap> entries) {
+        DataMap message = new DataMap();
+        message.putLong(DataSync.BASE, base);
+        message.putLong(DataSync.VERSION, version);
+        message.putLong(DataSync.WINDOW_START, windowStart);
+        message.putDataMapArrayList("entries", entries);
+        return message;
+    }
+
+    private ArrayList<DataMap> entries(long from, long to) {
+        ArrayList<DataMap> entries = new ArrayList<>();
+        for (long t = from; t <= to; t += 5) entries.add(entry(t, 100 + t));
+        return entries;
+    }
+
+    @Test
+    public void messageWithoutVersionPassesThrough() {
+        DataSync sync = new DataSync();
+        DataMap single = entry(1, 100);
+        assertThat(sync.apply(single), is(single));
+    }
+
+    @Test
+    public void deltaIsMergedIntoFullSnapshot() {
+        DataSync sync = new DataSync();
+        sync.apply(message(-1, 1, 0, entries(0, 50)));
+
+        // window moved, last entry changed and new one added
+        ArrayList<DataMap> tail = new ArrayList<>();
+        tail.add(entry(50, 1));
+        tail.add(entry(55, 2));
+        DataMap delta = message(1, 2, 10, tail);
+        delta.putLong("entries" + DataSync.FROM_SUFFIX, 50);
+        DataMap merged = sync.apply(delta);
+
+        ArrayList<DataMap> expected = entries(10, 45);
+        expected.add(entry(50, 1));
+        expected.add(entry(55, 2));
+        assertThat(merged.getDataMapArrayList("entries"), is(expected));
+        assertThat(merged.containsKey("entries" + DataSync.FROM_SUFFIX), is(false));
+    }
+
+    @Test
+    public void deletedItemsAreRemoved() {
+        DataSync sync = new DataSync();
+        sync.apply(message(-1, 1, 0, entries(0, 50)));
+
+        DataMap delta = message(1, 2, 0, new ArrayList<>());
+        delta.putLong("entries" + DataSync.FROM_SUFFIX, 30);
+        assertThat(sync.apply(delta).getDataMapArrayList("entries"), is(entries(0, 25)));
+    }
+
+    @Test
+    public void gapRequiresFullResend() {
+        DataSync sync = new DataSync();
+        // nothing received yet
+        assertThat(sync.apply(message(3, 4, 0, entries(0, 10))), is(nullValue()));
+
+        sync.apply(message(-1, 5, 0, entries(0, 10)));
+        // version 6 was lost
+        assertThat(sync.apply(message(6, 7, 0, entries(0, 15))), is(nullValue()));
+        // still waiting for full snapshot
+        assertThat(sync.apply(message(7, 8, 0, entries(0, 20))), is(nullValue()));
+        assertThat(sync.apply(message(-1, 9, 0, entries(0, 20))).getDataMapArrayList("entries"), is(entries(0, 20)));
+    }
+}